@@ -1,3 +1,33 @@
 #!/bin/bash
 
-java -jar executable/FraudDetectionApp.jar "$@"
\ No newline at end of file
+# Runs the jar built by "mvn package". Uses the class-data archive dumped by "mvn -P cds package" when there is
+# one and the JVM can map it (JDK 13 or later): the JVM ignores an archive that does not match the jar or the JVM
+# (e.g. after a rebuild without the profile), and starts as without it.
+DIR="$(cd "$(dirname "$0")" && pwd)"
+JAR="$DIR/target/FraudDetectionApp.jar"
+ARCHIVE="$DIR/target/FraudDetectionApp.jsa"
+
+if [ ! -f "$JAR" ]; then
+  echo "$JAR not found, build it first with: mvn package" >&2
+  exit 1
+fi
+
+# Major version of the JVM, from the release file of its home rather than by starting it once more.
+java_major() {
+  local java home version
+  java="$(command -v java)" || return
+  home="$(dirname "$(dirname "$(readlink -f "$java" 2>/dev/null || echo "$java")")")"
+  if [ -f "$home/release" ]; then
+    version="$(sed -n 's/^JAVA_VERSION="\(.*\)"/\1/p' "$home/release")"
+  else
+    version="$(java -version 2>&1 | sed -n 's/.*version "\(.*\)".*/\1/p' | head -n 1)"
+  fi
+  # 1.8.0_392 is 8, 17.0.2 is 17.
+  version="${version#1.}"
+  echo "${version%%[.+_-]*}"
+}
+
+if [ -f "$ARCHIVE" ] && [ "$(java_major)" -ge 13 ] 2>/dev/null; then
+  exec java -XX:SharedArchiveFile="$ARCHIVE" -Xshare:auto -Xlog:cds=off -Xlog:cds+dynamic=off -jar "$JAR" "$@"
+fi
+exec java -jar "$JAR" "$@"
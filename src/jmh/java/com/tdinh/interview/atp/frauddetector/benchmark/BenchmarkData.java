@@ -0,0 +1,126 @@
+package com.tdinh.interview.atp.frauddetector.benchmark;
+
+import com.tdinh.interview.atp.frauddetector.transaction.BinaryTransactionWriter;
+import com.tdinh.interview.atp.frauddetector.transaction.MappedTransactionFileLoader;
+import com.tdinh.interview.atp.frauddetector.transaction.Transaction;
+import com.tdinh.interview.atp.frauddetector.transaction.error.FileLoaderException;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Deterministic benchmark inputs, so that results are comparable across runs.
+ * 
+ * Transactions are drawn from a fixed seed: credit cards follow a Zipf distribution of the given
+ * exponent (0 for uniform), one transaction every 0 to 2 seconds, amounts from 0.00 to 199.99.
+ * 
+ * @author Tuan Dinh
+ *
+ */
+final class BenchmarkData {
+
+  static final long SEED = 20140429L;
+  static final File DATA_DIR = new File("target/jmh-data");
+
+  private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern(Transaction.DATE_TIME_FORMATTER);
+
+  private final Random random = new Random(SEED);
+  private final String[] creditCardIds;
+  private final double[] cumulativeWeights;
+  private LocalDateTime dateTime = LocalDateTime.of(2014, 4, 29, 0, 0, 0);
+
+  /**
+   * @param cards number of distinct credit cards.
+   * @param skew Zipf exponent of the credit card popularity, 0 for uniform.
+   */
+  BenchmarkData(int cards, double skew) {
+    creditCardIds = new String[cards];
+    cumulativeWeights = new double[cards];
+    double total = 0;
+    for (int i = 0; i < cards; i++) {
+      creditCardIds[i] = String.format("%027x", i * 0x9E3779B97F4A7C15L & Long.MAX_VALUE);
+      total += 1 / Math.pow(i + 1, skew);
+      cumulativeWeights[i] = total;
+    }
+    for (int i = 0; i < cards; i++) {
+      cumulativeWeights[i] /= total;
+    }
+  }
+
+  /**
+   * @return the next record as a transaction text line.
+   */
+  String nextRecord() {
+    int index = Arrays.binarySearch(cumulativeWeights, random.nextDouble());
+    String creditCardId = creditCardIds[Math.min(index < 0 ? -index - 1 : index, creditCardIds.length - 1)];
+    dateTime = dateTime.plusSeconds(random.nextInt(3));
+    return creditCardId + ", " + dateTime.format(FORMATTER) + ", " + random.nextInt(200) + "." + random.nextInt(10)
+        + random.nextInt(10);
+  }
+
+  List<String> records(int count) {
+    List<String> records = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      records.add(nextRecord());
+    }
+    return records;
+  }
+
+  /**
+   * Return a generated transaction file of the given number of lines, generating it once into
+   * {@link #DATA_DIR} and reusing it for later runs.
+   */
+  static File file(int lines) throws IOException {
+    File file = new File(DATA_DIR, "transactions_" + lines + ".csv");
+    if (!file.exists()) {
+      DATA_DIR.mkdirs();
+      File temp = new File(DATA_DIR, file.getName() + ".tmp");
+      BenchmarkData data = new BenchmarkData(1_000_000, 1.0);
+      try (BufferedWriter writer = Files.newBufferedWriter(temp.toPath(), StandardCharsets.US_ASCII)) {
+        for (int i = 0; i < lines; i++) {
+          writer.write(data.nextRecord());
+          writer.write('\n');
+        }
+      }
+      Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+    }
+    return file;
+  }
+
+  /**
+   * @return the binary transaction file converted from {@link #file(int)}, converted once.
+   */
+  static File binaryFile(int lines) throws IOException, FileLoaderException {
+    File file = new File(DATA_DIR, "transactions_" + lines + ".bin");
+    if (!file.exists()) {
+      BinaryTransactionWriter.convert(file(lines).getPath(), file.getPath(), new MappedTransactionFileLoader());
+    }
+    return file;
+  }
+
+  /**
+   * @return the gzip compressed copy of {@link #file(int)}, compressed once.
+   */
+  static File gzipFile(int lines) throws IOException {
+    File file = new File(DATA_DIR, "transactions_" + lines + ".csv.gz");
+    if (!file.exists()) {
+      File temp = new File(DATA_DIR, file.getName() + ".tmp");
+      try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(temp.toPath()), 64 * 1024)) {
+        Files.copy(file(lines).toPath(), out);
+      }
+      Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+    }
+    return file;
+  }
+}
@@ -0,0 +1,92 @@
+package com.tdinh.interview.atp.frauddetector.benchmark;
+
+import com.tdinh.interview.atp.frauddetector.rule.RuleEngine;
+import com.tdinh.interview.atp.frauddetector.rule.WindowRule;
+import com.tdinh.interview.atp.frauddetector.transaction.CreditCardDictionary;
+import com.tdinh.interview.atp.frauddetector.transaction.Transaction;
+import com.tdinh.interview.atp.frauddetector.transaction.TransactionBatch;
+import com.tdinh.interview.atp.frauddetector.transaction.TransactionResolver;
+import com.tdinh.interview.atp.frauddetector.transaction.error.InvalidTransactionRecordException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Per transaction cost and memory of 7-day and 30-day window rules over one million transactions (about
+ * 12 days) of a thousand skewed credit cards, with exact windows (bucket of 1 second) and with windows
+ * merged by 1 and 5 minute buckets. The limits are never reached, so that every window lives to the end.
+ *
+ * Memory is printed at the end of each trial as the peak number of retained window entries, each taking
+ * 16 bytes with exact windows and 20 bytes with buckets.
+ *
+ * @author Tuan Dinh
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BucketedWindowBenchmark {
+
+  private static final int TRANSACTIONS = 1_000_000;
+  private static final List<WindowRule> RULES = Arrays.asList(
+      WindowRule.parse("weekly:amount:7d:1000000000.00"),
+      WindowRule.parse("monthly:amount:30d:4000000000.00"));
+
+  @Param({"1", "60", "300"})
+  public long bucketSeconds;
+
+  @Param({"1000"})
+  public int cards;
+
+  @Param({"1.2"})
+  public double skew;
+
+  private List<Transaction> transactions;
+  private long peakRetainedEntries;
+
+  @Setup
+  public void setUp() throws InvalidTransactionRecordException {
+    TransactionResolver resolver = new TransactionResolver();
+    transactions = new ArrayList<>(TRANSACTIONS);
+    for (String record : new BenchmarkData(cards, skew).records(TRANSACTIONS)) {
+      transactions.add(resolver.resolve(record));
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(TRANSACTIONS)
+  public int ruleScan() {
+    RuleEngine engine = new RuleEngine(RULES, TransactionBatch.AMOUNT_SCALE, bucketSeconds, null,
+        new CreditCardDictionary());
+    for (Transaction trans : transactions) {
+      engine.accept(trans);
+    }
+    peakRetainedEntries = engine.getPeakRetainedEntries();
+    return engine.getLiveCreditCards();
+  }
+
+  @TearDown(Level.Trial)
+  public void printMemory() {
+    long bytesPerEntry = bucketSeconds > 1 ? 20 : 16;
+    System.out.println("Peak retained window entries: " + peakRetainedEntries + " ("
+        + peakRetainedEntries * bytesPerEntry / 1024 + " KB)");
+  }
+}
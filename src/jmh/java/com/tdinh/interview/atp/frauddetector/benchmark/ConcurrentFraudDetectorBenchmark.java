@@ -0,0 +1,126 @@
+package com.tdinh.interview.atp.frauddetector.benchmark;
+
+import com.tdinh.interview.atp.frauddetector.ConcurrentFraudDetector;
+import com.tdinh.interview.atp.frauddetector.FraudDetector;
+import com.tdinh.interview.atp.frauddetector.transaction.Transaction;
+import com.tdinh.interview.atp.frauddetector.transaction.TransactionResolver;
+import com.tdinh.interview.atp.frauddetector.transaction.error.InvalidTransactionRecordException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Per transaction cost of one million transactions submitted to a {@link ConcurrentFraudDetector} by several
+ * producers at once, each owning the credit cards of the same hash, one at a time or in batches of 100,
+ * against the sequential {@link FraudDetector}. With a Zipf skew the hot credit cards load one shard more
+ * than the others.
+ *
+ * @author Tuan Dinh
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConcurrentFraudDetectorBenchmark {
+
+  private static final int TRANSACTIONS = 1_000_000;
+  private static final int BATCH_SIZE = 100;
+  private static final double LIMIT = 1000.00;
+
+  @Param({"1", "4"})
+  public int producers;
+
+  @Param({"1", "4"})
+  public int shards;
+
+  @Param({"100000"})
+  public int cards;
+
+  @Param({"0.0", "1.2"})
+  public double skew;
+
+  private List<Transaction> transactions;
+  private List<List<Transaction>> perProducer;
+
+  @Setup
+  public void setUp() throws InvalidTransactionRecordException {
+    TransactionResolver resolver = new TransactionResolver();
+    transactions = new ArrayList<>(TRANSACTIONS);
+    perProducer = new ArrayList<>(producers);
+    for (int p = 0; p < producers; p++) {
+      perProducer.add(new ArrayList<>());
+    }
+    for (String record : new BenchmarkData(cards, skew).records(TRANSACTIONS)) {
+      Transaction trans = resolver.resolve(record);
+      transactions.add(trans);
+      perProducer.get((trans.getCreditCardId().hashCode() & Integer.MAX_VALUE) % producers).add(trans);
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(TRANSACTIONS)
+  public Set<String> submit() throws InterruptedException {
+    return run(false);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(TRANSACTIONS)
+  public Set<String> submitAll() throws InterruptedException {
+    return run(true);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(TRANSACTIONS)
+  public Set<String> sequentialScan() {
+    return new FraudDetector().fraudScan(transactions, LIMIT);
+  }
+
+  private Set<String> run(boolean batched) throws InterruptedException {
+    try (ConcurrentFraudDetector detector = new ConcurrentFraudDetector.Builder()
+        .limit(LIMIT)
+        .shards(shards)
+        .maxSkewSeconds(Long.MAX_VALUE)
+        .build()) {
+      List<Thread> threads = new ArrayList<>(producers);
+      for (List<Transaction> own : perProducer) {
+        Thread thread = new Thread(() -> {
+          try {
+            if (batched) {
+              for (int from = 0; from < own.size(); from += BATCH_SIZE) {
+                detector.submitAll(own.subList(from, Math.min(own.size(), from + BATCH_SIZE)));
+              }
+            } else {
+              for (Transaction trans : own) {
+                detector.submit(trans);
+              }
+            }
+          } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+          }
+        });
+        thread.start();
+        threads.add(thread);
+      }
+      for (Thread thread : threads) {
+        thread.join();
+      }
+      return detector.getFraudulentCreditCards();
+    }
+  }
+}
@@ -0,0 +1,66 @@
+package com.tdinh.interview.atp.frauddetector.benchmark;
+
+import com.tdinh.interview.atp.frauddetector.FraudDetector;
+import com.tdinh.interview.atp.frauddetector.transaction.Transaction;
+import com.tdinh.interview.atp.frauddetector.transaction.TransactionResolver;
+import com.tdinh.interview.atp.frauddetector.transaction.error.InvalidTransactionRecordException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Per transaction cost of {@link FraudDetector#fraudScan(List, double)} over one million transactions,
+ * by credit card cardinality and hot card skew (Zipf exponent, 0 for uniform).
+ * 
+ * @author Tuan Dinh
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FraudDetectorBenchmark {
+
+  private static final int TRANSACTIONS = 1_000_000;
+
+  @Param({"1000", "100000", "1000000"})
+  public int cards;
+
+  @Param({"0", "1.2"})
+  public double skew;
+
+  @Param({"1000.00"})
+  public double limit;
+
+  private List<Transaction> transactions;
+
+  @Setup
+  public void setUp() throws InvalidTransactionRecordException {
+    TransactionResolver resolver = new TransactionResolver();
+    transactions = new ArrayList<>(TRANSACTIONS);
+    for (String record : new BenchmarkData(cards, skew).records(TRANSACTIONS)) {
+      transactions.add(resolver.resolve(record));
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(TRANSACTIONS)
+  public Set<String> fraudScan() {
+    return new FraudDetector().fraudScan(transactions, limit);
+  }
+}
@@ -0,0 +1,89 @@
+package com.tdinh.interview.atp.frauddetector.benchmark;
+
+import com.tdinh.interview.atp.frauddetector.transaction.CreditCardDictionary;
+import com.tdinh.interview.atp.frauddetector.transaction.Transaction;
+import com.tdinh.interview.atp.frauddetector.transaction.TransactionBatch;
+import com.tdinh.interview.atp.frauddetector.transaction.TransactionResolver;
+import com.tdinh.interview.atp.frauddetector.transaction.error.InvalidTransactionRecordException;
+import com.tdinh.interview.atp.frauddetector.window.LimitSweep;
+import com.tdinh.interview.atp.frauddetector.window.SlidingWindowEngine;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Per transaction cost of a {@link LimitSweep} over one million transactions by number of limits, from 10.00
+ * up to 1000.00, including the counts per limit, against a single {@link SlidingWindowEngine} scan at the
+ * highest limit.
+ *
+ * @author Tuan Dinh
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LimitSweepBenchmark {
+
+  private static final int TRANSACTIONS = 1_000_000;
+  private static final double HIGHEST_LIMIT = 1000.00;
+
+  @Param({"1", "10", "100"})
+  public int limits;
+
+  @Param({"100000"})
+  public int cards;
+
+  @Param({"1.2"})
+  public double skew;
+
+  private List<Transaction> transactions;
+  private double[] sweepLimits;
+
+  @Setup
+  public void setUp() throws InvalidTransactionRecordException {
+    TransactionResolver resolver = new TransactionResolver();
+    transactions = new ArrayList<>(TRANSACTIONS);
+    for (String record : new BenchmarkData(cards, skew).records(TRANSACTIONS)) {
+      transactions.add(resolver.resolve(record));
+    }
+    sweepLimits = new double[limits];
+    for (int i = 0; i < limits; i++) {
+      sweepLimits[i] = HIGHEST_LIMIT * (i + 1) / limits;
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(TRANSACTIONS)
+  public int[] sweep() {
+    LimitSweep sweep = new LimitSweep(sweepLimits, TransactionBatch.AMOUNT_SCALE, new CreditCardDictionary());
+    for (Transaction trans : transactions) {
+      sweep.accept(trans);
+    }
+    return sweep.getFraudulentCounts();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(TRANSACTIONS)
+  public int slidingWindowScan() {
+    SlidingWindowEngine engine = new SlidingWindowEngine(HIGHEST_LIMIT);
+    for (Transaction trans : transactions) {
+      engine.accept(trans);
+    }
+    return engine.getLiveCreditCards();
+  }
+}
@@ -0,0 +1,95 @@
+package com.tdinh.interview.atp.frauddetector.benchmark;
+
+import com.tdinh.interview.atp.frauddetector.rule.RuleEngine;
+import com.tdinh.interview.atp.frauddetector.rule.WindowRule;
+import com.tdinh.interview.atp.frauddetector.transaction.CreditCardDictionary;
+import com.tdinh.interview.atp.frauddetector.transaction.Transaction;
+import com.tdinh.interview.atp.frauddetector.transaction.TransactionBatch;
+import com.tdinh.interview.atp.frauddetector.transaction.TransactionResolver;
+import com.tdinh.interview.atp.frauddetector.transaction.error.InvalidTransactionRecordException;
+import com.tdinh.interview.atp.frauddetector.window.SlidingWindowEngine;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Per transaction cost of a {@link RuleEngine} over one million transactions by number of rules, against the
+ * single rule {@link SlidingWindowEngine}.
+ *
+ * The rules are taken in order from: 24h amount, 1h amount, 7d amount, 1h count, 24h count, 10m count.
+ * With all six, the engine keeps four window lengths per credit card, the longest being a week.
+ *
+ * @author Tuan Dinh
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RuleEngineBenchmark {
+
+  private static final int TRANSACTIONS = 1_000_000;
+  private static final List<WindowRule> RULES = Arrays.asList(
+      WindowRule.parse("daily:amount:24h:1000.00"),
+      WindowRule.parse("hourly:amount:1h:400.00"),
+      WindowRule.parse("weekly:amount:7d:5000.00"),
+      WindowRule.parse("hourly-count:count:1h:20"),
+      WindowRule.parse("daily-count:count:24h:100"),
+      WindowRule.parse("burst:count:10m:10"));
+
+  @Param({"1", "3", "6"})
+  public int rules;
+
+  @Param({"100000"})
+  public int cards;
+
+  @Param({"1.2"})
+  public double skew;
+
+  private List<Transaction> transactions;
+
+  @Setup
+  public void setUp() throws InvalidTransactionRecordException {
+    TransactionResolver resolver = new TransactionResolver();
+    transactions = new ArrayList<>(TRANSACTIONS);
+    for (String record : new BenchmarkData(cards, skew).records(TRANSACTIONS)) {
+      transactions.add(resolver.resolve(record));
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(TRANSACTIONS)
+  public int ruleScan() {
+    RuleEngine engine = new RuleEngine(RULES.subList(0, rules), TransactionBatch.AMOUNT_SCALE, null,
+        new CreditCardDictionary());
+    for (Transaction trans : transactions) {
+      engine.accept(trans);
+    }
+    return engine.getLiveCreditCards();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(TRANSACTIONS)
+  public int slidingWindowScan() {
+    SlidingWindowEngine engine = new SlidingWindowEngine(1000.00);
+    for (Transaction trans : transactions) {
+      engine.accept(trans);
+    }
+    return engine.getLiveCreditCards();
+  }
+}
@@ -0,0 +1,101 @@
+package com.tdinh.interview.atp.frauddetector.benchmark;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time from launching the application on a tiny transaction file to its first line of output, as the launcher
+ * script runs it, by class-data sharing mode:
+ *
+ * - off: no class-data sharing (-Xshare:off), every class is loaded and verified from its jar.
+ * - default: the archive of JDK classes shipped with the JVM, what a plain "java -jar" uses.
+ * - app: an application archive dumped by a training run (-XX:ArchiveClassesAtExit, JDK 13 or later), as
+ * built by the cds profile and used by fraud-detection.sh.
+ *
+ * Runs target/FraudDetectionApp.jar, built by the same package. The archive is dumped once into
+ * target/jmh-data.
+ *
+ * @author Tuan Dinh
+ *
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 30)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StartupBenchmark {
+
+  private static final File JAR = new File("target/FraudDetectionApp.jar");
+
+  @Param({"off", "default", "app"})
+  public String share;
+
+  @Param({"10", "1000"})
+  public int lines;
+
+  private List<String> command;
+  private Process process;
+
+  @Setup
+  public void setUp() throws IOException, InterruptedException {
+    if (!JAR.isFile()) {
+      throw new IllegalStateException(JAR + " not found, run the benchmarks from the project directory");
+    }
+    String filePath = BenchmarkData.file(lines).getPath();
+    String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+    command = new ArrayList<>(Arrays.asList(java));
+    if (share.equals("off")) {
+      command.add("-Xshare:off");
+    } else if (share.equals("app")) {
+      File archive = new File(BenchmarkData.DATA_DIR, "FraudDetectionApp.jsa");
+      archive.delete();
+      Process training = new ProcessBuilder(java, "-XX:ArchiveClassesAtExit=" + archive.getPath(), "-jar",
+          JAR.getPath(), "35.00", filePath).redirectErrorStream(true)
+          .redirectOutput(new File(BenchmarkData.DATA_DIR, "training.log")).start();
+      if (training.waitFor() != 0 || !archive.isFile()) {
+        throw new IllegalStateException("Cannot dump " + archive + ", expecting JDK 13 or later");
+      }
+      command.add("-XX:SharedArchiveFile=" + archive.getPath());
+    }
+    command.addAll(Arrays.asList("-jar", JAR.getPath(), "35.00", filePath));
+  }
+
+  @Benchmark
+  public String firstOutput() throws IOException {
+    process = new ProcessBuilder(command).redirectErrorStream(true).start();
+    BufferedReader reader =
+        new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.US_ASCII));
+    return reader.readLine();
+  }
+
+  @TearDown(Level.Invocation)
+  public void waitForExit() throws IOException, InterruptedException {
+    // Drains the rest of the output so the application is not blocked on a full pipe.
+    byte[] buffer = new byte[8192];
+    while (process.getInputStream().read(buffer) >= 0) {
+      continue;
+    }
+    process.waitFor();
+  }
+}
@@ -0,0 +1,80 @@
+package com.tdinh.interview.atp.frauddetector.benchmark;
+
+import com.tdinh.interview.atp.frauddetector.transaction.BinaryTransactionFileLoader;
+import com.tdinh.interview.atp.frauddetector.transaction.CreditCardDictionary;
+import com.tdinh.interview.atp.frauddetector.transaction.GzipTransactionFileLoader;
+import com.tdinh.interview.atp.frauddetector.transaction.MappedTransactionFileLoader;
+import com.tdinh.interview.atp.frauddetector.transaction.TransactionFileLoader;
+import com.tdinh.interview.atp.frauddetector.transaction.error.FileLoaderException;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Time to load a whole generated transaction file.
+ * 
+ * Files are generated once into target/jmh-data and reused. The 100M lines file is about 6 GB,
+ * restrict the parameters with -p lines=1000000 for a quick run. The binary transaction files converted
+ * from them (about 7 bytes per record) and their gzip compressed copies are kept next to them.
+ * 
+ * @author Tuan Dinh
+ *
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TransactionFileLoaderBenchmark {
+
+  @Param({"1000000", "10000000", "100000000"})
+  public int lines;
+
+  private String filePath;
+  private String binaryFilePath;
+  private String gzipFilePath;
+
+  @Setup
+  public void setUp() throws IOException, FileLoaderException {
+    filePath = BenchmarkData.file(lines).getPath();
+    binaryFilePath = BenchmarkData.binaryFile(lines).getPath();
+    gzipFilePath = BenchmarkData.gzipFile(lines).getPath();
+  }
+
+  @Benchmark
+  public void loadReader(Blackhole blackhole) throws FileLoaderException {
+    new TransactionFileLoader().load(filePath, blackhole::consume);
+  }
+
+  @Benchmark
+  public void loadMapped(Blackhole blackhole) throws FileLoaderException {
+    new MappedTransactionFileLoader().load(filePath, blackhole::consume);
+  }
+
+  @Benchmark
+  public void loadMappedBatches(Blackhole blackhole) throws FileLoaderException {
+    new MappedTransactionFileLoader().loadBatches(filePath, new CreditCardDictionary(), blackhole::consume);
+  }
+
+  @Benchmark
+  public void loadBinaryBatches(Blackhole blackhole) throws FileLoaderException {
+    new BinaryTransactionFileLoader().loadBatches(binaryFilePath, new CreditCardDictionary(), blackhole::consume);
+  }
+
+  @Benchmark
+  public void loadGzipBatches(Blackhole blackhole) throws FileLoaderException {
+    new GzipTransactionFileLoader().loadBatches(gzipFilePath, new CreditCardDictionary(), blackhole::consume);
+  }
+}
@@ -0,0 +1,95 @@
+package com.tdinh.interview.atp.frauddetector.benchmark;
+
+import com.tdinh.interview.atp.frauddetector.transaction.ByteTransactionParser;
+import com.tdinh.interview.atp.frauddetector.transaction.Transaction;
+import com.tdinh.interview.atp.frauddetector.transaction.TransactionResolver;
+import com.tdinh.interview.atp.frauddetector.transaction.error.InvalidTransactionRecordException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Per record cost of resolving a transaction text record, against the formatter based baseline.
+ * 
+ * @author Tuan Dinh
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class TransactionResolverBenchmark {
+
+  private static final int RECORDS = 1024;
+
+  private TransactionResolver resolver = new TransactionResolver();
+  private DateTimeFormatter formatter = DateTimeFormatter.ofPattern(Transaction.DATE_TIME_FORMATTER);
+  private ByteTransactionParser parser = new ByteTransactionParser(StandardCharsets.US_ASCII);
+  private String[] records;
+  private ByteBuffer[] recordBytes;
+  private int index;
+
+  @Setup
+  public void setUp() {
+    List<String> generated = new BenchmarkData(10_000, 1.0).records(RECORDS);
+    records = generated.toArray(new String[RECORDS]);
+    recordBytes = new ByteBuffer[RECORDS];
+    for (int i = 0; i < RECORDS; i++) {
+      recordBytes[i] = ByteBuffer.wrap(records[i].getBytes(StandardCharsets.US_ASCII));
+    }
+  }
+
+  @Benchmark
+  public Transaction resolve() throws InvalidTransactionRecordException {
+    index = (index + 1) & (RECORDS - 1);
+    return resolver.resolve(records[index]);
+  }
+
+  /**
+   * Baseline: the split, {@link DateTimeFormatter} and {@link Double#parseDouble(String)} resolution that
+   * the resolver falls back to for records off its fast path.
+   */
+  @Benchmark
+  public Transaction resolveWithFormatter() {
+    index = (index + 1) & (RECORDS - 1);
+    String[] fields = records[index].split(",");
+    return new Transaction.Builder()
+        .creditCardId(fields[0].trim())
+        .transDateTime(LocalDateTime.parse(fields[1].trim(), formatter))
+        .amount(Double.parseDouble(fields[2].trim()))
+        .build();
+  }
+
+  /**
+   * Resolve and read the primitive date time and amount, as the scan does.
+   */
+  @Benchmark
+  public long resolvePrimitives() throws InvalidTransactionRecordException {
+    index = (index + 1) & (RECORDS - 1);
+    Transaction trans = resolver.resolve(records[index]);
+    return trans.getTransEpochSecond() + trans.getAmountInMinorUnits();
+  }
+
+  @Benchmark
+  public void parseBytes(Blackhole blackhole) {
+    index = (index + 1) & (RECORDS - 1);
+    ByteBuffer buffer = recordBytes[index];
+    parser.parse(buffer, 0, buffer.limit(), blackhole::consume);
+  }
+}
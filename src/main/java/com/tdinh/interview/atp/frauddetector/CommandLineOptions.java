@@ -0,0 +1,447 @@
+package com.tdinh.interview.atp.frauddetector;
+
+import com.tdinh.interview.atp.frauddetector.report.ReportFormat;
+import com.tdinh.interview.atp.frauddetector.report.ReportSink;
+import com.tdinh.interview.atp.frauddetector.rule.WindowRule;
+import com.tdinh.interview.atp.frauddetector.transaction.Amounts;
+import com.tdinh.interview.atp.frauddetector.transaction.TransactionBatch;
+import java.math.BigDecimal;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Command line options of the {@link FraudDetectionApp}.
+ * 
+ * Options start with "--" and may appear anywhere in the arguments. All other arguments are
+ * positional arguments, kept in order.
+ * 
+ * Supported options:
+ * - --stream: print each fraudulent credit card as soon as it is detected.
+ * - --mmap: load the transaction file with the memory-mapped loader.
+ * - --convert=FILE: convert the transaction file to a binary transaction file instead of scanning it. Binary
+ * transaction files are recognized and scanned without the need for an option.
+ * - --threads=N: load and scan the transaction file on N threads.
+ * - --stats: print scan statistics (e.g. peak retained window entries) to standard error.
+ * - --allowed-lateness=SECONDS: scan in event time, accepting transactions out of order by up to SECONDS.
+ * - --resume=FILE: resume from the window state saved in a snapshot file.
+ * - --checkpoint=FILE: save the window state to a snapshot file at the end of the scan (or service).
+ * - --serve=[HOST:]PORT: run as a service accepting transaction records over TCP, on the loopback
+ * address unless a host is given.
+ * - --batch-verdicts: in service mode, answer per batch of records rather than per record.
+ * - --amount-scale=N: sum amounts in minor units of N decimals, 2 (cents) by default.
+ * - --rule=NAME:MEASURE:WINDOW:THRESHOLD[:TIER]: scan against this rule (see {@link WindowRule}) instead of
+ * the amount limit. Repeat to scan against several rules in one pass.
+ * - --sweep=LIMIT,LIMIT,...|FROM:TO:STEP: print the number of fraudulent credit cards of each of these
+ * limits, scanning the transaction file once, instead of scanning against a single limit.
+ * - --sweep-cards: with --sweep, also print the fraudulent credit cards of each limit.
+ * - --card-tiers=FILE: tiers of the credit cards, for the rules restricted to a tier.
+ * - --bucket=DURATION: merge the transactions of the rule windows by time bucket (e.g. 1m, 5m), bounding
+ * memory per credit card at the cost of up to a bucket of error at the window edge.
+ * - --metrics[=SECONDS]: print a metrics line (records/s, invalid records, scan latency, window size)
+ * to standard error every SECONDS, 10 by default.
+ * - --metrics-dump=FILE: write all metrics as JSON to a file at the end of the scan (or service).
+ * - --format=text|csv|json: format of the fraudulent credit cards, sweep counts and invalid record warnings, text
+ * by default.
+ * - --max-warnings=N: report the first N invalid records one by one, and summarize them all by reason at the end
+ * if there are more. Every invalid record is reported by default.
+ * - --follow: keep following the transaction file as it grows, and print each fraudulent credit card as soon
+ * as it is detected, until the process is stopped. With --checkpoint, the position in the file is saved in
+ * the snapshot along with the windows, periodically and on stop, and resumed from with --resume.
+ * - --checkpoint-interval=SECONDS: with --follow and --checkpoint, seconds between two checkpoints, 60 by
+ * default.
+ * 
+ * @author Tuan Dinh
+ *
+ */
+class CommandLineOptions {
+
+  static final long DEFAULT_METRICS_INTERVAL_SECONDS = 10;
+  static final long DEFAULT_CHECKPOINT_INTERVAL_SECONDS = 60;
+  static final int MAX_SWEEP_LIMITS = 100_000;
+
+  private boolean stream;
+  private boolean mmap;
+  private String convertPath;
+  private boolean stats;
+  private int threads = 1;
+  private long allowedLatenessSeconds = -1;
+  private String resumePath;
+  private String checkpointPath;
+  private InetSocketAddress serveAddress;
+  private boolean batchVerdicts;
+  private int amountScale = TransactionBatch.AMOUNT_SCALE;
+  private List<WindowRule> rules = new ArrayList<>();
+  private String cardTiersPath;
+  private List<BigDecimal> sweepLimits = new ArrayList<>();
+  private boolean sweepCards;
+  private long bucketSeconds = 1;
+  private long metricsIntervalSeconds;
+  private String metricsDumpPath;
+  private ReportFormat format = ReportFormat.TEXT;
+  private long maxWarnings = ReportSink.DEFAULT_MAX_WARNINGS;
+  private boolean follow;
+  private long checkpointIntervalSeconds;
+  private List<String> arguments = new ArrayList<>();
+
+  /**
+   * Parse the command line arguments.
+   * 
+   * @param args command line arguments.
+   * @return parsed options.
+   * @throws IllegalArgumentException if an option is unknown or invalid.
+   */
+  static CommandLineOptions parse(String[] args) {
+    CommandLineOptions options = new CommandLineOptions();
+    for (String arg : args) {
+      if (!arg.startsWith("--")) {
+        options.arguments.add(arg);
+      } else if (arg.equals("--stream")) {
+        options.stream = true;
+      } else if (arg.equals("--mmap")) {
+        options.mmap = true;
+      } else if (arg.startsWith("--convert=")) {
+        options.convertPath = arg.substring("--convert=".length());
+      } else if (arg.equals("--stats")) {
+        options.stats = true;
+      } else if (arg.startsWith("--threads=")) {
+        options.threads = parsePositiveInt(arg.substring("--threads=".length()), "thread count");
+      } else if (arg.startsWith("--allowed-lateness=")) {
+        options.allowedLatenessSeconds =
+            parseNonNegativeLong(arg.substring("--allowed-lateness=".length()), "allowed lateness");
+      } else if (arg.startsWith("--resume=")) {
+        options.resumePath = arg.substring("--resume=".length());
+      } else if (arg.startsWith("--checkpoint=")) {
+        options.checkpointPath = arg.substring("--checkpoint=".length());
+      } else if (arg.startsWith("--serve=")) {
+        options.serveAddress = parseAddress(arg.substring("--serve=".length()));
+      } else if (arg.equals("--batch-verdicts")) {
+        options.batchVerdicts = true;
+      } else if (arg.startsWith("--amount-scale=")) {
+        options.amountScale = parseAmountScale(arg.substring("--amount-scale=".length()));
+      } else if (arg.startsWith("--rule=")) {
+        options.rules.add(WindowRule.parse(arg.substring("--rule=".length())));
+      } else if (arg.startsWith("--sweep=")) {
+        options.sweepLimits = parseSweep(arg.substring("--sweep=".length()));
+      } else if (arg.equals("--sweep-cards")) {
+        options.sweepCards = true;
+      } else if (arg.startsWith("--card-tiers=")) {
+        options.cardTiersPath = arg.substring("--card-tiers=".length());
+      } else if (arg.startsWith("--bucket=")) {
+        options.bucketSeconds = parseBucket(arg.substring("--bucket=".length()));
+      } else if (arg.equals("--metrics")) {
+        options.metricsIntervalSeconds = DEFAULT_METRICS_INTERVAL_SECONDS;
+      } else if (arg.startsWith("--metrics=")) {
+        options.metricsIntervalSeconds =
+            parsePositiveInt(arg.substring("--metrics=".length()), "metrics interval");
+      } else if (arg.startsWith("--metrics-dump=")) {
+        options.metricsDumpPath = arg.substring("--metrics-dump=".length());
+      } else if (arg.startsWith("--format=")) {
+        options.format = ReportFormat.parse(arg.substring("--format=".length()));
+      } else if (arg.startsWith("--max-warnings=")) {
+        options.maxWarnings = parseNonNegativeLong(arg.substring("--max-warnings=".length()), "maximum warnings");
+      } else if (arg.equals("--follow")) {
+        options.follow = true;
+      } else if (arg.startsWith("--checkpoint-interval=")) {
+        options.checkpointIntervalSeconds =
+            parsePositiveInt(arg.substring("--checkpoint-interval=".length()), "checkpoint interval");
+      } else {
+        throw new IllegalArgumentException("Unknown option [" + arg + "]");
+      }
+    }
+    if (options.threads > 1 && options.arguments.size() > 2) {
+      // The limit and a single transaction file.
+      throw new IllegalArgumentException("Option --threads is not supported with several transaction files");
+    }
+    if (options.allowedLatenessSeconds >= 0 && options.threads > 1) {
+      throw new IllegalArgumentException("Option --allowed-lateness is not supported with --threads");
+    }
+    if ((options.resumePath != null || options.checkpointPath != null) && options.threads > 1) {
+      throw new IllegalArgumentException("Options --resume and --checkpoint are not supported with --threads");
+    }
+    if (options.convertPath != null && (options.threads > 1 || !options.rules.isEmpty()
+        || options.serveAddress != null)) {
+      throw new IllegalArgumentException("Option --convert is not supported with --threads, --rule or --serve");
+    }
+    if (!options.sweepLimits.isEmpty() && (!options.rules.isEmpty() || options.convertPath != null
+        || options.threads > 1 || options.allowedLatenessSeconds >= 0 || options.resumePath != null
+        || options.checkpointPath != null || options.serveAddress != null)) {
+      throw new IllegalArgumentException("Option --sweep is not supported with --rule, --convert, --threads, "
+          + "--allowed-lateness, --resume, --checkpoint or --serve");
+    }
+    if (options.format != ReportFormat.TEXT && options.serveAddress != null) {
+      throw new IllegalArgumentException("Option --format is not supported with --serve");
+    }
+    if (options.follow && (options.threads > 1 || !options.rules.isEmpty() || !options.sweepLimits.isEmpty()
+        || options.convertPath != null || options.serveAddress != null)) {
+      throw new IllegalArgumentException("Option --follow is not supported with --threads, --rule, --sweep, "
+          + "--convert or --serve");
+    }
+    if (options.checkpointIntervalSeconds > 0 && (!options.follow || options.checkpointPath == null)) {
+      throw new IllegalArgumentException("Option --checkpoint-interval requires --follow and --checkpoint");
+    }
+    if (options.sweepCards && options.sweepLimits.isEmpty()) {
+      throw new IllegalArgumentException("Option --sweep-cards requires --sweep");
+    }
+    if (!options.rules.isEmpty()) {
+      checkRules(options);
+    } else if (options.cardTiersPath != null || options.bucketSeconds > 1) {
+      throw new IllegalArgumentException("Options --card-tiers and --bucket require --rule");
+    }
+    return options;
+  }
+
+  private static void checkRules(CommandLineOptions options) {
+    if (options.threads > 1 || options.allowedLatenessSeconds >= 0 || options.resumePath != null
+        || options.checkpointPath != null || options.serveAddress != null) {
+      throw new IllegalArgumentException("Option --rule is not supported with --threads, --allowed-lateness, "
+          + "--resume, --checkpoint or --serve");
+    }
+    Set<String> names = new HashSet<>();
+    for (WindowRule rule : options.rules) {
+      if (!names.add(rule.getName())) {
+        throw new IllegalArgumentException("Duplicate rule name [" + rule.getName() + "]");
+      }
+      if (rule.getTier() != null && options.cardTiersPath == null) {
+        throw new IllegalArgumentException("Rule [" + rule.getName() + "] applies to a tier, expecting --card-tiers");
+      }
+      if (rule.getWindowSeconds() < options.bucketSeconds) {
+        throw new IllegalArgumentException("Bucket is longer than the window of rule [" + rule.getName() + "]");
+      }
+    }
+  }
+
+  private static int parsePositiveInt(String value, String name) {
+    try {
+      int number = Integer.parseInt(value);
+      if (number > 0) {
+        return number;
+      }
+    } catch (NumberFormatException ex) {
+      // Reported below.
+    }
+    throw new IllegalArgumentException("Invalid " + name + " [" + value + "], expecting a positive integer");
+  }
+
+  private static int parseAmountScale(String value) {
+    try {
+      int scale = Integer.parseInt(value);
+      if (scale >= 0 && scale <= Amounts.MAX_SCALE) {
+        return scale;
+      }
+    } catch (NumberFormatException ex) {
+      // Reported below.
+    }
+    throw new IllegalArgumentException("Invalid amount scale [" + value + "], expecting 0 to " + Amounts.MAX_SCALE);
+  }
+
+  private static long parseBucket(String value) {
+    long seconds = WindowRule.parseDuration(value);
+    if (seconds <= 0) {
+      throw new IllegalArgumentException("Invalid bucket [" + value + "], expecting a duration such as 1m or 5m");
+    }
+    return seconds;
+  }
+
+  /**
+   * @return the distinct limits of a comma separated list or a FROM:TO:STEP range, ascending.
+   */
+  private static List<BigDecimal> parseSweep(String value) {
+    Set<BigDecimal> limits = new TreeSet<>();
+    String[] range = value.split(":", -1);
+    try {
+      if (range.length == 3) {
+        BigDecimal from = new BigDecimal(range[0]);
+        BigDecimal to = new BigDecimal(range[1]);
+        BigDecimal step = new BigDecimal(range[2]);
+        if (step.signum() > 0 && to.compareTo(from) >= 0
+            && to.subtract(from).divideToIntegralValue(step).compareTo(BigDecimal.valueOf(MAX_SWEEP_LIMITS)) < 0) {
+          for (BigDecimal limit = from; limit.compareTo(to) <= 0; limit = limit.add(step)) {
+            limits.add(limit);
+          }
+        }
+      } else if (range.length == 1) {
+        for (String limit : value.split(",", -1)) {
+          limits.add(new BigDecimal(limit.trim()));
+        }
+      }
+    } catch (NumberFormatException ex) {
+      // Reported below.
+      limits.clear();
+    }
+    if (limits.isEmpty() || limits.size() > MAX_SWEEP_LIMITS) {
+      throw new IllegalArgumentException("Invalid sweep [" + value + "], expecting LIMIT,LIMIT,... or FROM:TO:STEP"
+          + " of at most " + MAX_SWEEP_LIMITS + " limits");
+    }
+    return new ArrayList<>(limits);
+  }
+
+  private static long parseNonNegativeLong(String value, String name) {
+    try {
+      long number = Long.parseLong(value);
+      if (number >= 0) {
+        return number;
+      }
+    } catch (NumberFormatException ex) {
+      // Reported below.
+    }
+    throw new IllegalArgumentException("Invalid " + name + " [" + value + "], expecting a non-negative integer");
+  }
+
+  private static InetSocketAddress parseAddress(String value) {
+    int colon = value.lastIndexOf(':');
+    String host = colon < 0 ? InetAddress.getLoopbackAddress().getHostAddress() : value.substring(0, colon);
+    String port = value.substring(colon + 1);
+    try {
+      int number = Integer.parseInt(port);
+      if (number >= 0 && number <= 65535) {
+        return new InetSocketAddress(host, number);
+      }
+    } catch (NumberFormatException ex) {
+      // Reported below.
+    }
+    throw new IllegalArgumentException("Invalid server address [" + value + "], expecting [HOST:]PORT");
+  }
+
+  boolean isStream() {
+    return stream;
+  }
+
+  boolean isMmap() {
+    return mmap;
+  }
+
+  /**
+   * @return binary transaction file to convert the transaction file to, or null to scan it.
+   */
+  String getConvertPath() {
+    return convertPath;
+  }
+
+  boolean isStats() {
+    return stats;
+  }
+
+  int getThreads() {
+    return threads;
+  }
+
+  /**
+   * @return allowed lateness in seconds of the event-time scan, or -1 to scan in arrival order.
+   */
+  long getAllowedLatenessSeconds() {
+    return allowedLatenessSeconds;
+  }
+
+  /**
+   * @return snapshot file to resume from, or null.
+   */
+  String getResumePath() {
+    return resumePath;
+  }
+
+  /**
+   * @return snapshot file to save to, or null.
+   */
+  String getCheckpointPath() {
+    return checkpointPath;
+  }
+
+  /**
+   * @return address to serve on, or null if not in service mode.
+   */
+  InetSocketAddress getServeAddress() {
+    return serveAddress;
+  }
+
+  boolean isBatchVerdicts() {
+    return batchVerdicts;
+  }
+
+  int getAmountScale() {
+    return amountScale;
+  }
+
+  /**
+   * @return rules to scan against, or an empty list to scan against the amount limit.
+   */
+  List<WindowRule> getRules() {
+    return rules;
+  }
+
+  /**
+   * @return distinct limits to sweep, ascending, or an empty list to scan against a single limit.
+   */
+  List<BigDecimal> getSweepLimits() {
+    return sweepLimits;
+  }
+
+  boolean isSweepCards() {
+    return sweepCards;
+  }
+
+  /**
+   * @return credit card tiers file, or null.
+   */
+  String getCardTiersPath() {
+    return cardTiersPath;
+  }
+
+  /**
+   * @return length in seconds of the time buckets the rule windows merge transactions by, 1 for exact windows.
+   */
+  long getBucketSeconds() {
+    return bucketSeconds;
+  }
+
+  /**
+   * @return seconds between two metrics lines, or 0 for none.
+   */
+  long getMetricsIntervalSeconds() {
+    return metricsIntervalSeconds;
+  }
+
+  /**
+   * @return file to write the metrics to, or null.
+   */
+  String getMetricsDumpPath() {
+    return metricsDumpPath;
+  }
+
+  /**
+   * @return true if metrics are collected.
+   */
+  boolean isMetrics() {
+    return metricsIntervalSeconds > 0 || metricsDumpPath != null;
+  }
+
+  ReportFormat getFormat() {
+    return format;
+  }
+
+  long getMaxWarnings() {
+    return maxWarnings;
+  }
+
+  /**
+   * @return true to follow the transaction file as it grows rather than scan it once.
+   */
+  boolean isFollow() {
+    return follow;
+  }
+
+  /**
+   * @return seconds between two checkpoints while following.
+   */
+  long getCheckpointIntervalSeconds() {
+    return checkpointIntervalSeconds > 0 ? checkpointIntervalSeconds : DEFAULT_CHECKPOINT_INTERVAL_SECONDS;
+  }
+
+  List<String> getArguments() {
+    return arguments;
+  }
+}
@@ -0,0 +1,403 @@
+package com.tdinh.interview.atp.frauddetector;
+
+import com.tdinh.interview.atp.frauddetector.metrics.Metrics;
+import com.tdinh.interview.atp.frauddetector.metrics.ScanTimer;
+import com.tdinh.interview.atp.frauddetector.transaction.Amounts;
+import com.tdinh.interview.atp.frauddetector.transaction.CreditCardDictionary;
+import com.tdinh.interview.atp.frauddetector.transaction.Transaction;
+import com.tdinh.interview.atp.frauddetector.transaction.TransactionBatch;
+import com.tdinh.interview.atp.frauddetector.window.SlidingWindowEngine;
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+
+/**
+ * A fraud detector that many threads can submit transactions to at once, e.g. the handlers of a service.
+ *
+ * Credit cards are sharded by the hash of their id, as the partitions of the {@link ParallelFraudDetector}.
+ * Each shard has a single thread owning its own {@link SlidingWindowEngine}, fed through a bounded queue,
+ * so the engines need no lock, and producers only meet on the queue of a shard. The transactions of a credit
+ * card are scanned in the order they are submitted, so the result is the same as the sequential
+ * {@link FraudDetector} as long as each credit card is submitted in time order, e.g. by a single producer.
+ * A producer blocks while the queue of the shard is full, so a slow shard, e.g. the shard of a hot credit
+ * card, slows its producers down instead of growing memory.
+ *
+ * Transactions of different credit cards may interleave out of time order across producers, so idle credit
+ * cards are never dropped by default. Given the maximum skew between producers, an idle credit card is dropped
+ * once it has been idle for longer than the window plus that skew, see
+ * {@link SlidingWindowEngine#setIdleTimeoutSeconds(long)}.
+ *
+ * Submissions and queries hold a shared lock while they check that the detector is open and queue their work,
+ * and closing holds it exclusively while it marks the detector closed, so nothing is ever queued behind the
+ * end of a shard: every submission either fails or is scanned before the shard threads stop.
+ *
+ * @author Tuan Dinh
+ *
+ */
+public class ConcurrentFraudDetector implements Closeable {
+
+  static final int DEFAULT_QUEUE_CAPACITY = 8192;
+
+  private static final int DRAIN_SIZE = 256;
+  private static final Object CLOSE = new Object();
+
+  private final Shard[] shards;
+  private final Consumer<String> fraudListener;
+  private final Metrics metrics;
+  private final Object listenerLock = new Object();
+  // Shared by submissions and queries queueing their work, exclusive to close.
+  private final ReadWriteLock closeLock = new ReentrantReadWriteLock();
+  private volatile boolean closed;
+  private volatile RuntimeException failure;
+
+  private ConcurrentFraudDetector(Builder builder) {
+    this.fraudListener = builder.fraudListener;
+    this.metrics = builder.metrics;
+    this.shards = new Shard[builder.shards];
+    for (int i = 0; i < shards.length; i++) {
+      SlidingWindowEngine engine =
+          new SlidingWindowEngine(builder.limit, builder.amountScale, new CreditCardDictionary());
+      engine.setIdleTimeoutSeconds(idleTimeoutSeconds(builder.maxSkewSeconds));
+      shards[i] = new Shard(engine, builder.queueCapacity);
+    }
+    if (metrics != null) {
+      metrics.setGauges(() -> sum(SlidingWindowEngine::getLiveCreditCards),
+          () -> sum(SlidingWindowEngine::getRetainedEntries));
+    }
+    for (int i = 0; i < shards.length; i++) {
+      shards[i].thread = new Thread(shards[i], "fraud-shard-" + i);
+      shards[i].thread.setDaemon(true);
+      shards[i].thread.start();
+    }
+  }
+
+  private static long idleTimeoutSeconds(long maxSkewSeconds) {
+    long timeout = SlidingWindowEngine.WINDOW_SECONDS + maxSkewSeconds;
+    return timeout < maxSkewSeconds ? Long.MAX_VALUE : timeout;
+  }
+
+  /**
+   * Submit a transaction to the shard of its credit card, waiting while the shard is full.
+   *
+   * @param trans transaction, after the transactions of the same credit card already submitted.
+   * @throws InterruptedException if interrupted while waiting.
+   * @throws IllegalStateException if the detector is closed or a shard failed.
+   */
+  public void submit(Transaction trans) throws InterruptedException {
+    closeLock.readLock().lockInterruptibly();
+    try {
+      checkOpen();
+      shards[shardOf(trans.getCreditCardId())].queue.put(trans);
+    } finally {
+      closeLock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Submit transactions, in order, with a single handoff per shard rather than per transaction.
+   *
+   * @see #submit(Transaction)
+   */
+  public void submitAll(Collection<Transaction> transactions) throws InterruptedException {
+    List<List<Transaction>> partitions = new ArrayList<>(Collections.nCopies(shards.length, null));
+    for (Transaction trans : transactions) {
+      int shard = shardOf(trans.getCreditCardId());
+      if (partitions.get(shard) == null) {
+        partitions.set(shard, new ArrayList<>());
+      }
+      partitions.get(shard).add(trans);
+    }
+    closeLock.readLock().lockInterruptibly();
+    try {
+      checkOpen();
+      for (int i = 0; i < shards.length; i++) {
+        if (partitions.get(i) != null) {
+          shards[i].queue.put(partitions.get(i));
+        }
+      }
+    } finally {
+      closeLock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Return the ids of the credit cards where fraud has been detected, once every transaction submitted
+   * before by the calling thread has been scanned.
+   *
+   * @throws InterruptedException if interrupted while waiting for the shards.
+   * @throws IllegalStateException if a shard failed.
+   */
+  public Set<String> getFraudulentCreditCards() throws InterruptedException {
+    Set<String> fraudulentCreditCards = new HashSet<>();
+    List<CompletableFuture<Set<String>>> results = new ArrayList<>(shards.length);
+    closeLock.readLock().lockInterruptibly();
+    try {
+      if (!closed) {
+        checkOpen();
+        for (Shard shard : shards) {
+          CompletableFuture<Set<String>> result = new CompletableFuture<>();
+          // Queued behind the transactions already submitted, and run on the shard thread before it stops.
+          shard.queue.put((Runnable) () -> result.complete(new HashSet<>(shard.engine.getFraudulentCreditCards())));
+          results.add(result);
+        }
+      }
+    } finally {
+      closeLock.readLock().unlock();
+    }
+    if (results.isEmpty()) {
+      // Once the shard threads are joined, their engines are safe to read.
+      for (Shard shard : shards) {
+        shard.thread.join();
+      }
+      checkFailure();
+      for (Shard shard : shards) {
+        fraudulentCreditCards.addAll(shard.engine.getFraudulentCreditCards());
+      }
+      return fraudulentCreditCards;
+    }
+    try {
+      for (CompletableFuture<Set<String>> result : results) {
+        fraudulentCreditCards.addAll(result.get());
+      }
+    } catch (ExecutionException ex) {
+      throw new IllegalStateException(ex.getCause().getMessage(), ex.getCause());
+    }
+    checkFailure();
+    return fraudulentCreditCards;
+  }
+
+  /**
+   * @return the sum of the peak number of transactions retained by each shard. This is an upper bound of the
+   *         overall peak as the shards peak at different times. Exact once the detector is closed.
+   */
+  public long getPeakRetainedEntries() {
+    return sum(SlidingWindowEngine::getPeakRetainedEntries);
+  }
+
+  /**
+   * Scan the transactions already submitted, then stop the shard threads. Closing twice has no effect.
+   */
+  @Override
+  public void close() {
+    // Waits for the submissions in progress to be queued, as the shards keep scanning.
+    closeLock.writeLock().lock();
+    try {
+      if (closed) {
+        return;
+      }
+      closed = true;
+    } finally {
+      closeLock.writeLock().unlock();
+    }
+    boolean interrupted = false;
+    for (Shard shard : shards) {
+      while (true) {
+        try {
+          shard.queue.put(CLOSE);
+          break;
+        } catch (InterruptedException ex) {
+          interrupted = true;
+        }
+      }
+    }
+    for (Shard shard : shards) {
+      while (true) {
+        try {
+          shard.thread.join();
+          break;
+        } catch (InterruptedException ex) {
+          interrupted = true;
+        }
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void checkOpen() {
+    if (closed) {
+      throw new IllegalStateException("Fraud detector is closed");
+    }
+    checkFailure();
+  }
+
+  private void checkFailure() {
+    RuntimeException failure = this.failure;
+    if (failure != null) {
+      throw new IllegalStateException(failure.getMessage(), failure);
+    }
+  }
+
+  private int shardOf(String creditCardId) {
+    return (creditCardId.hashCode() & Integer.MAX_VALUE) % shards.length;
+  }
+
+  /**
+   * Sum a gauge over the shard engines. Engines are read while scanning, so this is approximate.
+   */
+  private long sum(ToLongFunction<SlidingWindowEngine> gauge) {
+    long total = 0;
+    for (Shard shard : shards) {
+      total += gauge.applyAsLong(shard.engine);
+    }
+    return total;
+  }
+
+  /**
+   * A shard thread: scans the transactions of its queue in order, and runs the queries queued between them.
+   */
+  private final class Shard implements Runnable {
+
+    private final SlidingWindowEngine engine;
+    private final BlockingQueue<Object> queue;
+    private Thread thread;
+
+    Shard(SlidingWindowEngine engine, int queueCapacity) {
+      this.engine = engine;
+      this.queue = new ArrayBlockingQueue<>(queueCapacity);
+    }
+
+    @Override
+    public void run() {
+      ScanTimer timer = new ScanTimer(metrics);
+      List<Object> drained = new ArrayList<>(DRAIN_SIZE);
+      try {
+        while (true) {
+          drained.add(queue.take());
+          queue.drainTo(drained, DRAIN_SIZE - 1);
+          for (Object element : drained) {
+            if (element == CLOSE) {
+              return;
+            } else if (element instanceof Transaction) {
+              scan((Transaction) element, timer);
+            } else if (element instanceof Runnable) {
+              ((Runnable) element).run();
+            } else {
+              @SuppressWarnings("unchecked")
+              List<Transaction> transactions = (List<Transaction>) element;
+              for (Transaction trans : transactions) {
+                scan(trans, timer);
+              }
+            }
+          }
+          drained.clear();
+        }
+      } catch (InterruptedException ex) {
+        // Shard threads are daemons only stopped by close.
+      }
+    }
+
+    private void scan(Transaction trans, ScanTimer timer) {
+      if (failure != null) {
+        // Keep draining so producers do not block, they fail on their next submit.
+        return;
+      }
+      try {
+        long start = timer.start();
+        boolean fraudulent = engine.accept(trans);
+        timer.stop(start);
+        if (fraudulent) {
+          synchronized (listenerLock) {
+            fraudListener.accept(trans.getCreditCardId());
+          }
+        }
+      } catch (RuntimeException ex) {
+        failure = ex;
+      }
+    }
+  }
+
+  public static class Builder {
+    private double limit;
+    private int shards = Runtime.getRuntime().availableProcessors();
+    private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+    private int amountScale = TransactionBatch.AMOUNT_SCALE;
+    private long maxSkewSeconds = Long.MAX_VALUE;
+    private Metrics metrics;
+    private Consumer<String> fraudListener = creditCardId -> { };
+
+    public Builder limit(double limit) {
+      this.limit = limit;
+      return this;
+    }
+
+    /**
+     * @param shards number of shards, each scanned by a thread of its own. The number of processors by default.
+     */
+    public Builder shards(int shards) {
+      if (shards < 1) {
+        throw new IllegalArgumentException("Invalid shard count [" + shards + "]");
+      }
+      this.shards = shards;
+      return this;
+    }
+
+    /**
+     * @param queueCapacity number of submissions a shard holds before its producers wait.
+     */
+    public Builder queueCapacity(int queueCapacity) {
+      if (queueCapacity < 1) {
+        throw new IllegalArgumentException("Invalid queue capacity [" + queueCapacity + "]");
+      }
+      this.queueCapacity = queueCapacity;
+      return this;
+    }
+
+    /**
+     * @see FraudDetector#setAmountScale(int)
+     */
+    public Builder amountScale(int amountScale) {
+      this.amountScale = Amounts.checkScale(amountScale);
+      return this;
+    }
+
+    /**
+     * @param maxSkewSeconds how far behind the latest transaction submitted a transaction may be submitted, 0 for
+     *        transactions submitted in time order. Long.MAX_VALUE by default, which never drops idle credit cards.
+     */
+    public Builder maxSkewSeconds(long maxSkewSeconds) {
+      if (maxSkewSeconds < 0) {
+        throw new IllegalArgumentException("Invalid skew [" + maxSkewSeconds + "]");
+      }
+      this.maxSkewSeconds = maxSkewSeconds;
+      return this;
+    }
+
+    /**
+     * @param metrics metrics to report scan latency, live credit cards and window entries in, or null.
+     */
+    public Builder metrics(Metrics metrics) {
+      this.metrics = metrics;
+      return this;
+    }
+
+    /**
+     * @param fraudListener notified with each fraudulent credit card id once, when detected.
+     *        Calls are serialized but may come from different shard threads.
+     */
+    public Builder fraudListener(Consumer<String> fraudListener) {
+      this.fraudListener = fraudListener;
+      return this;
+    }
+
+    /**
+     * @return a detector with its shard threads started, to close once done.
+     */
+    public ConcurrentFraudDetector build() {
+      return new ConcurrentFraudDetector(this);
+    }
+  }
+}
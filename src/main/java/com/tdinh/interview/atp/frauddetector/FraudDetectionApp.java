@@ -1,68 +1,542 @@
 package com.tdinh.interview.atp.frauddetector;
 
+import com.tdinh.interview.atp.frauddetector.metrics.Metrics;
+import com.tdinh.interview.atp.frauddetector.metrics.MetricsReporter;
+import com.tdinh.interview.atp.frauddetector.report.ReportSink;
+import com.tdinh.interview.atp.frauddetector.rule.CreditCardTiers;
+import com.tdinh.interview.atp.frauddetector.rule.RuleEngine;
+import com.tdinh.interview.atp.frauddetector.rule.WindowRule;
+import com.tdinh.interview.atp.frauddetector.server.FraudDetectionServer;
+import com.tdinh.interview.atp.frauddetector.transaction.BinaryTransactionFileLoader;
+import com.tdinh.interview.atp.frauddetector.transaction.BinaryTransactionWriter;
+import com.tdinh.interview.atp.frauddetector.transaction.CreditCardDictionary;
+import com.tdinh.interview.atp.frauddetector.transaction.FollowingTransactionSource;
+import com.tdinh.interview.atp.frauddetector.transaction.GzipTransactionFileLoader;
+import com.tdinh.interview.atp.frauddetector.transaction.MappedTransactionFileLoader;
+import com.tdinh.interview.atp.frauddetector.transaction.MergedTransactionSource;
 import com.tdinh.interview.atp.frauddetector.transaction.Transaction;
+import com.tdinh.interview.atp.frauddetector.transaction.TransactionBatchSource;
 import com.tdinh.interview.atp.frauddetector.transaction.TransactionFileLoader;
+import com.tdinh.interview.atp.frauddetector.transaction.TransactionSource;
 import com.tdinh.interview.atp.frauddetector.transaction.error.FileLoaderException;
+import com.tdinh.interview.atp.frauddetector.window.LimitSweep;
+import com.tdinh.interview.atp.frauddetector.window.SlidingWindowEngine;
+import com.tdinh.interview.atp.frauddetector.window.WindowSnapshot;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
 /**
  * A credit card fraud detector application.
  * <p>
- * The FraudDetectionApp loads all credit card transactions from a text file and then performs a fraud scan on those
- * transactions against an amount limit.
+ * The FraudDetectionApp reads credit card transactions from a text file and performs a fraud scan on those
+ * transactions against an amount limit as they are read.
  * <p>
  * The FraudDetectionApp takes two inputs: first is the amount limit and the second is the path to a text file (.csv)
  * that contains transactions records in a predefined format. It then prints out to standard output the list of fraudulent
  * credit cards if there are any. It also provides some basic forms of error handling if the transaction file does not
  * exist or invalid price threshold.
  * <p>
- * The FraudDetectionApp uses {@link TransactionFileLoader} to loads the {@link Transaction} from the text file
- * and then uses {@link FraudDetector} to perform the fraud scan.
+ * The FraudDetectionApp uses {@link TransactionFileLoader} to stream the {@link Transaction} from the text file
+ * into the {@link FraudDetector} which performs the fraud scan as the transactions are read.
+ * <p>
+ * With --rule, the transactions are scanned against several window rules at once by a {@link RuleEngine}
+ * instead, and each fraudulent credit card is printed with the rule that detected it.
+ * <p>
+ * With --sweep, the transactions are scanned against many limits at once by a {@link LimitSweep}, and the
+ * number of fraudulent credit cards of each limit is printed.
+ * <p>
+ * The transaction file may also be a binary transaction file, converted once with --convert and then
+ * scanned by a {@link BinaryTransactionFileLoader} without parsing text, or a gzip compressed text file,
+ * decompressed as it is scanned by a {@link GzipTransactionFileLoader}.
+ * <p>
+ * Several transaction files, directories or globs may be given, e.g. one file per hour: they are read
+ * concurrently and merged in time order by a {@link MergedTransactionSource}.
+ * <p>
+ * Results and invalid record warnings are written by a {@link ReportSink} on a thread of its own, as text, CSV
+ * or JSON lines (--format), the warnings beyond --max-warnings being summarized by reason.
+ * <p>
+ * With --follow, the transaction file is followed as it grows by a {@link FollowingTransactionSource}, keeping
+ * the window state live and printing each fraudulent credit card as soon as it is detected, until the process
+ * is stopped.
+ * <p>
+ * With --serve, the FraudDetectionApp instead runs a {@link FraudDetectionServer} that keeps the window state
+ * resident and answers transaction records sent over TCP.
  * 
  * @author Tuan Dinh
  */
 public class FraudDetectionApp {
 
   private TransactionFileLoader transFileLoader;
+  private TransactionFileLoader mappedTransFileLoader;
+  private TransactionFileLoader binaryTransFileLoader;
+  private TransactionFileLoader gzipTransFileLoader;
   private FraudDetector fraudDetector;
 
   public FraudDetectionApp() {
     this.transFileLoader = new TransactionFileLoader();
+    this.mappedTransFileLoader = new MappedTransactionFileLoader();
+    this.binaryTransFileLoader = new BinaryTransactionFileLoader();
+    this.gzipTransFileLoader = new GzipTransactionFileLoader();
     this.fraudDetector = new FraudDetector();
   }
 
   public void run(String[] args) {
-    if (args.length != 2) {
-      System.err.println(
-          "Invalid inputs. Expecting exactly 2 arguments: (i) Price threshold and (ii) path transaction record file.\nAborting...");
+    CommandLineOptions options;
+    try {
+      options = CommandLineOptions.parse(args);
+    } catch (IllegalArgumentException ex) {
+      System.err.println(ex.getMessage() + ".\nAborting...");
+      return;
+    }
+    List<String> arguments = options.getArguments();
+    if (options.getServeAddress() != null) {
+      serve(options);
+      return;
+    }
+    if (options.getConvertPath() != null) {
+      convert(options);
+      return;
+    }
+    if (!options.getRules().isEmpty()) {
+      scanRules(options);
+      return;
+    }
+    if (!options.getSweepLimits().isEmpty()) {
+      sweep(options);
+      return;
+    }
+    if (options.isFollow()) {
+      follow(options);
+      return;
+    }
+    if (arguments.size() < 2) {
+      System.err.println("Invalid inputs. Expecting at least 2 arguments: (i) Price threshold and (ii) path(s) "
+          + "transaction record file, directory or glob.\nAborting...");
       return;
     }
 
     double limit = 0.0;
     try {
-      limit = Double.parseDouble(args[0]);
+      limit = Double.parseDouble(arguments.get(0));
     } catch (NumberFormatException ex) {
       System.err.println(
-          "Invalid limit [" + args[0] + "], expecting numeric value.\nAborting...");
+          "Invalid limit [" + arguments.get(0) + "], expecting numeric value.\nAborting...");
+      return;
+    }
+    fraudDetector.setAmountScale(options.getAmountScale());
+    long peakRetainedEntries;
+    try (Session session = openSession(options)) {
+      ReportSink sink = session.sink;
+      Metrics metrics = session.metrics;
+      if (options.getResumePath() != null) {
+        fraudDetector.restore(options.getResumePath(), limit);
+      }
+      Consumer<String> fraudListener = options.isStream() ? sink::fraud : creditCardId -> { };
+      Set<String> fraudCreditCards;
+      List<String> filePaths = MergedTransactionSource.expand(arguments.subList(1, arguments.size()));
+      TransactionFileLoader batchLoader = filePaths.size() == 1 ? batchLoaderOf(filePaths.get(0), options) : null;
+      if (options.getThreads() > 1 && filePaths.size() > 1) {
+        // A directory or a glob expanded to several files, an input error rather than a file error.
+        System.err.println("Option --threads is not supported with several transaction files.\nAborting...");
+        return;
+      } else if (options.getThreads() > 1
+          && (batchLoader == binaryTransFileLoader || batchLoader == gzipTransFileLoader)) {
+        System.err.println("Option --threads is not supported with binary or gzip transaction files.\nAborting...");
+        return;
+      } else if (options.getThreads() > 1) {
+        ParallelFraudDetector parallelFraudDetector = new ParallelFraudDetector(options.getThreads());
+        parallelFraudDetector.setMetrics(metrics);
+        parallelFraudDetector.setAmountScale(options.getAmountScale());
+        parallelFraudDetector.setInvalidRecordListener(sink);
+        fraudCreditCards = parallelFraudDetector.fraudScan(filePaths.get(0), limit, fraudListener);
+        peakRetainedEntries = parallelFraudDetector.getPeakRetainedEntries();
+      } else if (batchLoader != null) {
+        TransactionBatchSource source = batchLoader.batchSource(filePaths.get(0));
+        fraudCreditCards = options.getAllowedLatenessSeconds() >= 0
+            ? fraudDetector.fraudScanBatches(source, limit, options.getAllowedLatenessSeconds(), fraudListener)
+            : fraudDetector.fraudScanBatches(source, limit, fraudListener);
+        peakRetainedEntries = fraudDetector.getPeakRetainedEntries();
+      } else {
+        TransactionSource source = sourceOf(filePaths, options);
+        fraudCreditCards = options.getAllowedLatenessSeconds() >= 0
+            ? fraudDetector.fraudScan(source, limit, options.getAllowedLatenessSeconds(), fraudListener)
+            : fraudDetector.fraudScan(source, limit, fraudListener);
+        peakRetainedEntries = fraudDetector.getPeakRetainedEntries();
+      }
+
+      if (options.getCheckpointPath() != null) {
+        fraudDetector.checkpoint(options.getCheckpointPath());
+      }
+      dumpMetrics(options, metrics);
+
+      if (fraudCreditCards.isEmpty()) {
+        sink.message("No fraud detected!");
+      } else if (options.isStream()) {
+        sink.message("Detected " + fraudCreditCards.size() + " fraudulent credit card(s).");
+      } else {
+        sink.message(
+            "There are " + fraudCreditCards.size() + " fraudulent credit card(s):");
+        fraudCreditCards.forEach(sink::fraud);
+      }
+    } catch (FileLoaderException ex) {
+      System.err.println("File error: " + ex.getMessage() + ".\nAborting...");
+      return;
+    }
+    warnOutOfOrder();
+    if (options.isStats()) {
+      System.err.println("Peak retained window entries: " + peakRetainedEntries);
+      if (options.getAllowedLatenessSeconds() >= 0) {
+        System.err.println("Late transactions dropped: " + fraudDetector.getLateTransactions());
+      }
+    }
+  }
+
+  /**
+   * Follow the transaction file as it grows until the process is stopped, printing each fraudulent credit
+   * card as soon as it is detected. With --checkpoint, the window state and the position in the file are saved
+   * together in the snapshot every --checkpoint-interval and on stop; with --allowed-lateness only on stop, as
+   * the transactions held back to be reordered are not in the windows until then.
+   */
+  private void follow(CommandLineOptions options) {
+    List<String> arguments = options.getArguments();
+    if (arguments.size() != 2) {
+      System.err.println("Invalid inputs. Expecting exactly 2 arguments with --follow: (i) Price threshold and "
+          + "(ii) path transaction record file.\nAborting...");
       return;
     }
+    double limit;
     try {
-      List<Transaction> transactions = transFileLoader.load(args[1]);
-      Set<String> fraudCreditCards = fraudDetector.fraudScan(transactions, limit);
+      limit = Double.parseDouble(arguments.get(0));
+    } catch (NumberFormatException ex) {
+      System.err.println(
+          "Invalid limit [" + arguments.get(0) + "], expecting numeric value.\nAborting...");
+      return;
+    }
+    fraudDetector.setAmountScale(options.getAmountScale());
+    try (Session session = openSession(options)) {
+      ReportSink sink = session.sink;
+      FollowingTransactionSource source = new FollowingTransactionSource(arguments.get(1), transFileLoader);
+      if (options.getResumePath() != null) {
+        String resumePosition = fraudDetector.restore(options.getResumePath(), limit);
+        if (resumePosition != null) {
+          source.resume(resumePosition);
+        }
+      }
+      if (options.getCheckpointPath() != null && options.getAllowedLatenessSeconds() < 0) {
+        source.setCheckpoint(resumePosition -> fraudDetector.checkpoint(options.getCheckpointPath(), resumePosition),
+            TimeUnit.SECONDS.toMillis(options.getCheckpointIntervalSeconds()));
+      }
+      Thread following = Thread.currentThread();
+      Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+        source.stop();
+        try {
+          // Let the following thread write its checkpoint before the JVM halts.
+          following.join();
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+        }
+      }));
+      Consumer<String> fraudListener = creditCardId -> {
+        sink.fraud(creditCardId);
+        sink.flush();
+      };
+      Set<String> fraudCreditCards = options.getAllowedLatenessSeconds() >= 0
+          ? fraudDetector.fraudScan(source, limit, options.getAllowedLatenessSeconds(), fraudListener)
+          : fraudDetector.fraudScan(source, limit, fraudListener);
+
+      if (options.getCheckpointPath() != null) {
+        fraudDetector.checkpoint(options.getCheckpointPath(), source.getResumePosition());
+      }
+      dumpMetrics(options, session.metrics);
+      sink.message("Detected " + fraudCreditCards.size() + " fraudulent credit card(s).");
+    } catch (FileLoaderException ex) {
+      System.err.println("File error: " + ex.getMessage() + ".\nAborting...");
+      return;
+    }
+    warnOutOfOrder();
+    if (options.isStats()) {
+      System.err.println("Peak retained window entries: " + fraudDetector.getPeakRetainedEntries());
+    }
+  }
+
+  /**
+   * Scan the transaction file against the rules of the options in a single pass, and print each fraudulent
+   * credit card with the name of the rule that detected it.
+   */
+  private void scanRules(CommandLineOptions options) {
+    List<String> arguments = options.getArguments();
+    if (arguments.isEmpty()) {
+      System.err.println("Invalid inputs. Expecting at least 1 argument with --rule: path(s) transaction record file, "
+          + "directory or glob.\nAborting...");
+      return;
+    }
+    try (Session session = openSession(options)) {
+      ReportSink sink = session.sink;
+      CreditCardTiers tiers = options.getCardTiersPath() != null ? CreditCardTiers.load(options.getCardTiersPath()) : null;
+      RuleEngine engine =
+          new RuleEngine(options.getRules(), options.getAmountScale(), options.getBucketSeconds(), tiers,
+              new CreditCardDictionary());
+      BiConsumer<String, WindowRule> fraudListener = options.isStream()
+          ? (creditCardId, rule) -> sink.fraud(creditCardId, rule.getName())
+          : (creditCardId, rule) -> { };
+      List<String> filePaths = MergedTransactionSource.expand(arguments);
+      TransactionFileLoader batchLoader = filePaths.size() == 1 ? batchLoaderOf(filePaths.get(0), options) : null;
+      Map<String, WindowRule> fraudCreditCards = batchLoader != null
+          ? fraudDetector.fraudScanBatches(batchLoader.batchSource(filePaths.get(0)), engine, fraudListener)
+          : fraudDetector.fraudScan(sourceOf(filePaths, options), engine, fraudListener);
+      dumpMetrics(options, session.metrics);
 
       if (fraudCreditCards.isEmpty()) {
-        System.out.println("No fraud detected!");
+        sink.message("No fraud detected!");
+      } else if (options.isStream()) {
+        sink.message("Detected " + fraudCreditCards.size() + " fraudulent credit card(s).");
       } else {
-        System.out.println(
+        sink.message(
             "There are " + fraudCreditCards.size() + " fraudulent credit card(s):");
-        fraudCreditCards.forEach(System.out::println);
+        fraudCreditCards.forEach((creditCardId, rule) -> sink.fraud(creditCardId, rule.getName()));
+      }
+    } catch (FileLoaderException ex) {
+      System.err.println("File error: " + ex.getMessage() + ".\nAborting...");
+      return;
+    }
+    if (options.isStats()) {
+      System.err.println("Peak retained window entries: " + fraudDetector.getPeakRetainedEntries());
+    }
+  }
+
+  /**
+   * Scan the transaction file against all the limits of the options in a single pass, and print the number
+   * of fraudulent credit cards of each limit, followed by the credit cards themselves with --sweep-cards.
+   */
+  private void sweep(CommandLineOptions options) {
+    List<String> arguments = options.getArguments();
+    if (arguments.isEmpty()) {
+      System.err.println("Invalid inputs. Expecting at least 1 argument with --sweep: path(s) transaction record "
+          + "file, directory or glob.\nAborting...");
+      return;
+    }
+    List<BigDecimal> limits = options.getSweepLimits();
+    double[] sweepLimits = new double[limits.size()];
+    for (int i = 0; i < sweepLimits.length; i++) {
+      sweepLimits[i] = limits.get(i).doubleValue();
+    }
+    LimitSweep sweep = new LimitSweep(sweepLimits, options.getAmountScale(), new CreditCardDictionary());
+    try (Session session = openSession(options)) {
+      List<String> filePaths = MergedTransactionSource.expand(arguments);
+      TransactionFileLoader batchLoader = filePaths.size() == 1 ? batchLoaderOf(filePaths.get(0), options) : null;
+      if (batchLoader != null) {
+        fraudDetector.fraudSweepBatches(batchLoader.batchSource(filePaths.get(0)), sweep);
+      } else {
+        fraudDetector.fraudSweep(sourceOf(filePaths, options), sweep);
+      }
+      dumpMetrics(options, session.metrics);
+
+      // Limits are ascending in both lists.
+      int[] counts = sweep.getFraudulentCounts();
+      ReportSink sink = session.sink;
+      for (int i = 0; i < counts.length; i++) {
+        String limit = limits.get(i).toPlainString();
+        sink.limit(limit, counts[i], options.isSweepCards());
+        if (options.isSweepCards()) {
+          sweep.getFraudulentCreditCards(i).forEach(creditCardId -> sink.limitFraud(limit, creditCardId));
+        }
+      }
+    } catch (FileLoaderException ex) {
+      System.err.println("File error: " + ex.getMessage() + ".\nAborting...");
+      return;
+    }
+    if (options.isStats()) {
+      System.err.println("Peak retained window entries: " + fraudDetector.getPeakRetainedEntries());
+    }
+  }
+
+  /**
+   * Convert the transaction file to a binary transaction file, reporting invalid records as a scan would.
+   */
+  private void convert(CommandLineOptions options) {
+    List<String> arguments = options.getArguments();
+    if (arguments.size() != 1) {
+      System.err.println(
+          "Invalid inputs. Expecting exactly 1 argument with --convert: path transaction record file.\nAborting...");
+      return;
+    }
+    try (Session session = openSession(options)) {
+      TransactionFileLoader loader =
+          GzipTransactionFileLoader.isGzip(arguments.get(0)) ? gzipTransFileLoader : mappedTransFileLoader;
+      long transactions = BinaryTransactionWriter.convert(arguments.get(0), options.getConvertPath(), loader);
+      dumpMetrics(options, session.metrics);
+      session.sink.message("Converted " + transactions + " transaction(s) to " + options.getConvertPath() + ".");
+    } catch (FileLoaderException ex) {
+      System.err.println("File error: " + ex.getMessage() + ".\nAborting...");
+    }
+  }
+
+  /**
+   * @return the loader to stream the transaction file in batches with: the binary loader for a binary
+   *         transaction file, the gzip loader for a gzip compressed file, the memory-mapped loader with --mmap,
+   *         or null to stream it with the text loader.
+   */
+  private TransactionFileLoader batchLoaderOf(String filePath, CommandLineOptions options) {
+    if (BinaryTransactionFileLoader.isBinary(filePath)) {
+      return binaryTransFileLoader;
+    }
+    if (GzipTransactionFileLoader.isGzip(filePath)) {
+      return gzipTransFileLoader;
+    }
+    return options.isMmap() ? mappedTransFileLoader : null;
+  }
+
+  /**
+   * @return a source streaming a single file with the text loader, or merging several files in time order, each
+   *         loaded by the loader of its format.
+   */
+  private TransactionSource sourceOf(List<String> filePaths, CommandLineOptions options) {
+    if (filePaths.size() == 1) {
+      return transFileLoader.source(filePaths.get(0));
+    }
+    return new MergedTransactionSource(filePaths, filePath -> {
+      TransactionFileLoader loader = batchLoaderOf(filePath, options);
+      return loader != null ? loader : transFileLoader;
+    });
+  }
+
+  /**
+   * Run as a service until the process is stopped.
+   */
+  private void serve(CommandLineOptions options) {
+    List<String> arguments = options.getArguments();
+    if (arguments.size() != 1) {
+      System.err.println(
+          "Invalid inputs. Expecting exactly 1 argument in service mode: Price threshold.\nAborting...");
+      return;
+    }
+    double limit;
+    try {
+      limit = Double.parseDouble(arguments.get(0));
+    } catch (NumberFormatException ex) {
+      System.err.println(
+          "Invalid limit [" + arguments.get(0) + "], expecting numeric value.\nAborting...");
+      return;
+    }
+    try {
+      SlidingWindowEngine engine = options.getResumePath() != null
+          ? WindowSnapshot.read(Paths.get(options.getResumePath()), limit, options.getAmountScale())
+          : new SlidingWindowEngine(limit, options.getAmountScale(), new CreditCardDictionary());
+      try (FraudDetectionServer server =
+          new FraudDetectionServer(options.getServeAddress(), engine, options.isBatchVerdicts());
+          Session session = instrument(options)) {
+        server.setMetrics(session.metrics);
+        Thread serving = Thread.currentThread();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+          server.stop();
+          try {
+            // Let the serving thread write its checkpoint before the JVM halts.
+            serving.join();
+          } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+          }
+        }));
+        System.out.println("Listening on " + server.getLocalAddress());
+        server.run();
+        if (options.getCheckpointPath() != null) {
+          WindowSnapshot.write(engine, Paths.get(options.getCheckpointPath()));
+        }
+        dumpMetrics(options, session.metrics);
       }
     } catch (FileLoaderException ex) {
       System.err.println("File error: " + ex.getMessage() + ".\nAborting...");
+    } catch (IOException ex) {
+      System.err.println("Server error: " + ex.getMessage() + ".\nAborting...");
+    }
+  }
+
+  /**
+   * Warn about transactions too far out of time order across credit cards for the windows, if any.
+   */
+  private void warnOutOfOrder() {
+    long outOfOrder = fraudDetector.getOutOfOrderTransactions();
+    if (outOfOrder > 0) {
+      System.err.println("WARN - " + outOfOrder + " transaction(s) out of time order across credit cards by more "
+          + "than the window, their credit card may be missed. Scan with --allowed-lateness to reorder them.");
+    }
+  }
+
+  /**
+   * @return a session of {@link #instrument(CommandLineOptions)} with a sink writing to the standard streams in
+   *         the format of the options, reporting the invalid records of every loader.
+   */
+  private Session openSession(CommandLineOptions options) {
+    Session session = instrument(options);
+    session.sink = new ReportSink(System.out, System.err, options.getFormat(), options.getMaxWarnings());
+    transFileLoader.setInvalidRecordListener(session.sink);
+    mappedTransFileLoader.setInvalidRecordListener(session.sink);
+    binaryTransFileLoader.setInvalidRecordListener(session.sink);
+    gzipTransFileLoader.setInvalidRecordListener(session.sink);
+    return session;
+  }
+
+  /**
+   * @return a session with the metrics of the options, set on every loader and on the fraud detector, and
+   *         printed periodically to standard error if requested.
+   */
+  private Session instrument(CommandLineOptions options) {
+    Metrics metrics = options.isMetrics() ? new Metrics() : null;
+    transFileLoader.setMetrics(metrics);
+    mappedTransFileLoader.setMetrics(metrics);
+    binaryTransFileLoader.setMetrics(metrics);
+    gzipTransFileLoader.setMetrics(metrics);
+    fraudDetector.setMetrics(metrics);
+    MetricsReporter reporter = options.getMetricsIntervalSeconds() > 0
+        ? new MetricsReporter(metrics, options.getMetricsIntervalSeconds(), System.err)
+        : null;
+    return new Session(metrics, reporter);
+  }
+
+  private static void dumpMetrics(CommandLineOptions options, Metrics metrics) throws FileLoaderException {
+    if (options.getMetricsDumpPath() == null) {
       return;
     }
+    try {
+      Files.write(Paths.get(options.getMetricsDumpPath()),
+          (metrics.toJson() + "\n").getBytes(StandardCharsets.UTF_8));
+    } catch (IOException ex) {
+      throw new FileLoaderException("Cannot write metrics to " + options.getMetricsDumpPath() + ": " + ex.getMessage());
+    }
+  }
 
+  /**
+   * What a run reports to: its metrics, or null if not requested, their periodic reporter if any, and the sink
+   * of its results and warnings if any. Closing the session writes every line reported to the sink.
+   */
+  private static final class Session implements AutoCloseable {
+
+    private final Metrics metrics;
+    private final MetricsReporter reporter;
+    private ReportSink sink;
+
+    Session(Metrics metrics, MetricsReporter reporter) {
+      this.metrics = metrics;
+      this.reporter = reporter;
+    }
+
+    @Override
+    public void close() {
+      if (reporter != null) {
+        reporter.close();
+      }
+      if (sink != null) {
+        sink.close();
+      }
+    }
   }
 
   public static void main(String[] args) {
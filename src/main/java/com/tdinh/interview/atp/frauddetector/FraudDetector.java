@@ -1,14 +1,28 @@
 package com.tdinh.interview.atp.frauddetector;
 
+import com.tdinh.interview.atp.frauddetector.metrics.Metrics;
+import com.tdinh.interview.atp.frauddetector.metrics.ScanTimer;
+import com.tdinh.interview.atp.frauddetector.rule.RuleEngine;
+import com.tdinh.interview.atp.frauddetector.rule.WindowRule;
+import com.tdinh.interview.atp.frauddetector.transaction.Amounts;
+import com.tdinh.interview.atp.frauddetector.transaction.CreditCardDictionary;
 import com.tdinh.interview.atp.frauddetector.transaction.Transaction;
-import java.time.LocalDateTime;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.HashSet;
+import com.tdinh.interview.atp.frauddetector.transaction.TransactionBatch;
+import com.tdinh.interview.atp.frauddetector.transaction.TransactionBatchSource;
+import com.tdinh.interview.atp.frauddetector.transaction.TransactionSource;
+import com.tdinh.interview.atp.frauddetector.transaction.error.FileLoaderException;
+import com.tdinh.interview.atp.frauddetector.window.EventTimeWindowEngine;
+import com.tdinh.interview.atp.frauddetector.window.LimitSweep;
+import com.tdinh.interview.atp.frauddetector.window.SlidingWindowEngine;
+import com.tdinh.interview.atp.frauddetector.window.WindowSnapshot;
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
 /**
  * A fraud detector that scans a list of {@link Transaction}(s), and return
@@ -18,8 +32,31 @@ import java.util.Set;
  *
  */
 public class FraudDetector {
-  
-  Map<String, List<Transaction>> transactionStorage;
+
+  private long peakRetainedEntries;
+  private long lateTransactions;
+  private long outOfOrderTransactions;
+  private SlidingWindowEngine restoredEngine;
+  private SlidingWindowEngine lastEngine;
+  // Engine of the scan in progress that can be checkpointed, see checkpoint(String, String).
+  private SlidingWindowEngine scanningEngine;
+  private Metrics metrics;
+  private int amountScale = TransactionBatch.AMOUNT_SCALE;
+
+  /**
+   * @param amountScale number of decimals of the minor unit amounts are summed in, 2 (cents) by default.
+   *        Amounts with more decimals are rounded half up.
+   */
+  public void setAmountScale(int amountScale) {
+    this.amountScale = Amounts.checkScale(amountScale);
+  }
+
+  /**
+   * @param metrics metrics to report scan latency, live credit cards and window entries in, or null.
+   */
+  public void setMetrics(Metrics metrics) {
+    this.metrics = metrics;
+  }
 
   /**
    * Scan a list of {@link Transaction}(s), and return
@@ -32,47 +69,378 @@ public class FraudDetector {
    * if a credit card has been identified as fraudulent and noted down, this method will
    * ignore all transactions from that credit card from that point onwards.
    * 
+   * The scan is delegated to a {@link SlidingWindowEngine} which keeps a running 24-hour
+   * total per credit card, so each transaction is checked in amortized constant time.
+   * 
    * @param transactions
    * @param limit
    * @return
    */
   public Set<String> fraudScan(List<Transaction> transactions, double limit) {
-    if (transactions.isEmpty()) {
-      return Collections.emptySet();
+    SlidingWindowEngine engine = startEngine(limit);
+    ScanTimer timer = new ScanTimer(metrics);
+    for (Transaction trans : transactions) {
+      long start = timer.start();
+      engine.accept(trans);
+      timer.stop(start);
     }
-    Set<String> fraudulentCreditCards = new HashSet<>();
-    transactionStorage = new HashMap<>();
-    for (int i = 0; i < transactions.size(); i++) {
-      Transaction trans = transactions.get(i);
-      String creditCardId = trans.getCreditCardId();
-      if (!fraudulentCreditCards.contains(creditCardId)) {
-        List<Transaction> transList = transactionStorage.getOrDefault(creditCardId, new ArrayList<>());
-        transList.add(trans);
-        if (checkSingleCreditCardfraud(transList, limit)) {
-          fraudulentCreditCards.add(creditCardId);
-          // Remove credit card from storage, no need to check for this credit card further.
-          if (transactionStorage.containsKey(creditCardId)) {
-            transactionStorage.remove(creditCardId);
-          }
-        } else {
-          transactionStorage.put(creditCardId, transList);
+    return finish(engine);
+  }
+
+  /**
+   * Scan the {@link Transaction}(s) of a source as they are read, and return
+   * a set of credit card ids where fraud has been detected.
+   * 
+   * The fraud rule is the same as {@link #fraudScan(List, double)}. Transactions are never
+   * materialized, so memory is bounded by the live sliding windows rather than the source size.
+   * Each fraudulent credit card id is also passed to the listener as soon as it is detected.
+   * 
+   * @param source transaction source
+   * @param limit
+   * @param fraudListener notified with each fraudulent credit card id once, when detected.
+   * @return
+   * @throws FileLoaderException if the source cannot be read.
+   */
+  public Set<String> fraudScan(TransactionSource source, double limit, Consumer<String> fraudListener)
+      throws FileLoaderException {
+    SlidingWindowEngine engine = startEngine(limit);
+    ScanTimer timer = new ScanTimer(metrics);
+    scanningEngine = engine;
+    try {
+      source.forEach(trans -> {
+        long start = timer.start();
+        boolean fraudulent = engine.accept(trans);
+        timer.stop(start);
+        if (fraudulent) {
+          fraudListener.accept(trans.getCreditCardId());
         }
-      }
+      });
+    } finally {
+      scanningEngine = null;
     }
-    return fraudulentCreditCards;
+    return finish(engine);
   }
 
-  private boolean checkSingleCreditCardfraud(List<Transaction> transList, double limit) {
-    double total24hrsAmount = 0.0;
-    LocalDateTime cutOff = transList.get(transList.size() - 1).getTransDateTime().minusHours(24);
-    int i = transList.size() - 1;
-    while (i >= 0 && transList.get(i).getTransDateTime().isAfter(cutOff)) {
-      total24hrsAmount += transList.get(i).getAmount();
-      if (total24hrsAmount > limit) {
-        return true;
+  /**
+   * Scan the {@link TransactionBatch}(es) of a source as they are read, and return
+   * a set of credit card ids where fraud has been detected.
+   * 
+   * This is the same scan as {@link #fraudScan(TransactionSource, double, Consumer)}, reading the rows
+   * of the columnar batches directly without a {@link Transaction} object per record.
+   * 
+   * @param source transaction batch source
+   * @param limit
+   * @param fraudListener notified with each fraudulent credit card id once, when detected.
+   * @return
+   * @throws FileLoaderException if the source cannot be read.
+   */
+  public Set<String> fraudScanBatches(TransactionBatchSource source, double limit, Consumer<String> fraudListener)
+      throws FileLoaderException {
+    SlidingWindowEngine engine = startEngine(limit);
+    if (metrics == null) {
+      source.forEach(engine.getDictionary(), batch -> engine.accept(batch, fraudListener));
+      return finish(engine);
+    }
+    ScanTimer timer = new ScanTimer(metrics);
+    source.forEach(engine.getDictionary(), batch -> {
+      for (int row = 0; row < batch.size(); row++) {
+        int ordinal = batch.getCreditCardOrdinal(row);
+        long start = timer.start();
+        boolean fraudulent =
+            engine.acceptMinorUnits(ordinal, batch.getTransEpochSecond(row), engine.toMinorUnits(batch, row));
+        timer.stop(start);
+        if (fraudulent) {
+          fraudListener.accept(engine.getDictionary().creditCardId(ordinal));
+        }
+      }
+    });
+    return finish(engine);
+  }
+
+  /**
+   * Scan the {@link Transaction}(s) of a source in event time, and return a set of credit card ids
+   * where fraud has been detected.
+   * 
+   * Unlike {@link #fraudScan(TransactionSource, double, Consumer)}, transactions do not need to be in
+   * chronological order: they are reordered by an {@link EventTimeWindowEngine}, and the result is the same
+   * as scanning them sorted by time. Transactions arriving more than the allowed lateness behind the latest
+   * transaction time are dropped (see {@link #getLateTransactions()}).
+   * 
+   * @param source transaction source
+   * @param limit
+   * @param allowedLatenessSeconds how far behind the latest transaction time a transaction may arrive.
+   * @param fraudListener notified with each fraudulent credit card id once, when its verdict is final.
+   * @return
+   * @throws FileLoaderException if the source cannot be read.
+   */
+  public Set<String> fraudScan(TransactionSource source, double limit, long allowedLatenessSeconds,
+      Consumer<String> fraudListener) throws FileLoaderException {
+    EventTimeWindowEngine engine =
+        new EventTimeWindowEngine(startEngine(limit), allowedLatenessSeconds, fraudListener);
+    ScanTimer timer = new ScanTimer(metrics);
+    source.forEach(trans -> {
+      long start = timer.start();
+      engine.accept(trans);
+      timer.stop(start);
+    });
+    return finish(engine);
+  }
+
+  /**
+   * Scan the {@link TransactionBatch}(es) of a source in event time, as
+   * {@link #fraudScan(TransactionSource, double, long, Consumer)} does.
+   * 
+   * @param source transaction batch source
+   * @param limit
+   * @param allowedLatenessSeconds how far behind the latest transaction time a transaction may arrive.
+   * @param fraudListener notified with each fraudulent credit card id once, when its verdict is final.
+   * @return
+   * @throws FileLoaderException if the source cannot be read.
+   */
+  public Set<String> fraudScanBatches(TransactionBatchSource source, double limit, long allowedLatenessSeconds,
+      Consumer<String> fraudListener) throws FileLoaderException {
+    EventTimeWindowEngine engine =
+        new EventTimeWindowEngine(startEngine(limit), allowedLatenessSeconds, fraudListener);
+    ScanTimer timer = new ScanTimer(metrics);
+    source.forEach(engine.getEngine().getDictionary(), batch -> {
+      for (int row = 0; row < batch.size(); row++) {
+        long start = timer.start();
+        engine.acceptMinorUnits(batch.getCreditCardOrdinal(row), batch.getTransEpochSecond(row),
+            engine.getEngine().toMinorUnits(batch, row));
+        timer.stop(start);
+      }
+    });
+    return finish(engine);
+  }
+
+  /**
+   * Scan the {@link Transaction}(s) of a source against several {@link WindowRule}(s) at once, and return
+   * the credit card ids where fraud has been detected, with the rule that detected each.
+   * 
+   * The source is read once, whatever the number of rules, and a credit card is detected by the first rule
+   * that fires for it (see {@link RuleEngine}).
+   * 
+   * @param source transaction source
+   * @param engine rule engine to scan with, which keeps its state after the scan.
+   * @param fraudListener notified with each fraudulent credit card id and its rule once, when detected.
+   * @return
+   * @throws FileLoaderException if the source cannot be read.
+   */
+  public Map<String, WindowRule> fraudScan(TransactionSource source, RuleEngine engine,
+      BiConsumer<String, WindowRule> fraudListener) throws FileLoaderException {
+    startEngine(engine);
+    ScanTimer timer = new ScanTimer(metrics);
+    source.forEach(trans -> {
+      long start = timer.start();
+      WindowRule rule = engine.accept(trans);
+      timer.stop(start);
+      if (rule != null) {
+        fraudListener.accept(trans.getCreditCardId(), rule);
+      }
+    });
+    return finish(engine);
+  }
+
+  /**
+   * Scan the {@link TransactionBatch}(es) of a source against several {@link WindowRule}(s) at once, as
+   * {@link #fraudScan(TransactionSource, RuleEngine, BiConsumer)} does.
+   * 
+   * @param source transaction batch source
+   * @param engine rule engine to scan with, which keeps its state after the scan.
+   * @param fraudListener notified with each fraudulent credit card id and its rule once, when detected.
+   * @return
+   * @throws FileLoaderException if the source cannot be read.
+   */
+  public Map<String, WindowRule> fraudScanBatches(TransactionBatchSource source, RuleEngine engine,
+      BiConsumer<String, WindowRule> fraudListener) throws FileLoaderException {
+    startEngine(engine);
+    if (metrics == null) {
+      source.forEach(engine.getDictionary(), batch -> engine.accept(batch, fraudListener));
+      return finish(engine);
+    }
+    ScanTimer timer = new ScanTimer(metrics);
+    source.forEach(engine.getDictionary(), batch -> {
+      for (int row = 0; row < batch.size(); row++) {
+        int ordinal = batch.getCreditCardOrdinal(row);
+        long start = timer.start();
+        int rule = engine.acceptMinorUnits(ordinal, batch.getTransEpochSecond(row), engine.toMinorUnits(batch, row));
+        timer.stop(start);
+        if (rule != RuleEngine.NONE) {
+          fraudListener.accept(engine.getDictionary().creditCardId(ordinal), engine.getRules().get(rule));
+        }
       }
-      i--;
+    });
+    return finish(engine);
+  }
+
+  /**
+   * Scan the {@link Transaction}(s) of a source against many limits at once. The fraudulent credit cards
+   * of each limit are then read from the sweep.
+   * 
+   * The source is read once, whatever the number of limits, and the result of each limit is the same
+   * as a {@link #fraudScan(TransactionSource, double, Consumer)} with that limit (see {@link LimitSweep}).
+   * 
+   * @param source transaction source
+   * @param sweep limit sweep to scan with.
+   * @throws FileLoaderException if the source cannot be read.
+   */
+  public void fraudSweep(TransactionSource source, LimitSweep sweep) throws FileLoaderException {
+    SlidingWindowEngine engine = startEngine(sweep);
+    ScanTimer timer = new ScanTimer(metrics);
+    source.forEach(trans -> {
+      long start = timer.start();
+      sweep.accept(trans);
+      timer.stop(start);
+    });
+    peakRetainedEntries = engine.getPeakRetainedEntries();
+  }
+
+  /**
+   * Scan the {@link TransactionBatch}(es) of a source against many limits at once, as
+   * {@link #fraudSweep(TransactionSource, LimitSweep)} does.
+   * 
+   * @param source transaction batch source
+   * @param sweep limit sweep to scan with.
+   * @throws FileLoaderException if the source cannot be read.
+   */
+  public void fraudSweepBatches(TransactionBatchSource source, LimitSweep sweep) throws FileLoaderException {
+    SlidingWindowEngine engine = startEngine(sweep);
+    if (metrics == null) {
+      source.forEach(engine.getDictionary(), sweep::accept);
+    } else {
+      ScanTimer timer = new ScanTimer(metrics);
+      source.forEach(engine.getDictionary(), batch -> {
+        for (int row = 0; row < batch.size(); row++) {
+          long start = timer.start();
+          sweep.acceptMinorUnits(batch.getCreditCardOrdinal(row), batch.getTransEpochSecond(row),
+              engine.toMinorUnits(batch, row));
+          timer.stop(start);
+        }
+      });
+    }
+    peakRetainedEntries = engine.getPeakRetainedEntries();
+  }
+
+  private SlidingWindowEngine startEngine(LimitSweep sweep) {
+    SlidingWindowEngine engine = sweep.getEngine();
+    if (metrics != null) {
+      metrics.setGauges(engine::getLiveCreditCards, engine::getRetainedEntries);
     }
-    return false;
+    return engine;
+  }
+
+  private void startEngine(RuleEngine engine) {
+    if (metrics != null) {
+      metrics.setGauges(engine::getLiveCreditCards, engine::getRetainedEntries);
+    }
+  }
+
+  private Map<String, WindowRule> finish(RuleEngine engine) {
+    peakRetainedEntries = engine.getPeakRetainedEntries();
+    return engine.getFraudulentCreditCards();
+  }
+
+  private Set<String> finish(EventTimeWindowEngine engine) {
+    engine.flush();
+    lateTransactions = engine.getLateTransactions();
+    return finish(engine.getEngine());
+  }
+
+  /**
+   * @return the engine restored by {@link #restore(String, double)} if any, or a new engine.
+   */
+  private SlidingWindowEngine startEngine(double limit) {
+    SlidingWindowEngine engine = restoredEngine != null
+        ? restoredEngine
+        : new SlidingWindowEngine(limit, amountScale, new CreditCardDictionary());
+    restoredEngine = null;
+    if (metrics != null) {
+      metrics.setGauges(engine::getLiveCreditCards, engine::getRetainedEntries);
+    }
+    return engine;
+  }
+
+  private Set<String> finish(SlidingWindowEngine engine) {
+    lastEngine = engine;
+    peakRetainedEntries = engine.getPeakRetainedEntries();
+    outOfOrderTransactions = engine.getOutOfOrderTransactions();
+    return engine.getFraudulentCreditCards();
+  }
+
+  /**
+   * Restore the window state saved by {@link #checkpoint(String)}, so that the next scan resumes from it
+   * rather than starting empty: earlier transactions still count in the windows, and credit cards already
+   * detected as fraudulent are part of the result but not notified again.
+   * 
+   * @param snapshotPath path to the snapshot file.
+   * @param limit limit of the next scan, which must be the limit the snapshot was taken with.
+   * @return position in the source saved with the snapshot by {@link #checkpoint(String, String)}, or null.
+   * @throws FileLoaderException if the snapshot cannot be read or was taken with another limit or amount scale.
+   */
+  public String restore(String snapshotPath, double limit) throws FileLoaderException {
+    try {
+      restoredEngine = WindowSnapshot.read(Paths.get(snapshotPath), limit, amountScale);
+      return WindowSnapshot.readSourcePosition(Paths.get(snapshotPath));
+    } catch (NoSuchFileException ex) {
+      throw new FileLoaderException(ex.getMessage() + " (No such file or directory)");
+    } catch (IOException ex) {
+      throw new FileLoaderException(ex.getMessage());
+    }
+  }
+
+  /**
+   * Save the window state at the end of the last scan to a snapshot file.
+   * 
+   * @param snapshotPath path to the snapshot file, replaced if it exists.
+   * @throws FileLoaderException if the snapshot cannot be written.
+   */
+  public void checkpoint(String snapshotPath) throws FileLoaderException {
+    checkpoint(snapshotPath, null);
+  }
+
+  /**
+   * Save the window state to a snapshot file along with the position in the source it was built from up to,
+   * so that both are always replaced together.
+   * 
+   * During a {@link #fraudScan(TransactionSource, double, Consumer)}, the source may call it on the scanning
+   * thread between two transactions, to save the state of the scan so far. Otherwise the state at the end of
+   * the last scan is saved.
+   * 
+   * @param snapshotPath path to the snapshot file, replaced if it exists.
+   * @param sourcePosition position in the source, returned by {@link #restore(String, double)}, or null.
+   * @throws FileLoaderException if the snapshot cannot be written.
+   */
+  public void checkpoint(String snapshotPath, String sourcePosition) throws FileLoaderException {
+    SlidingWindowEngine engine = scanningEngine != null ? scanningEngine : lastEngine;
+    if (engine == null) {
+      throw new IllegalStateException("No scan to checkpoint");
+    }
+    try {
+      WindowSnapshot.write(engine, Paths.get(snapshotPath), sourcePosition);
+    } catch (IOException ex) {
+      throw new FileLoaderException(ex.getMessage());
+    }
+  }
+
+  /**
+   * @return number of transactions dropped as too late during the last event-time scan.
+   */
+  public long getLateTransactions() {
+    return lateTransactions;
+  }
+
+  /**
+   * @return number of transactions of the last scan too far out of time order across credit cards for the
+   *         windows, see {@link SlidingWindowEngine#getOutOfOrderTransactions()}.
+   */
+  public long getOutOfOrderTransactions() {
+    return outOfOrderTransactions;
+  }
+
+  /**
+   * @return the peak number of transactions retained in the sliding windows during the last scan.
+   */
+  public long getPeakRetainedEntries() {
+    return peakRetainedEntries;
   }
 }
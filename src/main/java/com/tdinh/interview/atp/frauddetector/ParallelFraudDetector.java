@@ -0,0 +1,370 @@
+package com.tdinh.interview.atp.frauddetector;
+
+import com.tdinh.interview.atp.frauddetector.metrics.Metrics;
+import com.tdinh.interview.atp.frauddetector.metrics.ScanTimer;
+import com.tdinh.interview.atp.frauddetector.transaction.Amounts;
+import com.tdinh.interview.atp.frauddetector.transaction.ByteTransactionParser;
+import com.tdinh.interview.atp.frauddetector.transaction.ByteTransactionParser.RecordHandler;
+import com.tdinh.interview.atp.frauddetector.transaction.CreditCardDictionary;
+import com.tdinh.interview.atp.frauddetector.transaction.InvalidRecordListener;
+import com.tdinh.interview.atp.frauddetector.transaction.Transaction;
+import com.tdinh.interview.atp.frauddetector.transaction.TransactionBatch;
+import com.tdinh.interview.atp.frauddetector.transaction.error.FileLoaderException;
+import com.tdinh.interview.atp.frauddetector.window.SlidingWindowEngine;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+
+/**
+ * A fraud detector that loads and scans a transaction file on several threads.
+ * 
+ * The file is split into chunks of bytes aligned on line boundaries, and the chunks are memory-mapped
+ * and parsed concurrently by a {@link ByteTransactionParser}. The rows of each chunk are partitioned by the
+ * hash of their credit card id into primitive arrays, without a {@link Transaction} object per record.
+ * Each scan worker owns one partition and runs its own {@link SlidingWindowEngine} over the chunks in file
+ * order, so the transactions of a credit card are scanned in the same order as the sequential {@link FraudDetector}, without any shared lock.
+ * The result is therefore the same as a sequential scan.
+ * 
+ * Only a bounded number of parsed chunks are held in memory at any time.
+ * 
+ * @author Tuan Dinh
+ *
+ */
+public class ParallelFraudDetector {
+
+  static final int DEFAULT_CHUNK_SIZE = 4 * 1024 * 1024;
+
+  private final int threads;
+  private final int chunkSize;
+  private long peakRetainedEntries;
+  private Metrics metrics;
+  private InvalidRecordListener invalidRecordListener = InvalidRecordListener.STANDARD_ERROR;
+  private int amountScale = TransactionBatch.AMOUNT_SCALE;
+
+  public ParallelFraudDetector(int threads) {
+    this(threads, DEFAULT_CHUNK_SIZE);
+  }
+
+  ParallelFraudDetector(int threads, int chunkSize) {
+    if (threads < 1) {
+      throw new IllegalArgumentException("Invalid thread count [" + threads + "]");
+    }
+    this.threads = threads;
+    this.chunkSize = chunkSize;
+  }
+
+  /**
+   * @param amountScale number of decimals of the minor unit amounts are summed in, see
+   *        {@link FraudDetector#setAmountScale(int)}.
+   */
+  public void setAmountScale(int amountScale) {
+    this.amountScale = Amounts.checkScale(amountScale);
+  }
+
+  /**
+   * @param metrics metrics to report records, scan latency, live credit cards and window entries in, or null.
+   */
+  public void setMetrics(Metrics metrics) {
+    this.metrics = metrics;
+  }
+
+  /**
+   * @param invalidRecordListener listener of the invalid records, called from the parser threads.
+   */
+  public void setInvalidRecordListener(InvalidRecordListener invalidRecordListener) {
+    this.invalidRecordListener = invalidRecordListener;
+  }
+
+  /**
+   * Scan the transactions of a file, and return a set of credit card ids where fraud has been detected.
+   * The fraud rule is the same as {@link FraudDetector#fraudScan(java.util.List, double)}.
+   * 
+   * @param filePath path to file.
+   * @param limit
+   * @param fraudListener notified with each fraudulent credit card id once, when detected.
+   *        Calls are serialized but may come from different threads.
+   * @return
+   * @throws FileLoaderException if the file cannot be read.
+   */
+  public Set<String> fraudScan(String filePath, double limit, Consumer<String> fraudListener)
+      throws FileLoaderException {
+    ExecutorService parsers = Executors.newFixedThreadPool(threads);
+    ExecutorService scanners = Executors.newFixedThreadPool(threads);
+    try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+      long[] boundaries = splitOnLines(channel);
+      int chunks = boundaries.length - 1;
+      AtomicReferenceArray<CompletableFuture<ParsedChunk>> parsed = new AtomicReferenceArray<>(chunks);
+      AtomicInteger[] pendingScans = new AtomicInteger[chunks];
+      for (int i = 0; i < chunks; i++) {
+        parsed.set(i, new CompletableFuture<>());
+        pendingScans[i] = new AtomicInteger(threads);
+      }
+      // Bound the parsed chunks in memory. A permit is released once every worker has scanned a chunk.
+      Semaphore inFlight = new Semaphore(2 * threads);
+      AtomicBoolean aborted = new AtomicBoolean();
+      Object listenerLock = new Object();
+      SlidingWindowEngine[] engines = new SlidingWindowEngine[threads];
+      if (metrics != null) {
+        metrics.setGauges(() -> sum(engines, SlidingWindowEngine::getLiveCreditCards),
+            () -> sum(engines, SlidingWindowEngine::getRetainedEntries));
+      }
+
+      List<Future<SlidingWindowEngine>> workers = new ArrayList<>(threads);
+      for (int p = 0; p < threads; p++) {
+        int partition = p;
+        workers.add(scanners.submit(() -> {
+          SlidingWindowEngine engine = new SlidingWindowEngine(limit, amountScale, new CreditCardDictionary());
+          engines[partition] = engine;
+          ScanTimer timer = new ScanTimer(metrics);
+          Consumer<String> serializedListener = creditCardId -> {
+            synchronized (listenerLock) {
+              fraudListener.accept(creditCardId);
+            }
+          };
+          try {
+            for (int i = 0; i < chunks; i++) {
+              scan(parsed.get(i).get(), partition, engine, timer, serializedListener);
+              if (pendingScans[i].decrementAndGet() == 0) {
+                parsed.set(i, null);
+                inFlight.release();
+              }
+            }
+          } catch (Exception ex) {
+            aborted.set(true);
+            inFlight.release(chunks);
+            throw ex;
+          }
+          return engine;
+        }));
+      }
+
+      for (int i = 0; i < chunks; i++) {
+        inFlight.acquire();
+        CompletableFuture<ParsedChunk> future = parsed.get(i);
+        if (aborted.get()) {
+          // Release the workers still waiting for chunks that will never be parsed.
+          for (int j = i; j < chunks; j++) {
+            parsed.get(j).completeExceptionally(new IOException("Scan aborted"));
+          }
+          break;
+        }
+        long from = boundaries[i];
+        long to = boundaries[i + 1];
+        parsers.execute(() -> {
+          try {
+            future.complete(parseChunk(channel, from, to));
+          } catch (Exception ex) {
+            future.completeExceptionally(ex);
+          }
+        });
+      }
+
+      Set<String> fraudulentCreditCards = new HashSet<>();
+      peakRetainedEntries = 0;
+      for (Future<SlidingWindowEngine> worker : workers) {
+        SlidingWindowEngine engine = worker.get();
+        fraudulentCreditCards.addAll(engine.getFraudulentCreditCards());
+        peakRetainedEntries += engine.getPeakRetainedEntries();
+      }
+      return fraudulentCreditCards;
+    } catch (NoSuchFileException ex) {
+      throw new FileLoaderException(ex.getMessage() + " (No such file or directory)");
+    } catch (IOException ex) {
+      throw new FileLoaderException(ex.getMessage());
+    } catch (ExecutionException ex) {
+      Throwable cause = ex.getCause() instanceof ExecutionException ? ex.getCause().getCause() : ex.getCause();
+      throw new FileLoaderException(String.valueOf(cause.getMessage()));
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new FileLoaderException("Interrupted");
+    } finally {
+      parsers.shutdownNow();
+      scanners.shutdownNow();
+    }
+  }
+
+  /**
+   * @return the sum of the peak number of transactions retained by each worker during the last scan.
+   *         This is an upper bound of the overall peak as the workers peak at different times.
+   */
+  public long getPeakRetainedEntries() {
+    return peakRetainedEntries;
+  }
+
+  /**
+   * Parse a chunk of the file and partition its rows by credit card, without an object per record.
+   */
+  private ParsedChunk parseChunk(FileChannel channel, long from, long to) throws IOException {
+    ParsedChunk chunk = new ParsedChunk(threads);
+    MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, from, to - from);
+    ByteTransactionParser parser = new ByteTransactionParser();
+    parser.setMetrics(metrics);
+    parser.parse(buffer, 0, (int) (to - from), chunk.dictionary, new RecordHandler() {
+      // Partition of each credit card ordinal of the chunk, looked up once per credit card.
+      private int[] partitionOfOrdinal = new int[1024];
+      private int known;
+
+      @Override
+      public void record(int creditCardOrdinal, long transEpochSecond, double amount) {
+        if (creditCardOrdinal == known) {
+          // Ordinals are assigned in sequence, so this is a credit card new to the chunk.
+          if (known == partitionOfOrdinal.length) {
+            partitionOfOrdinal = Arrays.copyOf(partitionOfOrdinal, 2 * known);
+          }
+          partitionOfOrdinal[known++] = partitionOf(chunk.dictionary.creditCardId(creditCardOrdinal));
+        }
+        chunk.partitions[partitionOfOrdinal[creditCardOrdinal]].add(creditCardOrdinal, transEpochSecond, amount);
+      }
+
+      @Override
+      public void invalid(String record, String reason) {
+        invalidRecordListener.invalidRecord(record, reason);
+      }
+    });
+    return chunk;
+  }
+
+  /**
+   * Scan the rows of a partition of a chunk, in order, looking their credit cards up in the dictionary of the
+   * engine once per credit card.
+   */
+  private static void scan(ParsedChunk chunk, int partition, SlidingWindowEngine engine, ScanTimer timer,
+      Consumer<String> fraudListener) {
+    Partition rows = chunk.partitions[partition];
+    CreditCardDictionary dictionary = engine.getDictionary();
+    int[] engineOrdinals = new int[chunk.dictionary.size()];
+    Arrays.fill(engineOrdinals, -1);
+    for (int row = 0; row < rows.size; row++) {
+      int chunkOrdinal = rows.creditCardOrdinals[row];
+      int ordinal = engineOrdinals[chunkOrdinal];
+      if (ordinal < 0) {
+        ordinal = dictionary.ordinalOf(chunk.dictionary.creditCardId(chunkOrdinal));
+        engineOrdinals[chunkOrdinal] = ordinal;
+      }
+      long start = timer.start();
+      boolean fraudulent = engine.accept(ordinal, rows.transEpochSeconds[row], rows.amounts[row]);
+      timer.stop(start);
+      if (fraudulent) {
+        fraudListener.accept(dictionary.creditCardId(ordinal));
+      }
+    }
+  }
+
+  /**
+   * Sum a gauge over the worker engines started so far. Engines are read while scanning, so this is approximate.
+   */
+  private static long sum(SlidingWindowEngine[] engines, ToLongFunction<SlidingWindowEngine> gauge) {
+    long total = 0;
+    for (SlidingWindowEngine engine : engines) {
+      if (engine != null) {
+        total += gauge.applyAsLong(engine);
+      }
+    }
+    return total;
+  }
+
+  private int partitionOf(String creditCardId) {
+    return (creditCardId.hashCode() & Integer.MAX_VALUE) % threads;
+  }
+
+  /**
+   * Split the file into chunks of about the chunk size, each ending just after a '\n' (or at the end of file).
+   * 
+   * @return chunk boundaries, from 0 to the file size.
+   */
+  private long[] splitOnLines(FileChannel channel) throws IOException {
+    long fileSize = channel.size();
+    List<Long> boundaries = new ArrayList<>();
+    boundaries.add(0L);
+    long position = 0;
+    ByteBuffer probe = ByteBuffer.allocate(4096);
+    while (fileSize - position > chunkSize) {
+      long next = position + chunkSize;
+      long lineEnd = -1;
+      while (lineEnd < 0 && next < fileSize) {
+        probe.clear();
+        int read = channel.read(probe, next);
+        for (int i = 0; i < read; i++) {
+          if (probe.get(i) == '\n') {
+            lineEnd = next + i + 1;
+            break;
+          }
+        }
+        next += read;
+      }
+      if (lineEnd < 0 || lineEnd >= fileSize) {
+        break;
+      }
+      boundaries.add(lineEnd);
+      position = lineEnd;
+    }
+    boundaries.add(fileSize);
+    long[] result = new long[boundaries.size()];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = boundaries.get(i);
+    }
+    return result;
+  }
+
+  /**
+   * The rows of a parsed chunk, partitioned by credit card. Credit card ordinals are in the dictionary of
+   * the chunk.
+   */
+  private static final class ParsedChunk {
+
+    final CreditCardDictionary dictionary = new CreditCardDictionary();
+    final Partition[] partitions;
+
+    ParsedChunk(int partitionCount) {
+      partitions = new Partition[partitionCount];
+      for (int p = 0; p < partitionCount; p++) {
+        partitions[p] = new Partition();
+      }
+    }
+  }
+
+  /**
+   * Rows of a partition in primitive arrays, as a {@link TransactionBatch} but growing with the chunk, and
+   * keeping the amounts as parsed so they are summed exactly as the sequential scan does at any scale.
+   */
+  private static final class Partition {
+
+    int size;
+    int[] creditCardOrdinals = new int[64];
+    long[] transEpochSeconds = new long[64];
+    double[] amounts = new double[64];
+
+    void add(int creditCardOrdinal, long transEpochSecond, double amount) {
+      if (size == creditCardOrdinals.length) {
+        creditCardOrdinals = Arrays.copyOf(creditCardOrdinals, 2 * size);
+        transEpochSeconds = Arrays.copyOf(transEpochSeconds, 2 * size);
+        amounts = Arrays.copyOf(amounts, 2 * size);
+      }
+      creditCardOrdinals[size] = creditCardOrdinal;
+      transEpochSeconds[size] = transEpochSecond;
+      amounts[size] = amount;
+      size++;
+    }
+  }
+}
@@ -0,0 +1,670 @@
+package com.tdinh.interview.atp.frauddetector.generator;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * A deterministic, seedable generator of synthetic transaction files for load and scale testing.
+ * 
+ * Records are written in the format accepted by
+ * {@link com.tdinh.interview.atp.frauddetector.transaction.TransactionResolver}:
+ * <hashed_credit_card_number>, <yyyy-MM-ddTHH:mm:ss>, <amount>
+ * 
+ * The generator can be configured with:
+ * - the number of records and of distinct credit cards
+ * - the Zipf skew of hot credit cards (0 for uniform)
+ * - the time span covered by the records
+ * - the amount distribution (uniform or log-normal)
+ * - the ratio of credit cards that commit fraud, i.e. spend a burst over the limit within a few hours
+ * - the fraction of records written out of order (late by up to {@link Builder#maxLatenessSeconds})
+ * - the rate of malformed lines, written in addition to the records
+ * 
+ * Alongside the data, the generator computes the expected set of fraudulent credit cards: the credit
+ * cards having a 24-hour sliding window (by transaction time) whose total exceeds the limit. This is done
+ * by an exact, independent oracle on integer cents that reorders late records with a bounded buffer, so
+ * memory does not grow with the number of records.
+ * 
+ * The same configuration and seed always produce the same bytes.
+ * 
+ * @author Tuan Dinh
+ *
+ */
+public class TransactionGenerator {
+
+  public enum AmountDistribution {
+    UNIFORM, LOG_NORMAL
+  }
+
+  private static final long WINDOW_SECONDS = 24 * 60 * 60;
+  private static final int CREDIT_CARD_ID_LENGTH = 27;
+  private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+  private static final int FRAUD_BURST_TRANSACTIONS = 4;
+  private static final long FRAUD_BURST_SECONDS = 4 * 60 * 60;
+  private static final byte[][] MALFORMED_LINES = {
+      "%s, 2014/04/29 13:15:54, 10.00".getBytes(StandardCharsets.US_ASCII),
+      "%s, %t, Ten dollars".getBytes(StandardCharsets.US_ASCII),
+      "%s, %t, 10.00, Extra note".getBytes(StandardCharsets.US_ASCII),
+      "%t, 10.00".getBytes(StandardCharsets.US_ASCII),
+      new byte[0]};
+
+  private final long records;
+  private final int cards;
+  private final double skew;
+  private final long startEpochSecond;
+  private final long spanSeconds;
+  private final AmountDistribution amountDistribution;
+  private final long minAmountCents;
+  private final long maxAmountCents;
+  private final double logNormalMedian;
+  private final double logNormalSigma;
+  private final long limitCents;
+  private final double fraudRatio;
+  private final double outOfOrderFraction;
+  private final long maxLatenessSeconds;
+  private final double malformedRate;
+  private final long seed;
+
+  private static final String USAGE = "Usage: TransactionGenerator <output file> [--records=N] [--cards=N]"
+      + " [--skew=S] [--span-hours=H] [--amounts=uniform:MIN:MAX|lognormal:MEDIAN:SIGMA] [--limit=L]"
+      + " [--fraud-ratio=R] [--out-of-order=F] [--max-lateness-seconds=S] [--malformed-rate=R] [--seed=N]";
+
+  private byte[] line = new byte[128];
+  private int lineLength;
+
+  public static class Builder {
+    private long records = 1_000_000;
+    private int cards = 10_000;
+    private double skew = 1.0;
+    // 2014-04-29T00:00:00
+    private long startEpochSecond = 1398729600L;
+    private long spanSeconds = 30 * WINDOW_SECONDS;
+    private AmountDistribution amountDistribution = AmountDistribution.LOG_NORMAL;
+    private long minAmountCents = 1;
+    private long maxAmountCents = 1000000;
+    private double logNormalMedian = 20.00;
+    private double logNormalSigma = 1.0;
+    private long limitCents = 50000;
+    private double fraudRatio = 0.01;
+    private double outOfOrderFraction = 0.0;
+    private long maxLatenessSeconds = 10 * 60;
+    private double malformedRate = 0.0;
+    private long seed = 20140429L;
+
+    public Builder records(long records) {
+      this.records = records;
+      return this;
+    }
+
+    public Builder cards(int cards) {
+      this.cards = cards;
+      return this;
+    }
+
+    public Builder skew(double skew) {
+      this.skew = skew;
+      return this;
+    }
+
+    public Builder startEpochSecond(long startEpochSecond) {
+      this.startEpochSecond = startEpochSecond;
+      return this;
+    }
+
+    public Builder spanSeconds(long spanSeconds) {
+      this.spanSeconds = spanSeconds;
+      return this;
+    }
+
+    public Builder uniformAmounts(double minAmount, double maxAmount) {
+      this.amountDistribution = AmountDistribution.UNIFORM;
+      this.minAmountCents = Math.round(minAmount * 100);
+      this.maxAmountCents = Math.round(maxAmount * 100);
+      return this;
+    }
+
+    public Builder logNormalAmounts(double median, double sigma) {
+      this.amountDistribution = AmountDistribution.LOG_NORMAL;
+      this.logNormalMedian = median;
+      this.logNormalSigma = sigma;
+      return this;
+    }
+
+    /**
+     * @param limit fraud limit, floored to whole cents as the detector does, so that a total exceeds the limit
+     *        exactly when it exceeds the floored limit.
+     */
+    public Builder limit(double limit) {
+      this.limitCents = BigDecimal.valueOf(limit).setScale(2, RoundingMode.FLOOR).unscaledValue().longValueExact();
+      return this;
+    }
+
+    public Builder fraudRatio(double fraudRatio) {
+      this.fraudRatio = fraudRatio;
+      return this;
+    }
+
+    public Builder outOfOrderFraction(double outOfOrderFraction) {
+      this.outOfOrderFraction = outOfOrderFraction;
+      return this;
+    }
+
+    public Builder maxLatenessSeconds(long maxLatenessSeconds) {
+      this.maxLatenessSeconds = maxLatenessSeconds;
+      return this;
+    }
+
+    public Builder malformedRate(double malformedRate) {
+      this.malformedRate = malformedRate;
+      return this;
+    }
+
+    public Builder seed(long seed) {
+      this.seed = seed;
+      return this;
+    }
+
+    public TransactionGenerator build() {
+      if (records < 0 || cards < 1 || spanSeconds < 1 || maxLatenessSeconds < 0 || maxAmountCents < minAmountCents) {
+        throw new IllegalArgumentException("Invalid generator configuration");
+      }
+      return new TransactionGenerator(this);
+    }
+  }
+
+  private TransactionGenerator(Builder builder) {
+    this.records = builder.records;
+    this.cards = builder.cards;
+    this.skew = builder.skew;
+    this.startEpochSecond = builder.startEpochSecond;
+    this.spanSeconds = builder.spanSeconds;
+    this.amountDistribution = builder.amountDistribution;
+    this.minAmountCents = builder.minAmountCents;
+    this.maxAmountCents = builder.maxAmountCents;
+    this.logNormalMedian = builder.logNormalMedian;
+    this.logNormalSigma = builder.logNormalSigma;
+    this.limitCents = builder.limitCents;
+    this.fraudRatio = builder.fraudRatio;
+    this.outOfOrderFraction = builder.outOfOrderFraction;
+    this.maxLatenessSeconds = builder.maxLatenessSeconds;
+    this.malformedRate = builder.malformedRate;
+    this.seed = builder.seed;
+  }
+
+  /**
+   * Write the generated records to the output.
+   * 
+   * @param output output of the records, buffered by the caller if needed.
+   * @return the expected fraudulent credit card ids, sorted.
+   * @throws IOException
+   */
+  public List<String> generate(OutputStream output) throws IOException {
+    Random random = new Random(seed);
+    // Fraud bursts: each fraudulent credit card spends over the limit within a few hours.
+    PriorityQueue<long[]> bursts = new PriorityQueue<>((a, b) -> Long.compare(a[0], b[0]));
+    int fraudulentCards = (int) Math.min(cards, Math.round(cards * fraudRatio));
+    for (int i = 0; i < fraudulentCards; i++) {
+      int card = random.nextInt(cards);
+      long burstStart = startEpochSecond + (long) (random.nextDouble() * Math.max(1, spanSeconds - FRAUD_BURST_SECONDS));
+      long share = limitCents / FRAUD_BURST_TRANSACTIONS + 1;
+      for (int k = 0; k < FRAUD_BURST_TRANSACTIONS; k++) {
+        bursts.add(new long[] {burstStart + k * (FRAUD_BURST_SECONDS / FRAUD_BURST_TRANSACTIONS), card, share});
+      }
+    }
+    long burstRecords = (long) fraudulentCards * FRAUD_BURST_TRANSACTIONS;
+    long regularRecords = Math.max(0, records - burstRecords);
+    ExpectedFraudOracle oracle = new ExpectedFraudOracle();
+
+    long regular = 0;
+    long written = 0;
+    while (written < records) {
+      long regularTime = startEpochSecond + (regularRecords == 0 ? 0 : regular * spanSeconds / regularRecords);
+      long time;
+      int card;
+      long amount;
+      if (!bursts.isEmpty() && (regular >= regularRecords || bursts.peek()[0] <= regularTime)) {
+        long[] burst = bursts.poll();
+        time = burst[0];
+        card = (int) burst[1];
+        amount = burst[2];
+      } else {
+        time = regularTime;
+        card = nextCard(random);
+        amount = nextAmount(random);
+        regular++;
+      }
+      boolean late = outOfOrderFraction > 0 && maxLatenessSeconds > 0 && random.nextDouble() < outOfOrderFraction;
+      if (late) {
+        // Written now, but happened earlier.
+        time -= 1 + (long) (random.nextDouble() * maxLatenessSeconds);
+      }
+      if (malformedRate > 0 && random.nextDouble() < malformedRate) {
+        writeMalformed(output, random, card, time);
+      }
+      writeRecord(output, card, time, amount);
+      oracle.accept(card, time, amount, late);
+      written++;
+    }
+    return oracle.finish();
+  }
+
+  /**
+   * Write the records to a file, and the expected fraudulent credit card ids to the file with
+   * ".expected" appended to its name, one per line.
+   * 
+   * @return the expected fraudulent credit card ids, sorted.
+   */
+  public List<String> generate(String filePath) throws IOException {
+    List<String> expected;
+    try (OutputStream output = new BufferedOutputStream(new FileOutputStream(filePath), 1 << 20)) {
+      expected = generate(output);
+    }
+    try (PrintWriter writer = new PrintWriter(filePath + ".expected", "US-ASCII")) {
+      expected.forEach(writer::println);
+    }
+    return expected;
+  }
+
+  /**
+   * @return the hashed credit card id of a credit card index: 27 lower case hex digits.
+   */
+  public static String creditCardId(int card) {
+    byte[] id = new byte[CREDIT_CARD_ID_LENGTH];
+    writeCreditCardId(card, id, 0);
+    return new String(id, StandardCharsets.US_ASCII);
+  }
+
+  private static void writeCreditCardId(int card, byte[] destination, int offset) {
+    long low = (card + 1L) * 0x9E3779B97F4A7C15L;
+    long high = (low ^ (low >>> 29)) * 0xBF58476D1CE4E5B9L;
+    for (int i = CREDIT_CARD_ID_LENGTH - 1; i >= 11; i--, low >>>= 4) {
+      destination[offset + i] = HEX_DIGITS[(int) (low & 0xF)];
+    }
+    for (int i = 10; i >= 0; i--, high >>>= 4) {
+      destination[offset + i] = HEX_DIGITS[(int) (high & 0xF)];
+    }
+  }
+
+  /**
+   * Draw a credit card index, from a Zipf-like power law of exponent {@link #skew} over the credit cards,
+   * sampled by inverting the continuous distribution function.
+   */
+  private int nextCard(Random random) {
+    double u = random.nextDouble();
+    double rank;
+    if (skew == 0) {
+      rank = u * cards;
+    } else if (Math.abs(skew - 1.0) < 1e-9) {
+      rank = Math.pow(cards + 1, u) - 1;
+    } else {
+      double exponent = 1 - skew;
+      rank = Math.pow((Math.pow(cards + 1, exponent) - 1) * u + 1, 1 / exponent) - 1;
+    }
+    return (int) Math.min(cards - 1, Math.max(0, (long) rank));
+  }
+
+  private long nextAmount(Random random) {
+    if (amountDistribution == AmountDistribution.UNIFORM) {
+      return minAmountCents + (long) (random.nextDouble() * (maxAmountCents - minAmountCents + 1));
+    }
+    long cents = Math.round(logNormalMedian * Math.exp(logNormalSigma * random.nextGaussian()) * 100);
+    return Math.max(minAmountCents, Math.min(cents, maxAmountCents));
+  }
+
+  private void writeRecord(OutputStream output, int card, long time, long cents) throws IOException {
+    lineLength = 0;
+    appendCreditCard(card);
+    append(',');
+    append(' ');
+    appendDateTime(time);
+    append(',');
+    append(' ');
+    appendAmount(cents);
+    append('\n');
+    output.write(line, 0, lineLength);
+  }
+
+  private void writeMalformed(OutputStream output, Random random, int card, long time) throws IOException {
+    byte[] template = MALFORMED_LINES[random.nextInt(MALFORMED_LINES.length)];
+    lineLength = 0;
+    for (int i = 0; i < template.length; i++) {
+      if (template[i] == '%' && template[i + 1] == 's') {
+        appendCreditCard(card);
+        i++;
+      } else if (template[i] == '%' && template[i + 1] == 't') {
+        appendDateTime(time);
+        i++;
+      } else {
+        append((char) template[i]);
+      }
+    }
+    append('\n');
+    output.write(line, 0, lineLength);
+  }
+
+  private void appendCreditCard(int card) {
+    writeCreditCardId(card, line, lineLength);
+    lineLength += CREDIT_CARD_ID_LENGTH;
+  }
+
+  private void appendDateTime(long epochSecond) {
+    long epochDay = Math.floorDiv(epochSecond, WINDOW_SECONDS);
+    int secondOfDay = (int) Math.floorMod(epochSecond, WINDOW_SECONDS);
+    // Civil date from days since 1970-01-01 (proleptic Gregorian).
+    long z = epochDay + 719468;
+    long era = Math.floorDiv(z, 146097);
+    long dayOfEra = z - era * 146097;
+    long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+    long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+    long mp = (5 * dayOfYear + 2) / 153;
+    int day = (int) (dayOfYear - (153 * mp + 2) / 5 + 1);
+    int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+    long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+    appendDigits(year, 4);
+    append('-');
+    appendDigits(month, 2);
+    append('-');
+    appendDigits(day, 2);
+    append('T');
+    appendDigits(secondOfDay / 3600, 2);
+    append(':');
+    appendDigits(secondOfDay / 60 % 60, 2);
+    append(':');
+    appendDigits(secondOfDay % 60, 2);
+  }
+
+  private void appendAmount(long cents) {
+    long units = cents / 100;
+    int digits = 1;
+    for (long v = units; v >= 10; v /= 10) {
+      digits++;
+    }
+    appendDigits(units, digits);
+    append('.');
+    appendDigits(cents % 100, 2);
+  }
+
+  private void appendDigits(long value, int digits) {
+    for (int i = digits - 1; i >= 0; i--) {
+      line[lineLength + i] = (byte) ('0' + value % 10);
+      value /= 10;
+    }
+    lineLength += digits;
+  }
+
+  private void append(char c) {
+    line[lineLength++] = (byte) c;
+  }
+
+  /**
+   * Exact event-time oracle of the expected fraudulent credit cards.
+   * 
+   * Records are released from a reorder buffer in transaction time order once no late record can
+   * precede them any more, then appended to the history of their credit card. The total of the 24 hours up to
+   * each record is summed by scanning the history backward, independently of the windows of the detector.
+   */
+  private class ExpectedFraudOracle {
+
+    // Records written in order only need a FIFO, late records are reordered by a heap.
+    private final PriorityQueue<long[]> lateRecords =
+        new PriorityQueue<>((a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(a[3], b[3]));
+    private final boolean reordering = outOfOrderFraction > 0 && maxLatenessSeconds > 0;
+    private final CardHistory[] histories = new CardHistory[cards];
+    private final BitSet fraudulentCards = new BitSet(cards);
+    private long[] times = new long[1024];
+    private long[] amounts = new long[1024];
+    private int[] recordCards = new int[1024];
+    private long[] sequences = new long[1024];
+    private int head;
+    private int pending;
+    private long maxTime = Long.MIN_VALUE;
+    private long sequence;
+    private long lastSweepTime;
+
+    void accept(int card, long time, long cents, boolean late) {
+      if (!reordering) {
+        release(card, time, cents);
+        return;
+      }
+      if (late) {
+        lateRecords.add(new long[] {time, card, cents, sequence++});
+      } else {
+        enqueue(card, time, cents, sequence++);
+        maxTime = time;
+      }
+      releaseUntil(maxTime - maxLatenessSeconds);
+    }
+
+    List<String> finish() {
+      releaseUntil(Long.MAX_VALUE);
+      List<String> fraudulent = new ArrayList<>(fraudulentCards.cardinality());
+      for (int card = fraudulentCards.nextSetBit(0); card >= 0; card = fraudulentCards.nextSetBit(card + 1)) {
+        fraudulent.add(creditCardId(card));
+      }
+      Collections.sort(fraudulent);
+      return fraudulent;
+    }
+
+    /**
+     * Release, in (time, sequence) order, the records older than the watermark.
+     */
+    private void releaseUntil(long watermark) {
+      while (true) {
+        long[] late = lateRecords.peek();
+        boolean inOrder = pending > 0 && times[head] < watermark;
+        if (inOrder && (late == null || times[head] < late[0] || times[head] == late[0] && sequences[head] < late[3])) {
+          release(recordCards[head], times[head], amounts[head]);
+          head = (head + 1) & (times.length - 1);
+          pending--;
+        } else if (late != null && late[0] < watermark) {
+          lateRecords.poll();
+          release((int) late[1], late[0], late[2]);
+        } else {
+          return;
+        }
+      }
+    }
+
+    private void enqueue(int card, long time, long cents, long recordSequence) {
+      if (pending == times.length) {
+        grow();
+      }
+      int tail = (head + pending) & (times.length - 1);
+      times[tail] = time;
+      amounts[tail] = cents;
+      recordCards[tail] = card;
+      sequences[tail] = recordSequence;
+      pending++;
+    }
+
+    private void grow() {
+      int capacity = times.length << 1;
+      long[] newTimes = new long[capacity];
+      long[] newAmounts = new long[capacity];
+      int[] newCards = new int[capacity];
+      long[] newSequences = new long[capacity];
+      for (int i = 0; i < pending; i++) {
+        int index = (head + i) & (times.length - 1);
+        newTimes[i] = times[index];
+        newAmounts[i] = amounts[index];
+        newCards[i] = recordCards[index];
+        newSequences[i] = sequences[index];
+      }
+      times = newTimes;
+      amounts = newAmounts;
+      recordCards = newCards;
+      sequences = newSequences;
+      head = 0;
+    }
+
+    private void release(int card, long time, long cents) {
+      if (fraudulentCards.get(card)) {
+        return;
+      }
+      CardHistory history = histories[card];
+      if (history == null) {
+        history = histories[card] = new CardHistory();
+      }
+      if (history.add(time, cents) > limitCents) {
+        fraudulentCards.set(card);
+        histories[card] = null;
+      }
+      if (time - lastSweepTime > WINDOW_SECONDS) {
+        // Drop idle credit cards once a day of transaction time, to keep the oracle small.
+        for (int i = 0; i < histories.length; i++) {
+          if (histories[i] != null && histories[i].latestTime() <= time - WINDOW_SECONDS) {
+            histories[i] = null;
+          }
+        }
+        lastSweepTime = time;
+      }
+    }
+  }
+
+  /**
+   * The records of a credit card released so far, in time order, from the first one still within 24 hours of
+   * the latest one.
+   */
+  private static class CardHistory {
+
+    private long[] times = new long[8];
+    private long[] amounts = new long[8];
+    private int start;
+    private int end;
+
+    /**
+     * Append a record, no older than the previous one.
+     *
+     * @return the total in cents of the records within 24 hours up to this one, this one included.
+     */
+    long add(long time, long cents) {
+      if (end == times.length) {
+        int size = end - start;
+        int capacity = size * 2 < times.length ? times.length : times.length * 2;
+        long[] newTimes = new long[capacity];
+        long[] newAmounts = new long[capacity];
+        System.arraycopy(times, start, newTimes, 0, size);
+        System.arraycopy(amounts, start, newAmounts, 0, size);
+        times = newTimes;
+        amounts = newAmounts;
+        start = 0;
+        end = size;
+      }
+      times[end] = time;
+      amounts[end] = cents;
+      end++;
+      long total = 0;
+      int i = end - 1;
+      for (; i >= start && times[i] > time - WINDOW_SECONDS; i--) {
+        total += amounts[i];
+      }
+      // Older records are out of every later window as well.
+      start = i + 1;
+      return total;
+    }
+
+    long latestTime() {
+      return times[end - 1];
+    }
+  }
+
+  /**
+   * Generate a transaction file from the command line.
+   * 
+   * Usage: TransactionGenerator <output file> [--records=N] [--cards=N] [--skew=S] [--span-hours=H]
+   * [--amounts=uniform:MIN:MAX|lognormal:MEDIAN:SIGMA] [--limit=L] [--fraud-ratio=R] [--out-of-order=F]
+   * [--max-lateness-seconds=S] [--malformed-rate=R] [--seed=N]
+   */
+  public static void main(String[] args) throws IOException {
+    Builder builder = new Builder();
+    String filePath = null;
+    TransactionGenerator generator;
+    try {
+      for (String arg : args) {
+        if (!arg.startsWith("--")) {
+          filePath = arg;
+        } else {
+          parseOption(builder, arg);
+        }
+      }
+      if (filePath == null) {
+        throw new IllegalArgumentException("Missing output file");
+      }
+      generator = builder.build();
+    } catch (IllegalArgumentException ex) {
+      System.err.println(ex.getMessage() + ".\n" + USAGE);
+      return;
+    }
+    List<String> expected = generator.generate(filePath);
+    System.out.println("Generated " + filePath + " with " + expected.size()
+        + " expected fraudulent credit card(s) in " + filePath + ".expected");
+  }
+
+  private static void parseOption(Builder builder, String arg) {
+    int equals = arg.indexOf('=');
+    if (equals < 0) {
+      throw new IllegalArgumentException("Unknown option [" + arg + "]");
+    }
+    String name = arg.substring(2, equals);
+    String value = arg.substring(equals + 1);
+    try {
+      switch (name) {
+        case "records":
+          builder.records(Long.parseLong(value));
+          break;
+        case "cards":
+          builder.cards(Integer.parseInt(value));
+          break;
+        case "skew":
+          builder.skew(Double.parseDouble(value));
+          break;
+        case "span-hours":
+          builder.spanSeconds(Long.parseLong(value) * 3600);
+          break;
+        case "amounts":
+          String[] parts = value.split(":");
+          if (parts.length == 3 && parts[0].equals("uniform")) {
+            builder.uniformAmounts(Double.parseDouble(parts[1]), Double.parseDouble(parts[2]));
+          } else if (parts.length == 3 && parts[0].equals("lognormal")) {
+            builder.logNormalAmounts(Double.parseDouble(parts[1]), Double.parseDouble(parts[2]));
+          } else {
+            throw new IllegalArgumentException("Invalid amounts [" + value + "]");
+          }
+          break;
+        case "limit":
+          builder.limit(Double.parseDouble(value));
+          break;
+        case "fraud-ratio":
+          builder.fraudRatio(Double.parseDouble(value));
+          break;
+        case "out-of-order":
+          builder.outOfOrderFraction(Double.parseDouble(value));
+          break;
+        case "max-lateness-seconds":
+          builder.maxLatenessSeconds(Long.parseLong(value));
+          break;
+        case "malformed-rate":
+          builder.malformedRate(Double.parseDouble(value));
+          break;
+        case "seed":
+          builder.seed(Long.parseLong(value));
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown option [" + arg + "]");
+      }
+    } catch (NumberFormatException | ArithmeticException ex) {
+      throw new IllegalArgumentException("Invalid value of option [" + arg + "]");
+    }
+  }
+}
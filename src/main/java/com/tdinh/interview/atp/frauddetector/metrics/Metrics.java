@@ -0,0 +1,198 @@
+package com.tdinh.interview.atp.frauddetector.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Metrics of the loaders and detectors: records and bytes read, invalid records by reason, sampled
+ * scan latency, live credit cards and window entries.
+ *
+ * Counters are {@link LongAdder}s, striped across threads, so parsers and scan workers running in
+ * parallel do not contend on them. Hot loops do not touch them per record either: they count locally and
+ * add their counts every {@link #FLUSH_INTERVAL} records, and only time one transaction scan out of
+ * {@link #LATENCY_SAMPLE_INTERVAL}.
+ *
+ * Live credit cards and window entries are gauges read from the engines on demand. The engines are not
+ * thread-safe, so these are approximate while a scan is running.
+ *
+ * Instrumented classes take an optional {@link Metrics}, and do nothing more when it is null.
+ *
+ * @author Tuan Dinh
+ *
+ */
+public class Metrics {
+
+  /**
+   * Number of records after which hot loops add their local counts.
+   */
+  public static final int FLUSH_INTERVAL = 64 * 1024;
+
+  /**
+   * One transaction scan out of this many is timed. A power of two.
+   */
+  public static final int LATENCY_SAMPLE_INTERVAL = 64;
+
+  private final long startNanos = System.nanoTime();
+  private final LongAdder records = new LongAdder();
+  private final LongAdder bytesRead = new LongAdder();
+  private final Map<String, LongAdder> invalidRecords = new ConcurrentHashMap<>();
+  private final LatencyHistogram scanLatency = new LatencyHistogram();
+  private volatile LongSupplier liveCreditCards = () -> 0;
+  private volatile LongSupplier windowEntries = () -> 0;
+
+  /**
+   * Add records read, valid or not.
+   */
+  public void addRecords(long count) {
+    records.add(count);
+  }
+
+  public void addBytesRead(long bytes) {
+    bytesRead.add(bytes);
+  }
+
+  /**
+   * Count an invalid record.
+   *
+   * @param reason reason given by {@link com.tdinh.interview.atp.frauddetector.transaction.TransactionResolver}.
+   *        The offending value in square brackets is dropped so that reasons group into a few kinds.
+   */
+  public void addInvalidRecord(String reason) {
+    invalidRecords.computeIfAbsent(reasonKind(reason), k -> new LongAdder()).increment();
+  }
+
+  /**
+   * @return the reason of an invalid record without the offending value in square brackets, e.g.
+   *         "Invalid amount" for "Invalid amount [Eight dollars]".
+   */
+  public static String reasonKind(String reason) {
+    int bracket = reason.indexOf(" [");
+    return bracket < 0 ? reason : reason.substring(0, bracket);
+  }
+
+  /**
+   * Record a sampled transaction scan latency.
+   */
+  public void recordScanLatency(long nanos) {
+    scanLatency.record(nanos);
+  }
+
+  /**
+   * Set the gauges of the running scan.
+   */
+  public void setGauges(LongSupplier liveCreditCards, LongSupplier windowEntries) {
+    this.liveCreditCards = liveCreditCards;
+    this.windowEntries = windowEntries;
+  }
+
+  public long getRecords() {
+    return records.sum();
+  }
+
+  public long getBytesRead() {
+    return bytesRead.sum();
+  }
+
+  public long getInvalidRecords() {
+    long total = 0;
+    for (LongAdder count : invalidRecords.values()) {
+      total += count.sum();
+    }
+    return total;
+  }
+
+  /**
+   * @return invalid record counts by kind of reason, sorted by reason.
+   */
+  public Map<String, Long> getInvalidRecordsByReason() {
+    Map<String, Long> counts = new TreeMap<>();
+    invalidRecords.forEach((reason, count) -> counts.put(reason, count.sum()));
+    return counts;
+  }
+
+  public LatencyHistogram getScanLatency() {
+    return scanLatency;
+  }
+
+  public long getLiveCreditCards() {
+    return liveCreditCards.getAsLong();
+  }
+
+  public long getWindowEntries() {
+    return windowEntries.getAsLong();
+  }
+
+  /**
+   * @return nanoseconds since the metrics were created.
+   */
+  public long getElapsedNanos() {
+    return System.nanoTime() - startNanos;
+  }
+
+  /**
+   * @return a one line summary, e.g. for a periodic log.
+   */
+  public String toLogLine() {
+    long elapsedNanos = getElapsedNanos();
+    long records = getRecords();
+    return "METRICS elapsed=" + elapsedNanos / 1_000_000 + "ms records=" + records
+        + " records_per_second=" + perSecond(records, elapsedNanos) + " invalid=" + getInvalidRecords()
+        + " bytes_read=" + getBytesRead() + " live_credit_cards=" + getLiveCreditCards()
+        + " window_entries=" + getWindowEntries() + " scan_p50=" + scanLatency.quantile(0.5)
+        + "ns scan_p99=" + scanLatency.quantile(0.99) + "ns";
+  }
+
+  /**
+   * @return all metrics as a JSON object.
+   */
+  public String toJson() {
+    long elapsedNanos = getElapsedNanos();
+    long records = getRecords();
+    StringBuilder json = new StringBuilder("{");
+    json.append("\"elapsed_ms\":").append(elapsedNanos / 1_000_000);
+    json.append(",\"records\":").append(records);
+    json.append(",\"records_per_second\":").append(perSecond(records, elapsedNanos));
+    json.append(",\"bytes_read\":").append(getBytesRead());
+    json.append(",\"invalid_records\":").append(getInvalidRecords());
+    json.append(",\"invalid_records_by_reason\":{");
+    String separator = "";
+    for (Map.Entry<String, Long> entry : getInvalidRecordsByReason().entrySet()) {
+      json.append(separator).append('"').append(escape(entry.getKey())).append("\":").append(entry.getValue());
+      separator = ",";
+    }
+    json.append("},\"live_credit_cards\":").append(getLiveCreditCards());
+    json.append(",\"window_entries\":").append(getWindowEntries());
+    json.append(",\"scan_latency_ns\":{\"samples\":").append(scanLatency.count());
+    json.append(",\"p50\":").append(scanLatency.quantile(0.5));
+    json.append(",\"p90\":").append(scanLatency.quantile(0.9));
+    json.append(",\"p99\":").append(scanLatency.quantile(0.99));
+    json.append(",\"p999\":").append(scanLatency.quantile(0.999));
+    json.append(",\"max\":").append(scanLatency.quantile(1.0));
+    return json.append("}}").toString();
+  }
+
+  private static long perSecond(long count, long elapsedNanos) {
+    return elapsedNanos <= 0 ? 0 : (long) (count * 1e9 / elapsedNanos);
+  }
+
+  /**
+   * @return the value escaped for a JSON string, without the quotes.
+   */
+  public static String escape(String value) {
+    StringBuilder escaped = new StringBuilder(value.length());
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == '"' || c == '\\') {
+        escaped.append('\\').append(c);
+      } else if (c < ' ') {
+        escaped.append(String.format("\\u%04x", (int) c));
+      } else {
+        escaped.append(c);
+      }
+    }
+    return escaped.toString();
+  }
+}
@@ -0,0 +1,37 @@
+package com.tdinh.interview.atp.frauddetector.metrics;
+
+import java.io.Closeable;
+import java.io.PrintStream;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Print the {@link Metrics#toLogLine()} summary periodically, from a daemon thread.
+ * 
+ * @author Tuan Dinh
+ *
+ */
+public class MetricsReporter implements Closeable {
+
+  private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "metrics-reporter");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  /**
+   * @param metrics metrics to report.
+   * @param intervalSeconds seconds between two log lines.
+   * @param out where to print the log lines.
+   */
+  public MetricsReporter(Metrics metrics, long intervalSeconds, PrintStream out) {
+    scheduler.scheduleAtFixedRate(() -> out.println(metrics.toLogLine()), intervalSeconds, intervalSeconds,
+        TimeUnit.SECONDS);
+  }
+
+  @Override
+  public void close() {
+    scheduler.shutdownNow();
+  }
+}
@@ -0,0 +1,48 @@
+package com.tdinh.interview.atp.frauddetector.metrics;
+
+/**
+ * Times one transaction scan out of {@link Metrics#LATENCY_SAMPLE_INTERVAL} into the scan latency of
+ * {@link Metrics}, so that timing itself stays off the hot path. Not thread-safe: one per scanning thread.
+ * 
+ * <pre>
+ * long start = timer.start();
+ * engine.accept(...);
+ * timer.stop(start);
+ * </pre>
+ * 
+ * @author Tuan Dinh
+ *
+ */
+public final class ScanTimer {
+
+  private static final long NOT_SAMPLED = Long.MIN_VALUE;
+
+  private final Metrics metrics;
+  private int scans;
+
+  /**
+   * @param metrics metrics to record in, or null to time nothing.
+   */
+  public ScanTimer(Metrics metrics) {
+    this.metrics = metrics;
+  }
+
+  /**
+   * @return the start time if this scan is sampled.
+   */
+  public long start() {
+    if (metrics == null || (++scans & (Metrics.LATENCY_SAMPLE_INTERVAL - 1)) != 0) {
+      return NOT_SAMPLED;
+    }
+    return System.nanoTime();
+  }
+
+  /**
+   * @param start value returned by {@link #start()}.
+   */
+  public void stop(long start) {
+    if (start != NOT_SAMPLED) {
+      metrics.recordScanLatency(System.nanoTime() - start);
+    }
+  }
+}
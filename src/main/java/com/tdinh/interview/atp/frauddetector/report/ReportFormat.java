@@ -0,0 +1,200 @@
+package com.tdinh.interview.atp.frauddetector.report;
+
+import com.tdinh.interview.atp.frauddetector.metrics.Metrics;
+import java.util.List;
+
+/**
+ * Formats of the lines written by a {@link ReportSink}: fraudulent credit cards to standard output, and
+ * invalid records and their summary to standard error.
+ *
+ * - TEXT: the credit card id, followed by the rule name if any, and "WARN - ..." lines. Limit sweeps are
+ * "Limit LIMIT: COUNT fraudulent credit card(s)" lines, followed by their credit card ids if requested.
+ * - CSV: "credit_card_id[,rule]" rows, and "invalid_record,REASON,RECORD" and
+ * "invalid_records,REASON,COUNT,EXAMPLE..." rows, quoted as needed. Limit sweeps are "limit,LIMIT,COUNT" and
+ * "limit_credit_card,LIMIT,CREDIT_CARD_ID" rows.
+ * - JSON: one JSON object per line, {"creditCardId":...,"rule":...}, {"invalidRecord":...,"reason":...}
+ * and {"invalidRecords":COUNT,"reason":...,"examples":[...]}. Limit sweeps are {"limit":LIMIT,"fraudulent":COUNT}
+ * and {"limit":LIMIT,"creditCardId":...}.
+ *
+ * @author Tuan Dinh
+ *
+ */
+public enum ReportFormat {
+
+  TEXT {
+    @Override
+    void fraud(StringBuilder line, String creditCardId, String rule) {
+      line.append(creditCardId);
+      if (rule != null) {
+        line.append(' ').append(rule);
+      }
+    }
+
+    @Override
+    void invalidRecord(StringBuilder line, String record, String reason) {
+      line.append("WARN - invalid record: [").append(record).append("]. Reason: ").append(reason).append(". Ignore");
+    }
+
+    @Override
+    void invalidRecords(StringBuilder line, String reasonKind, long count, List<String> examples) {
+      line.append("WARN - ").append(count).append(" invalid record(s). Reason: ").append(reasonKind)
+          .append(". Examples:");
+      for (String example : examples) {
+        line.append(" [").append(example).append(']');
+      }
+    }
+
+    @Override
+    void limit(StringBuilder line, String limit, int count, boolean creditCardsFollow) {
+      line.append("Limit ").append(limit).append(": ").append(count).append(" fraudulent credit card(s)");
+      if (creditCardsFollow && count > 0) {
+        line.append(':');
+      }
+    }
+
+    @Override
+    void limitFraud(StringBuilder line, String limit, String creditCardId) {
+      line.append(creditCardId);
+    }
+  },
+
+  CSV {
+    @Override
+    void fraud(StringBuilder line, String creditCardId, String rule) {
+      csv(line, creditCardId);
+      if (rule != null) {
+        csv(line.append(','), rule);
+      }
+    }
+
+    @Override
+    void invalidRecord(StringBuilder line, String record, String reason) {
+      csv(line.append("invalid_record,"), reason);
+      csv(line.append(','), record);
+    }
+
+    @Override
+    void invalidRecords(StringBuilder line, String reasonKind, long count, List<String> examples) {
+      csv(line.append("invalid_records,"), reasonKind);
+      line.append(',').append(count);
+      for (String example : examples) {
+        csv(line.append(','), example);
+      }
+    }
+
+    @Override
+    void limit(StringBuilder line, String limit, int count, boolean creditCardsFollow) {
+      line.append("limit,").append(limit).append(',').append(count);
+    }
+
+    @Override
+    void limitFraud(StringBuilder line, String limit, String creditCardId) {
+      csv(line.append("limit_credit_card,").append(limit).append(','), creditCardId);
+    }
+  },
+
+  JSON {
+    @Override
+    void fraud(StringBuilder line, String creditCardId, String rule) {
+      line.append("{\"creditCardId\":\"").append(Metrics.escape(creditCardId)).append('"');
+      if (rule != null) {
+        line.append(",\"rule\":\"").append(Metrics.escape(rule)).append('"');
+      }
+      line.append('}');
+    }
+
+    @Override
+    void invalidRecord(StringBuilder line, String record, String reason) {
+      line.append("{\"invalidRecord\":\"").append(Metrics.escape(record))
+          .append("\",\"reason\":\"").append(Metrics.escape(reason)).append("\"}");
+    }
+
+    @Override
+    void invalidRecords(StringBuilder line, String reasonKind, long count, List<String> examples) {
+      line.append("{\"invalidRecords\":").append(count)
+          .append(",\"reason\":\"").append(Metrics.escape(reasonKind)).append("\",\"examples\":[");
+      String separator = "";
+      for (String example : examples) {
+        line.append(separator).append('"').append(Metrics.escape(example)).append('"');
+        separator = ",";
+      }
+      line.append("]}");
+    }
+
+    @Override
+    void limit(StringBuilder line, String limit, int count, boolean creditCardsFollow) {
+      line.append("{\"limit\":").append(limit).append(",\"fraudulent\":").append(count).append('}');
+    }
+
+    @Override
+    void limitFraud(StringBuilder line, String limit, String creditCardId) {
+      line.append("{\"limit\":").append(limit).append(",\"creditCardId\":\"").append(Metrics.escape(creditCardId))
+          .append("\"}");
+    }
+  };
+
+  /**
+   * Append a fraudulent credit card, without the line terminator.
+   *
+   * @param rule name of the rule that detected it, or null for the amount limit.
+   */
+  abstract void fraud(StringBuilder line, String creditCardId, String rule);
+
+  /**
+   * Append an invalid record, without the line terminator.
+   */
+  abstract void invalidRecord(StringBuilder line, String record, String reason);
+
+  /**
+   * Append the count and sampled examples of the invalid records of a reason, without the line terminator.
+   */
+  abstract void invalidRecords(StringBuilder line, String reasonKind, long count, List<String> examples);
+
+  /**
+   * Append the number of fraudulent credit cards of a limit of a sweep, without the line terminator.
+   *
+   * @param limit plain decimal limit, e.g. "35.00".
+   * @param creditCardsFollow true if the fraudulent credit cards of the limit are reported next.
+   */
+  abstract void limit(StringBuilder line, String limit, int count, boolean creditCardsFollow);
+
+  /**
+   * Append a fraudulent credit card of a limit of a sweep, without the line terminator.
+   */
+  abstract void limitFraud(StringBuilder line, String limit, String creditCardId);
+
+  /**
+   * @param value "text", "csv" or "json".
+   * @return the format of that name.
+   * @throws IllegalArgumentException if there is no such format.
+   */
+  public static ReportFormat parse(String value) {
+    for (ReportFormat format : values()) {
+      if (format.name().equalsIgnoreCase(value)) {
+        return format;
+      }
+    }
+    throw new IllegalArgumentException("Invalid format [" + value + "], expecting text, csv or json");
+  }
+
+  private static void csv(StringBuilder line, String value) {
+    boolean quoted = false;
+    for (int i = 0; i < value.length() && !quoted; i++) {
+      char c = value.charAt(i);
+      quoted = c == ',' || c == '"' || c == '\n' || c == '\r';
+    }
+    if (!quoted) {
+      line.append(value);
+      return;
+    }
+    line.append('"');
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == '"') {
+        line.append('"');
+      }
+      line.append(c);
+    }
+    line.append('"');
+  }
+}
@@ -0,0 +1,309 @@
+package com.tdinh.interview.atp.frauddetector.report;
+
+import com.tdinh.interview.atp.frauddetector.metrics.Metrics;
+import com.tdinh.interview.atp.frauddetector.transaction.InvalidRecordListener;
+import java.io.Closeable;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * The output of a scan: fraudulent credit cards to standard output, invalid records to standard error.
+ *
+ * Lines are formatted into a buffer per stream by the scanning threads, and written by a thread of its own
+ * a batch at a time, so a scan never waits on a {@link PrintStream}, which locks and may flush on every line.
+ * Batches are written as soon as they are large or {@link #flush()} is called, and at least every
+ * {@link #FLUSH_INTERVAL_MILLIS} so that streamed results still show up promptly. While a stream is slow, e.g.
+ * piped to a slow reader, the scan is held back once {@link #MAX_BUFFERED_CHARS} are waiting for it, so the
+ * buffers never grow beyond that high-water mark, and no line is dropped.
+ *
+ * Only the first invalid records are reported one by one, up to a maximum. All invalid records are counted
+ * by reason, the offending value aside, keeping a few examples of each reason sampled uniformly, and if any
+ * was not reported, the counts and examples of every reason are reported when the sink is closed. A file
+ * with millions of invalid records therefore costs a few lines rather than millions.
+ *
+ * @author Tuan Dinh
+ *
+ */
+public class ReportSink implements InvalidRecordListener, Closeable {
+
+  /**
+   * Every invalid record is reported one by one by default, as the loaders print them.
+   */
+  public static final long DEFAULT_MAX_WARNINGS = Long.MAX_VALUE;
+
+  static final long FLUSH_INTERVAL_MILLIS = 100;
+  static final int EXAMPLES = 3;
+  static final int MAX_BUFFERED_CHARS = 1024 * 1024;
+
+  private static final int BATCH_SIZE = 64 * 1024;
+
+  private final PrintStream out;
+  private final PrintStream err;
+  private final ReportFormat format;
+  private final long maxWarnings;
+  private final int maxBufferedChars;
+  private final Object lock = new Object();
+  private final Random random = new Random();
+  private final Map<String, InvalidRecords> invalidRecords = new LinkedHashMap<>();
+  private final Thread writer;
+  // Lines not written yet. Swapped with the spare buffers by the writer.
+  private StringBuilder outBuffer = new StringBuilder();
+  private StringBuilder errBuffer = new StringBuilder();
+  private StringBuilder spareOutBuffer = new StringBuilder();
+  private StringBuilder spareErrBuffer = new StringBuilder();
+  private long warnings;
+  private long suppressedWarnings;
+  private boolean flushing;
+  private boolean closed;
+
+  /**
+   * @param out stream of the fraudulent credit cards.
+   * @param err stream of the invalid records.
+   * @param format format of the lines.
+   * @param maxWarnings number of invalid records reported one by one, the others being summarized.
+   */
+  public ReportSink(PrintStream out, PrintStream err, ReportFormat format, long maxWarnings) {
+    this(out, err, format, maxWarnings, MAX_BUFFERED_CHARS);
+  }
+
+  /**
+   * @param maxBufferedChars characters buffered for a stream past which reports wait for the writer.
+   */
+  ReportSink(PrintStream out, PrintStream err, ReportFormat format, long maxWarnings, int maxBufferedChars) {
+    if (maxWarnings < 0) {
+      throw new IllegalArgumentException("Invalid maximum warnings [" + maxWarnings + "]");
+    }
+    this.out = out;
+    this.err = err;
+    this.format = format;
+    this.maxWarnings = maxWarnings;
+    this.maxBufferedChars = maxBufferedChars;
+    this.writer = new Thread(this::write, "report-writer");
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  /**
+   * Report a credit card detected against the amount limit.
+   */
+  public void fraud(String creditCardId) {
+    fraud(creditCardId, null);
+  }
+
+  /**
+   * Report a credit card detected by a rule.
+   *
+   * @param rule name of the rule, or null for the amount limit.
+   */
+  public void fraud(String creditCardId, String rule) {
+    synchronized (lock) {
+      awaitRoom();
+      format.fraud(outBuffer, creditCardId, rule);
+      endLine(outBuffer);
+    }
+  }
+
+  /**
+   * Report the number of fraudulent credit cards of a limit of a sweep.
+   *
+   * @param limit plain decimal limit, e.g. "35.00".
+   * @param creditCardsFollow true if the fraudulent credit cards of the limit are reported next, see
+   *     {@link #limitFraud(String, String)}.
+   */
+  public void limit(String limit, int count, boolean creditCardsFollow) {
+    synchronized (lock) {
+      awaitRoom();
+      format.limit(outBuffer, limit, count, creditCardsFollow);
+      endLine(outBuffer);
+    }
+  }
+
+  /**
+   * Report a fraudulent credit card of a limit of a sweep.
+   */
+  public void limitFraud(String limit, String creditCardId) {
+    synchronized (lock) {
+      awaitRoom();
+      format.limitFraud(outBuffer, limit, creditCardId);
+      endLine(outBuffer);
+    }
+  }
+
+  /**
+   * Report a line for a human reader, such as a count of results. Only written in text format, so that the
+   * other formats hold records only.
+   */
+  public void message(String line) {
+    if (format != ReportFormat.TEXT) {
+      return;
+    }
+    synchronized (lock) {
+      awaitRoom();
+      endLine(outBuffer.append(line));
+    }
+  }
+
+  @Override
+  public void invalidRecord(String record, String reason) {
+    synchronized (lock) {
+      InvalidRecords kind = invalidRecords.computeIfAbsent(Metrics.reasonKind(reason), k -> new InvalidRecords());
+      kind.sample(record, random);
+      if (warnings < maxWarnings) {
+        awaitRoom();
+        warnings++;
+        format.invalidRecord(errBuffer, record, reason);
+        endLine(errBuffer);
+      } else {
+        suppressedWarnings++;
+      }
+    }
+  }
+
+  /**
+   * @return number of invalid records not reported one by one so far.
+   */
+  public long getSuppressedWarnings() {
+    synchronized (lock) {
+      return suppressedWarnings;
+    }
+  }
+
+  /**
+   * Write the lines reported so far without waiting for the flush interval, e.g. for a fraud detected while
+   * following a file to show up at once. Does not wait for them to be written.
+   */
+  public void flush() {
+    synchronized (lock) {
+      flushing = true;
+      lock.notifyAll();
+    }
+  }
+
+  /**
+   * Report the summary of the invalid records if any was not reported, and wait until every line is written.
+   * Closing twice has no effect.
+   */
+  @Override
+  public void close() {
+    synchronized (lock) {
+      if (closed) {
+        return;
+      }
+      if (suppressedWarnings > 0) {
+        for (Map.Entry<String, InvalidRecords> entry : invalidRecords.entrySet()) {
+          format.invalidRecords(errBuffer, entry.getKey(), entry.getValue().count, entry.getValue().examples);
+          errBuffer.append(System.lineSeparator());
+        }
+      }
+      closed = true;
+      lock.notifyAll();
+    }
+    boolean interrupted = false;
+    while (true) {
+      try {
+        writer.join();
+        break;
+      } catch (InterruptedException ex) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Wait, holding back the scan, while a stream has more than the high-water mark waiting for the writer.
+   */
+  private void awaitRoom() {
+    boolean interrupted = false;
+    while (!closed && (outBuffer.length() >= maxBufferedChars || errBuffer.length() >= maxBufferedChars)) {
+      lock.notifyAll();
+      try {
+        lock.wait();
+      } catch (InterruptedException ex) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void endLine(StringBuilder buffer) {
+    buffer.append(System.lineSeparator());
+    if (buffer.length() >= BATCH_SIZE) {
+      lock.notifyAll();
+    }
+  }
+
+  /**
+   * Write the buffered lines until the sink is closed and its last lines written.
+   */
+  private void write() {
+    while (true) {
+      StringBuilder outBatch;
+      StringBuilder errBatch;
+      boolean last;
+      synchronized (lock) {
+        if (!closed && !flushing && outBuffer.length() < BATCH_SIZE && errBuffer.length() < BATCH_SIZE) {
+          try {
+            lock.wait(FLUSH_INTERVAL_MILLIS);
+          } catch (InterruptedException ex) {
+            // Only stopped by close.
+          }
+        }
+        outBatch = outBuffer;
+        errBatch = errBuffer;
+        outBuffer = spareOutBuffer;
+        errBuffer = spareErrBuffer;
+        flushing = false;
+        last = closed;
+        // Room again for the reports waiting on the high-water mark.
+        lock.notifyAll();
+      }
+      flush(out, outBatch);
+      flush(err, errBatch);
+      synchronized (lock) {
+        spareOutBuffer = outBatch;
+        spareErrBuffer = errBatch;
+      }
+      if (last) {
+        return;
+      }
+    }
+  }
+
+  private static void flush(PrintStream stream, StringBuilder batch) {
+    if (batch.length() > 0) {
+      stream.print(batch);
+      stream.flush();
+      batch.setLength(0);
+    }
+  }
+
+  /**
+   * Invalid records of a reason: their count, and examples sampled uniformly among them (reservoir sampling).
+   */
+  private static final class InvalidRecords {
+
+    private final List<String> examples = new ArrayList<>(EXAMPLES);
+    private long count;
+
+    void sample(String record, Random random) {
+      count++;
+      if (examples.size() < EXAMPLES) {
+        examples.add(record);
+      } else {
+        long slot = (long) (random.nextDouble() * count);
+        if (slot < EXAMPLES) {
+          examples.set((int) slot, record);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,181 @@
+package com.tdinh.interview.atp.frauddetector.rule;
+
+import com.tdinh.interview.atp.frauddetector.transaction.Amounts;
+
+/**
+ * The sliding windows of a single credit card over several window lengths, sharing one deque.
+ *
+ * Transactions are kept in a circular buffer in the order they are added, back to the start of the
+ * longest window. Each window length has its own start in that buffer, with the running total amount
+ * of the transactions from its start to the tail. Shorter windows start later in the same buffer, so
+ * a transaction is stored once however many windows it belongs to, and adding a transaction costs
+ * amortized O(1) per window length.
+ *
+ * With time buckets of more than a second, transactions of the same bucket are merged into a single
+ * entry, stamped with the last second of the bucket and holding the total amount and number of its
+ * transactions. A window then retains at most one entry per bucket it spans, however many transactions
+ * the credit card makes. An entry stays in a window while any second of its bucket is within the
+ * window, so a window may include up to a bucket less a second of transactions older than its length.
+ *
+ * Amounts are fixed-point minor units, as in {@link com.tdinh.interview.atp.frauddetector.window.CreditCardWindow},
+ * and window totals beyond the range of a long are held exactly and read saturated in the same way.
+ *
+ * @author Tuan Dinh
+ *
+ */
+class CreditCardMultiWindow {
+
+  private static final int INITIAL_CAPACITY = 4;
+
+  private long[] transEpochSeconds = new long[INITIAL_CAPACITY];
+  private long[] amounts = new long[INITIAL_CAPACITY];
+  // Number of transactions of each entry, only when transactions are merged by bucket.
+  private int[] counts;
+  // Positions only ever increase, and are reduced modulo the capacity to index the buffer.
+  private final int[] starts;
+  private final long[] totalAmounts;
+  private final long[] totalCarries;
+  private final int[] totalCounts;
+  private final long bucketSeconds;
+  private int tail;
+
+  /**
+   * @param windows number of window lengths, longest last.
+   * @param bucketSeconds length of the time buckets transactions are merged by, 1 to keep each transaction.
+   */
+  CreditCardMultiWindow(int windows, long bucketSeconds) {
+    starts = new int[windows];
+    totalAmounts = new long[windows];
+    totalCarries = new long[windows];
+    totalCounts = new int[windows];
+    this.bucketSeconds = bucketSeconds;
+    if (bucketSeconds > 1) {
+      counts = new int[INITIAL_CAPACITY];
+    }
+  }
+
+  /**
+   * Evict transactions from the start of each window while they occur at or before its cut off.
+   *
+   * @param transEpochSecond epoch seconds of the transaction about to be added.
+   * @param windowSeconds window lengths, ascending.
+   * @return number of entries no longer in any window, i.e. dropped from the buffer.
+   */
+  int evict(long transEpochSecond, long[] windowSeconds) {
+    int longest = starts.length - 1;
+    int oldStart = starts[longest];
+    int mask = transEpochSeconds.length - 1;
+    for (int window = 0; window <= longest; window++) {
+      long cutOff = transEpochSecond - windowSeconds[window];
+      int start = starts[window];
+      long total = totalAmounts[window];
+      long carries = totalCarries[window];
+      int count = totalCounts[window];
+      while (start != tail && transEpochSeconds[start & mask] <= cutOff) {
+        carries += Amounts.borrow(total, amounts[start & mask]);
+        total -= amounts[start & mask];
+        count -= counts == null ? 1 : counts[start & mask];
+        start++;
+      }
+      starts[window] = start;
+      totalAmounts[window] = total;
+      totalCarries[window] = carries;
+      totalCounts[window] = count;
+    }
+    return starts[longest] - oldStart;
+  }
+
+  /**
+   * Append a transaction to the tail of every window, merged into the last entry if of the same bucket.
+   *
+   * @return 1 if a new entry was retained, 0 if the transaction was merged.
+   */
+  int add(long transEpochSecond, long amount) {
+    int added = 1;
+    if (counts == null) {
+      append(transEpochSecond, amount);
+    } else {
+      long bucketEnd = Math.floorDiv(transEpochSecond, bucketSeconds) * bucketSeconds + bucketSeconds - 1;
+      int last = (tail - 1) & (transEpochSeconds.length - 1);
+      // An entry whose amount would overflow is not merged into: another entry of the same bucket follows it.
+      if (size() > 0 && transEpochSeconds[last] == bucketEnd && Amounts.carry(amounts[last], amount) == 0) {
+        amounts[last] += amount;
+        counts[last]++;
+        added = 0;
+      } else {
+        append(bucketEnd, amount);
+      }
+    }
+    for (int window = 0; window < totalAmounts.length; window++) {
+      totalCarries[window] += Amounts.carry(totalAmounts[window], amount);
+      totalAmounts[window] += amount;
+      totalCounts[window]++;
+    }
+    return added;
+  }
+
+  private void append(long epochSecond, long amount) {
+    if (size() == transEpochSeconds.length) {
+      grow();
+    }
+    int slot = tail & (transEpochSeconds.length - 1);
+    transEpochSeconds[slot] = epochSecond;
+    amounts[slot] = amount;
+    if (counts != null) {
+      counts[slot] = 1;
+    }
+    tail++;
+  }
+
+  /**
+   * @return total amount in minor units of a window, saturated to the range of a long.
+   */
+  long getTotalAmount(int window) {
+    return Amounts.saturate(totalAmounts[window], totalCarries[window]);
+  }
+
+  /**
+   * @return number of transactions in a window.
+   */
+  int getCount(int window) {
+    return totalCounts[window];
+  }
+
+  /**
+   * @return epoch seconds of the most recently added transaction, or of the last second of its bucket,
+   *         or {@link Long#MIN_VALUE} if empty.
+   */
+  long getLatestEpochSecond() {
+    if (size() == 0) {
+      return Long.MIN_VALUE;
+    }
+    return transEpochSeconds[(tail - 1) & (transEpochSeconds.length - 1)];
+  }
+
+  /**
+   * @return number of entries retained, i.e. in the longest window.
+   */
+  int size() {
+    return tail - starts[starts.length - 1];
+  }
+
+  private void grow() {
+    int capacity = transEpochSeconds.length;
+    int mask = capacity - 1;
+    long[] newEpochSeconds = new long[capacity << 1];
+    long[] newAmounts = new long[capacity << 1];
+    int[] newCounts = counts == null ? null : new int[capacity << 1];
+    int newMask = (capacity << 1) - 1;
+    // Positions keep their values, only their slots move.
+    for (int position = starts[starts.length - 1]; position != tail; position++) {
+      newEpochSeconds[position & newMask] = transEpochSeconds[position & mask];
+      newAmounts[position & newMask] = amounts[position & mask];
+      if (counts != null) {
+        newCounts[position & newMask] = counts[position & mask];
+      }
+    }
+    transEpochSeconds = newEpochSeconds;
+    amounts = newAmounts;
+    counts = newCounts;
+  }
+}
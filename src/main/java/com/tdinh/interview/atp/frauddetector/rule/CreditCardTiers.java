@@ -0,0 +1,67 @@
+package com.tdinh.interview.atp.frauddetector.rule;
+
+import com.tdinh.interview.atp.frauddetector.transaction.error.FileLoaderException;
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The tier of each credit card, e.g. "standard" or "premium", that {@link WindowRule}(s) may be restricted to.
+ * Credit cards without a tier are only checked against the rules without one.
+ *
+ * @author Tuan Dinh
+ *
+ */
+public class CreditCardTiers {
+
+  private final Map<String, String> tiers = new HashMap<>();
+
+  /**
+   * Load credit card tiers from a file, one credit card per line:
+   * <hashed_credit_card_number>, <tier>
+   *
+   * Blank lines are ignored.
+   *
+   * @param filePath path to file.
+   * @return the tiers of the file.
+   * @throws FileLoaderException if the file cannot be read or a line is not in that format.
+   */
+  public static CreditCardTiers load(String filePath) throws FileLoaderException {
+    CreditCardTiers tiers = new CreditCardTiers();
+    try (BufferedReader bufferedReader = new BufferedReader(new FileReader(filePath))) {
+      String record;
+      int line = 0;
+      while ((record = bufferedReader.readLine()) != null) {
+        line++;
+        if (record.trim().isEmpty()) {
+          continue;
+        }
+        String[] fields = record.split(",");
+        if (fields.length != 2 || fields[0].trim().isEmpty() || fields[1].trim().isEmpty()) {
+          throw new FileLoaderException("Invalid credit card tier [" + record + "] at line " + line + " of " + filePath);
+        }
+        tiers.put(fields[0].trim(), fields[1].trim());
+      }
+    } catch (IOException ex) {
+      throw new FileLoaderException(ex.getMessage());
+    }
+    return tiers;
+  }
+
+  public void put(String creditCardId, String tier) {
+    tiers.put(creditCardId, tier);
+  }
+
+  /**
+   * @return tier of the credit card, or null if it has none.
+   */
+  public String tierOf(String creditCardId) {
+    return tiers.get(creditCardId);
+  }
+
+  public int size() {
+    return tiers.size();
+  }
+}
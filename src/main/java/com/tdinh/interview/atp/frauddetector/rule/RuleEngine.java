@@ -0,0 +1,395 @@
+package com.tdinh.interview.atp.frauddetector.rule;
+
+import com.tdinh.interview.atp.frauddetector.transaction.Amounts;
+import com.tdinh.interview.atp.frauddetector.transaction.CreditCardDictionary;
+import com.tdinh.interview.atp.frauddetector.transaction.Transaction;
+import com.tdinh.interview.atp.frauddetector.transaction.TransactionBatch;
+import com.tdinh.interview.atp.frauddetector.window.IdleCreditCards;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.BiConsumer;
+
+/**
+ * An incremental fraud detection engine evaluating several {@link WindowRule}(s) in a single pass.
+ *
+ * Each credit card keeps one {@link CreditCardMultiWindow}: a single deque of its transactions over the
+ * longest window of the rules, with a start and a running total per distinct window length. Rules with
+ * the same window length share that total and count, so each transaction costs one eviction pass per
+ * distinct window length and one comparison per rule, however many rules there are.
+ *
+ * A credit card is fraudulent as soon as one of the rules that apply to it fires, i.e. its total amount
+ * (or number of transactions) within the rule's window, including the transaction just accepted, exceeds
+ * the rule's threshold. Unlike the single 24-hour scan, a rule compares its whole window total: a refund
+ * (negative amount) in the window offsets the transactions that follow it. When several rules fire on the
+ * same transaction, the first one in rule order is reported. As with {@link com.tdinh.interview.atp.frauddetector.window.SlidingWindowEngine}, a credit card
+ * is only detected once: its window is then dropped and its further transactions are ignored.
+ *
+ * Rules restricted to a tier only apply to the credit cards of that tier in the {@link CreditCardTiers}, and
+ * replace for them the rules without a tier of the same measure and window length, e.g. a higher daily limit
+ * for premium credit cards. The tier of a credit card is looked up once, when it is first seen.
+ *
+ * Windows are exact by default. For long windows over busy credit cards, transactions can instead be
+ * merged by time bucket, e.g. of 5 minutes (see {@link CreditCardMultiWindow}): a credit card then retains
+ * at most one entry per bucket of its longest window, rather than one per transaction. The price is the
+ * window edge: a window may also include the transactions of its oldest bucket that are older than its
+ * length, i.e. up to a bucket less a second too many. With non-negative amounts, totals and counts are
+ * therefore over-estimated, never under: every credit card detected by exact windows is still detected, at
+ * the same transaction or earlier, and a credit card may be detected that exact windows would not.
+ *
+ * Live windows are kept in least recently used order (see {@link IdleCreditCards}), and a credit card idle for
+ * longer than the longest window is dropped, idleness being measured against the clock of the engine: the latest
+ * transaction time seen across all credit cards. Amounts and amount thresholds are exact fixed-point minor units
+ * of a configurable scale.
+ *
+ * Transactions are expected in chronological order. A transaction older than the clock whose credit card was
+ * dropped while its longest window would still have counted it is counted (see
+ * {@link #getOutOfOrderTransactions()}) and accepted into a new window, so its credit card may be missed.
+ *
+ * @author Tuan Dinh
+ *
+ */
+public class RuleEngine {
+
+  /**
+   * Returned by {@link #acceptMinorUnits(int, long, long)} when no rule fires.
+   */
+  public static final int NONE = -1;
+
+  private static final int INITIAL_CAPACITY = 1024;
+
+  private final List<WindowRule> rules;
+  private final int amountScale;
+  private final CreditCardDictionary dictionary;
+  private final CreditCardTiers tiers;
+  private final long bucketSeconds;
+  // Distinct window lengths of the rules, ascending.
+  private final long[] windowSeconds;
+  private final long longestWindowSeconds;
+  // For each rule: index of its window length, whether it counts transactions, threshold in minor units or count.
+  private final int[] ruleWindows;
+  private final boolean[] ruleCounts;
+  private final long[] ruleThresholds;
+  // Tiers named by the rules, 0 being credit cards of no such tier, and the rules that apply to each, in order.
+  private final Map<String, Integer> tierIndexes = new HashMap<>();
+  private final int[][] tierRules;
+
+  private final BitSet fraudulentCreditCards = new BitSet();
+  private int[] firedRules = new int[INITIAL_CAPACITY];
+  // Tier index + 1 of each credit card, 0 until looked up.
+  private int[] creditCardTiers = new int[INITIAL_CAPACITY];
+  private CreditCardMultiWindow[] windows = new CreditCardMultiWindow[INITIAL_CAPACITY];
+  private final IdleCreditCards idleCreditCards;
+  private int liveCreditCards;
+  private long retainedEntries;
+  private long peakRetainedEntries;
+
+  /**
+   * @param rules rules, in the order they are reported when several fire at once.
+   * @param amountScale number of decimals of the minor unit amounts are summed in, e.g. 2 for cents.
+   * @param tiers tiers of the credit cards, or null if no rule is restricted to a tier.
+   * @param dictionary dictionary of the credit card ordinals accepted by this engine.
+   * @throws IllegalArgumentException if there is no rule, two rules have the same name, or a rule is
+   *         restricted to a tier without tiers.
+   */
+  public RuleEngine(List<WindowRule> rules, int amountScale, CreditCardTiers tiers, CreditCardDictionary dictionary) {
+    this(rules, amountScale, 1, tiers, dictionary);
+  }
+
+  /**
+   * @param rules rules, in the order they are reported when several fire at once.
+   * @param amountScale number of decimals of the minor unit amounts are summed in, e.g. 2 for cents.
+   * @param bucketSeconds length of the time buckets transactions are merged by, 1 for exact windows.
+   * @param tiers tiers of the credit cards, or null if no rule is restricted to a tier.
+   * @param dictionary dictionary of the credit card ordinals accepted by this engine.
+   * @throws IllegalArgumentException if there is no rule, two rules have the same name, a rule is
+   *         restricted to a tier without tiers, or the bucket is not positive or longer than a window.
+   */
+  public RuleEngine(List<WindowRule> rules, int amountScale, long bucketSeconds, CreditCardTiers tiers,
+      CreditCardDictionary dictionary) {
+    if (rules.isEmpty()) {
+      throw new IllegalArgumentException("Expecting at least one rule");
+    }
+    if (bucketSeconds <= 0) {
+      throw new IllegalArgumentException("Invalid bucket [" + bucketSeconds + "], expecting a positive number of seconds");
+    }
+    this.rules = new ArrayList<>(rules);
+    this.amountScale = Amounts.checkScale(amountScale);
+    this.bucketSeconds = bucketSeconds;
+    this.tiers = tiers;
+    this.dictionary = dictionary;
+
+    Set<String> names = new HashSet<>();
+    TreeSet<Long> lengths = new TreeSet<>();
+    tierIndexes.put(null, 0);
+    for (WindowRule rule : rules) {
+      if (!names.add(rule.getName())) {
+        throw new IllegalArgumentException("Duplicate rule name [" + rule.getName() + "]");
+      }
+      if (rule.getTier() != null) {
+        if (tiers == null) {
+          throw new IllegalArgumentException("Rule [" + rule.getName() + "] applies to a tier, but no tiers are given");
+        }
+        tierIndexes.putIfAbsent(rule.getTier(), tierIndexes.size());
+      }
+      if (rule.getWindowSeconds() < bucketSeconds) {
+        throw new IllegalArgumentException("Bucket of " + bucketSeconds + " seconds is longer than the window of rule ["
+            + rule.getName() + "]");
+      }
+      lengths.add(rule.getWindowSeconds());
+    }
+    windowSeconds = new long[lengths.size()];
+    int i = 0;
+    for (long length : lengths) {
+      windowSeconds[i++] = length;
+    }
+    longestWindowSeconds = windowSeconds[windowSeconds.length - 1];
+    idleCreditCards = new IdleCreditCards(longestWindowSeconds, ordinal -> windows[ordinal].getLatestEpochSecond(),
+        this::release);
+
+    ruleWindows = new int[rules.size()];
+    ruleCounts = new boolean[rules.size()];
+    ruleThresholds = new long[rules.size()];
+    for (int r = 0; r < rules.size(); r++) {
+      WindowRule rule = rules.get(r);
+      ruleWindows[r] = Arrays.binarySearch(windowSeconds, rule.getWindowSeconds());
+      ruleCounts[r] = rule.getMeasure() == WindowRule.Measure.COUNT;
+      ruleThresholds[r] = ruleCounts[r]
+          ? (long) rule.getThreshold()
+          : Amounts.floorToMinorUnits(rule.getThreshold(), amountScale);
+    }
+    tierRules = new int[tierIndexes.size()][];
+    for (Map.Entry<String, Integer> tier : tierIndexes.entrySet()) {
+      int[] applicable = new int[rules.size()];
+      int count = 0;
+      for (int r = 0; r < rules.size(); r++) {
+        WindowRule rule = rules.get(r);
+        if (rule.getTier() == null ? !isOverridden(rule, tier.getKey()) : rule.getTier().equals(tier.getKey())) {
+          applicable[count++] = r;
+        }
+      }
+      tierRules[tier.getValue()] = Arrays.copyOf(applicable, count);
+    }
+  }
+
+  /**
+   * @return true if a rule of the tier has the same measure and window as the rule, which does not apply to the tier.
+   */
+  private boolean isOverridden(WindowRule rule, String tier) {
+    for (WindowRule other : rules) {
+      if (tier != null && tier.equals(other.getTier()) && other.getMeasure() == rule.getMeasure()
+          && other.getWindowSeconds() == rule.getWindowSeconds()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Accept a {@link Transaction} into the windows of its credit card.
+   *
+   * @param trans transaction
+   * @return the rule detecting the credit card as fraudulent by this transaction, or null.
+   */
+  public WindowRule accept(Transaction trans) {
+    return ruleOf(acceptMinorUnits(dictionary.ordinalOf(trans.getCreditCardId()), trans.getTransEpochSecond(),
+        toMinorUnits(trans)));
+  }
+
+  /**
+   * Accept a transaction into the windows of its credit card.
+   *
+   * @param creditCardId hashed credit card id
+   * @param transEpochSecond transaction date time in epoch seconds
+   * @param amount transaction amount, rounded half up to the scale of this engine
+   * @return the rule detecting the credit card as fraudulent by this transaction, or null.
+   */
+  public WindowRule accept(String creditCardId, long transEpochSecond, double amount) {
+    return ruleOf(acceptMinorUnits(dictionary.ordinalOf(creditCardId), transEpochSecond,
+        Amounts.toMinorUnits(amount, amountScale)));
+  }
+
+  /**
+   * Accept every row of a {@link TransactionBatch}, in order. The batch must use the dictionary of this engine.
+   *
+   * @param batch transaction batch
+   * @param fraudListener notified with the credit card id and the rule of each row detecting a fraudulent
+   *        credit card.
+   */
+  public void accept(TransactionBatch batch, BiConsumer<String, WindowRule> fraudListener) {
+    if (batch.getDictionary() != dictionary) {
+      throw new IllegalArgumentException("Batch does not use the dictionary of this engine");
+    }
+    for (int row = 0; row < batch.size(); row++) {
+      int ordinal = batch.getCreditCardOrdinal(row);
+      int rule = acceptMinorUnits(ordinal, batch.getTransEpochSecond(row), toMinorUnits(batch, row));
+      if (rule != NONE) {
+        fraudListener.accept(dictionary.creditCardId(ordinal), rules.get(rule));
+      }
+    }
+  }
+
+  /**
+   * Accept a transaction into the windows of its credit card.
+   *
+   * @param ordinal credit card ordinal in the dictionary of this engine
+   * @param transEpochSecond transaction date time in epoch seconds
+   * @param amount transaction amount in minor units of the scale of this engine
+   * @return index of the rule detecting the credit card as fraudulent by this transaction, or {@link #NONE}.
+   */
+  public int acceptMinorUnits(int ordinal, long transEpochSecond, long amount) {
+    idleCreditCards.advance(transEpochSecond);
+    if (fraudulentCreditCards.get(ordinal)) {
+      return NONE;
+    }
+    if (ordinal >= windows.length) {
+      grow(ordinal);
+    }
+    CreditCardMultiWindow window = windows[ordinal];
+    if (window == null) {
+      window = new CreditCardMultiWindow(windowSeconds.length, bucketSeconds);
+      windows[ordinal] = window;
+      liveCreditCards++;
+      idleCreditCards.add(ordinal, transEpochSecond - longestWindowSeconds);
+    } else {
+      idleCreditCards.touch(ordinal);
+    }
+    retainedEntries -= window.evict(transEpochSecond, windowSeconds);
+    retainedEntries += window.add(transEpochSecond, amount);
+    if (retainedEntries > peakRetainedEntries) {
+      peakRetainedEntries = retainedEntries;
+    }
+    for (int rule : tierRules[tierOf(ordinal)]) {
+      long value = ruleCounts[rule]
+          ? window.getCount(ruleWindows[rule])
+          : window.getTotalAmount(ruleWindows[rule]);
+      if (value > ruleThresholds[rule]) {
+        fraudulentCreditCards.set(ordinal);
+        firedRules[ordinal] = rule;
+        // No need to check for this credit card further.
+        remove(ordinal);
+        return rule;
+      }
+    }
+    return NONE;
+  }
+
+  private int tierOf(int ordinal) {
+    int tier = creditCardTiers[ordinal];
+    if (tier == 0) {
+      Integer index = tiers == null ? null : tierIndexes.get(tiers.tierOf(dictionary.creditCardId(ordinal)));
+      tier = (index == null ? 0 : index) + 1;
+      creditCardTiers[ordinal] = tier;
+    }
+    return tier - 1;
+  }
+
+  private void remove(int ordinal) {
+    idleCreditCards.remove(ordinal);
+    release(ordinal);
+  }
+
+  private void release(int ordinal) {
+    retainedEntries -= windows[ordinal].size();
+    windows[ordinal] = null;
+    liveCreditCards--;
+  }
+
+  private void grow(int ordinal) {
+    int capacity = Math.max(windows.length << 1, ordinal + 1);
+    windows = Arrays.copyOf(windows, capacity);
+    firedRules = Arrays.copyOf(firedRules, capacity);
+    creditCardTiers = Arrays.copyOf(creditCardTiers, capacity);
+  }
+
+  private WindowRule ruleOf(int rule) {
+    return rule == NONE ? null : rules.get(rule);
+  }
+
+  public List<WindowRule> getRules() {
+    return rules;
+  }
+
+  /**
+   * @return length of the time buckets transactions are merged by, 1 for exact windows.
+   */
+  public long getBucketSeconds() {
+    return bucketSeconds;
+  }
+
+  /**
+   * @return number of decimals of the minor unit amounts are summed in.
+   */
+  public int getAmountScale() {
+    return amountScale;
+  }
+
+  /**
+   * @return the amount of a transaction in minor units of the scale of this engine.
+   */
+  public long toMinorUnits(Transaction trans) {
+    return amountScale == TransactionBatch.AMOUNT_SCALE
+        ? trans.getAmountInMinorUnits()
+        : Amounts.toMinorUnits(trans.getAmount(), amountScale);
+  }
+
+  /**
+   * @return the amount of a batch row in minor units of the scale of this engine.
+   */
+  public long toMinorUnits(TransactionBatch batch, int row) {
+    return amountScale == TransactionBatch.AMOUNT_SCALE
+        ? batch.getAmount(row)
+        : Amounts.rescale(batch.getAmount(row), TransactionBatch.AMOUNT_SCALE, amountScale);
+  }
+
+  public CreditCardDictionary getDictionary() {
+    return dictionary;
+  }
+
+  /**
+   * @return the ids of the credit cards detected as fraudulent so far, with the rule that detected each.
+   */
+  public Map<String, WindowRule> getFraudulentCreditCards() {
+    Map<String, WindowRule> creditCards = new HashMap<>();
+    for (int ordinal = fraudulentCreditCards.nextSetBit(0); ordinal >= 0;
+        ordinal = fraudulentCreditCards.nextSetBit(ordinal + 1)) {
+      creditCards.put(dictionary.creditCardId(ordinal), rules.get(firedRules[ordinal]));
+    }
+    return creditCards;
+  }
+
+  /**
+   * @return number of transactions older than the clock of the engine whose credit card had been dropped as idle
+   *         while its longest window would still have counted them: their credit card may have been missed.
+   */
+  public long getOutOfOrderTransactions() {
+    return idleCreditCards.getOutOfOrderTransactions();
+  }
+
+  /**
+   * @return number of credit cards with a live window.
+   */
+  public int getLiveCreditCards() {
+    return liveCreditCards;
+  }
+
+  /**
+   * @return number of entries currently retained across all windows, i.e. transactions with exact windows.
+   */
+  public long getRetainedEntries() {
+    return retainedEntries;
+  }
+
+  /**
+   * @return the highest number of entries retained at any point so far.
+   */
+  public long getPeakRetainedEntries() {
+    return peakRetainedEntries;
+  }
+}
@@ -0,0 +1,164 @@
+package com.tdinh.interview.atp.frauddetector.rule;
+
+/**
+ * A fraud rule over a sliding window of a credit card's transactions: the credit card is fraudulent
+ * when the total amount, or the number, of its transactions within the window exceeds a threshold.
+ *
+ * A rule may be restricted to the credit cards of a tier (see {@link CreditCardTiers}), where it replaces
+ * the rules without a tier of the same measure and window length, e.g. a higher daily limit for premium
+ * cards. Otherwise it applies to every credit card.
+ *
+ * Rules are written NAME:MEASURE:WINDOW:THRESHOLD[:TIER], where:
+ * - NAME identifies the rule in the report.
+ * - MEASURE is "amount" (total amount) or "count" (number of transactions).
+ * - WINDOW is a positive number of seconds, minutes, hours or days, e.g. 90s, 30m, 24h, 7d.
+ * - THRESHOLD is a decimal amount for "amount" rules, and a non-negative integer for "count" rules.
+ *
+ * e.g. "daily:amount:24h:500.00", "burst:count:1h:10", "premium-weekly:amount:7d:20000:premium".
+ *
+ * @author Tuan Dinh
+ *
+ */
+public final class WindowRule {
+
+  /**
+   * What a rule adds up over its window.
+   */
+  public enum Measure {
+    AMOUNT, COUNT
+  }
+
+  private static final String FORMAT = "NAME:amount|count:WINDOW:THRESHOLD[:TIER]";
+
+  private final String name;
+  private final Measure measure;
+  private final long windowSeconds;
+  private final double threshold;
+  private final String tier;
+
+  /**
+   * @param name rule name.
+   * @param measure what is added up over the window.
+   * @param windowSeconds window length in seconds.
+   * @param threshold amount limit, or maximum number of transactions.
+   * @param tier tier of the credit cards the rule applies to, or null for all credit cards.
+   */
+  public WindowRule(String name, Measure measure, long windowSeconds, double threshold, String tier) {
+    if (name == null || name.isEmpty()) {
+      throw new IllegalArgumentException("Missing rule name");
+    }
+    if (windowSeconds <= 0) {
+      throw new IllegalArgumentException("Invalid window [" + windowSeconds + "] of rule [" + name
+          + "], expecting a positive number of seconds");
+    }
+    this.name = name;
+    this.measure = measure;
+    this.windowSeconds = windowSeconds;
+    this.threshold = threshold;
+    this.tier = tier;
+  }
+
+  /**
+   * Parse a rule written NAME:MEASURE:WINDOW:THRESHOLD[:TIER].
+   *
+   * @param spec rule.
+   * @return the rule.
+   * @throws IllegalArgumentException if the rule is not in that format.
+   */
+  public static WindowRule parse(String spec) {
+    String[] fields = spec.split(":", -1);
+    if (fields.length < 4 || fields.length > 5 || fields[0].isEmpty()
+        || fields.length == 5 && fields[4].isEmpty()) {
+      throw invalid(spec);
+    }
+    Measure measure;
+    if (fields[1].equals("amount")) {
+      measure = Measure.AMOUNT;
+    } else if (fields[1].equals("count")) {
+      measure = Measure.COUNT;
+    } else {
+      throw invalid(spec);
+    }
+    long windowSeconds = parseDuration(fields[2]);
+    double threshold;
+    try {
+      threshold = measure == Measure.AMOUNT ? Double.parseDouble(fields[3]) : Long.parseLong(fields[3]);
+    } catch (NumberFormatException ex) {
+      throw invalid(spec);
+    }
+    if (windowSeconds <= 0 || Double.isNaN(threshold) || measure == Measure.COUNT && threshold < 0) {
+      throw invalid(spec);
+    }
+    return new WindowRule(fields[0], measure, windowSeconds, threshold, fields.length == 5 ? fields[4] : null);
+  }
+
+  /**
+   * Parse a duration written as a positive number of seconds, minutes, hours or days, e.g. 90s, 30m, 24h, 7d.
+   *
+   * @return the duration in seconds, or -1 if not in that format.
+   */
+  public static long parseDuration(String window) {
+    if (window.length() < 2) {
+      return -1;
+    }
+    long unit;
+    switch (window.charAt(window.length() - 1)) {
+      case 's':
+        unit = 1;
+        break;
+      case 'm':
+        unit = 60;
+        break;
+      case 'h':
+        unit = 60 * 60;
+        break;
+      case 'd':
+        unit = 24 * 60 * 60;
+        break;
+      default:
+        return -1;
+    }
+    try {
+      long count = Long.parseLong(window.substring(0, window.length() - 1));
+      return count > 0 && count <= Long.MAX_VALUE / unit / 4 ? count * unit : -1;
+    } catch (NumberFormatException ex) {
+      return -1;
+    }
+  }
+
+  private static IllegalArgumentException invalid(String spec) {
+    return new IllegalArgumentException("Invalid rule [" + spec + "], expecting " + FORMAT);
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public Measure getMeasure() {
+    return measure;
+  }
+
+  public long getWindowSeconds() {
+    return windowSeconds;
+  }
+
+  /**
+   * @return amount limit of an {@link Measure#AMOUNT} rule, or maximum number of transactions of a
+   *         {@link Measure#COUNT} rule.
+   */
+  public double getThreshold() {
+    return threshold;
+  }
+
+  /**
+   * @return tier of the credit cards the rule applies to, or null for all credit cards.
+   */
+  public String getTier() {
+    return tier;
+  }
+
+  @Override
+  public String toString() {
+    return name;
+  }
+}
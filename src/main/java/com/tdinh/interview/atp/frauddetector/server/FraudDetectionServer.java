@@ -0,0 +1,419 @@
+package com.tdinh.interview.atp.frauddetector.server;
+
+import com.tdinh.interview.atp.frauddetector.metrics.Metrics;
+import com.tdinh.interview.atp.frauddetector.metrics.ScanTimer;
+import com.tdinh.interview.atp.frauddetector.transaction.ByteTransactionParser;
+import com.tdinh.interview.atp.frauddetector.transaction.CreditCardDictionary;
+import com.tdinh.interview.atp.frauddetector.window.SlidingWindowEngine;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+
+/**
+ * A long running fraud detection service, keeping the window state of a {@link SlidingWindowEngine}
+ * resident and accepting transaction records over TCP.
+ *
+ * Producers send records in the same text format as the transaction files, one per line, and get
+ * verdicts back on the same connection, as text lines:
+ * - per transaction (default): one line per record, in order. "OK", "FRAUD" if the credit card is
+ * fraudulent, or "INVALID <reason>" if the record is rejected, by the parser or by the engine.
+ * - per batch: records are answered when an empty line ends the batch, with a single line
+ * "BATCH <records> <invalid records>" followed by the ids of the fraudulent credit cards of the batch,
+ * separated by spaces. Empty lines are ignored in per transaction mode.
+ *
+ * All connections are served by a single thread multiplexing them with a {@link Selector}, so that
+ * tens of thousands of idle or slow producers do not each hold a thread, and the engine is never
+ * shared between threads. Each connection reads into a small buffer grown for long lines, and stops
+ * being read while too many verdicts are waiting to be written, so a producer that does not read its
+ * verdicts cannot exhaust the heap.
+ *
+ * Records from all connections are applied in arrival order, which is expected to be chronological.
+ *
+ * @author Tuan Dinh
+ *
+ */
+public class FraudDetectionServer implements Closeable {
+
+  private static final int INITIAL_BUFFER_SIZE = 4 * 1024;
+  private static final int MAX_LINE_LENGTH = 1024 * 1024;
+  private static final int MAX_PENDING_OUTPUT = 1024 * 1024;
+  private static final byte[] OK = "OK\n".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] FRAUD = "FRAUD\n".getBytes(StandardCharsets.US_ASCII);
+
+  private final SlidingWindowEngine engine;
+  private final boolean batchVerdicts;
+  private final ByteTransactionParser parser = new ByteTransactionParser(StandardCharsets.UTF_8);
+  private final ServerSocketChannel serverChannel;
+  private final Selector selector;
+  private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(64 * 1024);
+  // Scratch set to report each credit card once per batch, always cleared after use.
+  private final BitSet reportedCreditCards = new BitSet();
+  private volatile boolean closed;
+  private long connections;
+  private long records;
+  private Metrics metrics;
+  private ScanTimer timer = new ScanTimer(null);
+
+  /**
+   * Bind the server. Connections are only served by {@link #run()}.
+   *
+   * @param address address to listen on, e.g. a loopback address for local producers only.
+   * @param limit amount limit of the fraud scan.
+   * @param batchVerdicts true to answer per batch, false to answer per transaction.
+   * @throws IOException if the address cannot be bound.
+   */
+  public FraudDetectionServer(InetSocketAddress address, double limit, boolean batchVerdicts) throws IOException {
+    this(address, new SlidingWindowEngine(limit), batchVerdicts);
+  }
+
+  /**
+   * Bind the server, resuming from the state of an engine, e.g. restored from a
+   * {@link com.tdinh.interview.atp.frauddetector.window.WindowSnapshot}.
+   *
+   * @param address address to listen on, e.g. a loopback address for local producers only.
+   * @param engine engine holding the window state, used by the serving thread only from now on.
+   * @param batchVerdicts true to answer per batch, false to answer per transaction.
+   * @throws IOException if the address cannot be bound.
+   */
+  public FraudDetectionServer(InetSocketAddress address, SlidingWindowEngine engine, boolean batchVerdicts)
+      throws IOException {
+    this.engine = engine;
+    this.batchVerdicts = batchVerdicts;
+    this.selector = Selector.open();
+    this.serverChannel = ServerSocketChannel.open();
+    try {
+      serverChannel.bind(address, 1024);
+      serverChannel.configureBlocking(false);
+      serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+    } catch (IOException ex) {
+      serverChannel.close();
+      selector.close();
+      throw ex;
+    }
+  }
+
+  /**
+   * Report records, bytes read, invalid records, scan latency, live credit cards and window entries.
+   * Must be called before {@link #run()}.
+   *
+   * @param metrics metrics to report in, or null.
+   */
+  public void setMetrics(Metrics metrics) {
+    this.metrics = metrics;
+    this.timer = new ScanTimer(metrics);
+    if (metrics != null) {
+      metrics.setGauges(engine::getLiveCreditCards, engine::getRetainedEntries);
+    }
+  }
+
+  /**
+   * @return the address the server is listening on.
+   */
+  public InetSocketAddress getLocalAddress() throws IOException {
+    return (InetSocketAddress) serverChannel.getLocalAddress();
+  }
+
+  /**
+   * Serve connections until {@link #stop()} is called.
+   */
+  public void run() throws IOException {
+    try {
+      while (!closed) {
+        selector.select();
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+          SelectionKey key = keys.next();
+          keys.remove();
+          if (!key.isValid()) {
+            continue;
+          }
+          if (key.isAcceptable()) {
+            accept();
+            continue;
+          }
+          Connection connection = (Connection) key.attachment();
+          try {
+            if (key.isReadable()) {
+              connection.read();
+            }
+            if (key.isValid() && key.isWritable()) {
+              connection.write();
+            }
+          } catch (IOException | RuntimeException ex) {
+            // Only this producer is dropped, the others keep being served.
+            connection.close();
+          }
+        }
+      }
+    } finally {
+      for (SelectionKey key : selector.keys()) {
+        key.channel().close();
+      }
+      selector.close();
+    }
+  }
+
+  /**
+   * Stop serving. The connections are closed by the serving thread. May be called from any thread.
+   */
+  public void stop() {
+    closed = true;
+    selector.wakeup();
+  }
+
+  /**
+   * Same as {@link #stop()}.
+   */
+  @Override
+  public void close() {
+    stop();
+  }
+
+  /**
+   * @return the engine holding the window state. Only safe to use from the serving thread or once it has returned.
+   */
+  public SlidingWindowEngine getEngine() {
+    return engine;
+  }
+
+  /**
+   * @return number of connections accepted so far.
+   */
+  public long getConnections() {
+    return connections;
+  }
+
+  /**
+   * @return number of records received so far, valid or not.
+   */
+  public long getRecords() {
+    return records;
+  }
+
+  private void accept() throws IOException {
+    SocketChannel channel;
+    while ((channel = serverChannel.accept()) != null) {
+      channel.configureBlocking(false);
+      // Verdicts are small and latency bound, never wait to coalesce them.
+      channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+      SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+      key.attach(new Connection(key, channel));
+      connections++;
+    }
+  }
+
+  /**
+   * State of a producer connection: unprocessed input, pending verdicts and the current batch.
+   */
+  private class Connection implements ByteTransactionParser.RecordHandler {
+
+    private final SelectionKey key;
+    private final SocketChannel channel;
+    private ByteBuffer input = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    private ByteBuffer output = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    // Current batch, in per batch mode: ordinals of the fraudulent credit cards, possibly repeated.
+    private int[] batchFraudulent = new int[16];
+    private int batchFraudulentCount;
+    private int batchRecords;
+    private int batchInvalidRecords;
+    private boolean closing;
+
+    Connection(SelectionKey key, SocketChannel channel) {
+      this.key = key;
+      this.channel = channel;
+    }
+
+    void read() throws IOException {
+      readBuffer.clear();
+      int read = channel.read(readBuffer);
+      if (read < 0) {
+        endOfInput();
+        return;
+      }
+      if (metrics != null) {
+        metrics.addBytesRead(read);
+      }
+      readBuffer.flip();
+      while (readBuffer.hasRemaining()) {
+        if (!input.hasRemaining()) {
+          if (input.capacity() >= MAX_LINE_LENGTH) {
+            throw new IOException("Record too long");
+          }
+          input = grow(input, input.capacity() << 1);
+        }
+        int chunk = Math.min(readBuffer.remaining(), input.remaining());
+        ByteBuffer slice = readBuffer.duplicate();
+        slice.limit(slice.position() + chunk);
+        input.put(slice);
+        readBuffer.position(readBuffer.position() + chunk);
+        processLines();
+      }
+      write();
+    }
+
+    void write() throws IOException {
+      output.flip();
+      channel.write(output);
+      output.compact();
+      if (closing && output.position() == 0) {
+        close();
+        return;
+      }
+      int ops = closing ? 0 : SelectionKey.OP_READ;
+      if (output.position() > 0) {
+        ops |= SelectionKey.OP_WRITE;
+        if (output.position() > MAX_PENDING_OUTPUT) {
+          // Back pressure: stop reading until the producer consumes its verdicts.
+          ops = SelectionKey.OP_WRITE;
+        }
+      }
+      if (key.interestOps() != ops) {
+        key.interestOps(ops);
+      }
+    }
+
+    void close() {
+      key.cancel();
+      try {
+        channel.close();
+      } catch (IOException ex) {
+        // Nothing more to do with a broken connection.
+      }
+    }
+
+    /**
+     * The producer has finished sending: answer a last unterminated record or batch, then close once
+     * all verdicts are written.
+     */
+    private void endOfInput() throws IOException {
+      if (input.position() > 0) {
+        processLine(0, input.position());
+        input.clear();
+      }
+      if (batchVerdicts && batchRecords > 0) {
+        endBatch();
+      }
+      closing = true;
+      write();
+    }
+
+    /**
+     * Process the complete lines of the input and keep the trailing partial line.
+     */
+    private void processLines() {
+      int end = input.position();
+      int lineStart = 0;
+      for (int i = 0; i < end; i++) {
+        if (input.get(i) == '\n') {
+          processLine(lineStart, i);
+          lineStart = i + 1;
+        }
+      }
+      input.limit(end);
+      input.position(lineStart);
+      input.compact();
+    }
+
+    private void processLine(int start, int end) {
+      if (isBlank(start, end)) {
+        if (batchVerdicts) {
+          endBatch();
+        }
+        return;
+      }
+      records++;
+      if (metrics != null) {
+        metrics.addRecords(1);
+      }
+      parser.parse(input, start, end, engine.getDictionary(), this);
+    }
+
+    @Override
+    public void record(int creditCardOrdinal, long transEpochSecond, double amount) {
+      long start = timer.start();
+      try {
+        engine.accept(creditCardOrdinal, transEpochSecond, amount);
+      } catch (RuntimeException ex) {
+        // The engine rejects the record, e.g. an amount it cannot convert: answer it as invalid.
+        invalid(null, ex.getMessage() != null ? ex.getMessage() : ex.toString());
+        return;
+      }
+      timer.stop(start);
+      boolean fraudulent = engine.isFraudulent(creditCardOrdinal);
+      if (batchVerdicts) {
+        batchRecords++;
+        if (fraudulent) {
+          if (batchFraudulentCount == batchFraudulent.length) {
+            batchFraudulent = Arrays.copyOf(batchFraudulent, batchFraudulentCount << 1);
+          }
+          batchFraudulent[batchFraudulentCount++] = creditCardOrdinal;
+        }
+      } else {
+        append(fraudulent ? FRAUD : OK);
+      }
+    }
+
+    @Override
+    public void invalid(String record, String reason) {
+      if (metrics != null) {
+        metrics.addInvalidRecord(reason);
+      }
+      if (batchVerdicts) {
+        batchRecords++;
+        batchInvalidRecords++;
+      } else {
+        append(("INVALID " + reason + "\n").getBytes(StandardCharsets.UTF_8));
+      }
+    }
+
+    private void endBatch() {
+      StringBuilder verdict = new StringBuilder("BATCH ").append(batchRecords).append(' ').append(batchInvalidRecords);
+      CreditCardDictionary dictionary = engine.getDictionary();
+      for (int i = 0; i < batchFraudulentCount; i++) {
+        int ordinal = batchFraudulent[i];
+        if (!reportedCreditCards.get(ordinal)) {
+          reportedCreditCards.set(ordinal);
+          verdict.append(' ').append(dictionary.creditCardId(ordinal));
+        }
+      }
+      append(verdict.append('\n').toString().getBytes(StandardCharsets.UTF_8));
+      for (int i = 0; i < batchFraudulentCount; i++) {
+        reportedCreditCards.clear(batchFraudulent[i]);
+      }
+      batchFraudulentCount = 0;
+      batchRecords = 0;
+      batchInvalidRecords = 0;
+    }
+
+    private boolean isBlank(int start, int end) {
+      for (int i = start; i < end; i++) {
+        if (input.get(i) > ' ') {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private void append(byte[] bytes) {
+      if (output.remaining() < bytes.length) {
+        output = grow(output, Math.max(output.capacity() << 1, output.position() + bytes.length));
+      }
+      output.put(bytes);
+    }
+
+    private ByteBuffer grow(ByteBuffer buffer, int capacity) {
+      buffer.flip();
+      return ByteBuffer.allocate(capacity).put(buffer);
+    }
+  }
+}
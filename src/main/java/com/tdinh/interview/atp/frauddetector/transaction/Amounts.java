@@ -0,0 +1,186 @@
+package com.tdinh.interview.atp.frauddetector.transaction;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Conversions between decimal amounts and fixed-point minor units, i.e. amount * 10^scale as a long.
+ *
+ * A decimal amount is taken as the shortest decimal that rounds to its double (see
+ * {@link Double#toString(double)}), which is the text it was parsed from for amounts of up to 15
+ * significant digits. Conversions are exact with respect to that decimal: no floating-point rounding
+ * leaks into the minor units. The common case, a double within a quarter of a minor unit of a whole
+ * number of minor units, is converted with a multiplication only.
+ *
+ * Amounts are supported below {@link #MAX_AMOUNT} in magnitude, at scales of up to {@link #MAX_SCALE}, so
+ * that any supported amount converts to minor units of any supported scale. Loaders reject the other
+ * amounts as invalid records.
+ *
+ * @author Tuan Dinh
+ *
+ */
+public final class Amounts {
+
+  /**
+   * Largest supported scale.
+   */
+  public static final int MAX_SCALE = 6;
+
+  /**
+   * Supported amounts are below a trillion in magnitude: 10^18 minor units at most, within a long.
+   */
+  public static final double MAX_AMOUNT = 1e12;
+
+  private static final long[] POWERS_OF_TEN = new long[MAX_SCALE + 1];
+  // Below this, a scaled double is within 2^-12 of the scaled decimal it was parsed from.
+  private static final double MAX_FAST_SCALED = 1L << 40;
+  // Below this, a long is an exact double.
+  private static final long MAX_EXACT_LONG = 1L << 53;
+
+  static {
+    POWERS_OF_TEN[0] = 1;
+    for (int i = 1; i <= MAX_SCALE; i++) {
+      POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+    }
+  }
+
+  private Amounts() {
+  }
+
+  /**
+   * @return true if the amount is finite and below {@link #MAX_AMOUNT} in magnitude.
+   */
+  public static boolean isSupported(double amount) {
+    // False for NaN as well.
+    return Math.abs(amount) < MAX_AMOUNT;
+  }
+
+  /**
+   * The carry of a sum of longs, to hold a total beyond the range of a long exactly as its wrapped long
+   * and the sum of the carries of its additions, see {@link #saturate(long, long)}.
+   *
+   * @return 1 if a + b overflows a long, -1 if it underflows, 0 otherwise.
+   */
+  public static int carry(long a, long b) {
+    long sum = a + b;
+    if (((a ^ sum) & (b ^ sum)) < 0) {
+      return b < 0 ? -1 : 1;
+    }
+    return 0;
+  }
+
+  /**
+   * @return 1 if a - b overflows a long, -1 if it underflows, 0 otherwise.
+   */
+  public static int borrow(long a, long b) {
+    long difference = a - b;
+    if (((a ^ b) & (a ^ difference)) < 0) {
+      return b < 0 ? 1 : -1;
+    }
+    return 0;
+  }
+
+  /**
+   * @param wrapped total wrapped around the range of a long.
+   * @param carries sum of the carries and borrows of the additions and subtractions of the total.
+   * @return the total, saturated to {@link Long#MAX_VALUE} or {@link Long#MIN_VALUE} beyond the range of a long.
+   */
+  public static long saturate(long wrapped, long carries) {
+    if (carries == 0) {
+      return wrapped;
+    }
+    return carries > 0 ? Long.MAX_VALUE : Long.MIN_VALUE;
+  }
+
+  /**
+   * Convert a decimal amount to minor units, rounding half up the decimals beyond the scale.
+   *
+   * @param amount decimal amount.
+   * @param scale number of decimal digits of the minor unit.
+   * @return amount in minor units.
+   * @throws ArithmeticException if the amount is not finite or does not fit in a long of minor units.
+   */
+  public static long toMinorUnits(double amount, int scale) {
+    double scaled = amount * POWERS_OF_TEN[scale];
+    if (Math.abs(scaled) < MAX_FAST_SCALED) {
+      long rounded = Math.round(scaled);
+      // Far from a half: the decimal of the amount rounds the same way as its scaled double.
+      if (Math.abs(scaled - rounded) < 0.25) {
+        return rounded;
+      }
+    }
+    if (Double.isNaN(amount) || Double.isInfinite(amount)) {
+      throw new ArithmeticException("Amount [" + amount + "] is not finite");
+    }
+    try {
+      return BigDecimal.valueOf(amount).setScale(scale, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    } catch (ArithmeticException ex) {
+      throw new ArithmeticException("Amount [" + amount + "] overflows minor units of scale " + scale);
+    }
+  }
+
+  /**
+   * Convert a limit to the largest whole number of minor units it is not below, so that a total in
+   * minor units exceeds the limit exactly when it exceeds this number. Limits beyond the range of a
+   * long saturate, and NaN, which no total exceeds, maps to {@link Long#MAX_VALUE}.
+   *
+   * @param limit decimal limit.
+   * @param scale number of decimal digits of the minor unit.
+   * @return the limit in minor units, rounded down.
+   */
+  public static long floorToMinorUnits(double limit, int scale) {
+    if (Double.isNaN(limit) || limit == Double.POSITIVE_INFINITY) {
+      return Long.MAX_VALUE;
+    }
+    if (limit == Double.NEGATIVE_INFINITY) {
+      return Long.MIN_VALUE;
+    }
+    BigDecimal floor = BigDecimal.valueOf(limit).setScale(scale, RoundingMode.FLOOR);
+    if (floor.compareTo(BigDecimal.valueOf(Long.MAX_VALUE, scale)) > 0) {
+      return Long.MAX_VALUE;
+    }
+    if (floor.compareTo(BigDecimal.valueOf(Long.MIN_VALUE, scale)) < 0) {
+      return Long.MIN_VALUE;
+    }
+    return floor.unscaledValue().longValue();
+  }
+
+  /**
+   * Convert minor units from one scale to another, rounding half up when the target scale is smaller.
+   *
+   * @throws ArithmeticException if the result does not fit in a long.
+   */
+  public static long rescale(long minorUnits, int fromScale, int toScale) {
+    if (toScale >= fromScale) {
+      return Math.multiplyExact(minorUnits, POWERS_OF_TEN[toScale - fromScale]);
+    }
+    long divisor = POWERS_OF_TEN[fromScale - toScale];
+    long quotient = minorUnits / divisor;
+    long remainder = Math.abs(minorUnits % divisor);
+    if (remainder >= divisor - remainder) {
+      quotient += minorUnits < 0 ? -1 : 1;
+    }
+    return quotient;
+  }
+
+  /**
+   * @return the decimal amount of minor units, as {@link BigDecimal#doubleValue()} of the exact decimal.
+   */
+  public static double toAmount(long minorUnits, int scale) {
+    if (Math.abs(minorUnits) < MAX_EXACT_LONG) {
+      // Both operands are exact doubles, and a single division is correctly rounded.
+      return minorUnits / (double) POWERS_OF_TEN[scale];
+    }
+    return BigDecimal.valueOf(minorUnits, scale).doubleValue();
+  }
+
+  /**
+   * @throws IllegalArgumentException if the scale is not supported.
+   */
+  public static int checkScale(int scale) {
+    if (scale < 0 || scale > MAX_SCALE) {
+      throw new IllegalArgumentException("Invalid amount scale [" + scale + "], expecting 0 to " + MAX_SCALE);
+    }
+    return scale;
+  }
+}
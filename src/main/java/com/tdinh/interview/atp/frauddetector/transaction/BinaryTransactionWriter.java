@@ -0,0 +1,202 @@
+package com.tdinh.interview.atp.frauddetector.transaction;
+
+import com.tdinh.interview.atp.frauddetector.transaction.error.FileLoaderException;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Write transactions to a binary transaction file, read back by {@link BinaryTransactionFileLoader}.
+ *
+ * Transactions are written one {@link TransactionBatch} per block, in the order they are given. Credit
+ * card ids are dictionary encoded: each block first lists the ids that appear in the file for the first
+ * time, and rows refer to ids by their order of first appearance in the file. Within a block, the columns
+ * are written one after the other as variable-length integers (see {@link BinaryTransactionFileLoader} for
+ * the layout): ordinals, epoch seconds as deltas from the previous row and amounts in minor units of
+ * {@link TransactionBatch#AMOUNT_SCALE}, both zigzag encoded so that small negative values stay short.
+ *
+ * The file is written to a temporary file first and then moved over the target, so a failed conversion
+ * never leaves a truncated file behind.
+ *
+ * @author Tuan Dinh
+ *
+ */
+public class BinaryTransactionWriter implements Closeable {
+
+  private static final int INITIAL_BLOCK_SIZE = 256 * 1024;
+
+  private final Path path;
+  private final Path temp;
+  private final FileChannel channel;
+  private final CreditCardDictionary dictionary = new CreditCardDictionary();
+  private ByteBuffer block = ByteBuffer.allocate(INITIAL_BLOCK_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+  private int writtenIds;
+  private long transactions;
+  private boolean committed;
+
+  /**
+   * @param path binary transaction file, replaced if it exists once the writer is closed.
+   * @throws IOException if the file cannot be created.
+   */
+  public BinaryTransactionWriter(Path path) throws IOException {
+    this.path = path;
+    this.temp = path.resolveSibling(path.getFileName() + ".tmp");
+    this.channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING);
+    ByteBuffer header = ByteBuffer.allocate(BinaryTransactionFileLoader.FILE_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    header.putInt(BinaryTransactionFileLoader.MAGIC).putInt(BinaryTransactionFileLoader.VERSION)
+        .putInt(TransactionBatch.AMOUNT_SCALE).putInt(0).flip();
+    writeFully(header);
+  }
+
+  /**
+   * Convert a transaction text file to a binary transaction file. Invalid records are reported and skipped,
+   * as when scanning the text file.
+   *
+   * @param textFilePath transaction text file.
+   * @param binaryFilePath binary transaction file, replaced if it exists.
+   * @param loader loader of the text file.
+   * @return number of transactions written.
+   * @throws FileLoaderException if a file cannot be read or written.
+   */
+  public static long convert(String textFilePath, String binaryFilePath, TransactionFileLoader loader)
+      throws FileLoaderException {
+    try (BinaryTransactionWriter writer = new BinaryTransactionWriter(Paths.get(binaryFilePath))) {
+      FileLoaderException[] failure = new FileLoaderException[1];
+      loader.loadBatches(textFilePath, writer.dictionary, batch -> {
+        if (failure[0] == null) {
+          try {
+            writer.write(batch);
+          } catch (IOException ex) {
+            failure[0] = new FileLoaderException("Cannot write " + binaryFilePath + ": " + ex.getMessage());
+          }
+        }
+      });
+      if (failure[0] != null) {
+        throw failure[0];
+      }
+      writer.commit();
+      return writer.transactions;
+    } catch (IOException ex) {
+      throw new FileLoaderException("Cannot write " + binaryFilePath + ": " + ex.getMessage());
+    }
+  }
+
+  /**
+   * Append a batch as a block. Its credit card ordinals must be those of {@link #getDictionary()}.
+   *
+   * @param batch transaction batch.
+   * @throws IOException if the block cannot be written.
+   */
+  public void write(TransactionBatch batch) throws IOException {
+    if (batch.getDictionary() != dictionary) {
+      throw new IllegalArgumentException("Batch does not use the dictionary of this writer");
+    }
+    int rows = batch.size();
+    if (rows == 0) {
+      return;
+    }
+    int newIds = dictionary.size() - writtenIds;
+    block.clear();
+    block.position(BinaryTransactionFileLoader.BLOCK_HEADER_SIZE);
+    for (int ordinal = writtenIds; ordinal < dictionary.size(); ordinal++) {
+      byte[] id = dictionary.creditCardId(ordinal).getBytes(StandardCharsets.UTF_8);
+      ensure(5 + id.length);
+      putVarLong(id.length);
+      block.put(id);
+    }
+    int ordinalsStart = block.position();
+    for (int row = 0; row < rows; row++) {
+      ensure(5);
+      putVarLong(batch.getCreditCardOrdinal(row));
+    }
+    int epochSecondsStart = block.position();
+    long previous = batch.getTransEpochSecond(0);
+    for (int row = 0; row < rows; row++) {
+      ensure(10);
+      putVarLong(zigzag(batch.getTransEpochSecond(row) - previous));
+      previous = batch.getTransEpochSecond(row);
+    }
+    int amountsStart = block.position();
+    for (int row = 0; row < rows; row++) {
+      ensure(10);
+      putVarLong(zigzag(batch.getAmount(row)));
+    }
+    int length = block.position();
+    block.putInt(0, length).putInt(4, rows).putInt(8, newIds).putInt(12, epochSecondsStart - ordinalsStart)
+        .putInt(16, amountsStart - epochSecondsStart).putLong(20, batch.getTransEpochSecond(0));
+    block.flip();
+    writeFully(block);
+    writtenIds = dictionary.size();
+    transactions += rows;
+  }
+
+  /**
+   * @return the dictionary the batches written must use, e.g. to load them with
+   *         {@link TransactionFileLoader#loadBatches(String, CreditCardDictionary, java.util.function.Consumer)}.
+   */
+  public CreditCardDictionary getDictionary() {
+    return dictionary;
+  }
+
+  /**
+   * @return number of transactions written so far.
+   */
+  public long getTransactions() {
+    return transactions;
+  }
+
+  /**
+   * Flush the file and move it over the target. Closing without committing discards it.
+   */
+  public void commit() throws IOException {
+    channel.force(false);
+    channel.close();
+    Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    committed = true;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (!committed) {
+      channel.close();
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  private void ensure(int bytes) {
+    if (block.remaining() < bytes) {
+      ByteBuffer grown = ByteBuffer.allocate(Math.max(block.capacity() << 1, block.position() + bytes))
+          .order(ByteOrder.LITTLE_ENDIAN);
+      block.flip();
+      grown.put(block);
+      block = grown;
+    }
+  }
+
+  private void putVarLong(long value) {
+    while ((value & ~0x7FL) != 0) {
+      block.put((byte) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    block.put((byte) value);
+  }
+
+  private static long zigzag(long value) {
+    return (value << 1) ^ (value >> 63);
+  }
+
+  private void writeFully(ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+}
@@ -0,0 +1,446 @@
+package com.tdinh.interview.atp.frauddetector.transaction;
+
+import com.tdinh.interview.atp.frauddetector.metrics.Metrics;
+import com.tdinh.interview.atp.frauddetector.transaction.error.InvalidTransactionRecordException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+/**
+ * Parse transaction text records directly from raw bytes.
+ * 
+ * Lines are split on the same terminators as {@link java.io.BufferedReader#readLine()} ('\n', '\r' or "\r\n").
+ * Field boundaries are found by scanning the bytes, and the fixed {@link Transaction#DATE_TIME_FORMATTER}
+ * date time and the decimal amount are parsed straight into primitives. Neither a line {@link String} nor
+ * a formatter is involved for a well-formed record.
+ * 
+ * Any line that does not match the strict fast path layout (non ASCII bytes, unexpected number of commas,
+ * out of range date time fields, exponent or overlong amounts, ...) is decoded and handed over to
+ * {@link TransactionResolver}, so it is accepted or rejected with exactly the same warning as
+ * {@link TransactionFileLoader}.
+ * 
+ * Records can be produced either as {@link Transaction} objects, as rows of a {@link TransactionBatch}, or
+ * reported line by line to a {@link RecordHandler}.
+ * 
+ * @author Tuan Dinh
+ *
+ */
+public class ByteTransactionParser {
+
+  private static final int DATE_TIME_LENGTH = 19;
+  private static final long MAX_EXACT_MANTISSA = 1L << 53;
+  // Integer digits of the amounts below Amounts.MAX_AMOUNT, the others being rejected off the fast path.
+  private static final int MAX_INTEGER_DIGITS = 12;
+  private static final long SECONDS_PER_DAY = 24 * 60 * 60;
+  private static final double[] POWERS_OF_TEN = {
+      1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+      1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+  private static final int[] DAYS_IN_MONTH = {31, 28, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31};
+
+  // Created by the first record off the fast path.
+  private TransactionResolver resolver;
+  private final Charset fallbackCharset;
+  private byte[] scratch = new byte[256];
+  private Metrics metrics;
+  private InvalidRecordListener invalidRecordListener = InvalidRecordListener.STANDARD_ERROR;
+
+  // Fields of the last record parsed by the fast path.
+  private long transEpochSecond;
+  private long unscaledAmount;
+  private int amountScale;
+
+  /**
+   * Receiver of the parsed records of a line range.
+   */
+  private interface RecordSink {
+
+    /**
+     * A record parsed by the fast path. The credit card id is the given byte range of the buffer.
+     */
+    void record(ByteBuffer buffer, int idStart, int idEnd, long transEpochSecond, long unscaledAmount,
+        int amountScale);
+
+    /**
+     * A record resolved by the {@link TransactionResolver} fallback.
+     */
+    void resolved(Transaction trans);
+
+    /**
+     * A record rejected by the {@link TransactionResolver} fallback.
+     */
+    void invalid(String record, String reason);
+  }
+
+  /**
+   * Receiver of the records parsed by {@link ByteTransactionParser#parse(ByteBuffer, int, int,
+   * CreditCardDictionary, RecordHandler)}, one call per line.
+   */
+  public interface RecordHandler {
+
+    /**
+     * A valid record, its credit card id looked up in the dictionary.
+     */
+    void record(int creditCardOrdinal, long transEpochSecond, double amount);
+
+    /**
+     * An invalid record, with the same reason {@link TransactionResolver} gives.
+     */
+    void invalid(String record, String reason);
+  }
+
+  public ByteTransactionParser() {
+    this(Charset.defaultCharset());
+  }
+
+  /**
+   * @param fallbackCharset charset used to decode lines that are not handled by the fast path.
+   */
+  public ByteTransactionParser(Charset fallbackCharset) {
+    this.fallbackCharset = fallbackCharset;
+  }
+
+  /**
+   * @param metrics metrics to count records, bytes and invalid records in, or null.
+   */
+  public void setMetrics(Metrics metrics) {
+    this.metrics = metrics;
+  }
+
+  /**
+   * @param invalidRecordListener listener of the invalid lines, a warning to standard error by default.
+   */
+  public void setInvalidRecordListener(InvalidRecordListener invalidRecordListener) {
+    this.invalidRecordListener = invalidRecordListener;
+  }
+
+  /**
+   * Parse every line between the two positions of the buffer and push the resolved transactions
+   * to the consumer. Invalid lines are ignored and reported to the invalid record listener.
+   * 
+   * @param buffer buffer holding the records, read with absolute gets only.
+   * @param from first byte position (inclusive), at the start of a line.
+   * @param to last byte position (exclusive), at the end of a line.
+   * @param consumer consumer of {@link Transaction}.
+   */
+  public void parse(ByteBuffer buffer, int from, int to, Consumer<Transaction> consumer) {
+    parse(buffer, from, to, new RecordSink() {
+      @Override
+      public void record(ByteBuffer buffer, int idStart, int idEnd, long transEpochSecond, long unscaledAmount,
+          int amountScale) {
+        Transaction.Builder builder = new Transaction.Builder()
+            .creditCardId(ascii(buffer, idStart, idEnd))
+            .transEpochSecond(transEpochSecond);
+        if (amountScale <= TransactionBatch.AMOUNT_SCALE) {
+          builder.amountInMinorUnits(Amounts.rescale(unscaledAmount, amountScale, TransactionBatch.AMOUNT_SCALE));
+        } else {
+          builder.amount(unscaledAmount / POWERS_OF_TEN[amountScale]);
+        }
+        consumer.accept(builder.build());
+      }
+
+      @Override
+      public void resolved(Transaction trans) {
+        consumer.accept(trans);
+      }
+
+      @Override
+      public void invalid(String record, String reason) {
+        invalidRecordListener.invalidRecord(record, reason);
+      }
+    });
+  }
+
+  /**
+   * Parse every line between the two positions of the buffer into rows of a batch. Credit card ids
+   * are looked up in the dictionary of the batch. Whenever the batch is full, it is handed to the consumer
+   * and cleared. A partially filled batch is left to the caller. Invalid lines are ignored and reported
+   * to the invalid record listener.
+   * 
+   * Amounts with more decimals than {@link TransactionBatch#AMOUNT_SCALE} are rounded half up.
+   * 
+   * @param buffer buffer holding the records, read with absolute gets only.
+   * @param from first byte position (inclusive), at the start of a line.
+   * @param to last byte position (exclusive), at the end of a line.
+   * @param batch batch to fill.
+   * @param consumer consumer of full batches.
+   */
+  public void parse(ByteBuffer buffer, int from, int to, TransactionBatch batch,
+      Consumer<TransactionBatch> consumer) {
+    CreditCardDictionary dictionary = batch.getDictionary();
+    parse(buffer, from, to, new RecordSink() {
+      @Override
+      public void record(ByteBuffer buffer, int idStart, int idEnd, long transEpochSecond, long unscaledAmount,
+          int amountScale) {
+        if (batch.add(dictionary.ordinalOf(buffer, idStart, idEnd), transEpochSecond,
+            Amounts.rescale(unscaledAmount, amountScale, TransactionBatch.AMOUNT_SCALE))) {
+          consumer.accept(batch);
+          batch.clear();
+        }
+      }
+
+      @Override
+      public void resolved(Transaction trans) {
+        if (batch.add(trans)) {
+          consumer.accept(batch);
+          batch.clear();
+        }
+      }
+
+      @Override
+      public void invalid(String record, String reason) {
+        invalidRecordListener.invalidRecord(record, reason);
+      }
+    });
+  }
+
+  /**
+   * Parse every line between the two positions of the buffer and report each of them to the handler,
+   * valid or not, so that a caller can answer every record. Credit card ids are looked up in the
+   * dictionary. Nothing is printed for invalid lines.
+   * 
+   * @param buffer buffer holding the records, read with absolute gets only.
+   * @param from first byte position (inclusive), at the start of a line.
+   * @param to last byte position (exclusive), at the end of a line.
+   * @param dictionary dictionary of the credit card ids.
+   * @param handler handler of the records.
+   */
+  public void parse(ByteBuffer buffer, int from, int to, CreditCardDictionary dictionary, RecordHandler handler) {
+    parse(buffer, from, to, new RecordSink() {
+      @Override
+      public void record(ByteBuffer buffer, int idStart, int idEnd, long transEpochSecond, long unscaledAmount,
+          int amountScale) {
+        handler.record(dictionary.ordinalOf(buffer, idStart, idEnd), transEpochSecond,
+            unscaledAmount / POWERS_OF_TEN[amountScale]);
+      }
+
+      @Override
+      public void resolved(Transaction trans) {
+        handler.record(dictionary.ordinalOf(trans.getCreditCardId()),
+            trans.getTransEpochSecond(), trans.getAmount());
+      }
+
+      @Override
+      public void invalid(String record, String reason) {
+        handler.invalid(record, reason);
+      }
+    });
+  }
+
+  private void parse(ByteBuffer buffer, int from, int to, RecordSink sink) {
+    int lineStart = from;
+    int flushedPosition = from;
+    int lines = 0;
+    while (lineStart < to) {
+      if (metrics != null && ++lines == Metrics.FLUSH_INTERVAL) {
+        metrics.addRecords(lines);
+        metrics.addBytesRead(lineStart - flushedPosition);
+        flushedPosition = lineStart;
+        lines = 0;
+      }
+      // Find the line end and the field boundaries in a single pass.
+      int lineEnd = lineStart;
+      int firstComma = -1;
+      int secondComma = -1;
+      boolean fastPath = true;
+      byte b = 0;
+      while (lineEnd < to && (b = buffer.get(lineEnd)) != '\n' && b != '\r') {
+        if (b == ',') {
+          if (firstComma < 0) {
+            firstComma = lineEnd;
+          } else if (secondComma < 0) {
+            secondComma = lineEnd;
+          } else {
+            fastPath = false;
+          }
+        } else if (b < 0) {
+          fastPath = false;
+        }
+        lineEnd++;
+      }
+      parseLine(buffer, lineStart, firstComma, secondComma, lineEnd, fastPath && secondComma >= 0, sink);
+      if (lineEnd == to) {
+        break;
+      }
+      lineStart = lineEnd + 1;
+      if (b == '\r' && lineStart < to && buffer.get(lineStart) == '\n') {
+        lineStart++;
+      }
+    }
+    if (metrics != null) {
+      metrics.addRecords(lines);
+      metrics.addBytesRead(to - flushedPosition);
+    }
+  }
+
+  private void parseLine(ByteBuffer buffer, int start, int firstComma, int secondComma, int end,
+      boolean fastPath, RecordSink sink) {
+    if (fastPath) {
+      int idStart = skipLeading(buffer, start, firstComma);
+      int idEnd = skipTrailing(buffer, idStart, firstComma);
+      int dateStart = skipLeading(buffer, firstComma + 1, secondComma);
+      int dateEnd = skipTrailing(buffer, dateStart, secondComma);
+      int amountStart = skipLeading(buffer, secondComma + 1, end);
+      int amountEnd = skipTrailing(buffer, amountStart, end);
+      if (parseDateTime(buffer, dateStart, dateEnd) && parseAmount(buffer, amountStart, amountEnd)) {
+        sink.record(buffer, idStart, idEnd, transEpochSecond, unscaledAmount, amountScale);
+        return;
+      }
+    }
+    Transaction trans = fallback(buffer, start, end, sink);
+    if (trans != null) {
+      sink.resolved(trans);
+    }
+  }
+
+  /**
+   * Parse a yyyy-MM-dd'T'HH:mm:ss date time into {@link #transEpochSecond}.
+   * 
+   * @return false if not in the strict layout or out of range.
+   */
+  private boolean parseDateTime(ByteBuffer buffer, int start, int end) {
+    if (end - start != DATE_TIME_LENGTH
+        || buffer.get(start + 4) != '-' || buffer.get(start + 7) != '-' || buffer.get(start + 10) != 'T'
+        || buffer.get(start + 13) != ':' || buffer.get(start + 16) != ':') {
+      return false;
+    }
+    int year = digits(buffer, start, 4);
+    int month = digits(buffer, start + 5, 2);
+    int day = digits(buffer, start + 8, 2);
+    int hour = digits(buffer, start + 11, 2);
+    int minute = digits(buffer, start + 14, 2);
+    int second = digits(buffer, start + 17, 2);
+    if (year < 1 || month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month)
+        || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+      return false;
+    }
+    transEpochSecond = epochDay(year, month, day) * SECONDS_PER_DAY + hour * 3600 + minute * 60 + second;
+    return true;
+  }
+
+  /**
+   * Parse a plain decimal amount (an optional '-', digits and an optional fraction) into
+   * {@link #unscaledAmount} and {@link #amountScale}. The double value unscaledAmount / 10^amountScale
+   * equals {@link Double#parseDouble(String)} because both operands are exact doubles and a single
+   * division is correctly rounded.
+   * 
+   * @return false if not a plain decimal, not exactly representable this way, or not supported.
+   */
+  private boolean parseAmount(ByteBuffer buffer, int start, int end) {
+    int i = start;
+    boolean negative = i < end && buffer.get(i) == '-';
+    if (negative) {
+      i++;
+    }
+    long mantissa = 0;
+    int digitCount = 0;
+    int fractionDigits = -1;
+    for (; i < end; i++) {
+      byte b = buffer.get(i);
+      if (b >= '0' && b <= '9') {
+        if (fractionDigits >= 0) {
+          fractionDigits++;
+        }
+        mantissa = mantissa * 10 + (b - '0');
+        if (++digitCount > 15) {
+          return false;
+        }
+      } else if (b == '.' && fractionDigits < 0 && digitCount > 0) {
+        fractionDigits = 0;
+      } else {
+        return false;
+      }
+    }
+    if (digitCount == 0 || fractionDigits == 0 || mantissa >= MAX_EXACT_MANTISSA
+        || digitCount - Math.max(fractionDigits, 0) > MAX_INTEGER_DIGITS) {
+      return false;
+    }
+    unscaledAmount = negative ? -mantissa : mantissa;
+    amountScale = Math.max(fractionDigits, 0);
+    return true;
+  }
+
+  private static int digits(ByteBuffer buffer, int start, int count) {
+    int value = 0;
+    for (int i = start; i < start + count; i++) {
+      int digit = buffer.get(i) - '0';
+      if (digit < 0 || digit > 9) {
+        return -1;
+      }
+      value = value * 10 + digit;
+    }
+    return value;
+  }
+
+  static int lengthOfMonth(int year, int month) {
+    if (month == 2 && (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0))) {
+      return 29;
+    }
+    return DAYS_IN_MONTH[month - 1];
+  }
+
+  /**
+   * Days since 1970-01-01 of a valid proleptic Gregorian date, as {@link java.time.LocalDate#toEpochDay()}.
+   */
+  static long epochDay(int year, int month, int day) {
+    long y = year;
+    long total = 365 * y;
+    total += (y + 3) / 4 - (y + 99) / 100 + (y + 399) / 400;
+    total += (367 * month - 362) / 12;
+    total += day - 1;
+    if (month > 2) {
+      total--;
+      if (!(year % 4 == 0 && (year % 100 != 0 || year % 400 == 0))) {
+        total--;
+      }
+    }
+    // Days from 0000-01-01 to 1970-01-01.
+    return total - 719528;
+  }
+
+  // Same characters as String.trim(): anything up to and including space.
+  private static int skipLeading(ByteBuffer buffer, int start, int end) {
+    while (start < end && buffer.get(start) <= ' ') {
+      start++;
+    }
+    return start;
+  }
+
+  private static int skipTrailing(ByteBuffer buffer, int start, int end) {
+    while (end > start && buffer.get(end - 1) <= ' ') {
+      end--;
+    }
+    return end;
+  }
+
+  private String ascii(ByteBuffer buffer, int start, int end) {
+    return new String(copy(buffer, start, end), 0, end - start, StandardCharsets.ISO_8859_1);
+  }
+
+  private Transaction fallback(ByteBuffer buffer, int start, int end, RecordSink sink) {
+    String record = new String(copy(buffer, start, end), 0, end - start, fallbackCharset);
+    if (resolver == null) {
+      resolver = new TransactionResolver();
+    }
+    try {
+      return resolver.resolve(record);
+    } catch (InvalidTransactionRecordException ex) {
+      if (metrics != null) {
+        metrics.addInvalidRecord(ex.getMessage());
+      }
+      sink.invalid(record, ex.getMessage());
+      return null;
+    }
+  }
+
+  private byte[] copy(ByteBuffer buffer, int start, int end) {
+    int length = end - start;
+    if (scratch.length < length) {
+      scratch = new byte[Math.max(length, scratch.length << 1)];
+    }
+    for (int i = 0; i < length; i++) {
+      scratch[i] = buffer.get(start + i);
+    }
+    return scratch;
+  }
+}
@@ -0,0 +1,233 @@
+package com.tdinh.interview.atp.frauddetector.transaction;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A dictionary of hashed credit card ids.
+ * 
+ * Each distinct credit card id is assigned a dense ordinal (0, 1, 2, ...) the first time it is seen,
+ * so that per credit card data can be held in primitive arrays indexed by ordinal.
+ * 
+ * The dictionary is a compact open-addressing hash table. The id bytes are packed one after the other
+ * into large byte pages rather than held as {@link String} objects, and each ordinal only costs its key
+ * bytes, a packed key address and a table slot. Slots hold the key hash next to the ordinal, so a
+ * probe only touches the key bytes when the full hash matches. Lookups from raw bytes (see
+ * {@link #ordinalOf(ByteBuffer, int, int)}) hash and compare the bytes in place without allocating.
+ * 
+ * Ids are stored as UTF-8, so an ASCII {@link String} id and its raw bytes map to the same ordinal.
+ * 
+ * @author Tuan Dinh
+ *
+ */
+public class CreditCardDictionary {
+
+  private static final int PAGE_BITS = 24;
+  private static final int PAGE_SIZE = 1 << PAGE_BITS;
+  private static final int LENGTH_BITS = 24;
+  private static final long LENGTH_MASK = (1L << LENGTH_BITS) - 1;
+  private static final int INITIAL_CAPACITY = 1024;
+  private static final int INITIAL_PAGE_SIZE = 16 * 1024;
+
+  // Open addressing table of (key hash << 32) | (ordinal + 1), 0 being an empty slot.
+  private long[] slots = new long[INITIAL_CAPACITY];
+  // Per ordinal: (position in the pages << LENGTH_BITS) | key length.
+  private long[] keyAddresses = new long[INITIAL_CAPACITY];
+  private byte[][] pages = new byte[1][];
+  private long position;
+  private int size;
+
+  /**
+   * @param creditCardId hashed credit card id.
+   * @return the ordinal of the credit card id, assigned if it is new.
+   */
+  public int ordinalOf(String creditCardId) {
+    int length = creditCardId.length();
+    int hash = 0;
+    for (int i = 0; i < length; i++) {
+      char c = creditCardId.charAt(i);
+      if (c >= 0x80) {
+        byte[] bytes = creditCardId.getBytes(StandardCharsets.UTF_8);
+        return ordinalOf(ByteBuffer.wrap(bytes), 0, bytes.length);
+      }
+      hash = 31 * hash + c;
+    }
+    hash = mix(hash);
+    int mask = slots.length - 1;
+    for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+      long entry = slots[slot];
+      if (entry == 0) {
+        return add(slot, hash, creditCardId, null, 0, length);
+      }
+      int ordinal = (int) entry - 1;
+      if ((int) (entry >>> 32) == hash && keyEquals(ordinal, creditCardId)) {
+        return ordinal;
+      }
+    }
+  }
+
+  /**
+   * @param buffer buffer holding the credit card id bytes.
+   * @param start first byte position (inclusive).
+   * @param end last byte position (exclusive).
+   * @return the ordinal of the credit card id, assigned if it is new.
+   */
+  public int ordinalOf(ByteBuffer buffer, int start, int end) {
+    int hash = 0;
+    for (int i = start; i < end; i++) {
+      hash = 31 * hash + buffer.get(i);
+    }
+    hash = mix(hash);
+    int mask = slots.length - 1;
+    for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+      long entry = slots[slot];
+      if (entry == 0) {
+        return add(slot, hash, null, buffer, start, end - start);
+      }
+      int ordinal = (int) entry - 1;
+      if ((int) (entry >>> 32) == hash && keyEquals(ordinal, buffer, start, end)) {
+        return ordinal;
+      }
+    }
+  }
+
+  /**
+   * @param ordinal ordinal of a credit card.
+   * @return the hashed credit card id.
+   */
+  public String creditCardId(int ordinal) {
+    if (ordinal < 0 || ordinal >= size) {
+      throw new IndexOutOfBoundsException("Unknown credit card ordinal " + ordinal);
+    }
+    long address = keyAddresses[ordinal] >>> LENGTH_BITS;
+    int length = (int) (keyAddresses[ordinal] & LENGTH_MASK);
+    return new String(pages[(int) (address >>> PAGE_BITS)], (int) (address & (PAGE_SIZE - 1)), length,
+        StandardCharsets.UTF_8);
+  }
+
+  /**
+   * @return number of distinct credit card ids.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @return approximate number of bytes held by the dictionary.
+   */
+  public long memoryBytes() {
+    long bytes = 8L * slots.length + 8L * keyAddresses.length;
+    for (byte[] page : pages) {
+      bytes += page == null ? 0 : page.length;
+    }
+    return bytes;
+  }
+
+  private int add(int slot, int hash, String creditCardId, ByteBuffer buffer, int start, int length) {
+    if (length > LENGTH_MASK) {
+      throw new IllegalArgumentException("Credit card id too long: " + length + " bytes");
+    }
+    int ordinal = size;
+    if (ordinal == keyAddresses.length) {
+      keyAddresses = Arrays.copyOf(keyAddresses, ordinal << 1);
+    }
+    long address = reserve(length);
+    byte[] page = pages[(int) (address >>> PAGE_BITS)];
+    int offset = (int) (address & (PAGE_SIZE - 1));
+    for (int i = 0; i < length; i++) {
+      page[offset + i] = buffer != null ? buffer.get(start + i) : (byte) creditCardId.charAt(i);
+    }
+    keyAddresses[ordinal] = (address << LENGTH_BITS) | length;
+    slots[slot] = ((long) hash << 32) | (ordinal + 1);
+    size++;
+    // Keep the load factor at or below 0.5 so probe sequences stay short.
+    if (size * 2 > slots.length) {
+      rehash();
+    }
+    return ordinal;
+  }
+
+  /**
+   * Reserve space for a key within a single page and return its position.
+   */
+  private long reserve(int length) {
+    int pageIndex = (int) (position >>> PAGE_BITS);
+    int offset = (int) (position & (PAGE_SIZE - 1));
+    if (length > PAGE_SIZE - offset) {
+      // Keys never straddle pages.
+      pageIndex++;
+      offset = 0;
+    }
+    if (pageIndex == pages.length) {
+      pages = Arrays.copyOf(pages, pages.length << 1);
+    }
+    byte[] page = pages[pageIndex];
+    int needed = offset + length;
+    if (page == null || page.length < needed) {
+      // Pages grow gradually up to the page size, so that small dictionaries stay small.
+      int capacity = Math.max(needed, Math.min(page == null ? INITIAL_PAGE_SIZE : page.length << 1, PAGE_SIZE));
+      pages[pageIndex] = page == null ? new byte[capacity] : Arrays.copyOf(page, capacity);
+    }
+    long address = ((long) pageIndex << PAGE_BITS) | offset;
+    position = address + length;
+    return address;
+  }
+
+  private void rehash() {
+    long[] newSlots = new long[slots.length << 1];
+    int mask = newSlots.length - 1;
+    for (long entry : slots) {
+      if (entry != 0) {
+        int slot = (int) (entry >>> 32) & mask;
+        while (newSlots[slot] != 0) {
+          slot = (slot + 1) & mask;
+        }
+        newSlots[slot] = entry;
+      }
+    }
+    slots = newSlots;
+  }
+
+  private boolean keyEquals(int ordinal, String creditCardId) {
+    int length = (int) (keyAddresses[ordinal] & LENGTH_MASK);
+    if (length != creditCardId.length()) {
+      return false;
+    }
+    long address = keyAddresses[ordinal] >>> LENGTH_BITS;
+    byte[] page = pages[(int) (address >>> PAGE_BITS)];
+    int offset = (int) (address & (PAGE_SIZE - 1));
+    for (int i = 0; i < length; i++) {
+      if (page[offset + i] != creditCardId.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private boolean keyEquals(int ordinal, ByteBuffer buffer, int start, int end) {
+    int length = (int) (keyAddresses[ordinal] & LENGTH_MASK);
+    if (length != end - start) {
+      return false;
+    }
+    long address = keyAddresses[ordinal] >>> LENGTH_BITS;
+    byte[] page = pages[(int) (address >>> PAGE_BITS)];
+    int offset = (int) (address & (PAGE_SIZE - 1));
+    for (int i = 0; i < length; i++) {
+      if (page[offset + i] != buffer.get(start + i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // Murmur3 finalizer, spreads the polynomial hash over the low bits used by the table.
+  private static int mix(int hash) {
+    hash ^= hash >>> 16;
+    hash *= 0x85ebca6b;
+    hash ^= hash >>> 13;
+    hash *= 0xc2b2ae35;
+    hash ^= hash >>> 16;
+    return hash;
+  }
+}
@@ -0,0 +1,273 @@
+package com.tdinh.interview.atp.frauddetector.transaction;
+
+import com.tdinh.interview.atp.frauddetector.transaction.error.FileLoaderException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.function.Consumer;
+
+/**
+ * A {@link TransactionSource} following a transaction file that keeps growing, such as the log a switch
+ * appends to throughout the day, until it is stopped.
+ *
+ * The file is polled with positional reads from where the last read ended, so each byte is read once, and
+ * only complete lines are parsed: a line still being written is kept until its end is appended. Reads follow
+ * each other without pause while the file grows, and are {@link #DEFAULT_POLL_MILLIS} apart once it is idle,
+ * which bounds the delay between a line being written and its transaction being scanned.
+ *
+ * The file may be rotated: once the file at the path is another file (moved away and created again), the rest
+ * of the old file is read, and the new file followed from its start. The old file is followed until then, as
+ * it may still be written to. A file truncated in place is followed from its start as well.
+ *
+ * The position of the first line not parsed yet, {@link #getResumePosition()}, can be saved along with the
+ * window state built from the lines before it, and following resumed from there with {@link #resume(String)}.
+ * Besides once {@link #forEach(Consumer)} returns, a {@link Checkpoint} may save both periodically while
+ * following, so that a crash loses at most an interval of work.
+ *
+ * @author Tuan Dinh
+ *
+ */
+public class FollowingTransactionSource implements TransactionSource {
+
+  static final long DEFAULT_POLL_MILLIS = 10;
+  static final int BUFFER_SIZE = 1024 * 1024;
+
+  private final Path path;
+  private final ByteTransactionParser parser;
+  private final long pollMillis;
+  private volatile boolean stopped;
+  // Position of the first byte not parsed yet, and identity of the file it is in.
+  private long position;
+  private String fileKey;
+  private Checkpoint checkpoint;
+  private long checkpointMillis;
+
+  /**
+   * @param filePath path of the file to follow.
+   * @param loader loader whose metrics and invalid record listener are reported to.
+   */
+  public FollowingTransactionSource(String filePath, TransactionFileLoader loader) {
+    this(filePath, loader, DEFAULT_POLL_MILLIS);
+  }
+
+  /**
+   * @param pollMillis milliseconds between two reads of an idle file.
+   */
+  FollowingTransactionSource(String filePath, TransactionFileLoader loader, long pollMillis) {
+    this.path = Paths.get(filePath);
+    this.parser = loader.newParser();
+    this.pollMillis = pollMillis;
+  }
+
+  /**
+   * Save a checkpoint periodically while following, between two reads.
+   *
+   * @param checkpoint checkpoint called on the following thread, once the transactions before the position
+   *        it is given have been pushed to the consumer.
+   * @param intervalMillis milliseconds between two checkpoints, a checkpoint being skipped while nothing new was
+   *        parsed.
+   */
+  public void setCheckpoint(Checkpoint checkpoint, long intervalMillis) {
+    this.checkpoint = checkpoint;
+    this.checkpointMillis = intervalMillis;
+  }
+
+  /**
+   * Resume from a position returned by {@link #getResumePosition()}, if the file followed is still the same.
+   * Otherwise it was rotated in between, and the new file is followed from its start.
+   *
+   * @throws FileLoaderException if the position is not one.
+   */
+  public void resume(String resumePosition) throws FileLoaderException {
+    int separator = resumePosition.indexOf('\n');
+    if (separator < 0) {
+      throw new FileLoaderException("Invalid follow position [" + resumePosition + "]");
+    }
+    try {
+      position = Long.parseLong(resumePosition.substring(0, separator));
+    } catch (NumberFormatException ex) {
+      throw new FileLoaderException("Invalid follow position [" + resumePosition + "]");
+    }
+    fileKey = resumePosition.substring(separator + 1);
+  }
+
+  /**
+   * @return position of the first line not parsed yet, along with the identity of its file, to resume from.
+   */
+  public String getResumePosition() {
+    return position + "\n" + fileKey;
+  }
+
+  /**
+   * @return position in the followed file of the first line not parsed yet.
+   */
+  public long getPosition() {
+    return position;
+  }
+
+  /**
+   * Stop following: {@link #forEach(Consumer)} returns within a poll, once the lines already read are
+   * parsed. May be called from any thread.
+   */
+  public void stop() {
+    stopped = true;
+  }
+
+  /**
+   * Push the transactions of the file to the consumer as they are appended, until stopped.
+   *
+   * @throws FileLoaderException if the file cannot be read.
+   */
+  @Override
+  public void forEach(Consumer<Transaction> consumer) throws FileLoaderException {
+    // Bytes read from the file but not parsed yet, a line at most, are kept at the start of the buffer.
+    ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    FileChannel channel = null;
+    long nextCheckpoint = System.currentTimeMillis() + checkpointMillis;
+    String checkpointed = getResumePosition();
+    try {
+      while (!stopped) {
+        if (checkpoint != null && System.currentTimeMillis() >= nextCheckpoint) {
+          String resumePosition = getResumePosition();
+          if (!resumePosition.equals(checkpointed)) {
+            checkpoint.save(resumePosition);
+            checkpointed = resumePosition;
+          }
+          nextCheckpoint = System.currentTimeMillis() + checkpointMillis;
+        }
+        if (channel == null) {
+          channel = open();
+          if (channel == null) {
+            pause();
+            continue;
+          }
+        }
+        if (read(channel, buffer, consumer) > 0) {
+          continue;
+        }
+        String currentKey = fileKeyOf(path);
+        if (currentKey != null && !currentKey.equals(fileKey)) {
+          // Rotated: the rest of the old file, including a last line without a terminator, before the new one.
+          while (read(channel, buffer, consumer) > 0) {
+            continue;
+          }
+          parse(buffer, buffer.position(), consumer);
+          channel.close();
+          channel = null;
+          position = 0;
+          fileKey = null;
+        } else if (channel.size() < position + buffer.position()) {
+          // Truncated in place: the partial line read is gone with it.
+          buffer.clear();
+          position = 0;
+        } else {
+          pause();
+        }
+      }
+    } catch (NoSuchFileException ex) {
+      throw new FileLoaderException(ex.getMessage() + " (No such file or directory)");
+    } catch (IOException ex) {
+      throw new FileLoaderException(ex.getMessage());
+    } finally {
+      if (channel != null) {
+        try {
+          channel.close();
+        } catch (IOException ex) {
+          // Nothing left to read from it.
+        }
+      }
+    }
+  }
+
+  /**
+   * @return a channel on the file at the path positioned where to resume, or null if there is no file yet.
+   */
+  private FileChannel open() throws IOException {
+    FileChannel channel;
+    try {
+      channel = FileChannel.open(path, StandardOpenOption.READ);
+    } catch (NoSuchFileException ex) {
+      return null;
+    }
+    String key = fileKeyOf(path);
+    if (key == null || !key.equals(fileKey) || channel.size() < position) {
+      position = 0;
+    }
+    fileKey = key;
+    return channel;
+  }
+
+  /**
+   * Read the bytes appended since the last read, and parse the complete lines among them.
+   *
+   * @return number of bytes read, 0 or less if none was appended.
+   */
+  private int read(FileChannel channel, ByteBuffer buffer, Consumer<Transaction> consumer) throws IOException {
+    if (!buffer.hasRemaining()) {
+      // A single line longer than the buffer: parsed as it is rather than grown without bound.
+      parse(buffer, buffer.position(), consumer);
+    }
+    int read = channel.read(buffer, position + buffer.position());
+    if (read > 0) {
+      int lineEnd = MappedTransactionFileLoader.lastLineEnd(buffer, buffer.position());
+      if (lineEnd > 0) {
+        parse(buffer, lineEnd, consumer);
+      }
+    }
+    return read;
+  }
+
+  /**
+   * Parse the first bytes of the buffer, and keep the rest at its start.
+   */
+  private void parse(ByteBuffer buffer, int end, Consumer<Transaction> consumer) {
+    if (end == 0) {
+      return;
+    }
+    parser.parse(buffer, 0, end, consumer);
+    position += end;
+    buffer.flip().position(end);
+    buffer.compact();
+  }
+
+  private void pause() throws FileLoaderException {
+    try {
+      Thread.sleep(pollMillis);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new FileLoaderException("Interrupted while following " + path);
+    }
+  }
+
+  /**
+   * Saves the state built from the transactions of a {@link FollowingTransactionSource} along with the position
+   * to resume from.
+   */
+  @FunctionalInterface
+  public interface Checkpoint {
+
+    /**
+     * @param resumePosition position to resume from with {@link FollowingTransactionSource#resume(String)}.
+     * @throws FileLoaderException if the checkpoint cannot be saved.
+     */
+    void save(String resumePosition) throws FileLoaderException;
+  }
+
+  /**
+   * @return identity of the file at a path, e.g. its device and inode, or null if there is none.
+   */
+  private static String fileKeyOf(Path path) throws IOException {
+    try {
+      Object key = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+      return String.valueOf(key);
+    } catch (NoSuchFileException ex) {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,264 @@
+package com.tdinh.interview.atp.frauddetector.transaction;
+
+import com.tdinh.interview.atp.frauddetector.transaction.error.FileLoaderException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Load transactions from a gzip compressed file, without decompressing it to disk first.
+ *
+ * The file is decompressed on a thread of its own into large chunks cut on line boundaries, handed to the
+ * calling thread through a bounded queue and parsed in place by a {@link ByteTransactionParser}, as the
+ * {@link MappedTransactionFileLoader} parses the segments of a text file. Decompression and parsing
+ * therefore overlap, and loading runs at about the speed of the slower of the two rather than their sum.
+ * Chunks are recycled through a fixed pool, so memory is bounded by the pool whatever the file size. A chunk
+ * grows to hold a line longer than itself, up to {@link #MAX_CHUNK_SIZE}, beyond which loading fails rather
+ * than running out of memory on a file without line terminators.
+ *
+ * @author Tuan Dinh
+ *
+ */
+public class GzipTransactionFileLoader extends TransactionFileLoader {
+
+  static final int DEFAULT_CHUNK_SIZE = 4 * 1024 * 1024;
+  static final int DEFAULT_CHUNKS = 4;
+  static final int MAX_CHUNK_SIZE = 64 * 1024 * 1024;
+
+  private static final int INPUT_BUFFER_SIZE = 64 * 1024;
+
+  private final int chunkSize;
+  private final int chunks;
+  private final int maxChunkSize;
+
+  public GzipTransactionFileLoader() {
+    this(DEFAULT_CHUNK_SIZE, DEFAULT_CHUNKS);
+  }
+
+  GzipTransactionFileLoader(int chunkSize, int chunks) {
+    this(chunkSize, chunks, MAX_CHUNK_SIZE);
+  }
+
+  /**
+   * @param chunkSize initial size of the chunks, grown for lines longer than a chunk.
+   * @param chunks number of chunks in the pool, at least 2: one being filled and one being parsed.
+   * @param maxChunkSize size a chunk is grown up to, i.e. the longest line supported.
+   */
+  GzipTransactionFileLoader(int chunkSize, int chunks, int maxChunkSize) {
+    if (chunks < 2) {
+      throw new IllegalArgumentException("Expecting at least 2 chunks, got " + chunks);
+    }
+    this.chunkSize = chunkSize;
+    this.chunks = chunks;
+    this.maxChunkSize = Math.max(chunkSize, maxChunkSize);
+  }
+
+  /**
+   * @param filePath path to file.
+   * @return true if the file starts with the gzip magic bytes, false if it does not or cannot be read.
+   */
+  public static boolean isGzip(String filePath) {
+    try (InputStream in = new FileInputStream(filePath)) {
+      return in.read() == 0x1f && in.read() == 0x8b;
+    } catch (IOException ex) {
+      return false;
+    }
+  }
+
+  /**
+   * Stream transactions from a gzip compressed file given a file path.
+   *
+   * @see TransactionFileLoader#load(String, Consumer)
+   */
+  @Override
+  public void load(String filePath, Consumer<Transaction> consumer) throws FileLoaderException {
+    ByteTransactionParser parser = newParser();
+    forEachChunk(filePath, (chunk, length) -> parser.parse(chunk, 0, length, consumer));
+  }
+
+  /**
+   * Stream transactions from a gzip compressed file given a file path as columnar {@link TransactionBatch}(es),
+   * without creating a {@link Transaction} per record.
+   *
+   * @see TransactionFileLoader#loadBatches(String, CreditCardDictionary, Consumer)
+   */
+  @Override
+  public void loadBatches(String filePath, CreditCardDictionary dictionary, Consumer<TransactionBatch> consumer)
+      throws FileLoaderException {
+    ByteTransactionParser parser = newParser();
+    TransactionBatch batch = new TransactionBatch(dictionary);
+    forEachChunk(filePath, (chunk, length) -> parser.parse(chunk, 0, length, batch, consumer));
+    if (batch.size() > 0) {
+      consumer.accept(batch);
+    }
+  }
+
+  @Override
+  Reader openText(String filePath) throws IOException {
+    FileInputStream file = new FileInputStream(filePath);
+    try {
+      return new InputStreamReader(new GZIPInputStream(file, INPUT_BUFFER_SIZE), StandardCharsets.UTF_8);
+    } catch (IOException | RuntimeException ex) {
+      // Not a gzip file: the header could not be read.
+      file.close();
+      throw ex;
+    }
+  }
+
+  private interface ChunkConsumer {
+    void accept(ByteBuffer chunk, int length);
+  }
+
+  /**
+   * Decompress the file on a separate thread and hand each chunk, ending just after a '\n' or at the end
+   * of file, to the consumer on the calling thread.
+   */
+  private void forEachChunk(String filePath, ChunkConsumer chunkConsumer) throws FileLoaderException {
+    InputStream in;
+    try {
+      FileInputStream file = new FileInputStream(filePath);
+      try {
+        in = new GZIPInputStream(file, INPUT_BUFFER_SIZE);
+      } catch (IOException | RuntimeException ex) {
+        // Not a gzip file: the header could not be read.
+        file.close();
+        throw ex;
+      }
+    } catch (IOException ex) {
+      throw new FileLoaderException(ex.getMessage());
+    }
+    Decompressor decompressor = new Decompressor(in);
+    Thread thread = new Thread(decompressor, "gzip-decompressor");
+    thread.setDaemon(true);
+    thread.start();
+    try {
+      while (true) {
+        Chunk chunk = decompressor.full.take();
+        if (chunk.failure instanceof IOException) {
+          throw new FileLoaderException(chunk.failure.getMessage());
+        } else if (chunk.failure != null) {
+          throw new FileLoaderException("Cannot decompress " + filePath + ": " + chunk.failure);
+        }
+        if (chunk == Chunk.END) {
+          return;
+        }
+        chunkConsumer.accept(chunk.buffer, chunk.length);
+        decompressor.free.put(chunk);
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new FileLoaderException("Interrupted while loading " + filePath);
+    } finally {
+      // Stops the decompressor if the consumer failed or the file is corrupted.
+      thread.interrupt();
+      try {
+        thread.join();
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * A chunk of decompressed bytes, of which the first length bytes hold whole lines.
+   */
+  private static final class Chunk {
+
+    static final Chunk END = new Chunk(0);
+
+    byte[] bytes;
+    ByteBuffer buffer;
+    int length;
+    Throwable failure;
+
+    Chunk(int size) {
+      bytes = new byte[size];
+      buffer = ByteBuffer.wrap(bytes);
+    }
+
+    void grow(int size) {
+      bytes = Arrays.copyOf(bytes, size);
+      buffer = ByteBuffer.wrap(bytes);
+    }
+  }
+
+  /**
+   * Fill chunks from the decompressed stream until its end, the bytes after the last '\n' of a chunk
+   * being moved to the start of the next one.
+   */
+  private final class Decompressor implements Runnable {
+
+    private final InputStream in;
+    private final BlockingQueue<Chunk> free = new ArrayBlockingQueue<>(chunks);
+    // One more slot for the end or failure marker.
+    private final BlockingQueue<Chunk> full = new ArrayBlockingQueue<>(chunks + 1);
+    // Allocated up front, so that a failure can be reported even when out of memory.
+    private final Chunk failed = new Chunk(0);
+
+    Decompressor(InputStream in) {
+      this.in = in;
+      for (int i = 0; i < chunks; i++) {
+        free.add(new Chunk(chunkSize));
+      }
+    }
+
+    @Override
+    public void run() {
+      try (InputStream in = this.in) {
+        Chunk chunk = free.take();
+        int filled = 0;
+        while (true) {
+          int read = in.read(chunk.bytes, filled, chunk.bytes.length - filled);
+          if (read > 0) {
+            filled += read;
+            if (filled < chunk.bytes.length) {
+              continue;
+            }
+          }
+          if (read < 0) {
+            if (filled > 0) {
+              chunk.length = filled;
+              full.put(chunk);
+            }
+            full.put(Chunk.END);
+            return;
+          }
+          int length = MappedTransactionFileLoader.lastLineEnd(chunk.buffer, filled);
+          if (length < 0) {
+            // A single line longer than the chunk.
+            if (chunk.bytes.length >= maxChunkSize) {
+              throw new IOException("Line longer than " + maxChunkSize + " bytes");
+            }
+            chunk.grow((int) Math.min(maxChunkSize, (long) chunk.bytes.length << 1));
+            continue;
+          }
+          Chunk next = free.take();
+          int remaining = filled - length;
+          if (next.bytes.length < remaining) {
+            next.grow(chunk.bytes.length);
+          }
+          System.arraycopy(chunk.bytes, length, next.bytes, 0, remaining);
+          chunk.length = length;
+          full.put(chunk);
+          chunk = next;
+          filled = remaining;
+        }
+      } catch (InterruptedException ex) {
+        // Loading stopped.
+      } catch (Throwable ex) {
+        // Any failure, e.g. a corrupted file or no memory left, is reported so that loading does not wait forever.
+        failed.failure = ex;
+        full.offer(failed);
+      }
+    }
+  }
+}
@@ -0,0 +1,25 @@
+package com.tdinh.interview.atp.frauddetector.transaction;
+
+/**
+ * A listener of the records a loader ignores because {@link TransactionResolver} cannot resolve them.
+ * 
+ * @author Tuan Dinh
+ *
+ */
+@FunctionalInterface
+public interface InvalidRecordListener {
+
+  /**
+   * Prints a warning per invalid record to standard error, the default of the loaders.
+   */
+  InvalidRecordListener STANDARD_ERROR = (record, reason) ->
+      System.err.println("WARN - invalid record: [" + record + "]. Reason: " + reason + ". Ignore");
+
+  /**
+   * An invalid record. May be called from several threads at once by a parallel scan.
+   * 
+   * @param record the record as read.
+   * @param reason reason given by {@link TransactionResolver}.
+   */
+  void invalidRecord(String record, String reason);
+}
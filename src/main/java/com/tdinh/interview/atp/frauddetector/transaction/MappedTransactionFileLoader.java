@@ -0,0 +1,113 @@
+package com.tdinh.interview.atp.frauddetector.transaction;
+
+import com.tdinh.interview.atp.frauddetector.transaction.error.FileLoaderException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Load transaction from a file by memory-mapping it.
+ * 
+ * The file is mapped with {@link FileChannel#map} in segments cut on line boundaries, and each
+ * segment is parsed in place by a {@link ByteTransactionParser}. This avoids the per line {@link String}
+ * and the field splitting of {@link TransactionFileLoader}, while invalid records get the same warnings.
+ * 
+ * @author Tuan Dinh
+ *
+ */
+public class MappedTransactionFileLoader extends TransactionFileLoader {
+
+  static final int DEFAULT_SEGMENT_SIZE = 256 * 1024 * 1024;
+
+  private final int segmentSize;
+
+  public MappedTransactionFileLoader() {
+    this(DEFAULT_SEGMENT_SIZE);
+  }
+
+  MappedTransactionFileLoader(int segmentSize) {
+    this.segmentSize = segmentSize;
+  }
+
+  /**
+   * Stream transactions from a memory-mapped file given a file path.
+   * 
+   * @see TransactionFileLoader#load(String, Consumer)
+   */
+  @Override
+  public void load(String filePath, Consumer<Transaction> consumer) throws FileLoaderException {
+    ByteTransactionParser parser = newParser();
+    forEachSegment(filePath, (segment, end) -> parser.parse(segment, 0, end, consumer));
+  }
+
+  /**
+   * Stream transactions from a memory-mapped file given a file path as columnar {@link TransactionBatch}(es),
+   * without creating a {@link Transaction} per record.
+   * 
+   * @see TransactionFileLoader#loadBatches(String, CreditCardDictionary, Consumer)
+   */
+  @Override
+  public void loadBatches(String filePath, CreditCardDictionary dictionary, Consumer<TransactionBatch> consumer)
+      throws FileLoaderException {
+    ByteTransactionParser parser = newParser();
+    TransactionBatch batch = new TransactionBatch(dictionary);
+    forEachSegment(filePath, (segment, end) -> parser.parse(segment, 0, end, batch, consumer));
+    if (batch.size() > 0) {
+      consumer.accept(batch);
+    }
+  }
+
+  /**
+   * Map the file segment by segment, each ending just after a '\n' or at the end of file.
+   */
+  private void forEachSegment(String filePath, ObjIntConsumer<MappedByteBuffer> segmentConsumer)
+      throws FileLoaderException {
+    try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+      long fileSize = channel.size();
+      long position = 0;
+      int size = segmentSize;
+      while (position < fileSize) {
+        int length = (int) Math.min(size, fileSize - position);
+        MappedByteBuffer segment = channel.map(MapMode.READ_ONLY, position, length);
+        int end = length;
+        if (position + length < fileSize) {
+          end = lastLineEnd(segment, length);
+          if (end < 0) {
+            if (size == Integer.MAX_VALUE) {
+              throw new FileLoaderException("Record too long at position " + position);
+            }
+            // A single line longer than the segment, map a larger one.
+            size = (int) Math.min((long) size << 1, Integer.MAX_VALUE);
+            continue;
+          }
+        }
+        segmentConsumer.accept(segment, end);
+        position += end;
+        size = segmentSize;
+      }
+    } catch (NoSuchFileException ex) {
+      throw new FileLoaderException(ex.getMessage() + " (No such file or directory)");
+    } catch (IOException ex) {
+      throw new FileLoaderException(ex.getMessage());
+    }
+  }
+
+  /**
+   * @return position just after the last '\n' of the segment, or -1 if there is none.
+   */
+  static int lastLineEnd(ByteBuffer segment, int length) {
+    for (int i = length - 1; i >= 0; i--) {
+      if (segment.get(i) == '\n') {
+        return i + 1;
+      }
+    }
+    return -1;
+  }
+}
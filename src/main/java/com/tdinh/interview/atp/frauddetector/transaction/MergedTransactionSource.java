@@ -0,0 +1,329 @@
+package com.tdinh.interview.atp.frauddetector.transaction;
+
+import com.tdinh.interview.atp.frauddetector.transaction.error.FileLoaderException;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * A {@link TransactionSource} merging several transaction files, e.g. one file per hour and per acquirer,
+ * into a single feed in transaction time order.
+ *
+ * Each file is read on a thread of its own by its loader, and its transactions handed over in chunks through
+ * a small bounded queue, so the files are read ahead concurrently while memory is bounded by a few chunks per
+ * file. The calling thread merges the heads of the files with a heap on the transaction time (a k-way merge),
+ * in O(log k) per transaction, and keeps taking from the same file without touching the heap while it is
+ * ahead of the others, which is the common case of files covering successive periods.
+ *
+ * Only the first transaction of each file is read up front, to order the files. At most
+ * {@link #DEFAULT_READERS} files are then read ahead at once, in the order of their first transactions, the
+ * next one starting as one ends, so a day of hourly files holds a few threads and open files rather than one
+ * per file. A file whose turn comes before that, as it overlaps in time with the files being read, is started
+ * then: files overlapping each other are all read at once.
+ *
+ * Each file must be in time order itself. Transactions of the same time are taken from the files in the order
+ * the files are given.
+ *
+ * @author Tuan Dinh
+ *
+ */
+public class MergedTransactionSource implements TransactionSource {
+
+  static final int DEFAULT_CHUNK_SIZE = 1024;
+  static final int DEFAULT_CHUNKS = 4;
+  static final int DEFAULT_READERS = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+  private static final Object END = new Object();
+
+  private final List<String> filePaths;
+  private final Function<String, TransactionFileLoader> loaderOf;
+  private final int chunkSize;
+  private final int chunks;
+  private final int maxReaders;
+
+  /**
+   * @param filePaths paths of the files to merge.
+   * @param loaderOf loader of each file, e.g. according to its format. Loaders must be safe to use from
+   *        several threads at once, as the loaders of this package are.
+   */
+  public MergedTransactionSource(List<String> filePaths, Function<String, TransactionFileLoader> loaderOf) {
+    this(filePaths, loaderOf, DEFAULT_CHUNK_SIZE, DEFAULT_CHUNKS, DEFAULT_READERS);
+  }
+
+  /**
+   * @param chunkSize number of transactions handed over at once.
+   * @param chunks number of chunks a file is read ahead by.
+   * @param maxReaders number of files read ahead at once, unless more overlap in time.
+   */
+  MergedTransactionSource(List<String> filePaths, Function<String, TransactionFileLoader> loaderOf, int chunkSize,
+      int chunks, int maxReaders) {
+    this.filePaths = new ArrayList<>(filePaths);
+    this.loaderOf = loaderOf;
+    this.chunkSize = chunkSize;
+    this.chunks = chunks;
+    this.maxReaders = maxReaders;
+  }
+
+  /**
+   * Expand the arguments naming transaction files: a directory stands for the files in it, and a path whose
+   * file name has glob characters (*, ?, [ or {) for the files of its directory matching it, both sorted by
+   * name. Other paths are kept as they are.
+   *
+   * @param arguments file, directory or glob paths.
+   * @return file paths, in the order of the arguments.
+   * @throws FileLoaderException if a directory cannot be listed or is empty, or a glob matches no file.
+   */
+  public static List<String> expand(List<String> arguments) throws FileLoaderException {
+    List<String> filePaths = new ArrayList<>();
+    for (String argument : arguments) {
+      Path path = Paths.get(argument);
+      Path fileName = path.getFileName();
+      if (Files.isDirectory(path)) {
+        List<String> files = list(path, "*", argument);
+        if (files.isEmpty()) {
+          throw new FileLoaderException("No transaction file in " + argument);
+        }
+        filePaths.addAll(files);
+      } else if (fileName != null && isGlob(fileName.toString())) {
+        Path directory = path.getParent() != null ? path.getParent() : Paths.get("");
+        List<String> matches = list(directory, fileName.toString(), argument);
+        if (matches.isEmpty()) {
+          throw new FileLoaderException("No transaction file matches " + argument);
+        }
+        filePaths.addAll(matches);
+      } else {
+        filePaths.add(argument);
+      }
+    }
+    return filePaths;
+  }
+
+  private static boolean isGlob(String fileName) {
+    for (char c : new char[] {'*', '?', '[', '{'}) {
+      if (fileName.indexOf(c) >= 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return the regular files of a directory matching a glob, sorted by name, hidden files aside.
+   */
+  private static List<String> list(Path directory, String glob, String argument) throws FileLoaderException {
+    PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+    List<String> filePaths = new ArrayList<>();
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory.toString().isEmpty()
+        ? Paths.get(".") : directory)) {
+      for (Path path : stream) {
+        String fileName = path.getFileName().toString();
+        if (!fileName.startsWith(".") && matcher.matches(path.getFileName()) && Files.isRegularFile(path)) {
+          filePaths.add(directory.resolve(fileName).toString());
+        }
+      }
+    } catch (IOException ex) {
+      throw new FileLoaderException("Cannot list " + argument + ": " + ex.getMessage());
+    }
+    Collections.sort(filePaths);
+    return filePaths;
+  }
+
+  /**
+   * Push the transactions of all the files to the consumer, in time order.
+   *
+   * @throws FileLoaderException if a file cannot be read.
+   */
+  @Override
+  public void forEach(Consumer<Transaction> consumer) throws FileLoaderException {
+    List<Reader> readers = new ArrayList<>(filePaths.size());
+    try {
+      for (int i = 0; i < filePaths.size(); i++) {
+        String filePath = filePaths.get(i);
+        Transaction first = loaderOf.apply(filePath).first(filePath);
+        if (first != null) {
+          readers.add(new Reader(i, filePath, first));
+        }
+      }
+      PriorityQueue<Reader> heads = new PriorityQueue<>(Math.max(1, readers.size()));
+      heads.addAll(readers);
+      // Readers not started yet, in the order of their first transactions.
+      PriorityQueue<Reader> pending = new PriorityQueue<>(heads);
+      int running = 0;
+      while (!heads.isEmpty()) {
+        for (; running < maxReaders && !pending.isEmpty(); running++) {
+          pending.poll().start();
+        }
+        Reader reader = heads.poll();
+        Reader next = heads.peek();
+        if (!reader.started) {
+          // Its turn came before a reader ended: it overlaps in time with the readers running.
+          pending.remove(reader);
+          reader.start();
+          running++;
+        }
+        if (reader.position == 0 && reader.chunk.isEmpty()) {
+          // The first transaction, peeked already, is read again by the reader.
+          reader.advance();
+        }
+        do {
+          consumer.accept(reader.current);
+          if (!reader.advance()) {
+            reader = null;
+            running--;
+            break;
+          }
+        } while (next == null || reader.compareTo(next) < 0);
+        if (reader != null) {
+          heads.add(reader);
+        }
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new FileLoaderException("Interrupted while merging transaction files");
+    } finally {
+      // Stops the readers still running if a file failed or the consumer did.
+      for (Reader reader : readers) {
+        if (reader.started) {
+          reader.thread.interrupt();
+        }
+      }
+      for (Reader reader : readers) {
+        try {
+          if (reader.started) {
+            reader.thread.join();
+          }
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    }
+  }
+
+  /**
+   * Thrown through the loader of a reader to stop it once interrupted.
+   */
+  private static final class Stopped extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    Stopped() {
+      super(null, null, false, false);
+    }
+  }
+
+  /**
+   * The reader of a file: loads it on its own thread into chunks, and is the merge cursor over these chunks
+   * on the calling thread.
+   */
+  private final class Reader implements Runnable, Comparable<Reader> {
+
+    private final int index;
+    private final String filePath;
+    private final Thread thread;
+    private final BlockingQueue<Object> queue = new ArrayBlockingQueue<>(chunks);
+    private boolean started;
+    private List<Transaction> chunk = Collections.emptyList();
+    private int position;
+    private Transaction current;
+
+    /**
+     * @param first first transaction of the file, its head until the reader is started.
+     */
+    Reader(int index, String filePath, Transaction first) {
+      this.index = index;
+      this.filePath = filePath;
+      this.current = first;
+      this.thread = new Thread(this, "transaction-reader-" + index);
+      thread.setDaemon(true);
+    }
+
+    void start() {
+      started = true;
+      thread.start();
+    }
+
+    @Override
+    public void run() {
+      List<List<Transaction>> filling = new ArrayList<>(1);
+      filling.add(new ArrayList<>(chunkSize));
+      Object end = END;
+      try {
+        loaderOf.apply(filePath).load(filePath, trans -> {
+          List<Transaction> chunk = filling.get(0);
+          chunk.add(trans);
+          if (chunk.size() == chunkSize) {
+            put(chunk);
+            filling.set(0, new ArrayList<>(chunkSize));
+          }
+        });
+        if (!filling.get(0).isEmpty()) {
+          put(filling.get(0));
+        }
+      } catch (Stopped ex) {
+        return;
+      } catch (Throwable ex) {
+        // Handed over whatever it is, an Error included, as the merge waits for the end of the file.
+        end = ex;
+      }
+      try {
+        queue.put(end);
+      } catch (InterruptedException ex) {
+        // Merge stopped.
+      }
+    }
+
+    private void put(List<Transaction> chunk) {
+      try {
+        queue.put(chunk);
+      } catch (InterruptedException ex) {
+        throw new Stopped();
+      }
+    }
+
+    /**
+     * Move to the next transaction of the file, waiting for it to be read.
+     *
+     * @return false at the end of the file.
+     */
+    @SuppressWarnings("unchecked")
+    boolean advance() throws InterruptedException, FileLoaderException {
+      if (position == chunk.size()) {
+        Object next = queue.take();
+        if (next instanceof FileLoaderException) {
+          throw (FileLoaderException) next;
+        }
+        if (next instanceof RuntimeException) {
+          throw (RuntimeException) next;
+        }
+        if (next instanceof Error) {
+          throw (Error) next;
+        }
+        if (next == END) {
+          current = null;
+          return false;
+        }
+        chunk = (List<Transaction>) next;
+        position = 0;
+      }
+      current = chunk.get(position++);
+      return true;
+    }
+
+    @Override
+    public int compareTo(Reader other) {
+      int order = Long.compare(current.getTransEpochSecond(), other.current.getTransEpochSecond());
+      return order != 0 ? order : Integer.compare(index, other.index);
+    }
+  }
+}
@@ -1,6 +1,7 @@
 package com.tdinh.interview.atp.frauddetector.transaction;
 
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 
 /**
  * A credit card transaction that includes:
@@ -8,6 +9,12 @@ import java.time.LocalDateTime;
  * (2) Date and time when the transaction occurs
  * (3) Transaction amount
  * 
+ * The date time and the amount can be given either as objects or as primitives (epoch seconds,
+ * minor units). The other form is derived when first asked for, so resolvers that parse
+ * primitives do not pay for {@link LocalDateTime} or {@link java.math.BigDecimal} conversions
+ * that the scan never needs. A transaction built without a date time has none: its date time is null and
+ * its epoch seconds are 0.
+ * 
  * @author Tuan Dinh
  *
  */
@@ -17,37 +24,93 @@ public class Transaction {
 
   private String creditCardId;
   private LocalDateTime transDateTime;
+  private long transEpochSecond;
+  private boolean epochSecondKnown;
   private double amount;
+  private long amountInMinorUnits;
+  private boolean minorUnitsKnown;
 
   public String getCreditCardId() {
     return creditCardId;
   }
 
   public LocalDateTime getTransDateTime() {
+    if (transDateTime == null && epochSecondKnown) {
+      transDateTime = LocalDateTime.ofEpochSecond(transEpochSecond, 0, ZoneOffset.UTC);
+    }
     return transDateTime;
   }
 
+  /**
+   * @return the transaction date time in seconds since the epoch, taking it as UTC, or 0 if none.
+   */
+  public long getTransEpochSecond() {
+    return transEpochSecond;
+  }
+
   public double getAmount() {
     return amount;
   }
 
+  /**
+   * @return the amount in minor units, see {@link TransactionBatch#AMOUNT_SCALE}. Amounts with more
+   *         decimals are rounded half up.
+   */
+  public long getAmountInMinorUnits() {
+    if (!minorUnitsKnown) {
+      amountInMinorUnits = TransactionBatch.toMinorUnits(amount);
+      minorUnitsKnown = true;
+    }
+    return amountInMinorUnits;
+  }
+
   public static class Builder {
     private String creditCardId;
     private LocalDateTime transDateTime;
+    private long transEpochSecond;
+    private boolean epochSecondKnown;
     private double amount;
+    private long amountInMinorUnits;
+    private boolean minorUnitsKnown;
 
     public Builder creditCardId(String creditCardId) {
       this.creditCardId = creditCardId;
       return this;
     }
 
+    /**
+     * @param transDateTime transaction date time, or null if none.
+     */
     public Builder transDateTime(LocalDateTime transDateTime) {
       this.transDateTime = transDateTime;
+      this.transEpochSecond = transDateTime == null ? 0 : transDateTime.toEpochSecond(ZoneOffset.UTC);
+      this.epochSecondKnown = transDateTime != null;
+      return this;
+    }
+
+    /**
+     * @param transEpochSecond transaction date time in seconds since the epoch, taking it as UTC.
+     */
+    public Builder transEpochSecond(long transEpochSecond) {
+      this.transDateTime = null;
+      this.transEpochSecond = transEpochSecond;
+      this.epochSecondKnown = true;
       return this;
     }
 
     public Builder amount(double amount) {
       this.amount = amount;
+      this.minorUnitsKnown = false;
+      return this;
+    }
+
+    /**
+     * @param amountInMinorUnits exact amount in minor units, see {@link TransactionBatch#AMOUNT_SCALE}.
+     */
+    public Builder amountInMinorUnits(long amountInMinorUnits) {
+      this.amount = TransactionBatch.toAmount(amountInMinorUnits);
+      this.amountInMinorUnits = amountInMinorUnits;
+      this.minorUnitsKnown = true;
       return this;
     }
 
@@ -59,6 +122,10 @@ public class Transaction {
   private Transaction(Builder builder) {
     this.creditCardId = builder.creditCardId;
     this.transDateTime = builder.transDateTime;
+    this.transEpochSecond = builder.transEpochSecond;
+    this.epochSecondKnown = builder.epochSecondKnown;
     this.amount = builder.amount;
+    this.amountInMinorUnits = builder.amountInMinorUnits;
+    this.minorUnitsKnown = builder.minorUnitsKnown;
   }
 }
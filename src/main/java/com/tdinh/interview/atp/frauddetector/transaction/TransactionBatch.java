@@ -0,0 +1,126 @@
+package com.tdinh.interview.atp.frauddetector.transaction;
+
+
+/**
+ * A columnar batch of credit card transactions.
+ * 
+ * Instead of one {@link Transaction} object per record, a batch holds its rows in primitive arrays:
+ * (1) the credit card ordinal in a {@link CreditCardDictionary}
+ * (2) the transaction date time in epoch seconds
+ * (3) the transaction amount in minor units (e.g. cents), see {@link #AMOUNT_SCALE}
+ * 
+ * A batch is filled by a loader, handed to a consumer once full, then cleared and reused,
+ * so loading and scanning do not allocate per record.
+ * 
+ * @author Tuan Dinh
+ *
+ */
+public class TransactionBatch {
+
+  public static final int DEFAULT_CAPACITY = 8192;
+
+  /**
+   * Number of decimal digits of the minor unit, i.e. amounts are stored as amount * 10^AMOUNT_SCALE.
+   */
+  public static final int AMOUNT_SCALE = 2;
+
+  private static final double MINOR_UNITS = Math.pow(10, AMOUNT_SCALE);
+
+  private final CreditCardDictionary dictionary;
+  private final int[] creditCardOrdinals;
+  private final long[] transEpochSeconds;
+  private final long[] amounts;
+  private int size;
+
+  public TransactionBatch(CreditCardDictionary dictionary) {
+    this(dictionary, DEFAULT_CAPACITY);
+  }
+
+  public TransactionBatch(CreditCardDictionary dictionary, int capacity) {
+    this.dictionary = dictionary;
+    this.creditCardOrdinals = new int[capacity];
+    this.transEpochSeconds = new long[capacity];
+    this.amounts = new long[capacity];
+  }
+
+  /**
+   * Append a row to the batch.
+   * 
+   * @param creditCardOrdinal credit card ordinal in the dictionary of this batch.
+   * @param transEpochSecond transaction date time in epoch seconds.
+   * @param amount transaction amount in minor units.
+   * @return true if the batch is full after this row.
+   */
+  public boolean add(int creditCardOrdinal, long transEpochSecond, long amount) {
+    creditCardOrdinals[size] = creditCardOrdinal;
+    transEpochSeconds[size] = transEpochSecond;
+    amounts[size] = amount;
+    size++;
+    return size == creditCardOrdinals.length;
+  }
+
+  /**
+   * Append a {@link Transaction} to the batch. Amounts with more decimals than {@link #AMOUNT_SCALE}
+   * are rounded half up.
+   * 
+   * @return true if the batch is full after this row.
+   */
+  public boolean add(Transaction trans) {
+    return add(dictionary.ordinalOf(trans.getCreditCardId()),
+        trans.getTransEpochSecond(), trans.getAmountInMinorUnits());
+  }
+
+  /**
+   * Build a {@link Transaction} object of a row, for callers that want objects.
+   */
+  public Transaction toTransaction(int row) {
+    return new Transaction.Builder()
+        .creditCardId(dictionary.creditCardId(creditCardOrdinals[row]))
+        .transEpochSecond(transEpochSeconds[row])
+        .amountInMinorUnits(amounts[row])
+        .build();
+  }
+
+  public void clear() {
+    size = 0;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isFull() {
+    return size == creditCardOrdinals.length;
+  }
+
+  public CreditCardDictionary getDictionary() {
+    return dictionary;
+  }
+
+  public int getCreditCardOrdinal(int row) {
+    return creditCardOrdinals[row];
+  }
+
+  public long getTransEpochSecond(int row) {
+    return transEpochSeconds[row];
+  }
+
+  public long getAmount(int row) {
+    return amounts[row];
+  }
+
+  /**
+   * Convert an amount in minor units to a decimal amount. For amounts with at most {@link #AMOUNT_SCALE}
+   * decimals, this is the same double as {@link Double#parseDouble(String)} of the decimal text.
+   */
+  public static double toAmount(long minorUnits) {
+    return minorUnits / MINOR_UNITS;
+  }
+
+  /**
+   * Convert a decimal amount to minor units, rounding half up.
+   */
+  public static long toMinorUnits(double amount) {
+    return Amounts.toMinorUnits(amount, AMOUNT_SCALE);
+  }
+}
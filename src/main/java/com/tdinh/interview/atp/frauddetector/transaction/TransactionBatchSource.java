@@ -0,0 +1,24 @@
+package com.tdinh.interview.atp.frauddetector.transaction;
+
+import com.tdinh.interview.atp.frauddetector.transaction.error.FileLoaderException;
+import java.util.function.Consumer;
+
+/**
+ * A source that pushes {@link TransactionBatch}(es) to a consumer, in the order their rows are read.
+ * A batch is only valid during the call to the consumer, as the source may clear and refill it afterwards.
+ * 
+ * @author Tuan Dinh
+ *
+ */
+@FunctionalInterface
+public interface TransactionBatchSource {
+
+  /**
+   * Push every batch of this source to the consumer.
+   * 
+   * @param dictionary dictionary the credit card ids of the batches are looked up in.
+   * @param consumer batch consumer.
+   * @throws FileLoaderException if the source cannot be read.
+   */
+  void forEach(CreditCardDictionary dictionary, Consumer<TransactionBatch> consumer) throws FileLoaderException;
+}
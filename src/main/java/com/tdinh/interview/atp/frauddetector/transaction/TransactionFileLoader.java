@@ -1,12 +1,18 @@
 package com.tdinh.interview.atp.frauddetector.transaction;
 
+import com.tdinh.interview.atp.frauddetector.metrics.Metrics;
 import com.tdinh.interview.atp.frauddetector.transaction.error.FileLoaderException;
 import com.tdinh.interview.atp.frauddetector.transaction.error.InvalidTransactionRecordException;
 import java.io.BufferedReader;
+import java.io.FileInputStream;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * Load transaction from a file.
@@ -15,14 +21,88 @@ import java.util.List;
  *
  */
 public class TransactionFileLoader {
-  
+
+  private static final int BLOCK_SIZE = 64 * 1024;
+
+  private Metrics metrics;
+  private InvalidRecordListener invalidRecordListener = InvalidRecordListener.STANDARD_ERROR;
+
+  /**
+   * @param metrics metrics to count records, bytes and invalid records in, or null.
+   */
+  public void setMetrics(Metrics metrics) {
+    this.metrics = metrics;
+  }
+
+  Metrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * @param invalidRecordListener listener of the invalid records, a warning to standard error by default.
+   */
+  public void setInvalidRecordListener(InvalidRecordListener invalidRecordListener) {
+    this.invalidRecordListener = invalidRecordListener;
+  }
+
+  InvalidRecordListener getInvalidRecordListener() {
+    return invalidRecordListener;
+  }
+
+  /**
+   * @return a parser reporting to the metrics and invalid record listener of this loader.
+   */
+  ByteTransactionParser newParser() {
+    ByteTransactionParser parser = new ByteTransactionParser();
+    parser.setMetrics(getMetrics());
+    parser.setInvalidRecordListener(getInvalidRecordListener());
+    return parser;
+  }
+
+  /**
+   * Read a file up to its first valid transaction only. The records read are resolved on their own, and not
+   * reported to the metrics or the invalid record listener, as they are reported again once the file is loaded.
+   *
+   * @param filePath path to file.
+   * @return the first transaction of the file, or null if it has none.
+   * @throws FileLoaderException if the file cannot be read.
+   */
+  Transaction first(String filePath) throws FileLoaderException {
+    try (BufferedReader bufferedReader = new BufferedReader(openText(filePath))) {
+      TransactionResolver resolver = new TransactionResolver();
+      String record;
+      while ((record = bufferedReader.readLine()) != null) {
+        try {
+          return resolver.resolve(record);
+        } catch (InvalidTransactionRecordException ex) {
+          // Reported when the file is loaded.
+        }
+      }
+      return null;
+    } catch (IOException ex) {
+      throw new FileLoaderException(ex.getMessage());
+    }
+  }
+
+  /**
+   * @param filePath path to file.
+   * @return a reader of the text of the file, see {@link #first(String)}.
+   */
+  Reader openText(String filePath) throws IOException {
+    return new FileReader(filePath);
+  }
+
   /**
    * Load transactions from a file given a file path.
    * Every line in the given file represents a transaction with a format defined in
    * {@link TransactionResolver}.
    * 
    * If the {@link TransactionResolver} cannot resolve the transaction (invalid line format),
-   * the loader simply ignore that transaction but print out to standard output a warning.
+   * the loader simply ignores that transaction and reports it to the invalid record listener, which prints
+   * a warning to standard error by default.
+   * 
+   * This is a convenience wrapper of {@link #load(String, Consumer)} that collects all transactions
+   * into a list.
    * 
    * @param filePath path to file.
    * @return list of {@link Transaction}.
@@ -30,22 +110,120 @@ public class TransactionFileLoader {
    */
   public List<Transaction> load(String filePath) throws FileLoaderException {
     List<Transaction> transactions = new ArrayList<>();
-    try {
-      FileReader fileReader = new FileReader(filePath);
-      BufferedReader bufferedReader = new BufferedReader(fileReader);
+    load(filePath, transactions::add);
+    return transactions;
+  }
+
+  /**
+   * Stream transactions from a file given a file path.
+   * Each transaction is pushed to the consumer as soon as its line is resolved, so the file is
+   * never held in memory as a whole. Invalid lines are handled as in {@link #load(String)}.
+   * 
+   * @param filePath path to file.
+   * @param consumer consumer of {@link Transaction}.
+   * @throws FileLoaderException 
+   */
+  public void load(String filePath, Consumer<Transaction> consumer) throws FileLoaderException {
+    Metrics metrics = getMetrics();
+    InvalidRecordListener invalidRecordListener = getInvalidRecordListener();
+    try (BufferedReader bufferedReader = new BufferedReader(new FileReader(filePath))) {
       String record;
       TransactionResolver resolver = new TransactionResolver();
+      int lines = 0;
+      long bytes = 0;
       while ((record = bufferedReader.readLine()) != null) {
+        if (metrics != null) {
+          // Approximate for multi-byte characters and "\r\n" terminators.
+          bytes += record.length() + 1;
+          if (++lines == Metrics.FLUSH_INTERVAL) {
+            metrics.addRecords(lines);
+            metrics.addBytesRead(bytes);
+            lines = 0;
+            bytes = 0;
+          }
+        }
+        Transaction trans;
         try {
-          transactions.add(resolver.resolve(record));
+          trans = resolver.resolve(record);
         } catch(InvalidTransactionRecordException ex) {
-          System.err.println("WARN - invalid record: [" + record + "]. Reason: " + ex.getMessage() + ". Ignore");
+          if (metrics != null) {
+            metrics.addInvalidRecord(ex.getMessage());
+          }
+          invalidRecordListener.invalidRecord(record, ex.getMessage());
+          continue;
         }
+        consumer.accept(trans);
+      }
+      if (metrics != null) {
+        metrics.addRecords(lines);
+        metrics.addBytesRead(bytes);
       }
-      fileReader.close();
     } catch (IOException ex) {
       throw new FileLoaderException(ex.getMessage());
     }
-    return transactions;
+  }
+
+  /**
+   * Stream transactions from a file given a file path as columnar {@link TransactionBatch}(es).
+   * Each batch is handed to the consumer once full, and the last one when the file ends.
+   * Invalid lines are handled as in {@link #load(String)}.
+   * 
+   * The bytes of the file are read in blocks and their complete lines parsed straight into the rows
+   * of the batch by a {@link ByteTransactionParser}, without a {@link Transaction} object per record.
+   * A block grows to hold a line longer than itself.
+   * 
+   * @param filePath path to file.
+   * @param dictionary dictionary the credit card ids are looked up in.
+   * @param consumer consumer of {@link TransactionBatch}, only valid during the call.
+   * @throws FileLoaderException 
+   */
+  public void loadBatches(String filePath, CreditCardDictionary dictionary, Consumer<TransactionBatch> consumer)
+      throws FileLoaderException {
+    TransactionBatch batch = new TransactionBatch(dictionary);
+    ByteTransactionParser parser = newParser();
+    // Bytes read but not parsed yet, a partial line at most, are kept at the start of the block.
+    ByteBuffer block = ByteBuffer.allocate(BLOCK_SIZE);
+    try (FileChannel channel = new FileInputStream(filePath).getChannel()) {
+      while (true) {
+        if (!block.hasRemaining()) {
+          block.flip();
+          block = ByteBuffer.allocate(2 * block.capacity()).put(block);
+        }
+        if (channel.read(block) < 0) {
+          break;
+        }
+        int lineEnd = MappedTransactionFileLoader.lastLineEnd(block, block.position());
+        if (lineEnd > 0) {
+          parser.parse(block, 0, lineEnd, batch, consumer);
+          block.flip().position(lineEnd);
+          block.compact();
+        }
+      }
+      if (block.position() > 0) {
+        // The last line, without a terminator.
+        parser.parse(block, 0, block.position(), batch, consumer);
+      }
+    } catch (IOException ex) {
+      throw new FileLoaderException(ex.getMessage());
+    }
+    if (batch.size() > 0) {
+      consumer.accept(batch);
+    }
+  }
+
+  /**
+   * @param filePath path to file.
+   * @return a {@link TransactionSource} streaming the transactions of the file.
+   */
+  public TransactionSource source(String filePath) {
+    return consumer -> load(filePath, consumer);
+  }
+
+  /**
+   * @param filePath path to file.
+   * @return a {@link TransactionBatchSource} streaming the transactions of the file in batches.
+   */
+  public TransactionBatchSource batchSource(String filePath) {
+    return (dictionary, consumer) -> loadBatches(filePath, dictionary, consumer);
   }
 }
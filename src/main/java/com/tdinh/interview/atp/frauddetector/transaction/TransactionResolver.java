@@ -7,32 +7,84 @@ import java.time.format.DateTimeParseException;
 
 /**
  * Resolve a transaction text record to {@link Transaction}
- * 
+ *
  * Expecting format for the transaction text record:
- * <hashed_credit_card_number>, <date_time>, <transaction_amount> 
- * 
+ * <hashed_credit_card_number>, <date_time>, <transaction_amount>
+ *
  * where:
  * - hashed_credit_card_number is a string
  * - <date_time> is in ISO-8061 date time format without a timezone (e.g: 2014-04-29T13:15:54)
- * - transaction amount can be converted to a decimal value.
- * 
+ * - transaction amount can be converted to a finite decimal value, below {@link Amounts#MAX_AMOUNT} in magnitude.
+ *
  * Otherwise, throw {@link InvalidTransactionRecordException}.
- * 
+ *
+ * Well-formed records take a fast path: fields are located by index rather than split, the date time
+ * is computed in epoch seconds straight from its characters, and plain amounts with at most
+ * {@link TransactionBatch#AMOUNT_SCALE} decimals are parsed exactly into minor units. The epoch day
+ * of recently seen dates is cached, as consecutive records mostly share a date. Anything else (extra
+ * commas, out of range date time fields, exponents, more decimals, ...) goes through
+ * {@link String#split(String)}, the {@link DateTimeFormatter} and {@link Double#parseDouble(String)},
+ * so it is accepted or rejected exactly as before, with the same messages.
+ *
+ * Not thread-safe: use one resolver per thread.
+ *
  * @author Tuan Dinh
  *
  */
 public class TransactionResolver {
 
-  private DateTimeFormatter dateTimeFormatter = DateTimeFormatter.ofPattern(Transaction.DATE_TIME_FORMATTER);
+  private static final int DATE_TIME_LENGTH = 19;
+  private static final int MAX_AMOUNT_DIGITS = 15;
+  // Minor units from which a double is no longer exact, and dividing it by 10^scale may round twice.
+  private static final long MAX_EXACT_MINOR_UNITS = 1L << 53;
+  // Minor units from which an amount is not supported, rejected off the fast path.
+  private static final long MAX_SUPPORTED_MINOR_UNITS =
+      Amounts.toMinorUnits(Amounts.MAX_AMOUNT, TransactionBatch.AMOUNT_SCALE);
+  private static final long SECONDS_PER_DAY = 24 * 60 * 60;
+  private static final int DAY_CACHE_BITS = 4;
+
+  // Built by the first date time off the fast path: building it initializes much of java.time, which is a
+  // noticeable part of a run on a small file whose records all take the fast path.
+  private DateTimeFormatter dateTimeFormatter;
+  // Direct-mapped cache of epoch days by yyyyMMdd, 0 being an empty slot.
+  private final int[] cachedDates = new int[1 << DAY_CACHE_BITS];
+  private final long[] cachedEpochDays = new long[1 << DAY_CACHE_BITS];
+
+  // Fields of the last record parsed by the fast path.
+  private long transEpochSecond;
+  private long amountInMinorUnits;
 
   /**
    * Resolve a {@link Transaction} from a transaction text record.
-   * 
+   *
    * @param text record
    * @return a {@link Transaction}
-   * @throws InvalidTransactionRecordException 
+   * @throws InvalidTransactionRecordException
    */
   public Transaction resolve(String record) throws InvalidTransactionRecordException {
+    int firstComma = record.indexOf(',');
+    int secondComma = firstComma < 0 ? -1 : record.indexOf(',', firstComma + 1);
+    // Exactly two commas and a non empty last field: the same 3 fields as split(",").
+    if (secondComma >= 0 && secondComma < record.length() - 1 && record.indexOf(',', secondComma + 1) < 0) {
+      int idStart = skipLeading(record, 0, firstComma);
+      int idEnd = skipTrailing(record, idStart, firstComma);
+      int dateStart = skipLeading(record, firstComma + 1, secondComma);
+      int dateEnd = skipTrailing(record, dateStart, secondComma);
+      int amountStart = skipLeading(record, secondComma + 1, record.length());
+      int amountEnd = skipTrailing(record, amountStart, record.length());
+      Transaction.Builder builder = new Transaction.Builder().creditCardId(record.substring(idStart, idEnd));
+      if (parseDateTime(record, dateStart, dateEnd)) {
+        builder.transEpochSecond(transEpochSecond);
+      } else {
+        builder.transDateTime(resolveTranDateTime(record.substring(dateStart, dateEnd)));
+      }
+      if (parseAmount(record, amountStart, amountEnd)) {
+        builder.amountInMinorUnits(amountInMinorUnits);
+      } else {
+        builder.amount(resolveAmount(record.substring(amountStart, amountEnd)));
+      }
+      return builder.build();
+    }
     String[] fields = record.split(",");
     if (fields.length != 3) {
       throw new InvalidTransactionRecordException("Error: expecting 3 fields, found " + fields.length);
@@ -49,17 +101,144 @@ public class TransactionResolver {
 
   private double resolveAmount(String amount) throws InvalidTransactionRecordException {
     try {
-      return Double.parseDouble(amount);
+      double value = Double.parseDouble(amount);
+      // NaN, infinite and huge amounts have no fixed-point value to sum.
+      if (Amounts.isSupported(value)) {
+        return value;
+      }
     } catch (NumberFormatException | NullPointerException ex) {
-      throw new InvalidTransactionRecordException("Invalid amount [" + amount + "]");
+      // Reported below.
     }
+    throw new InvalidTransactionRecordException("Invalid amount [" + amount + "]");
   }
 
   private LocalDateTime resolveTranDateTime(String dateTime) throws InvalidTransactionRecordException {
+    if (dateTimeFormatter == null) {
+      dateTimeFormatter = DateTimeFormatter.ofPattern(Transaction.DATE_TIME_FORMATTER);
+    }
     try {
       return LocalDateTime.parse(dateTime, dateTimeFormatter);
     } catch (DateTimeParseException ex) {
       throw new InvalidTransactionRecordException("Invalid date time format [" + dateTime + "]");
     }
   }
+
+  /**
+   * Parse a yyyy-MM-dd'T'HH:mm:ss date time into {@link #transEpochSecond}.
+   *
+   * @return false if not in the strict layout or out of range.
+   */
+  private boolean parseDateTime(String record, int start, int end) {
+    if (end - start != DATE_TIME_LENGTH
+        || record.charAt(start + 4) != '-' || record.charAt(start + 7) != '-' || record.charAt(start + 10) != 'T'
+        || record.charAt(start + 13) != ':' || record.charAt(start + 16) != ':') {
+      return false;
+    }
+    int year = digits(record, start, 4);
+    int month = digits(record, start + 5, 2);
+    int day = digits(record, start + 8, 2);
+    int hour = digits(record, start + 11, 2);
+    int minute = digits(record, start + 14, 2);
+    int second = digits(record, start + 17, 2);
+    if (year < 1 || month < 1 || day < 1 || hour < 0 || hour > 23 || minute < 0 || minute > 59
+        || second < 0 || second > 59) {
+      return false;
+    }
+    long epochDay = epochDay(year, month, day);
+    if (epochDay == Long.MIN_VALUE) {
+      return false;
+    }
+    transEpochSecond = epochDay * SECONDS_PER_DAY + hour * 3600 + minute * 60 + second;
+    return true;
+  }
+
+  /**
+   * @return the epoch day of a date, or {@link Long#MIN_VALUE} if the date does not exist.
+   */
+  private long epochDay(int year, int month, int day) {
+    int date = year * 10000 + month * 100 + day;
+    int slot = (date * 0x9E3779B9) >>> (32 - DAY_CACHE_BITS);
+    if (cachedDates[slot] == date) {
+      return cachedEpochDays[slot];
+    }
+    if (month > 12 || day > ByteTransactionParser.lengthOfMonth(year, month)) {
+      return Long.MIN_VALUE;
+    }
+    long epochDay = ByteTransactionParser.epochDay(year, month, day);
+    cachedDates[slot] = date;
+    cachedEpochDays[slot] = epochDay;
+    return epochDay;
+  }
+
+  /**
+   * Parse a plain decimal amount (an optional '-', digits and at most {@link TransactionBatch#AMOUNT_SCALE}
+   * decimals) into {@link #amountInMinorUnits}. Its double value is then the same as
+   * {@link Double#parseDouble(String)}, see {@link TransactionBatch#toAmount(long)}.
+   *
+   * @return false if not such a plain decimal, negative zero, too large to convert exactly, or not supported.
+   */
+  private boolean parseAmount(String record, int start, int end) {
+    int i = start;
+    boolean negative = i < end && record.charAt(i) == '-';
+    if (negative) {
+      i++;
+    }
+    long mantissa = 0;
+    int digitCount = 0;
+    int fractionDigits = -1;
+    for (; i < end; i++) {
+      char c = record.charAt(i);
+      if (c >= '0' && c <= '9') {
+        if (fractionDigits >= 0 && ++fractionDigits > TransactionBatch.AMOUNT_SCALE) {
+          return false;
+        }
+        mantissa = mantissa * 10 + (c - '0');
+        if (++digitCount > MAX_AMOUNT_DIGITS) {
+          return false;
+        }
+      } else if (c == '.' && fractionDigits < 0 && digitCount > 0) {
+        fractionDigits = 0;
+      } else {
+        return false;
+      }
+    }
+    if (digitCount == 0 || fractionDigits == 0 || negative && mantissa == 0) {
+      return false;
+    }
+    for (int scale = Math.max(fractionDigits, 0); scale < TransactionBatch.AMOUNT_SCALE; scale++) {
+      mantissa *= 10;
+    }
+    if (mantissa >= MAX_EXACT_MINOR_UNITS || mantissa >= MAX_SUPPORTED_MINOR_UNITS) {
+      return false;
+    }
+    amountInMinorUnits = negative ? -mantissa : mantissa;
+    return true;
+  }
+
+  private static int digits(String record, int start, int count) {
+    int value = 0;
+    for (int i = start; i < start + count; i++) {
+      int digit = record.charAt(i) - '0';
+      if (digit < 0 || digit > 9) {
+        return -1;
+      }
+      value = value * 10 + digit;
+    }
+    return value;
+  }
+
+  // Same characters as String.trim(): anything up to and including space.
+  private static int skipLeading(String record, int start, int end) {
+    while (start < end && record.charAt(start) <= ' ') {
+      start++;
+    }
+    return start;
+  }
+
+  private static int skipTrailing(String record, int start, int end) {
+    while (end > start && record.charAt(end - 1) <= ' ') {
+      end--;
+    }
+    return end;
+  }
 }
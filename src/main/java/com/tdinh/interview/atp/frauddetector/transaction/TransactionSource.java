@@ -0,0 +1,23 @@
+package com.tdinh.interview.atp.frauddetector.transaction;
+
+import com.tdinh.interview.atp.frauddetector.transaction.error.FileLoaderException;
+import java.util.function.Consumer;
+
+/**
+ * A source that pushes {@link Transaction}(s) one at a time to a consumer, in the order they are read,
+ * without materializing them into a collection.
+ * 
+ * @author Tuan Dinh
+ *
+ */
+@FunctionalInterface
+public interface TransactionSource {
+
+  /**
+   * Push every transaction of this source to the consumer.
+   * 
+   * @param consumer transaction consumer.
+   * @throws FileLoaderException if the source cannot be read.
+   */
+  void forEach(Consumer<Transaction> consumer) throws FileLoaderException;
+}
@@ -0,0 +1,168 @@
+package com.tdinh.interview.atp.frauddetector.window;
+
+import com.tdinh.interview.atp.frauddetector.transaction.Amounts;
+
+/**
+ * The sliding window of a single credit card.
+ * 
+ * Transactions are kept in a circular buffer (a primitive deque) in the order they are added,
+ * together with a running total of their amounts. Expired transactions are evicted from the head
+ * of the deque and their amounts subtracted from the total, so adding a transaction and reading
+ * the window total are both amortized O(1).
+ * 
+ * Amounts are fixed-point minor units (see {@link Amounts}),
+ * so the running total is exact however long the window lives. A total beyond the range of a long is still
+ * held exactly, as its wrapped long and its carries, and read saturated.
+ * 
+ * As in the original full-history scan, a window exceeds a limit if the total of its newest transactions does,
+ * for any number of them (see {@link #getMaxRecentTotal()}). Without negative amounts that is the window total;
+ * with refunds in the window, the newest transactions are summed back until the limit is exceeded.
+ * 
+ * @author Tuan Dinh
+ *
+ */
+public class CreditCardWindow {
+
+  private static final int INITIAL_CAPACITY = 4;
+
+  private long[] transEpochSeconds = new long[INITIAL_CAPACITY];
+  private long[] amounts = new long[INITIAL_CAPACITY];
+  private int head;
+  private int size;
+  private long totalAmount;
+  private long totalCarries;
+  private int negativeAmounts;
+
+  /**
+   * Append a transaction to the tail of the window.
+   * 
+   * @param transEpochSecond transaction date time in epoch seconds.
+   * @param amount transaction amount in minor units.
+   */
+  public void add(long transEpochSecond, long amount) {
+    totalCarries += Amounts.carry(totalAmount, amount);
+    totalAmount += amount;
+    if (amount < 0) {
+      negativeAmounts++;
+    }
+    if (size == transEpochSeconds.length) {
+      grow();
+    }
+    int tail = (head + size) & (transEpochSeconds.length - 1);
+    transEpochSeconds[tail] = transEpochSecond;
+    amounts[tail] = amount;
+    size++;
+  }
+
+  /**
+   * Evict transactions from the head of the window while they occur at or before the cut off.
+   * 
+   * @param cutOffEpochSecond cut off in epoch seconds (inclusive).
+   * @return number of evicted transactions.
+   */
+  public int evictUntil(long cutOffEpochSecond) {
+    int evicted = 0;
+    while (size > 0 && transEpochSeconds[head] <= cutOffEpochSecond) {
+      totalCarries += Amounts.borrow(totalAmount, amounts[head]);
+      totalAmount -= amounts[head];
+      if (amounts[head] < 0) {
+        negativeAmounts--;
+      }
+      head = (head + 1) & (transEpochSeconds.length - 1);
+      size--;
+      evicted++;
+    }
+    return evicted;
+  }
+
+  /**
+   * @return the total amount of the window in minor units, saturated to the range of a long.
+   */
+  public long getTotalAmount() {
+    return Amounts.saturate(totalAmount, totalCarries);
+  }
+
+  /**
+   * @return the highest total of the newest transactions of the window, for any number of them, saturated
+   *     to the range of a long. The window total when no amount of the window is negative.
+   */
+  public long getMaxRecentTotal() {
+    return maxRecentTotal(Long.MAX_VALUE);
+  }
+
+  /**
+   * @param limit limit in minor units.
+   * @return true if the total of the newest transactions of the window exceeds the limit, for any number of them.
+   */
+  public boolean exceeds(long limit) {
+    return maxRecentTotal(limit) > limit;
+  }
+
+  /**
+   * @return the highest total of the newest transactions, or the first one found above the bound.
+   */
+  private long maxRecentTotal(long bound) {
+    if (negativeAmounts == 0) {
+      // Every older transaction only adds up: the whole window has the highest total.
+      return getTotalAmount();
+    }
+    long sum = 0;
+    long carries = 0;
+    long max = Long.MIN_VALUE;
+    for (int i = size - 1; i >= 0 && max <= bound; i--) {
+      long amount = getAmount(i);
+      carries += Amounts.carry(sum, amount);
+      sum += amount;
+      max = Math.max(max, Amounts.saturate(sum, carries));
+    }
+    return max;
+  }
+
+  /**
+   * @return epoch seconds of the most recently added transaction, or {@link Long#MIN_VALUE} if empty.
+   */
+  public long getLatestEpochSecond() {
+    if (size == 0) {
+      return Long.MIN_VALUE;
+    }
+    return transEpochSeconds[(head + size - 1) & (transEpochSeconds.length - 1)];
+  }
+
+  /**
+   * @param index position from the head of the window, 0 being the oldest transaction.
+   * @return epoch seconds of the transaction.
+   */
+  long getEpochSecond(int index) {
+    return transEpochSeconds[(head + index) & (transEpochSeconds.length - 1)];
+  }
+
+  /**
+   * @param index position from the head of the window, 0 being the oldest transaction.
+   * @return amount of the transaction in minor units.
+   */
+  long getAmount(int index) {
+    return amounts[(head + index) & (amounts.length - 1)];
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  private void grow() {
+    int capacity = transEpochSeconds.length;
+    long[] newEpochSeconds = new long[capacity << 1];
+    long[] newAmounts = new long[capacity << 1];
+    int firstPart = capacity - head;
+    System.arraycopy(transEpochSeconds, head, newEpochSeconds, 0, firstPart);
+    System.arraycopy(transEpochSeconds, 0, newEpochSeconds, firstPart, head);
+    System.arraycopy(amounts, head, newAmounts, 0, firstPart);
+    System.arraycopy(amounts, 0, newAmounts, firstPart, head);
+    transEpochSeconds = newEpochSeconds;
+    amounts = newAmounts;
+    head = 0;
+  }
+}
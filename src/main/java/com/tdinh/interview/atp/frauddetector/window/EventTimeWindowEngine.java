@@ -0,0 +1,233 @@
+package com.tdinh.interview.atp.frauddetector.window;
+
+import com.tdinh.interview.atp.frauddetector.transaction.Amounts;
+import com.tdinh.interview.atp.frauddetector.transaction.Transaction;
+import com.tdinh.interview.atp.frauddetector.transaction.TransactionBatch;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * An event-time front end of a {@link SlidingWindowEngine}, for transactions arriving out of order.
+ *
+ * Transactions are held in a reorder buffer, a binary min-heap on (transaction time, arrival order),
+ * until the watermark has passed them. The watermark trails the latest transaction time seen by the
+ * allowed lateness. Once a transaction is older than the watermark, no transaction that could precede it
+ * can still be accepted, so it is released to the engine in transaction time order, and the verdict
+ * on its credit card is final. Every per credit card window of the engine is thus ordered by
+ * transaction time, and the result is the same as scanning the transactions sorted by time
+ * (transactions of the same second keep their arrival order).
+ *
+ * A transaction older than the watermark when it arrives is too late: it is dropped and counted.
+ *
+ * Each transaction costs O(log n) where n is the number of buffered transactions, i.e. those within
+ * the allowed lateness of the latest one. The buffer holds primitives only.
+ *
+ * @author Tuan Dinh
+ *
+ */
+public class EventTimeWindowEngine {
+
+  private static final int INITIAL_CAPACITY = 1024;
+
+  private final SlidingWindowEngine engine;
+  private final long allowedLatenessSeconds;
+  private final Consumer<String> fraudListener;
+  // Reorder buffer: a binary heap over parallel arrays.
+  private long[] times = new long[INITIAL_CAPACITY];
+  private long[] sequences = new long[INITIAL_CAPACITY];
+  private int[] ordinals = new int[INITIAL_CAPACITY];
+  private long[] amounts = new long[INITIAL_CAPACITY];
+  private int buffered;
+  private long sequence;
+  private long maxEpochSecond = Long.MIN_VALUE;
+  private long lateTransactions;
+  private int peakBuffered;
+
+  /**
+   * @param engine engine receiving the transactions in time order.
+   * @param allowedLatenessSeconds how far behind the latest transaction time a transaction may arrive.
+   * @param fraudListener notified with each fraudulent credit card id once, when its verdict is final.
+   */
+  public EventTimeWindowEngine(SlidingWindowEngine engine, long allowedLatenessSeconds,
+      Consumer<String> fraudListener) {
+    if (allowedLatenessSeconds < 0) {
+      throw new IllegalArgumentException("Invalid allowed lateness [" + allowedLatenessSeconds + "]");
+    }
+    this.engine = engine;
+    this.allowedLatenessSeconds = allowedLatenessSeconds;
+    this.fraudListener = fraudListener;
+  }
+
+  /**
+   * Accept a {@link Transaction}.
+   *
+   * @return false if the transaction is too late and dropped.
+   */
+  public boolean accept(Transaction trans) {
+    return acceptMinorUnits(engine.getDictionary().ordinalOf(trans.getCreditCardId()),
+        trans.getTransEpochSecond(), engine.toMinorUnits(trans));
+  }
+
+  /**
+   * Accept every row of a {@link TransactionBatch}, in order. The batch must use the dictionary of the engine.
+   */
+  public void accept(TransactionBatch batch) {
+    if (batch.getDictionary() != engine.getDictionary()) {
+      throw new IllegalArgumentException("Batch does not use the dictionary of this engine");
+    }
+    for (int row = 0; row < batch.size(); row++) {
+      acceptMinorUnits(batch.getCreditCardOrdinal(row), batch.getTransEpochSecond(row),
+          engine.toMinorUnits(batch, row));
+    }
+  }
+
+  /**
+   * Accept a transaction, and release the transactions the watermark has passed to the engine.
+   *
+   * @param ordinal credit card ordinal in the dictionary of the engine
+   * @param transEpochSecond transaction date time in epoch seconds
+   * @param amount transaction amount, rounded half up to the scale of the engine
+   * @return false if the transaction is too late and dropped.
+   */
+  public boolean accept(int ordinal, long transEpochSecond, double amount) {
+    return acceptMinorUnits(ordinal, transEpochSecond, Amounts.toMinorUnits(amount, engine.getAmountScale()));
+  }
+
+  /**
+   * Accept a transaction, as {@link #accept(int, long, double)} does.
+   *
+   * @param ordinal credit card ordinal in the dictionary of the engine
+   * @param transEpochSecond transaction date time in epoch seconds
+   * @param amount transaction amount in minor units of the scale of the engine
+   * @return false if the transaction is too late and dropped.
+   */
+  public boolean acceptMinorUnits(int ordinal, long transEpochSecond, long amount) {
+    if (transEpochSecond < getWatermark()) {
+      lateTransactions++;
+      return false;
+    }
+    push(ordinal, transEpochSecond, amount);
+    if (transEpochSecond > maxEpochSecond) {
+      maxEpochSecond = transEpochSecond;
+      releaseBefore(getWatermark());
+    }
+    return true;
+  }
+
+  /**
+   * Release every buffered transaction, at the end of the input.
+   */
+  public void flush() {
+    releaseBefore(Long.MAX_VALUE);
+  }
+
+  /**
+   * @return the watermark: transactions before it are final, and later arrivals before it are dropped.
+   */
+  public long getWatermark() {
+    return maxEpochSecond == Long.MIN_VALUE ? Long.MIN_VALUE : maxEpochSecond - allowedLatenessSeconds;
+  }
+
+  public SlidingWindowEngine getEngine() {
+    return engine;
+  }
+
+  /**
+   * @return number of transactions dropped for arriving later than the allowed lateness.
+   */
+  public long getLateTransactions() {
+    return lateTransactions;
+  }
+
+  /**
+   * @return number of transactions waiting for the watermark.
+   */
+  public int getBufferedTransactions() {
+    return buffered;
+  }
+
+  /**
+   * @return the highest number of transactions waiting for the watermark at any point so far.
+   */
+  public int getPeakBufferedTransactions() {
+    return peakBuffered;
+  }
+
+  private void releaseBefore(long watermark) {
+    while (buffered > 0 && times[0] < watermark) {
+      int ordinal = ordinals[0];
+      long transEpochSecond = times[0];
+      long amount = amounts[0];
+      pop();
+      if (engine.acceptMinorUnits(ordinal, transEpochSecond, amount)) {
+        fraudListener.accept(engine.getDictionary().creditCardId(ordinal));
+      }
+    }
+  }
+
+  private void push(int ordinal, long transEpochSecond, long amount) {
+    if (buffered == times.length) {
+      int capacity = buffered << 1;
+      times = Arrays.copyOf(times, capacity);
+      sequences = Arrays.copyOf(sequences, capacity);
+      ordinals = Arrays.copyOf(ordinals, capacity);
+      amounts = Arrays.copyOf(amounts, capacity);
+    }
+    long order = sequence++;
+    int index = buffered++;
+    while (index > 0) {
+      int parent = (index - 1) >>> 1;
+      if (!before(transEpochSecond, order, times[parent], sequences[parent])) {
+        break;
+      }
+      move(parent, index);
+      index = parent;
+    }
+    set(index, ordinal, transEpochSecond, order, amount);
+    if (buffered > peakBuffered) {
+      peakBuffered = buffered;
+    }
+  }
+
+  private void pop() {
+    int last = --buffered;
+    if (last == 0) {
+      return;
+    }
+    int ordinal = ordinals[last];
+    long transEpochSecond = times[last];
+    long order = sequences[last];
+    long amount = amounts[last];
+    int index = 0;
+    while (true) {
+      int child = 2 * index + 1;
+      if (child >= last) {
+        break;
+      }
+      if (child + 1 < last && before(times[child + 1], sequences[child + 1], times[child], sequences[child])) {
+        child++;
+      }
+      if (!before(times[child], sequences[child], transEpochSecond, order)) {
+        break;
+      }
+      move(child, index);
+      index = child;
+    }
+    set(index, ordinal, transEpochSecond, order, amount);
+  }
+
+  private static boolean before(long time, long order, long otherTime, long otherOrder) {
+    return time < otherTime || time == otherTime && order < otherOrder;
+  }
+
+  private void move(int from, int to) {
+    set(to, ordinals[from], times[from], sequences[from], amounts[from]);
+  }
+
+  private void set(int index, int ordinal, long transEpochSecond, long order, long amount) {
+    ordinals[index] = ordinal;
+    times[index] = transEpochSecond;
+    sequences[index] = order;
+    amounts[index] = amount;
+  }
+}
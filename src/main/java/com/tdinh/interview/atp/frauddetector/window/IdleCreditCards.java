@@ -0,0 +1,182 @@
+package com.tdinh.interview.atp.frauddetector.window;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+import java.util.function.IntToLongFunction;
+
+/**
+ * The live credit cards of a window engine, by ordinal, in least recently used order, and the clock they go idle
+ * against.
+ *
+ * The clock is the latest transaction time seen across all credit cards. Whenever it moves forward, the least
+ * recently used credit cards whose latest transaction is at least the idle timeout before the clock are dropped:
+ * their latest transaction time is remembered and the engine is told to release their window. A transaction older
+ * than the clock whose credit card was dropped while its window would still have counted it is counted as out of
+ * order, as its credit card may have been missed.
+ *
+ * The list is held in arrays indexed by ordinal, so touching a credit card costs no allocation. Shared by
+ * {@link SlidingWindowEngine} and {@link com.tdinh.interview.atp.frauddetector.rule.RuleEngine}.
+ *
+ * @author Tuan Dinh
+ *
+ */
+public final class IdleCreditCards {
+
+  /**
+   * Ordinal of no credit card, e.g. the eldest of an empty list.
+   */
+  public static final int NONE = -1;
+
+  private static final int INITIAL_CAPACITY = 1024;
+
+  private final IntToLongFunction latestEpochSecond;
+  private final IntConsumer release;
+  private long idleTimeoutSeconds;
+  // Doubly linked list of live credit cards by ordinal, from least (eldest) to most recently used.
+  private int[] previous = new int[INITIAL_CAPACITY];
+  private int[] next = new int[INITIAL_CAPACITY];
+  private int eldest = NONE;
+  private int latest = NONE;
+  // Latest transaction time seen, and latest transaction time of each credit card dropped as idle.
+  private long clock = Long.MIN_VALUE;
+  private long[] droppedLatest = newDroppedLatest(INITIAL_CAPACITY);
+  private long outOfOrderTransactions;
+
+  /**
+   * @param idleTimeoutSeconds seconds of idleness after which a credit card is dropped.
+   * @param latestEpochSecond latest transaction time of the window of a live credit card, by ordinal.
+   * @param release releases the window of a credit card dropped as idle, by ordinal.
+   */
+  public IdleCreditCards(long idleTimeoutSeconds, IntToLongFunction latestEpochSecond, IntConsumer release) {
+    this.idleTimeoutSeconds = idleTimeoutSeconds;
+    this.latestEpochSecond = latestEpochSecond;
+    this.release = release;
+  }
+
+  public void setIdleTimeoutSeconds(long idleTimeoutSeconds) {
+    this.idleTimeoutSeconds = idleTimeoutSeconds;
+  }
+
+  /**
+   * Move the clock forward to the transaction time, if later, dropping the credit cards idle since.
+   */
+  public void advance(long transEpochSecond) {
+    if (transEpochSecond <= clock) {
+      return;
+    }
+    clock = transEpochSecond;
+    long cutOff = transEpochSecond - idleTimeoutSeconds;
+    if (cutOff > transEpochSecond) {
+      // Saturate on underflow, i.e. never drop with a timeout of Long.MAX_VALUE.
+      return;
+    }
+    while (eldest != NONE && latestEpochSecond.applyAsLong(eldest) <= cutOff) {
+      int ordinal = eldest;
+      droppedLatest[ordinal] = latestEpochSecond.applyAsLong(ordinal);
+      remove(ordinal);
+      release.accept(ordinal);
+    }
+  }
+
+  /**
+   * Add a credit card that has no live window as the most recently used one.
+   *
+   * @param ordinal credit card ordinal
+   * @param cutOff time at or before which the window of the credit card no longer counts transactions: if the
+   *        credit card was dropped as idle after it, the transaction is counted as out of order.
+   */
+  public void add(int ordinal, long cutOff) {
+    if (ordinal >= previous.length) {
+      grow(ordinal);
+    }
+    if (droppedLatest[ordinal] > cutOff) {
+      outOfOrderTransactions++;
+    }
+    linkLatest(ordinal);
+  }
+
+  /**
+   * Move a live credit card to the most recently used one.
+   */
+  public void touch(int ordinal) {
+    unlink(ordinal);
+    linkLatest(ordinal);
+  }
+
+  /**
+   * Remove a live credit card, e.g. detected as fraudulent, without dropping it as idle.
+   */
+  public void remove(int ordinal) {
+    unlink(ordinal);
+  }
+
+  private void linkLatest(int ordinal) {
+    previous[ordinal] = latest;
+    next[ordinal] = NONE;
+    if (latest == NONE) {
+      eldest = ordinal;
+    } else {
+      next[latest] = ordinal;
+    }
+    latest = ordinal;
+  }
+
+  private void unlink(int ordinal) {
+    int before = previous[ordinal];
+    int after = next[ordinal];
+    if (before == NONE) {
+      eldest = after;
+    } else {
+      next[before] = after;
+    }
+    if (after == NONE) {
+      latest = before;
+    } else {
+      previous[after] = before;
+    }
+  }
+
+  private void grow(int ordinal) {
+    int capacity = Math.max(previous.length << 1, ordinal + 1);
+    previous = Arrays.copyOf(previous, capacity);
+    next = Arrays.copyOf(next, capacity);
+    int length = droppedLatest.length;
+    droppedLatest = Arrays.copyOf(droppedLatest, capacity);
+    Arrays.fill(droppedLatest, length, capacity, Long.MIN_VALUE);
+  }
+
+  private static long[] newDroppedLatest(int capacity) {
+    long[] droppedLatest = new long[capacity];
+    Arrays.fill(droppedLatest, Long.MIN_VALUE);
+    return droppedLatest;
+  }
+
+  /**
+   * @return ordinal of the least recently used live credit card, or {@link #NONE}.
+   */
+  public int getEldest() {
+    return eldest;
+  }
+
+  /**
+   * @return ordinal of the next more recently used live credit card, or {@link #NONE}.
+   */
+  public int getNext(int ordinal) {
+    return next[ordinal];
+  }
+
+  /**
+   * @return the latest transaction time seen, or Long.MIN_VALUE if none.
+   */
+  public long getClock() {
+    return clock;
+  }
+
+  /**
+   * @return number of transactions older than the clock whose credit card had been dropped as idle while its
+   *         window would still have counted them.
+   */
+  public long getOutOfOrderTransactions() {
+    return outOfOrderTransactions;
+  }
+}
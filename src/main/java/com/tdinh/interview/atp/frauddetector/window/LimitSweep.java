@@ -0,0 +1,222 @@
+package com.tdinh.interview.atp.frauddetector.window;
+
+import com.tdinh.interview.atp.frauddetector.transaction.Amounts;
+import com.tdinh.interview.atp.frauddetector.transaction.CreditCardDictionary;
+import com.tdinh.interview.atp.frauddetector.transaction.Transaction;
+import com.tdinh.interview.atp.frauddetector.transaction.TransactionBatch;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The fraudulent credit cards of many limits at once, in a single pass over the transactions.
+ *
+ * A credit card is fraudulent for a limit if its 24-hour window total (or, with refunds, the total of the
+ * newest transactions of its window, see {@link CreditCardWindow#getMaxRecentTotal()}) exceeds the limit at any
+ * transaction, and until it does, its window is the same whatever the limit. So a single
+ * {@link SlidingWindowEngine} with the highest limit is enough: the sweep keeps the highest window
+ * total each credit card reaches, and a credit card is fraudulent for every limit below that maximum.
+ * A credit card exceeding the highest limit is fraudulent for all of them, and is then dropped by the
+ * engine as in a normal scan. Sweeping any number of limits therefore costs one scan plus a comparison
+ * per transaction, and a long per credit card.
+ *
+ * The results are computed once the transactions are accepted: counts from the sorted maximum window
+ * totals, and the fraudulent credit cards by ranking the credit cards by their maximum window total.
+ *
+ * @author Tuan Dinh
+ *
+ */
+public class LimitSweep {
+
+  private static final int INITIAL_CAPACITY = 1024;
+
+  private final double[] limits;
+  private final long[] limitsInMinorUnits;
+  private final SlidingWindowEngine engine;
+  // Highest window total of each credit card by ordinal, Long.MAX_VALUE above the highest limit,
+  // Long.MIN_VALUE if not seen.
+  private long[] maxTotals = new long[INITIAL_CAPACITY];
+  private int creditCards;
+  // Maximum window totals of the credit cards ascending, and ordinals of the credit cards by descending
+  // maximum window total, computed on demand.
+  private long[] sortedMaxTotals;
+  private int[] ranked;
+
+  /**
+   * @param limits amount limits to sweep, in any order.
+   * @param amountScale number of decimals of the minor unit amounts are summed in, e.g. 2 for cents.
+   * @param dictionary dictionary of the credit card ordinals accepted by this sweep.
+   */
+  public LimitSweep(double[] limits, int amountScale, CreditCardDictionary dictionary) {
+    if (limits.length == 0) {
+      throw new IllegalArgumentException("No limit to sweep");
+    }
+    this.limits = limits.clone();
+    Arrays.sort(this.limits);
+    this.limitsInMinorUnits = new long[limits.length];
+    for (int i = 0; i < limits.length; i++) {
+      limitsInMinorUnits[i] = Amounts.floorToMinorUnits(this.limits[i], amountScale);
+    }
+    this.engine = new SlidingWindowEngine(this.limits[limits.length - 1], amountScale, dictionary);
+    Arrays.fill(maxTotals, Long.MIN_VALUE);
+  }
+
+  /**
+   * Accept a {@link Transaction} into the sliding window of its credit card.
+   */
+  public void accept(Transaction trans) {
+    acceptMinorUnits(engine.getDictionary().ordinalOf(trans.getCreditCardId()), trans.getTransEpochSecond(),
+        engine.toMinorUnits(trans));
+  }
+
+  /**
+   * Accept every row of a {@link TransactionBatch}, in order. The batch must use the dictionary of this sweep.
+   */
+  public void accept(TransactionBatch batch) {
+    if (batch.getDictionary() != engine.getDictionary()) {
+      throw new IllegalArgumentException("Batch does not use the dictionary of this sweep");
+    }
+    for (int row = 0; row < batch.size(); row++) {
+      acceptMinorUnits(batch.getCreditCardOrdinal(row), batch.getTransEpochSecond(row),
+          engine.toMinorUnits(batch, row));
+    }
+  }
+
+  /**
+   * Accept a transaction into the sliding window of its credit card.
+   *
+   * @param ordinal credit card ordinal in the dictionary of this sweep
+   * @param transEpochSecond transaction date time in epoch seconds
+   * @param amount transaction amount in minor units of the scale of this sweep
+   */
+  public void acceptMinorUnits(int ordinal, long transEpochSecond, long amount) {
+    if (ordinal >= maxTotals.length) {
+      int capacity = Math.max(maxTotals.length << 1, ordinal + 1);
+      int oldCapacity = maxTotals.length;
+      maxTotals = Arrays.copyOf(maxTotals, capacity);
+      Arrays.fill(maxTotals, oldCapacity, capacity, Long.MIN_VALUE);
+    }
+    sortedMaxTotals = null;
+    ranked = null;
+    if (engine.acceptMinorUnits(ordinal, transEpochSecond, amount)) {
+      setMaxTotal(ordinal, Long.MAX_VALUE);
+      return;
+    }
+    CreditCardWindow window = engine.getWindow(ordinal);
+    if (window != null) {
+      long total = window.getMaxRecentTotal();
+      if (total > maxTotals[ordinal]) {
+        setMaxTotal(ordinal, total);
+      }
+    }
+  }
+
+  private void setMaxTotal(int ordinal, long total) {
+    if (maxTotals[ordinal] == Long.MIN_VALUE) {
+      creditCards++;
+    }
+    maxTotals[ordinal] = total;
+  }
+
+  /**
+   * @return the limits swept, ascending.
+   */
+  public double[] getLimits() {
+    return limits.clone();
+  }
+
+  /**
+   * @return the number of fraudulent credit cards of each limit, in the order of {@link #getLimits()}.
+   */
+  public int[] getFraudulentCounts() {
+    if (sortedMaxTotals == null) {
+      sortedMaxTotals = new long[creditCards];
+      int count = 0;
+      for (int ordinal = 0; ordinal < maxTotals.length && count < creditCards; ordinal++) {
+        if (maxTotals[ordinal] != Long.MIN_VALUE) {
+          sortedMaxTotals[count++] = maxTotals[ordinal];
+        }
+      }
+      Arrays.sort(sortedMaxTotals);
+    }
+    int[] counts = new int[limits.length];
+    for (int i = 0; i < limits.length; i++) {
+      counts[i] = creditCards - countAtMost(sortedMaxTotals, limitsInMinorUnits[i]);
+    }
+    return counts;
+  }
+
+  /**
+   * @param limitIndex index of the limit in {@link #getLimits()}.
+   * @return the ids of the fraudulent credit cards of the limit, from the highest maximum window total down.
+   */
+  public List<String> getFraudulentCreditCards(int limitIndex) {
+    int[] ranked = rank();
+    int count = countAbove(ranked, limitsInMinorUnits[limitIndex]);
+    List<String> creditCardIds = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      creditCardIds.add(engine.getDictionary().creditCardId(ranked[i]));
+    }
+    return creditCardIds;
+  }
+
+  /**
+   * @return number of leading ascending totals at or below the limit.
+   */
+  private static int countAtMost(long[] sortedTotals, long limitInMinorUnits) {
+    int low = 0;
+    int high = sortedTotals.length;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (sortedTotals[middle] <= limitInMinorUnits) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * @return number of leading ranked credit cards whose maximum window total exceeds the limit.
+   */
+  private int countAbove(int[] ranked, long limitInMinorUnits) {
+    int low = 0;
+    int high = ranked.length;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (maxTotals[ranked[middle]] > limitInMinorUnits) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  private int[] rank() {
+    if (ranked == null) {
+      // The sort is stable, so credit cards of the same total stay in order of first appearance.
+      Integer[] ordinals = new Integer[creditCards];
+      int count = 0;
+      for (int ordinal = 0; ordinal < maxTotals.length && count < creditCards; ordinal++) {
+        if (maxTotals[ordinal] != Long.MIN_VALUE) {
+          ordinals[count++] = ordinal;
+        }
+      }
+      Arrays.sort(ordinals, (a, b) -> Long.compare(maxTotals[b], maxTotals[a]));
+      ranked = new int[creditCards];
+      for (int i = 0; i < creditCards; i++) {
+        ranked[i] = ordinals[i];
+      }
+    }
+    return ranked;
+  }
+
+  /**
+   * @return the engine scanning against the highest limit, e.g. for its gauges.
+   */
+  public SlidingWindowEngine getEngine() {
+    return engine;
+  }
+}
@@ -0,0 +1,354 @@
+package com.tdinh.interview.atp.frauddetector.window;
+
+import com.tdinh.interview.atp.frauddetector.transaction.Amounts;
+import com.tdinh.interview.atp.frauddetector.transaction.CreditCardDictionary;
+import com.tdinh.interview.atp.frauddetector.transaction.Transaction;
+import com.tdinh.interview.atp.frauddetector.transaction.TransactionBatch;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * An incremental fraud detection engine based on a 24-hour sliding window per credit card.
+ * 
+ * Each credit card keeps a {@link CreditCardWindow} with the running total of its transactions
+ * within the last 24 hours. When a transaction is accepted, the expired transactions of that
+ * credit card are evicted from the head of its window, the new transaction is appended, and the
+ * credit card is marked as fraudulent if the window total exceeds the limit. Each transaction is
+ * therefore decided in amortized O(1) regardless of how busy the credit card is. A window holding negative
+ * amounts (refunds) is fraudulent as soon as the total of its newest transactions exceeds the limit, as in
+ * the original full-history scan, which costs a scan of that window (see {@link CreditCardWindow#exceeds(long)}).
+ * 
+ * Credit cards are identified by their ordinal in a {@link CreditCardDictionary}. Windows are held
+ * in an array and fraudulent credit cards in a bit set, both indexed by ordinal, so the hot path
+ * involves no string hashing nor boxed map entries.
+ * 
+ * The engine only keeps state that can still affect a window. Live windows are linked in least
+ * recently used order (see {@link IdleCreditCards}), and a credit card that has been idle for longer than the window is dropped
+ * entirely, idleness being measured against the clock of the engine: the latest transaction time seen
+ * across all credit cards. Each remaining credit card retains at most the transactions of the 24 hours before its
+ * most recent transaction. The number of retained transactions and its peak are tracked to help
+ * size the heap from real data.
+ * 
+ * Amounts and the limit are held as fixed-point minor units in longs, at a configurable scale
+ * ({@link TransactionBatch#AMOUNT_SCALE} decimals by default), so window totals are exact and a
+ * verdict never flips on floating-point rounding however many amounts a window adds up. Decimal
+ * amounts with more decimals than the scale are rounded half up. A window total beyond the range of a long
+ * saturates, and so exceeds any limit but an infinite one, rather than wrapping around.
+ * 
+ * Transactions are expected in chronological order. The transactions of each credit card must be in order; across
+ * credit cards, a transaction may be older than the clock of the engine, but not by more than the idle timeout
+ * less the window: its credit card may have been dropped in between while its window still mattered. Such a
+ * transaction is counted (see {@link #getOutOfOrderTransactions()}) and accepted into a new window, so its credit
+ * card may be missed, rather than silently.
+ * 
+ * @author Tuan Dinh
+ *
+ */
+public class SlidingWindowEngine {
+
+  public static final long WINDOW_SECONDS = 24 * 60 * 60;
+
+  private static final int INITIAL_CAPACITY = 1024;
+
+  private final double limit;
+  private final int amountScale;
+  private final long limitInMinorUnits;
+  private final CreditCardDictionary dictionary;
+  private final BitSet fraudulentCreditCards = new BitSet();
+  private CreditCardWindow[] windows = new CreditCardWindow[INITIAL_CAPACITY];
+  private final IdleCreditCards idleCreditCards =
+      new IdleCreditCards(WINDOW_SECONDS, ordinal -> windows[ordinal].getLatestEpochSecond(), this::release);
+  private int liveCreditCards;
+  private long retainedEntries;
+  private long peakRetainedEntries;
+
+  public SlidingWindowEngine(double limit) {
+    this(limit, new CreditCardDictionary());
+  }
+
+  /**
+   * @param limit amount limit over the window.
+   * @param dictionary dictionary of the credit card ordinals accepted by this engine.
+   */
+  public SlidingWindowEngine(double limit, CreditCardDictionary dictionary) {
+    this(limit, TransactionBatch.AMOUNT_SCALE, dictionary);
+  }
+
+  /**
+   * @param limit amount limit over the window.
+   * @param amountScale number of decimals of the minor unit amounts are summed in, e.g. 2 for cents.
+   * @param dictionary dictionary of the credit card ordinals accepted by this engine.
+   */
+  public SlidingWindowEngine(double limit, int amountScale, CreditCardDictionary dictionary) {
+    this.limit = limit;
+    this.amountScale = Amounts.checkScale(amountScale);
+    this.limitInMinorUnits = Amounts.floorToMinorUnits(limit, amountScale);
+    this.dictionary = dictionary;
+  }
+
+  /**
+   * Keep the window of an idle credit card for longer than the window itself, for transactions that are in
+   * order per credit card but not across credit cards, e.g. submitted by several producers: the engine only
+   * drops a credit card once the latest transaction of any credit card is this long after its own latest
+   * transaction, so the skew between credit cards must be at most the timeout less the window.
+   * 
+   * @param idleTimeoutSeconds seconds of idleness after which a credit card is dropped, at least the window.
+   */
+  public void setIdleTimeoutSeconds(long idleTimeoutSeconds) {
+    if (idleTimeoutSeconds < WINDOW_SECONDS) {
+      throw new IllegalArgumentException("Idle timeout [" + idleTimeoutSeconds + "] is shorter than the window");
+    }
+    idleCreditCards.setIdleTimeoutSeconds(idleTimeoutSeconds);
+  }
+
+  /**
+   * Accept a {@link Transaction} into the sliding window of its credit card.
+   * 
+   * @param trans transaction
+   * @return true if the credit card is detected as fraudulent by this transaction.
+   */
+  public boolean accept(Transaction trans) {
+    return acceptMinorUnits(dictionary.ordinalOf(trans.getCreditCardId()), trans.getTransEpochSecond(),
+        toMinorUnits(trans));
+  }
+
+  /**
+   * Accept every row of a {@link TransactionBatch}, in order. The batch must use the dictionary of this engine.
+   * 
+   * @param batch transaction batch
+   * @param fraudListener notified with the credit card id of each row detecting a fraudulent credit card.
+   */
+  public void accept(TransactionBatch batch, Consumer<String> fraudListener) {
+    if (batch.getDictionary() != dictionary) {
+      throw new IllegalArgumentException("Batch does not use the dictionary of this engine");
+    }
+    for (int row = 0; row < batch.size(); row++) {
+      int ordinal = batch.getCreditCardOrdinal(row);
+      if (acceptMinorUnits(ordinal, batch.getTransEpochSecond(row), toMinorUnits(batch, row))) {
+        fraudListener.accept(dictionary.creditCardId(ordinal));
+      }
+    }
+  }
+
+  /**
+   * Accept a transaction into the sliding window of its credit card.
+   * 
+   * @param creditCardId hashed credit card id
+   * @param transEpochSecond transaction date time in epoch seconds
+   * @param amount transaction amount
+   * @return true if the credit card is detected as fraudulent by this transaction.
+   */
+  public boolean accept(String creditCardId, long transEpochSecond, double amount) {
+    return accept(dictionary.ordinalOf(creditCardId), transEpochSecond, amount);
+  }
+
+  /**
+   * Accept a transaction into the sliding window of its credit card.
+   * 
+   * A credit card can only be detected as fraudulent once. Once it has been detected,
+   * its window is dropped and all of its further transactions are ignored.
+   * 
+   * @param ordinal credit card ordinal in the dictionary of this engine
+   * @param transEpochSecond transaction date time in epoch seconds
+   * @param amount transaction amount, rounded half up to the scale of this engine
+   * @return true if the credit card is detected as fraudulent by this transaction.
+   * @throws ArithmeticException if the amount is not finite or overflows minor units, see {@link Amounts}.
+   */
+  public boolean accept(int ordinal, long transEpochSecond, double amount) {
+    return acceptMinorUnits(ordinal, transEpochSecond, Amounts.toMinorUnits(amount, amountScale));
+  }
+
+  /**
+   * Accept a transaction into the sliding window of its credit card, as
+   * {@link #accept(int, long, double)} does.
+   * 
+   * @param ordinal credit card ordinal in the dictionary of this engine
+   * @param transEpochSecond transaction date time in epoch seconds
+   * @param amount transaction amount in minor units of the scale of this engine
+   * @return true if the credit card is detected as fraudulent by this transaction.
+   */
+  public boolean acceptMinorUnits(int ordinal, long transEpochSecond, long amount) {
+    long cutOff = transEpochSecond - WINDOW_SECONDS;
+    idleCreditCards.advance(transEpochSecond);
+    if (fraudulentCreditCards.get(ordinal)) {
+      return false;
+    }
+    if (ordinal >= windows.length) {
+      grow(ordinal);
+    }
+    CreditCardWindow window = windows[ordinal];
+    if (window == null) {
+      window = new CreditCardWindow();
+      windows[ordinal] = window;
+      liveCreditCards++;
+      idleCreditCards.add(ordinal, cutOff);
+    } else {
+      idleCreditCards.touch(ordinal);
+    }
+    retainedEntries -= window.evictUntil(cutOff);
+    window.add(transEpochSecond, amount);
+    retainedEntries++;
+    if (retainedEntries > peakRetainedEntries) {
+      peakRetainedEntries = retainedEntries;
+    }
+    if (window.exceeds(limitInMinorUnits)) {
+      fraudulentCreditCards.set(ordinal);
+      // No need to check for this credit card further.
+      remove(ordinal);
+      return true;
+    }
+    return false;
+  }
+
+  private void remove(int ordinal) {
+    idleCreditCards.remove(ordinal);
+    release(ordinal);
+  }
+
+  private void release(int ordinal) {
+    retainedEntries -= windows[ordinal].size();
+    windows[ordinal] = null;
+    liveCreditCards--;
+  }
+
+  private void grow(int ordinal) {
+    windows = Arrays.copyOf(windows, Math.max(windows.length << 1, ordinal + 1));
+  }
+
+  /**
+   * Restore the window of a credit card as the most recently used one. Used by {@link WindowSnapshot}.
+   */
+  void restoreWindow(int ordinal, CreditCardWindow window) {
+    if (ordinal >= windows.length) {
+      grow(ordinal);
+    }
+    windows[ordinal] = window;
+    liveCreditCards++;
+    idleCreditCards.add(ordinal, Long.MAX_VALUE);
+    retainedEntries += window.size();
+  }
+
+  /**
+   * Restore a fraudulent credit card. Used by {@link WindowSnapshot}.
+   */
+  void restoreFraudulent(int ordinal) {
+    fraudulentCreditCards.set(ordinal);
+  }
+
+  void restorePeakRetainedEntries(long peakRetainedEntries) {
+    this.peakRetainedEntries = Math.max(peakRetainedEntries, retainedEntries);
+  }
+
+  /**
+   * @return ordinal of the least recently used live credit card, or -1 if none.
+   */
+  int getEldestLive() {
+    return idleCreditCards.getEldest();
+  }
+
+  /**
+   * @return ordinal of the next more recently used live credit card, or -1 if none.
+   */
+  int getNextLive(int ordinal) {
+    return idleCreditCards.getNext(ordinal);
+  }
+
+  CreditCardWindow getWindow(int ordinal) {
+    return windows[ordinal];
+  }
+
+  BitSet getFraudulentOrdinals() {
+    return fraudulentCreditCards;
+  }
+
+  public double getLimit() {
+    return limit;
+  }
+
+  /**
+   * @return the limit in minor units: a window total in minor units exceeds the limit if it exceeds this.
+   */
+  public long getLimitInMinorUnits() {
+    return limitInMinorUnits;
+  }
+
+  /**
+   * @return number of decimals of the minor unit amounts are summed in.
+   */
+  public int getAmountScale() {
+    return amountScale;
+  }
+
+  /**
+   * @return the amount of a transaction in minor units of the scale of this engine.
+   */
+  public long toMinorUnits(Transaction trans) {
+    return amountScale == TransactionBatch.AMOUNT_SCALE
+        ? trans.getAmountInMinorUnits()
+        : Amounts.toMinorUnits(trans.getAmount(), amountScale);
+  }
+
+  /**
+   * @return the amount of a batch row in minor units of the scale of this engine.
+   */
+  public long toMinorUnits(TransactionBatch batch, int row) {
+    return amountScale == TransactionBatch.AMOUNT_SCALE
+        ? batch.getAmount(row)
+        : Amounts.rescale(batch.getAmount(row), TransactionBatch.AMOUNT_SCALE, amountScale);
+  }
+
+  public CreditCardDictionary getDictionary() {
+    return dictionary;
+  }
+
+  /**
+   * @return true if the credit card of the ordinal has been detected as fraudulent.
+   */
+  public boolean isFraudulent(int ordinal) {
+    return fraudulentCreditCards.get(ordinal);
+  }
+
+  /**
+   * @return the ids of the credit cards detected as fraudulent so far.
+   */
+  public Set<String> getFraudulentCreditCards() {
+    Set<String> creditCardIds = new HashSet<>();
+    for (int ordinal = fraudulentCreditCards.nextSetBit(0); ordinal >= 0;
+        ordinal = fraudulentCreditCards.nextSetBit(ordinal + 1)) {
+      creditCardIds.add(dictionary.creditCardId(ordinal));
+    }
+    return creditCardIds;
+  }
+
+  /**
+   * @return number of transactions older than the clock of the engine whose credit card had been dropped as idle
+   *         while its window would still have counted them: their credit card may have been missed.
+   */
+  public long getOutOfOrderTransactions() {
+    return idleCreditCards.getOutOfOrderTransactions();
+  }
+
+  /**
+   * @return number of credit cards with a live window.
+   */
+  public int getLiveCreditCards() {
+    return liveCreditCards;
+  }
+
+  /**
+   * @return number of transactions currently retained across all windows.
+   */
+  public long getRetainedEntries() {
+    return retainedEntries;
+  }
+
+  /**
+   * @return the highest number of transactions retained at any point so far.
+   */
+  public long getPeakRetainedEntries() {
+    return peakRetainedEntries;
+  }
+}
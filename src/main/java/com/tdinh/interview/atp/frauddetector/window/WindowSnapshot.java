@@ -0,0 +1,301 @@
+package com.tdinh.interview.atp.frauddetector.window;
+
+import com.tdinh.interview.atp.frauddetector.transaction.CreditCardDictionary;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+
+/**
+ * A binary snapshot of the state of a {@link SlidingWindowEngine}: its live credit card windows and
+ * its fraudulent credit cards, so that a later run can resume without re-reading earlier transactions.
+ *
+ * Layout, big-endian:
+ * - header: magic "FDWS", format version (int), limit (double), amount scale (int), peak retained entries (long)
+ * - source position: length (int, -1 if none), UTF-8 bytes (version 3 and later)
+ * - fraudulent credit cards: count (int), then for each: id length (int), id UTF-8 bytes
+ * - live windows, least recently used first: count (int), then for each: id length (int), id UTF-8 bytes,
+ * entry count (int), then for each entry: epoch second (long), amount in minor units (long)
+ *
+ * Window totals are exact sums of their entries, so they are recomputed rather than saved.
+ *
+ * Files are written and read through a 1 MB direct buffer. Credit card ids are looked up in the
+ * dictionary straight from the read buffer, so restoring does not create an object per id. A snapshot
+ * is written to a temporary file first and then moved over the target, so a crash while writing never
+ * leaves a truncated snapshot behind.
+ *
+ * The position in the source the windows were built from, e.g. the offset in a followed file, may be saved in
+ * the snapshot, so that the windows and the position are always replaced together.
+ *
+ * @author Tuan Dinh
+ *
+ */
+public final class WindowSnapshot {
+
+  public static final int VERSION = 3;
+
+  // Oldest version read, without a source position.
+  private static final int MIN_VERSION = 2;
+
+  private static final int MAGIC = 0x46445753;
+  private static final int BUFFER_SIZE = 1024 * 1024;
+
+  private WindowSnapshot() {
+  }
+
+  /**
+   * Write the state of an engine to a snapshot file, replacing any existing file.
+   *
+   * @param engine engine to save.
+   * @param path snapshot file.
+   * @throws IOException if the file cannot be written.
+   */
+  public static void write(SlidingWindowEngine engine, Path path) throws IOException {
+    write(engine, path, null);
+  }
+
+  /**
+   * Write the state of an engine and the position in its source to a snapshot file, replacing any existing
+   * file.
+   *
+   * @param engine engine to save.
+   * @param path snapshot file.
+   * @param sourcePosition position in the source the engine was built from up to, or null.
+   * @throws IOException if the file cannot be written.
+   */
+  public static void write(SlidingWindowEngine engine, Path path, String sourcePosition) throws IOException {
+    Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+    CreditCardDictionary dictionary = engine.getDictionary();
+    try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING)) {
+      Writer writer = new Writer(channel);
+      writer.ensure(28).putInt(MAGIC).putInt(VERSION).putDouble(engine.getLimit())
+          .putInt(engine.getAmountScale()).putLong(engine.getPeakRetainedEntries());
+      if (sourcePosition == null) {
+        writer.ensure(4).putInt(-1);
+      } else {
+        writer.putId(sourcePosition);
+      }
+
+      BitSet fraudulent = engine.getFraudulentOrdinals();
+      writer.ensure(4).putInt(fraudulent.cardinality());
+      for (int ordinal = fraudulent.nextSetBit(0); ordinal >= 0; ordinal = fraudulent.nextSetBit(ordinal + 1)) {
+        writer.putId(dictionary.creditCardId(ordinal));
+      }
+
+      writer.ensure(4).putInt(engine.getLiveCreditCards());
+      for (int ordinal = engine.getEldestLive(); ordinal >= 0; ordinal = engine.getNextLive(ordinal)) {
+        CreditCardWindow window = engine.getWindow(ordinal);
+        writer.putId(dictionary.creditCardId(ordinal));
+        writer.ensure(4).putInt(window.size());
+        for (int i = 0; i < window.size(); i++) {
+          writer.ensure(16).putLong(window.getEpochSecond(i)).putLong(window.getAmount(i));
+        }
+      }
+      writer.flush();
+      channel.force(false);
+    }
+    Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Restore an engine from a snapshot file.
+   *
+   * @param path snapshot file.
+   * @return an engine with the saved limit, amount scale, windows and fraudulent credit cards.
+   * @throws IOException if the file cannot be read, is not a snapshot or is of an unsupported version.
+   */
+  public static SlidingWindowEngine read(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      Reader reader = new Reader(channel);
+      int version = readVersion(reader, path);
+      ByteBuffer header = reader.ensure(20);
+      double limit = header.getDouble();
+      int amountScale = header.getInt();
+      long peakRetainedEntries = header.getLong();
+      if (version > MIN_VERSION) {
+        reader.getString();
+      }
+      SlidingWindowEngine engine;
+      try {
+        engine = new SlidingWindowEngine(limit, amountScale, new CreditCardDictionary());
+      } catch (IllegalArgumentException ex) {
+        throw new IOException("Corrupted window snapshot");
+      }
+      CreditCardDictionary dictionary = engine.getDictionary();
+
+      int fraudulent = reader.ensure(4).getInt();
+      for (int i = 0; i < fraudulent; i++) {
+        engine.restoreFraudulent(reader.getId(dictionary));
+      }
+
+      int live = reader.ensure(4).getInt();
+      for (int i = 0; i < live; i++) {
+        int ordinal = reader.getId(dictionary);
+        int entries = reader.ensure(4).getInt();
+        CreditCardWindow window = new CreditCardWindow();
+        for (int j = 0; j < entries; j++) {
+          ByteBuffer buffer = reader.ensure(16);
+          window.add(buffer.getLong(), buffer.getLong());
+        }
+        engine.restoreWindow(ordinal, window);
+      }
+      engine.restorePeakRetainedEntries(peakRetainedEntries);
+      return engine;
+    }
+  }
+
+  /**
+   * Read the position in the source saved in a snapshot file, without restoring its engine.
+   *
+   * @param path snapshot file.
+   * @return position saved with {@link #write(SlidingWindowEngine, Path, String)}, or null if none was.
+   * @throws IOException if the file cannot be read, is not a snapshot or is of an unsupported version.
+   */
+  public static String readSourcePosition(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      Reader reader = new Reader(channel);
+      int version = readVersion(reader, path);
+      // Limit, amount scale and peak retained entries.
+      ByteBuffer header = reader.ensure(20);
+      header.position(header.position() + 20);
+      return version > MIN_VERSION ? reader.getString() : null;
+    }
+  }
+
+  private static int readVersion(Reader reader, Path path) throws IOException {
+    ByteBuffer header = reader.ensure(8);
+    if (header.getInt() != MAGIC) {
+      throw new IOException("Not a window snapshot: " + path);
+    }
+    int version = header.getInt();
+    if (version < MIN_VERSION || version > VERSION) {
+      throw new IOException("Unsupported window snapshot version " + version + ": " + path);
+    }
+    return version;
+  }
+
+  /**
+   * Restore an engine from a snapshot file that must have been taken with the given limit and amount scale.
+   *
+   * @param path snapshot file.
+   * @param limit expected limit.
+   * @param amountScale expected amount scale.
+   * @return an engine with the saved windows and fraudulent credit cards.
+   * @throws IOException if the file cannot be read, is not a valid snapshot or was taken with another
+   *         limit or amount scale.
+   */
+  public static SlidingWindowEngine read(Path path, double limit, int amountScale) throws IOException {
+    SlidingWindowEngine engine = read(path);
+    if (Double.compare(engine.getLimit(), limit) != 0) {
+      throw new IOException("Snapshot " + path + " was taken with limit [" + engine.getLimit() + "], not [" + limit + "]");
+    }
+    if (engine.getAmountScale() != amountScale) {
+      throw new IOException("Snapshot " + path + " was taken with amount scale [" + engine.getAmountScale()
+          + "], not [" + amountScale + "]");
+    }
+    return engine;
+  }
+
+  private static class Writer {
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    Writer(FileChannel channel) {
+      this.channel = channel;
+    }
+
+    ByteBuffer ensure(int bytes) throws IOException {
+      if (buffer.remaining() < bytes) {
+        flush();
+      }
+      return buffer;
+    }
+
+    void putId(String creditCardId) throws IOException {
+      byte[] bytes = creditCardId.getBytes(StandardCharsets.UTF_8);
+      ensure(4).putInt(bytes.length);
+      for (int offset = 0; offset < bytes.length; ) {
+        int chunk = Math.min(bytes.length - offset, ensure(1).remaining());
+        buffer.put(bytes, offset, chunk);
+        offset += chunk;
+      }
+    }
+
+    void flush() throws IOException {
+      buffer.flip();
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+      buffer.clear();
+    }
+  }
+
+  private static class Reader {
+
+    private final FileChannel channel;
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    Reader(FileChannel channel) {
+      this.channel = channel;
+      buffer.limit(0);
+    }
+
+    /**
+     * @return the buffer, with at least the given number of bytes remaining.
+     */
+    ByteBuffer ensure(int bytes) throws IOException {
+      if (buffer.remaining() < bytes) {
+        if (bytes > buffer.capacity()) {
+          ByteBuffer grown = ByteBuffer.allocateDirect(bytes);
+          grown.put(buffer);
+          buffer = grown;
+        } else {
+          buffer.compact();
+        }
+        while (buffer.position() < bytes) {
+          if (channel.read(buffer) < 0) {
+            throw new EOFException("Truncated window snapshot");
+          }
+        }
+        buffer.flip();
+      }
+      return buffer;
+    }
+
+    /**
+     * @return a string written by {@link Writer#putId(String)}, or null for a length of -1.
+     */
+    String getString() throws IOException {
+      int length = ensure(4).getInt();
+      if (length < -1) {
+        throw new IOException("Corrupted window snapshot");
+      }
+      if (length == -1) {
+        return null;
+      }
+      ensure(length);
+      byte[] bytes = new byte[length];
+      buffer.get(bytes);
+      return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    int getId(CreditCardDictionary dictionary) throws IOException {
+      int length = ensure(4).getInt();
+      if (length < 0) {
+        throw new IOException("Corrupted window snapshot");
+      }
+      ensure(length);
+      int start = buffer.position();
+      buffer.position(start + length);
+      return dictionary.ordinalOf(buffer, start, start + length);
+    }
+  }
+}
@@ -0,0 +1,254 @@
+package com.tdinh.interview.atp.frauddetector;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import com.tdinh.interview.atp.frauddetector.transaction.Transaction;
+import com.tdinh.interview.atp.frauddetector.transaction.TransactionFileLoader;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+/**
+ * Unit test class for {@link ConcurrentFraudDetector}.
+ * @author Tuan Dinh
+ *
+ */
+public class ConcurrentFraudDetectorTest {
+
+  @Rule
+  public ExpectedException exceptionRule = ExpectedException.none();
+
+  private FraudDetector fraudDetector = new FraudDetector();
+
+  @Test
+  public void testGivenTestFileThenMatchSequentialScan() throws Exception {
+    List<Transaction> transactions = new TransactionFileLoader().load("test-data/transactions.csv");
+    Set<String> notified = ConcurrentHashMap.newKeySet();
+    try (ConcurrentFraudDetector detector = new ConcurrentFraudDetector.Builder()
+        .limit(35.00)
+        .shards(3)
+        .queueCapacity(4)
+        .fraudListener(notified::add)
+        .build()) {
+      for (Transaction trans : transactions) {
+        detector.submit(trans);
+      }
+      Set<String> expected = new HashSet<>(fraudDetector.fraudScan(transactions, 35.00));
+      assertEquals(expected, detector.getFraudulentCreditCards());
+      assertEquals(expected, notified);
+    }
+  }
+
+  /**
+   * Producers submit disjoint sets of credit cards at once, a few of them hot, each in time order but
+   * interleaved out of time order across producers.
+   */
+  @Test
+  public void testGivenConcurrentProducersThenMatchSequentialScan() throws Exception {
+    Random random = new Random(20140429L);
+    for (int round = 0; round < 20; round++) {
+      List<Transaction> transactions = zipfTransactions(random, 20000, 500);
+      int producers = 1 + random.nextInt(6);
+      List<List<Transaction>> perProducer = new ArrayList<>();
+      for (int p = 0; p < producers; p++) {
+        perProducer.add(new ArrayList<>());
+      }
+      for (Transaction trans : transactions) {
+        perProducer.get(Math.abs(trans.getCreditCardId().hashCode() * 31 % producers)).add(trans);
+      }
+      double limit = 100 + random.nextInt(400);
+      List<String> notified = Collections.synchronizedList(new ArrayList<>());
+      try (ConcurrentFraudDetector detector = new ConcurrentFraudDetector.Builder()
+          .limit(limit)
+          .shards(1 + random.nextInt(4))
+          .queueCapacity(1 + random.nextInt(64))
+          .maxSkewSeconds(Long.MAX_VALUE)
+          .fraudListener(notified::add)
+          .build()) {
+        boolean batched = random.nextBoolean();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+        for (List<Transaction> own : perProducer) {
+          Thread thread = new Thread(() -> {
+            try {
+              start.await();
+              if (batched) {
+                for (int from = 0; from < own.size(); from += 100) {
+                  detector.submitAll(own.subList(from, Math.min(own.size(), from + 100)));
+                }
+              } else {
+                for (Transaction trans : own) {
+                  detector.submit(trans);
+                }
+              }
+            } catch (Throwable ex) {
+              failures.add(ex);
+            }
+          });
+          thread.start();
+          threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+          thread.join();
+        }
+        assertEquals(Collections.emptyList(), failures);
+        Set<String> expected = new HashSet<>(fraudDetector.fraudScan(transactions, limit));
+        assertEquals("round " + round, expected, detector.getFraudulentCreditCards());
+        detector.close();
+        assertEquals("round " + round, expected.size(), notified.size());
+        assertEquals("round " + round, expected, new HashSet<>(notified));
+        assertEquals("round " + round, expected, detector.getFraudulentCreditCards());
+      }
+    }
+  }
+
+  /**
+   * A producer far ahead of another in time must not make the default detector drop the windows of the other.
+   */
+  @Test
+  public void testGivenDefaultBuilderAndSkewedProducersThenKeepIdleWindows() throws Exception {
+    try (ConcurrentFraudDetector detector = new ConcurrentFraudDetector.Builder().limit(50.00).shards(1).build()) {
+      Thread ahead = new Thread(() -> {
+        try {
+          detector.submit(transaction("b", 2 * 24 * 3600, 1.00));
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+        }
+      });
+      detector.submit(transaction("a", 0, 30.00));
+      ahead.start();
+      ahead.join();
+      detector.submit(transaction("a", 3600, 30.00));
+      assertEquals(Collections.singleton("a"), detector.getFraudulentCreditCards());
+    }
+  }
+
+  @Test
+  public void testGivenShardFailureThenFailFurtherSubmissions() throws Exception {
+    try (ConcurrentFraudDetector detector = new ConcurrentFraudDetector.Builder()
+        .limit(Double.MAX_VALUE)
+        .shards(2)
+        .build()) {
+      detector.submit(transaction("card", 0, 5.0));
+      detector.submit(transaction("card", 1, Double.NaN));
+      try {
+        detector.getFraudulentCreditCards();
+        fail("Expecting the failure of the shard on a non-finite amount");
+      } catch (IllegalStateException ex) {
+        assertTrue(ex.getCause() instanceof ArithmeticException);
+      }
+      exceptionRule.expect(IllegalStateException.class);
+      detector.submit(transaction("other", 2, 1.0));
+    }
+  }
+
+  /**
+   * Producers and queries race with close on tiny queues: every thread returns, and every submission
+   * that did not fail is scanned.
+   */
+  @Test
+  public void testGivenCloseWhileProducersAndQueriesRunThenScanEveryAcceptedSubmission() throws Exception {
+    for (int round = 0; round < 50; round++) {
+      ConcurrentFraudDetector detector = new ConcurrentFraudDetector.Builder()
+          .limit(35.00)
+          .shards(2)
+          .queueCapacity(1)
+          .build();
+      Set<String> accepted = ConcurrentHashMap.newKeySet();
+      CountDownLatch started = new CountDownLatch(4);
+      List<Thread> threads = new ArrayList<>();
+      for (int producer = 0; producer < 3; producer++) {
+        int id = producer;
+        threads.add(new Thread(() -> {
+          started.countDown();
+          try {
+            for (int i = 0; ; i++) {
+              String creditCardId = "card-" + id + "-" + i;
+              if (i % 2 == 0) {
+                detector.submit(transaction(creditCardId, i, 40.00));
+              } else {
+                detector.submitAll(Collections.singletonList(transaction(creditCardId, i, 40.00)));
+              }
+              accepted.add(creditCardId);
+            }
+          } catch (IllegalStateException | InterruptedException ex) {
+            // Closed.
+          }
+        }));
+      }
+      List<Exception> queryFailures = Collections.synchronizedList(new ArrayList<>());
+      threads.add(new Thread(() -> {
+        started.countDown();
+        try {
+          // A closed detector still answers, from the stopped shards.
+          for (int i = 0; i < 100; i++) {
+            detector.getFraudulentCreditCards();
+          }
+        } catch (IllegalStateException | InterruptedException ex) {
+          queryFailures.add(ex);
+        }
+      }));
+      for (Thread thread : threads) {
+        thread.start();
+      }
+      started.await();
+      detector.close();
+      for (Thread thread : threads) {
+        thread.join(10_000);
+        assertTrue("Thread stuck after close", !thread.isAlive());
+      }
+      assertEquals(Collections.emptyList(), queryFailures);
+      assertEquals(accepted, detector.getFraudulentCreditCards());
+    }
+  }
+
+  @Test
+  public void testGivenClosedDetectorThenRejectSubmissions() throws Exception {
+    ConcurrentFraudDetector detector = new ConcurrentFraudDetector.Builder().limit(35.00).shards(2).build();
+    detector.submit(transaction("card", 0, 40.00));
+    detector.close();
+    detector.close();
+    assertEquals(Collections.singleton("card"), detector.getFraudulentCreditCards());
+    exceptionRule.expect(IllegalStateException.class);
+    exceptionRule.expectMessage("Fraud detector is closed");
+    detector.submit(transaction("card", 1, 1.00));
+  }
+
+  /**
+   * Transactions in time order whose credit cards follow a Zipf-like distribution: card-0 is the hottest.
+   */
+  static List<Transaction> zipfTransactions(Random random, int count, int cards) {
+    List<Transaction> transactions = new ArrayList<>(count);
+    LocalDateTime dateTime = LocalDateTime.of(2014, 4, 29, 0, 0, 0);
+    for (int i = 0; i < count; i++) {
+      dateTime = dateTime.plusSeconds(random.nextInt(4) == 0 ? 0 : random.nextInt(600));
+      int card = (int) (cards * Math.pow(random.nextDouble(), 3));
+      transactions.add(new Transaction.Builder()
+          .creditCardId("card-" + card)
+          .transDateTime(dateTime)
+          .amount(random.nextInt(80) * 0.25)
+          .build());
+    }
+    return transactions;
+  }
+
+  private static Transaction transaction(String creditCardId, long transEpochSecond, double amount) {
+    return new Transaction.Builder()
+        .creditCardId(creditCardId)
+        .transEpochSecond(transEpochSecond)
+        .amount(amount)
+        .build();
+  }
+}
@@ -3,10 +3,20 @@ package com.tdinh.interview.atp.frauddetector;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.OutputStream;
 import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
 import org.junit.After;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 /**
  * Integration test for the Fraud Detection Application.
@@ -19,6 +29,9 @@ public class FraudDetectionAppTest {
   
   FraudDetectionApp app = new FraudDetectionApp();
   
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
   private final ByteArrayOutputStream outContent = new ByteArrayOutputStream();
   private final ByteArrayOutputStream errContent = new ByteArrayOutputStream();
   private final PrintStream originalOut = System.out;
@@ -82,6 +95,353 @@ public class FraudDetectionAppTest {
     assertTrue(outContent.toString().contains("1f409e4283ad6375bf5d4e9372d"));
   }
   
+  @Test
+  public void testGivenStreamOptionThenPrintFraudAsDetected() throws Exception {
+    String filePath = "src/test/resources/transactions_15.csv";
+    app.run(new String[] {"--stream", "35.00", filePath});
+    assertEquals("1f409e4283ad6375bf5d4e9372d\n69756add2de732518ffa48974e8\n"
+        + "Detected 2 fraudulent credit card(s).\n", outContent.toString());
+  }
+
+  @Test
+  public void testGivenStatsOptionThenPrintPeakRetainedEntries() throws Exception {
+    String filePath = "src/test/resources/transactions_10.csv";
+    app.run(new String[] {"--stats", "35.00", filePath});
+    assertTrue(outContent.toString().contains("There are 1 fraudulent credit card(s):"));
+    assertTrue(errContent.toString().contains("Peak retained window entries: "));
+  }
+
+  @Test
+  public void testGivenUnknownOptionThenHandleError() throws Exception {
+    String filePath = "src/test/resources/transactions_10.csv";
+    app.run(new String[] {"--unknown", "35.00", filePath});
+    assertEquals("Unknown option [--unknown].\n" +
+        "Aborting...\n", errContent.toString());
+  }
+
+  @Test
+  public void testGivenAllowedLatenessThenScanInEventTime() throws Exception {
+    String filePath = "src/test/resources/transactions_15.csv";
+    app.run(new String[] {"35.00", filePath, "--allowed-lateness=3600", "--stats"});
+    assertTrue(outContent.toString().contains("There are 2 fraudulent credit card(s):"));
+    assertTrue(errContent.toString().contains("Late transactions dropped: 0"));
+  }
+
+  @Test
+  public void testGivenAllowedLatenessWithThreadsThenHandleError() throws Exception {
+    app.run(new String[] {"35.00", "src/test/resources/transactions_15.csv", "--allowed-lateness=60", "--threads=2"});
+    assertEquals("Option --allowed-lateness is not supported with --threads.\n" +
+        "Aborting...\n", errContent.toString());
+  }
+
+  @Test
+  public void testGivenCheckpointThenResumeWithPreviousWindows() throws Exception {
+    String snapshot = folder.getRoot().getPath() + "/windows.snapshot";
+    app.run(new String[] {"35.00", "src/test/resources/transactions_10.csv", "--checkpoint=" + snapshot});
+    assertTrue(outContent.toString().contains("There are 1 fraudulent credit card(s):"));
+    outContent.reset();
+    new FraudDetectionApp().run(
+        new String[] {"35.00", "src/test/resources/transactions_empty.csv", "--resume=" + snapshot});
+    assertEquals("There are 1 fraudulent credit card(s):\n1f409e4283ad6375bf5d4e9372d\n", outContent.toString());
+  }
+
+  @Test
+  public void testGivenResumeWithOtherLimitThenHandleError() throws Exception {
+    String snapshot = folder.getRoot().getPath() + "/windows.snapshot";
+    app.run(new String[] {"35.00", "src/test/resources/transactions_10.csv", "--checkpoint=" + snapshot});
+    new FraudDetectionApp().run(
+        new String[] {"20.00", "src/test/resources/transactions_10.csv", "--resume=" + snapshot});
+    assertEquals("File error: Snapshot " + snapshot + " was taken with limit [35.0], not [20.0].\n"
+        + "Aborting...\n", errContent.toString());
+  }
+
+  @Test
+  public void testGivenMetricsDumpThenWriteJson() throws Exception {
+    String dump = folder.getRoot().getPath() + "/metrics.json";
+    app.run(new String[] {"35.00", "src/test/resources/transactions_15_5_invalid.csv", "--mmap",
+        "--metrics-dump=" + dump});
+    String json = new String(Files.readAllBytes(Paths.get(dump)), StandardCharsets.UTF_8);
+    assertTrue(json, json.contains("\"records\":15,"));
+    assertTrue(json, json.contains("\"invalid_records\":5,"));
+  }
+
+  @Test
+  public void testGivenInvalidMetricsIntervalThenHandleError() throws Exception {
+    app.run(new String[] {"35.00", "src/test/resources/transactions_10.csv", "--metrics=0"});
+    assertEquals("Invalid metrics interval [0], expecting a positive integer.\n" +
+        "Aborting...\n", errContent.toString());
+  }
+
+  @Test
+  public void testGivenInvalidAmountScaleThenHandleError() throws Exception {
+    app.run(new String[] {"35.00", "src/test/resources/transactions_10.csv", "--amount-scale=7"});
+    assertEquals("Invalid amount scale [7], expecting 0 to 6.\n" +
+        "Aborting...\n", errContent.toString());
+  }
+
+  @Test
+  public void testGivenHugeAmountThenWarnAndScanOtherRecordsInEveryMode() throws Exception {
+    File file = folder.newFile("huge.csv");
+    Files.write(file.toPath(), ("c1,2014-04-29T13:15:54,40.00\n"
+        + "c3,2014-04-29T13:15:56,1e300\n"
+        + "c2,2014-04-29T13:15:57,50000000000000000\n"
+        + "c2,2014-04-29T13:15:58,10.00\n").getBytes(StandardCharsets.UTF_8));
+    String[][] modes = {{}, {"--stream"}, {"--mmap"}};
+    for (String[] mode : modes) {
+      outContent.reset();
+      errContent.reset();
+      List<String> args = new ArrayList<>();
+      for (String option : mode) {
+        args.add(option);
+      }
+      args.add("35.00");
+      args.add(file.getPath());
+      app.run(args.toArray(new String[0]));
+      String out = outContent.toString();
+      assertTrue(out, out.contains("c1"));
+      assertTrue(out, !out.contains("c2") && !out.contains("c3"));
+      assertTrue(errContent.toString().contains(
+          "WARN - invalid record: [c3,2014-04-29T13:15:56,1e300]. Reason: Invalid amount [1e300]. Ignore"));
+      assertTrue(errContent.toString().contains("Reason: Invalid amount [50000000000000000]. Ignore"));
+      assertTrue(!errContent.toString().contains("Aborting"));
+    }
+  }
+
+  @Test
+  public void testGivenLargestAmountScaleThenScanNormalAmounts() throws Exception {
+    app.run(new String[] {"35.00", "src/test/resources/transactions_10.csv", "--amount-scale=6"});
+    assertTrue(outContent.toString().contains("There are 1 fraudulent credit card(s):"));
+    assertTrue(outContent.toString().contains("1f409e4283ad6375bf5d4e9372d"));
+  }
+
+  @Test
+  public void testGivenRulesThenReportRuleOfEachFraud() throws Exception {
+    String filePath = "src/test/resources/transactions_10.csv";
+    app.run(new String[] {"--stream", "--rule=daily:amount:24h:35.00", "--rule=weekly:amount:7d:60", filePath});
+    assertEquals("1f409e4283ad6375bf5d4e9372d daily\n10d7ce2f43e35fa57d1bbf8b1e2 weekly\n"
+        + "Detected 2 fraudulent credit card(s).\n", outContent.toString());
+  }
+
+  @Test
+  public void testGivenTierRuleThenApplyTierLimit() throws Exception {
+    String filePath = "src/test/resources/transactions_10.csv";
+    app.run(new String[] {"--mmap", "--rule=daily:amount:24h:35.00", "--rule=premium-daily:amount:24h:50:premium",
+        "--card-tiers=src/test/resources/card_tiers.csv", filePath});
+    assertEquals("No fraud detected!\n", outContent.toString());
+  }
+
+  @Test
+  public void testGivenTierRuleWithoutTiersThenHandleError() throws Exception {
+    app.run(new String[] {"--rule=premium-daily:amount:24h:50:premium", "src/test/resources/transactions_10.csv"});
+    assertEquals("Rule [premium-daily] applies to a tier, expecting --card-tiers.\n" +
+        "Aborting...\n", errContent.toString());
+  }
+
+  @Test
+  public void testGivenBucketLongerThanRuleWindowThenHandleError() throws Exception {
+    app.run(new String[] {"--rule=burst:count:1m:5", "--bucket=5m", "src/test/resources/transactions_10.csv"});
+    assertEquals("Bucket is longer than the window of rule [burst].\n" +
+        "Aborting...\n", errContent.toString());
+  }
+
+  @Test
+  public void testGivenBucketedRulesThenDetectFraud() throws Exception {
+    app.run(new String[] {"--rule=daily:amount:24h:35.00", "--bucket=1h", "src/test/resources/transactions_10.csv"});
+    assertEquals("There are 1 fraudulent credit card(s):\n1f409e4283ad6375bf5d4e9372d daily\n", outContent.toString());
+  }
+
+  @Test
+  public void testGivenSweepThenReportFraudulentCreditCardsOfEachLimit() throws Exception {
+    String filePath = "src/test/resources/transactions_10.csv";
+    app.run(new String[] {"--sweep=60,35.00,10", "--sweep-cards", filePath});
+    assertEquals("Limit 10: 3 fraudulent credit card(s):\n1f409e4283ad6375bf5d4e9372d\n10d7ce2f43e35fa57d1bbf8b1e2\n"
+        + "f2f1ee2840d23ed1430cbec83c6\nLimit 35.00: 1 fraudulent credit card(s):\n1f409e4283ad6375bf5d4e9372d\n"
+        + "Limit 60: 0 fraudulent credit card(s)\n", outContent.toString());
+
+    outContent.reset();
+    app.run(new String[] {"--mmap", "--sweep=0:50:25", filePath});
+    assertEquals("Limit 0: 4 fraudulent credit card(s)\nLimit 25: 2 fraudulent credit card(s)\n"
+        + "Limit 50: 0 fraudulent credit card(s)\n", outContent.toString());
+  }
+
+  @Test
+  public void testGivenInvalidSweepThenHandleError() throws Exception {
+    app.run(new String[] {"--sweep=50:10:5", "src/test/resources/transactions_10.csv"});
+    assertEquals("Invalid sweep [50:10:5], expecting LIMIT,LIMIT,... or FROM:TO:STEP of at most 100000 limits.\n"
+        + "Aborting...\n", errContent.toString());
+  }
+
+  @Test
+  public void testGivenConvertedFileThenScanSameAsTextFile() throws Exception {
+    String binaryFile = folder.getRoot().getPath() + "/transactions.bin";
+    app.run(new String[] {"--convert=" + binaryFile, "src/test/resources/transactions_10.csv"});
+    assertEquals("Converted 10 transaction(s) to " + binaryFile + ".\n", outContent.toString());
+
+    outContent.reset();
+    app.run(new String[] {"35.00", binaryFile});
+    assertEquals("There are 1 fraudulent credit card(s):\n1f409e4283ad6375bf5d4e9372d\n", outContent.toString());
+    outContent.reset();
+    app.run(new String[] {"--stream", "--rule=daily:amount:24h:35.00", "--rule=weekly:amount:7d:60", binaryFile});
+    assertEquals("1f409e4283ad6375bf5d4e9372d daily\n10d7ce2f43e35fa57d1bbf8b1e2 weekly\n"
+        + "Detected 2 fraudulent credit card(s).\n", outContent.toString());
+    assertEquals("", errContent.toString());
+  }
+
+  @Test
+  public void testGivenGzipFileThenScanSameAsTextFile() throws Exception {
+    String gzipFile = folder.getRoot().getPath() + "/transactions.csv.gz";
+    try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(Paths.get(gzipFile)))) {
+      Files.copy(Paths.get("src/test/resources/transactions_15_5_invalid.csv"), out);
+    }
+    app.run(new String[] {"35.00", "src/test/resources/transactions_15_5_invalid.csv"});
+    String expectedOut = outContent.toString();
+    String expectedErr = errContent.toString();
+    outContent.reset();
+    errContent.reset();
+    app.run(new String[] {"35.00", gzipFile});
+    assertEquals(expectedOut, outContent.toString());
+    assertEquals(expectedErr, errContent.toString());
+  }
+
+  @Test
+  public void testGivenJsonFormatAndMaxWarningsThenWriteRecordsAndSummary() throws Exception {
+    String filePath = "src/test/resources/transactions_15_5_invalid.csv";
+    app.run(new String[] {"--format=json", "--max-warnings=1", "--stream", "35.00", filePath});
+    assertEquals("{\"creditCardId\":\"1f409e4283ad6375bf5d4e9372d\"}\n", outContent.toString());
+    String[] warnings = errContent.toString().split("\n");
+    // The first invalid record, then the summary of the 5 reasons.
+    assertEquals(6, warnings.length);
+    assertEquals("{\"invalidRecord\":\"\",\"reason\":\"Error: expecting 3 fields, found 1\"}", warnings[0]);
+    assertEquals("{\"invalidRecords\":1,\"reason\":\"Invalid date time format\","
+        + "\"examples\":[\"10d7ce2f43e35fa57d1bbf8b1e2, Unknown, 30.00\"]}", warnings[3]);
+  }
+
+  @Test
+  public void testGivenManyInvalidRecordsThenPrintEveryWarningByDefault() throws Exception {
+    File file = folder.newFile();
+    StringBuilder content = new StringBuilder();
+    for (int i = 0; i < 250; i++) {
+      content.append("card-").append(i).append(", 2014-04-29T13:15:54, Ten dollars\n");
+    }
+    Files.write(file.toPath(), content.toString().getBytes(StandardCharsets.UTF_8));
+    app.run(new String[] {"35.00", file.getPath()});
+    String[] warnings = errContent.toString().split("\n");
+    assertEquals(250, warnings.length);
+    assertEquals("WARN - invalid record: [card-249, 2014-04-29T13:15:54, Ten dollars]. "
+        + "Reason: Invalid amount [Ten dollars]. Ignore", warnings[249]);
+  }
+
+  @Test
+  public void testGivenFormatWithSweepThenWriteLimitRecords() throws Exception {
+    String filePath = "src/test/resources/transactions_10.csv";
+    app.run(new String[] {"--format=csv", "--sweep=60,35.00,10", "--sweep-cards", filePath});
+    assertEquals("limit,10,3\nlimit_credit_card,10,1f409e4283ad6375bf5d4e9372d\n"
+        + "limit_credit_card,10,10d7ce2f43e35fa57d1bbf8b1e2\nlimit_credit_card,10,f2f1ee2840d23ed1430cbec83c6\n"
+        + "limit,35.00,1\nlimit_credit_card,35.00,1f409e4283ad6375bf5d4e9372d\nlimit,60,0\n", outContent.toString());
+
+    outContent.reset();
+    app.run(new String[] {"--format=json", "--sweep=35.00,60", filePath});
+    assertEquals("{\"limit\":35.00,\"fraudulent\":1}\n{\"limit\":60,\"fraudulent\":0}\n", outContent.toString());
+  }
+
+  @Test
+  public void testGivenFormatWithConvertThenWriteRecordsOnly() throws Exception {
+    String binaryFile = folder.getRoot().getPath() + "/transactions.bin";
+    app.run(new String[] {"--format=json", "--convert=" + binaryFile,
+        "src/test/resources/transactions_15_5_invalid.csv"});
+    assertEquals("", outContent.toString());
+    assertTrue(errContent.toString(), errContent.toString().startsWith("{\"invalidRecord\":"));
+  }
+
+  @Test
+  public void testGivenFormatWithServeThenHandleError() throws Exception {
+    app.run(new String[] {"--format=csv", "--serve=0", "35.00"});
+    assertEquals("Option --format is not supported with --serve.\nAborting...\n", errContent.toString());
+  }
+
+  @Test
+  public void testGivenFollowWithRuleThenHandleError() throws Exception {
+    app.run(new String[] {"--follow", "--rule=daily:amount:24h:150", "src/test/resources/transactions_10.csv"});
+    assertEquals("Option --follow is not supported with --threads, --rule, --sweep, --convert or --serve.\n"
+        + "Aborting...\n", errContent.toString());
+  }
+
+  @Test
+  public void testGivenCheckpointIntervalWithoutFollowThenHandleError() throws Exception {
+    app.run(new String[] {"--checkpoint-interval=10", "--checkpoint=windows.snapshot", "35.00",
+        "src/test/resources/transactions_10.csv"});
+    assertEquals("Option --checkpoint-interval requires --follow and --checkpoint.\nAborting...\n",
+        errContent.toString());
+  }
+
+  @Test
+  public void testGivenTransactionsOutOfOrderAcrossCreditCardsThenWarn() throws Exception {
+    String filePath = folder.newFile().getPath();
+    Files.write(Paths.get(filePath), ("a, 2014-04-29T10:00:00, 30.00\n" + "b, 2014-05-01T10:00:00, 1.00\n"
+        + "a, 2014-04-29T11:00:00, 30.00\n").getBytes(StandardCharsets.UTF_8));
+    app.run(new String[] {"50.00", filePath});
+    assertEquals("No fraud detected!\n", outContent.toString());
+    assertEquals("WARN - 1 transaction(s) out of time order across credit cards by more than the window, their "
+        + "credit card may be missed. Scan with --allowed-lateness to reorder them.\n", errContent.toString());
+
+    outContent.reset();
+    errContent.reset();
+    new FraudDetectionApp().run(new String[] {"50.00", filePath, "--allowed-lateness=172800"});
+    assertEquals("There are 1 fraudulent credit card(s):\na\n", outContent.toString());
+    assertEquals("", errContent.toString());
+  }
+
+  @Test
+  public void testGivenDirectoryOfFilesThenScanMergedInTimeOrder() throws Exception {
+    List<String> lines = Files.readAllLines(Paths.get("src/test/resources/transactions_15.csv"));
+    List<String> first = new ArrayList<>();
+    List<String> second = new ArrayList<>();
+    for (int i = 0; i < lines.size(); i++) {
+      (i % 3 == 0 ? first : second).add(lines.get(i));
+    }
+    String directory = folder.newFolder("acquirers").getPath();
+    Files.write(Paths.get(directory, "a.csv"), first);
+    Files.write(Paths.get(directory, "b.csv"), second);
+    app.run(new String[] {"--stream", "35.00", directory});
+    assertEquals("1f409e4283ad6375bf5d4e9372d\n69756add2de732518ffa48974e8\n"
+        + "Detected 2 fraudulent credit card(s).\n", outContent.toString());
+
+    outContent.reset();
+    app.run(new String[] {"--sweep=35,50", directory + "/*.csv"});
+    assertEquals("Limit 35: 2 fraudulent credit card(s)\nLimit 50: 0 fraudulent credit card(s)\n",
+        outContent.toString());
+
+    app.run(new String[] {"--threads=2", "35.00", directory});
+    assertEquals("Option --threads is not supported with several transaction files.\nAborting...\n",
+        errContent.toString());
+
+    errContent.reset();
+    app.run(new String[] {"--threads=2", "35.00", directory + "/a.csv", directory + "/b.csv"});
+    assertEquals("Option --threads is not supported with several transaction files.\nAborting...\n",
+        errContent.toString());
+  }
+
+  @Test
+  public void testGivenConvertWithThreadsThenHandleError() throws Exception {
+    app.run(new String[] {"--convert=transactions.bin", "--threads=2", "src/test/resources/transactions_10.csv"});
+    assertEquals("Option --convert is not supported with --threads, --rule or --serve.\n" +
+        "Aborting...\n", errContent.toString());
+  }
+
+  @Test
+  public void testGivenInvalidServeAddressThenHandleError() throws Exception {
+    app.run(new String[] {"--serve=localhost:http", "35.00"});
+    assertEquals("Invalid server address [localhost:http], expecting [HOST:]PORT.\n" +
+        "Aborting...\n", errContent.toString());
+  }
+
+  @Test
+  public void testGivenServeOptionWithFileThenHandleError() throws Exception {
+    app.run(new String[] {"--serve=0", "35.00", "src/test/resources/transactions_10.csv"});
+    assertEquals("Invalid inputs. Expecting exactly 1 argument in service mode: Price threshold.\n" +
+        "Aborting...\n", errContent.toString());
+  }
+
   @Test
   public void testGivenNonExistFileThenHandleError() throws Exception {
     String filePath = "non/exist/file";
@@ -3,8 +3,11 @@ package com.tdinh.interview.atp.frauddetector;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import com.tdinh.interview.atp.frauddetector.FraudDetector;
+import com.tdinh.interview.atp.frauddetector.transaction.MappedTransactionFileLoader;
 import com.tdinh.interview.atp.frauddetector.transaction.Transaction;
+import com.tdinh.interview.atp.frauddetector.transaction.TransactionFileLoader;
 import com.tdinh.interview.atp.frauddetector.transaction.TransactionResolver;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -66,6 +69,31 @@ public class FraudDetectorTest {
             Arrays.asList("10d7ce2f43e35fa57d1bbf8b1e2", "1f409e4283ad6375bf5d4e9372d")));
   }
   
+  @Test
+  public void testGivenTransactionSourceThenNotifyFraudAsDetected() throws Exception {
+    List<Transaction> transactions =
+        Arrays.asList(
+            transactionResolver.resolve("10d7ce2f43e35fa57d1bbf8b1e2, 2014-04-29T13:15:54, 10.00"),
+            transactionResolver.resolve("1f409e4283ad6375bf5d4e9372d, 2014-04-30T14:00:15, 75.66"),
+            transactionResolver.resolve("10d7ce2f43e35fa57d1bbf8b1e2, 2014-04-29T17:15:54, 30.00"),
+            transactionResolver.resolve("10d7ce2f43e35fa57d1bbf8b1e2, 2014-04-30T13:15:53, 30.00"));
+    List<String> detected = new ArrayList<>();
+    Set<String> fraudCreditCards = fraudDetector.fraudScan(transactions::forEach, 35.00, detected::add);
+    assertEquals(Arrays.asList("1f409e4283ad6375bf5d4e9372d", "10d7ce2f43e35fa57d1bbf8b1e2"), detected);
+    assertEquals(2, fraudCreditCards.size());
+  }
+
+  @Test
+  public void testGivenTransactionBatchesThenReturnSameAsTransactionScan() throws Exception {
+    String filePath = "src/test/resources/transactions_15_5_invalid.csv";
+    TransactionFileLoader loader = new MappedTransactionFileLoader();
+    List<String> detected = new ArrayList<>();
+    Set<String> fraudCreditCards =
+        fraudDetector.fraudScanBatches(loader.batchSource(filePath), 35.00, detected::add);
+    assertEquals(fraudDetector.fraudScan(loader.load(filePath), 35.00), fraudCreditCards);
+    assertEquals(Arrays.asList("1f409e4283ad6375bf5d4e9372d"), detected);
+  }
+
   @Test
   public void testGivenEmptyTransactionListThenReturnEmptyFraudulentCreditCard() throws Exception {
     List<Transaction> transactions = Collections.emptyList();
@@ -0,0 +1,93 @@
+package com.tdinh.interview.atp.frauddetector;
+
+import static org.junit.Assert.assertEquals;
+import com.tdinh.interview.atp.frauddetector.transaction.Transaction;
+import com.tdinh.interview.atp.frauddetector.transaction.TransactionFileLoader;
+import com.tdinh.interview.atp.frauddetector.transaction.error.FileLoaderException;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit test class for {@link ParallelFraudDetector}.
+ * @author Tuan Dinh
+ *
+ */
+public class ParallelFraudDetectorTest {
+
+  private static final String[] TEST_FILES = {
+      "src/test/resources/transactions_10.csv",
+      "src/test/resources/transactions_15.csv",
+      "src/test/resources/transactions_15_5_invalid.csv",
+      "src/test/resources/transactions_empty.csv",
+      "test-data/transactions.csv"};
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Rule
+  public ExpectedException exceptionRule = ExpectedException.none();
+
+  private FraudDetector fraudDetector = new FraudDetector();
+  private TransactionFileLoader loader = new TransactionFileLoader();
+
+  @Test
+  public void testGivenTestFilesThenMatchSequentialScan() throws Exception {
+    for (String file : TEST_FILES) {
+      for (int threads : new int[] {1, 2, 3}) {
+        assertSameAsSequential(file, new ParallelFraudDetector(threads, 64), 35.00);
+      }
+    }
+  }
+
+  @Test
+  public void testGivenLargeRandomFileThenMatchSequentialScan() throws Exception {
+    File file = randomFile(new Random(42), 20000, 300);
+    for (int threads : new int[] {1, 4, 7}) {
+      for (double limit : new double[] {100.00, 500.00}) {
+        assertSameAsSequential(file.getPath(), new ParallelFraudDetector(threads, 4096), limit);
+      }
+    }
+  }
+
+  @Test
+  public void testGivenNonExistFileThenReturnError() throws Exception {
+    exceptionRule.expect(FileLoaderException.class);
+    exceptionRule.expectMessage("non/exist/file (No such file or directory)");
+    new ParallelFraudDetector(2).fraudScan("non/exist/file", 35.00, creditCardId -> { });
+  }
+
+  private void assertSameAsSequential(String file, ParallelFraudDetector parallelFraudDetector, double limit)
+      throws FileLoaderException {
+    List<Transaction> transactions = loader.load(file);
+    Set<String> expected = new HashSet<>(fraudDetector.fraudScan(transactions, limit));
+    Set<String> notified = new HashSet<>();
+    Set<String> actual = parallelFraudDetector.fraudScan(file, limit, notified::add);
+    assertEquals(file, expected, actual);
+    assertEquals(file, expected, notified);
+  }
+
+  private File randomFile(Random random, int count, int cards) throws IOException {
+    File file = folder.newFile();
+    DateTimeFormatter formatter = DateTimeFormatter.ofPattern(Transaction.DATE_TIME_FORMATTER);
+    LocalDateTime dateTime = LocalDateTime.of(2014, 4, 29, 0, 0, 0);
+    try (PrintWriter writer = new PrintWriter(file)) {
+      for (int i = 0; i < count; i++) {
+        dateTime = dateTime.plusSeconds(random.nextInt(600));
+        writer.println("card-" + random.nextInt(cards) + ", " + dateTime.format(formatter) + ", "
+            + random.nextInt(100) + "." + random.nextInt(10) + "0");
+      }
+    }
+    return file;
+  }
+}
@@ -0,0 +1,108 @@
+package com.tdinh.interview.atp.frauddetector.generator;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import com.tdinh.interview.atp.frauddetector.FraudDetector;
+import com.tdinh.interview.atp.frauddetector.transaction.Transaction;
+import com.tdinh.interview.atp.frauddetector.transaction.TransactionFileLoader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeSet;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit test class for {@link TransactionGenerator}
+ * @author Tuan Dinh
+ *
+ */
+public class TransactionGeneratorTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private static TransactionGenerator.Builder builder() {
+    return new TransactionGenerator.Builder().records(20_000).cards(500).skew(1.1).spanSeconds(7 * 24 * 3600)
+        .logNormalAmounts(40.00, 1.2).limit(1500.00).fraudRatio(0.05).seed(42);
+  }
+
+  @Test
+  public void testGivenSameSeedThenGenerateSameBytes() throws Exception {
+    ByteArrayOutputStream first = new ByteArrayOutputStream();
+    ByteArrayOutputStream second = new ByteArrayOutputStream();
+    ByteArrayOutputStream other = new ByteArrayOutputStream();
+    builder().malformedRate(0.01).outOfOrderFraction(0.1).build().generate(first);
+    builder().malformedRate(0.01).outOfOrderFraction(0.1).build().generate(second);
+    builder().malformedRate(0.01).outOfOrderFraction(0.1).seed(43).build().generate(other);
+    assertArrayEquals(first.toByteArray(), second.toByteArray());
+    assertFalse(new String(first.toByteArray(), StandardCharsets.US_ASCII)
+        .equals(new String(other.toByteArray(), StandardCharsets.US_ASCII)));
+  }
+
+  @Test
+  public void testGivenMalformedLinesThenOnlyRecordsAreLoaded() throws Exception {
+    File file = folder.newFile("transactions.csv");
+    builder().malformedRate(0.02).build().generate(file.getPath());
+    List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.US_ASCII);
+    List<Transaction> transactions = new TransactionFileLoader().load(file.getPath());
+    assertEquals(20_000, transactions.size());
+    assertTrue(lines.size() > transactions.size());
+  }
+
+  @Test
+  public void testGivenInOrderRecordsThenDetectorFindsExpectedFraud() throws Exception {
+    File file = folder.newFile("transactions.csv");
+    List<String> expected = builder().malformedRate(0.01).build().generate(file.getPath());
+    assertFalse(expected.isEmpty());
+    assertEquals(expected, Files.readAllLines(new File(file.getPath() + ".expected").toPath()));
+    List<Transaction> transactions = new TransactionFileLoader().load(file.getPath());
+    assertEquals(new TreeSet<>(expected), new TreeSet<>(new FraudDetector().fraudScan(transactions, 1500.00)));
+  }
+
+  @Test
+  public void testGivenOutOfOrderRecordsThenExpectedFraudIsByTransactionTime() throws Exception {
+    File file = folder.newFile("transactions.csv");
+    List<String> expected =
+        builder().outOfOrderFraction(0.3).maxLatenessSeconds(3600).build().generate(file.getPath());
+    List<Transaction> sorted = new ArrayList<>(new TransactionFileLoader().load(file.getPath()));
+    // Stable sort, so that transactions of the same second keep their file order.
+    sorted.sort(Comparator.comparing(Transaction::getTransDateTime));
+    assertEquals(new TreeSet<>(expected), new TreeSet<>(new FraudDetector().fraudScan(sorted, 1500.00)));
+  }
+
+  @Test
+  public void testGivenCardThenCreditCardIdIsStableHex() {
+    String id = TransactionGenerator.creditCardId(7);
+    assertEquals(27, id.length());
+    assertTrue(id.matches("[0-9a-f]+"));
+    assertEquals(id, TransactionGenerator.creditCardId(7));
+    assertFalse(id.equals(TransactionGenerator.creditCardId(8)));
+  }
+
+  @Test
+  public void testGivenInvalidOptionThenPrintUsage() throws Exception {
+    PrintStream standardError = System.err;
+    ByteArrayOutputStream errContent = new ByteArrayOutputStream();
+    System.setErr(new PrintStream(errContent));
+    try {
+      TransactionGenerator.main(new String[] {folder.getRoot() + "/transactions.csv", "--records=many"});
+      TransactionGenerator.main(new String[] {"--records=10"});
+    } finally {
+      System.setErr(standardError);
+    }
+    String[] lines = errContent.toString().split("\\R");
+    assertEquals("Invalid value of option [--records=many].", lines[0]);
+    assertTrue(lines[1].startsWith("Usage: TransactionGenerator <output file>"));
+    assertEquals("Missing output file.", lines[2]);
+    assertFalse(new File(folder.getRoot(), "transactions.csv").exists());
+  }
+}
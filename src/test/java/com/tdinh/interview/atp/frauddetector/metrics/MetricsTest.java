@@ -0,0 +1,84 @@
+package com.tdinh.interview.atp.frauddetector.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import com.tdinh.interview.atp.frauddetector.FraudDetector;
+import com.tdinh.interview.atp.frauddetector.transaction.MappedTransactionFileLoader;
+import com.tdinh.interview.atp.frauddetector.transaction.TransactionFileLoader;
+import java.io.File;
+import java.util.Map;
+import org.junit.Test;
+
+/**
+ * Unit test class for {@link Metrics} and {@link LatencyHistogram}.
+ * 
+ * @author Tuan Dinh
+ *
+ */
+public class MetricsTest {
+
+  private static final String INVALID_FILE = "src/test/resources/transactions_15_5_invalid.csv";
+
+  @Test
+  public void testGivenValueThenBucketBoundsHoldIt() {
+    for (long value : new long[] {0, 1, 3, 4, 5, 7, 8, 100, 1023, 1024, 123_456_789L, Long.MAX_VALUE}) {
+      int bucket = LatencyHistogram.bucketOf(value);
+      assertTrue("value " + value, value <= LatencyHistogram.upperBound(bucket));
+      assertTrue("value " + value, bucket == 0 || value > LatencyHistogram.upperBound(bucket - 1));
+      // Within 25% of the value.
+      assertTrue("value " + value, LatencyHistogram.upperBound(bucket) - value <= value / 4);
+    }
+  }
+
+  @Test
+  public void testGivenLatenciesThenQuantiles() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    assertEquals(0, histogram.quantile(0.5));
+    for (int i = 0; i < 99; i++) {
+      histogram.record(100);
+    }
+    histogram.record(1_000_000);
+    assertEquals(100, histogram.count());
+    assertEquals(LatencyHistogram.upperBound(LatencyHistogram.bucketOf(100)), histogram.quantile(0.5));
+    assertEquals(LatencyHistogram.upperBound(LatencyHistogram.bucketOf(100)), histogram.quantile(0.99));
+    assertEquals(LatencyHistogram.upperBound(LatencyHistogram.bucketOf(1_000_000)), histogram.quantile(1.0));
+  }
+
+  @Test
+  public void testGivenInvalidRecordsThenCountByReason() throws Exception {
+    for (TransactionFileLoader loader : new TransactionFileLoader[] {
+        new TransactionFileLoader(), new MappedTransactionFileLoader()}) {
+      Metrics metrics = new Metrics();
+      loader.setMetrics(metrics);
+      FraudDetector detector = new FraudDetector();
+      detector.setMetrics(metrics);
+      detector.fraudScan(loader.source(INVALID_FILE), 35.00, creditCardId -> { });
+
+      assertEquals(15, metrics.getRecords());
+      // The text loader counts a line terminator after the last line too.
+      assertEquals(new File(INVALID_FILE).length(), metrics.getBytesRead(), 1);
+      assertEquals(5, metrics.getInvalidRecords());
+      Map<String, Long> byReason = metrics.getInvalidRecordsByReason();
+      assertEquals(Long.valueOf(5), byReason.values().stream().reduce(0L, Long::sum));
+      // Only the last credit card has a transaction within 24 hours of the last one.
+      assertEquals(1, metrics.getLiveCreditCards());
+      assertEquals(1, metrics.getWindowEntries());
+    }
+  }
+
+  @Test
+  public void testGivenMetricsThenJsonAndLogLine() throws Exception {
+    Metrics metrics = new Metrics();
+    metrics.addRecords(3);
+    metrics.addInvalidRecord("Invalid amount [\"x\"]");
+    metrics.recordScanLatency(100);
+    String json = metrics.toJson();
+    assertTrue(json, json.startsWith("{\"elapsed_ms\":"));
+    assertTrue(json, json.contains("\"records\":3,"));
+    assertTrue(json, json.contains("\"invalid_records_by_reason\":{\"Invalid amount\":1}"));
+    assertTrue(json, json.contains("\"scan_latency_ns\":{\"samples\":1,\"p50\":111,"));
+    String line = metrics.toLogLine();
+    assertTrue(line, line.startsWith("METRICS elapsed="));
+    assertTrue(line, line.contains(" records=3 ") && line.contains(" invalid=1 "));
+  }
+}
@@ -0,0 +1,152 @@
+package com.tdinh.interview.atp.frauddetector.report;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+/**
+ * Unit test class for {@link ReportSink}.
+ *
+ * @author Tuan Dinh
+ *
+ */
+public class ReportSinkTest {
+
+  private final ByteArrayOutputStream outContent = new ByteArrayOutputStream();
+  private final ByteArrayOutputStream errContent = new ByteArrayOutputStream();
+
+  @Test
+  public void testGivenTextFormatThenWriteLikePrintln() throws Exception {
+    try (ReportSink sink = sink(ReportFormat.TEXT, 10)) {
+      sink.fraud("10d7ce2f43e35fa57d1bbf8b1e2");
+      sink.fraud("f2f1ee2840d23ed1430cbec83c6", "daily");
+      sink.message("Detected 2 fraudulent credit card(s).");
+      sink.invalidRecord("a, Unknown, 1.00", "Invalid date time format [Unknown]");
+    }
+    assertEquals("10d7ce2f43e35fa57d1bbf8b1e2\nf2f1ee2840d23ed1430cbec83c6 daily\n"
+        + "Detected 2 fraudulent credit card(s).\n", outContent.toString());
+    assertEquals("WARN - invalid record: [a, Unknown, 1.00]. Reason: Invalid date time format [Unknown]. Ignore\n",
+        errContent.toString());
+  }
+
+  @Test
+  public void testGivenCsvAndJsonFormatsThenWriteRecordsOnly() throws Exception {
+    try (ReportSink sink = sink(ReportFormat.CSV, 10)) {
+      sink.fraud("10d7ce2f43e35fa57d1bbf8b1e2");
+      sink.fraud("f2f1ee2840d23ed1430cbec83c6", "daily");
+      sink.message("Detected 2 fraudulent credit card(s).");
+      sink.invalidRecord("a, \"b\", c", "Error: expecting 3 fields, found 3");
+    }
+    assertEquals("10d7ce2f43e35fa57d1bbf8b1e2\nf2f1ee2840d23ed1430cbec83c6,daily\n", outContent.toString());
+    assertEquals("invalid_record,\"Error: expecting 3 fields, found 3\",\"a, \"\"b\"\", c\"\n", errContent.toString());
+
+    outContent.reset();
+    errContent.reset();
+    try (ReportSink sink = sink(ReportFormat.JSON, 10)) {
+      sink.fraud("f2f1ee2840d23ed1430cbec83c6", "daily");
+      sink.message("Detected 1 fraudulent credit card(s).");
+      sink.invalidRecord("a\t\"b\"", "Invalid amount [\"b\"]");
+    }
+    assertEquals("{\"creditCardId\":\"f2f1ee2840d23ed1430cbec83c6\",\"rule\":\"daily\"}\n", outContent.toString());
+    assertEquals("{\"invalidRecord\":\"a\\u0009\\\"b\\\"\",\"reason\":\"Invalid amount [\\\"b\\\"]\"}\n",
+        errContent.toString());
+  }
+
+  @Test
+  public void testGivenMoreWarningsThanMaximumThenSummarizeByReason() throws Exception {
+    List<String> amounts = new ArrayList<>();
+    try (ReportSink sink = sink(ReportFormat.TEXT, 2)) {
+      for (int i = 0; i < 100_000; i++) {
+        String amount = "amount-" + i;
+        amounts.add(amount);
+        sink.invalidRecord("a, 2014-04-29T13:15:54, " + amount, "Invalid amount [" + amount + "]");
+      }
+      sink.invalidRecord("a", "Error: expecting 3 fields, found 1");
+      assertEquals(99_999, sink.getSuppressedWarnings());
+    }
+    String[] lines = errContent.toString().split("\n");
+    assertEquals(4, lines.length);
+    assertTrue(lines[0].startsWith("WARN - invalid record: [a, 2014-04-29T13:15:54, amount-0]"));
+    assertTrue(lines[1].startsWith("WARN - invalid record: [a, 2014-04-29T13:15:54, amount-1]"));
+    assertTrue(lines[2], lines[2].startsWith("WARN - 100000 invalid record(s). Reason: Invalid amount. Examples: ["));
+    assertEquals(ReportSink.EXAMPLES, lines[2].split(" \\[").length - 1);
+    assertEquals("WARN - 1 invalid record(s). Reason: Error: expecting 3 fields, found 1. Examples: [a]", lines[3]);
+  }
+
+  @Test
+  public void testGivenManyProducersThenWriteEveryLine() throws Exception {
+    ReportSink sink = sink(ReportFormat.CSV, 0);
+    List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < 4; t++) {
+      int producer = t;
+      Thread thread = new Thread(() -> {
+        for (int i = 0; i < 20_000; i++) {
+          sink.fraud("card-" + producer + "-" + i);
+          sink.invalidRecord("record", "Error: expecting 3 fields, found 1");
+        }
+      });
+      thread.start();
+      threads.add(thread);
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    sink.close();
+    sink.close();
+    assertEquals(80_000, outContent.toString().split("\n").length);
+    assertEquals("invalid_records,\"Error: expecting 3 fields, found 1\",80000,record,record,record\n",
+        errContent.toString());
+  }
+
+  @Test
+  public void testGivenBlockedStreamThenHoldBackReportsAtHighWaterMark() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    OutputStream blocked = new OutputStream() {
+      @Override
+      public void write(int b) throws IOException {
+        write(new byte[] {(byte) b}, 0, 1);
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException {
+        try {
+          release.await();
+        } catch (InterruptedException ex) {
+          throw new IOException(ex);
+        }
+        outContent.write(b, off, len);
+      }
+    };
+    ReportSink sink = new ReportSink(new PrintStream(blocked), new PrintStream(errContent), ReportFormat.CSV,
+        ReportSink.DEFAULT_MAX_WARNINGS, 1000);
+    AtomicInteger reported = new AtomicInteger();
+    Thread producer = new Thread(() -> {
+      for (int i = 0; i < 10_000; i++) {
+        sink.fraud(String.format("card-%05d", i));
+        reported.incrementAndGet();
+      }
+    });
+    producer.start();
+    producer.join(1000);
+    // 11 characters a line: a batch being written and a buffer up to the mark.
+    assertTrue(producer.isAlive());
+    assertTrue(String.valueOf(reported.get()), reported.get() <= 2 * 1000 / 11 + 2);
+    release.countDown();
+    producer.join();
+    sink.close();
+    assertEquals(10_000, outContent.toString().split("\n").length);
+    assertTrue(outContent.toString().endsWith("card-09999\n"));
+  }
+
+  private ReportSink sink(ReportFormat format, long maxWarnings) {
+    return new ReportSink(new PrintStream(outContent), new PrintStream(errContent), format, maxWarnings);
+  }
+}
@@ -0,0 +1,281 @@
+package com.tdinh.interview.atp.frauddetector.rule;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import com.tdinh.interview.atp.frauddetector.transaction.CreditCardDictionary;
+import com.tdinh.interview.atp.frauddetector.transaction.TransactionBatch;
+import com.tdinh.interview.atp.frauddetector.window.SlidingWindowEngine;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Unit test class for {@link RuleEngine}.
+ *
+ * The engine is checked against a full-history scan evaluating each rule separately
+ * ({@link #referenceRuleScan(List, long[], long[], List, CreditCardTiers, long)}) on randomized rules and
+ * inputs, with exact and bucketed windows.
+ *
+ * @author Tuan Dinh
+ *
+ */
+public class RuleEngineTest {
+
+  private static final long HOUR = 60 * 60;
+  private static final long DAY = 24 * HOUR;
+  private static final long[] WINDOWS = {10 * 60, HOUR, DAY, 7 * DAY};
+  private static final String[] TIERS = {null, "standard", "premium"};
+  private static final long[] BUCKETS = {1, 60, 300};
+
+  @Test
+  public void testGivenSeveralWindowsThenFireRuleOfEachWindow() {
+    RuleEngine engine = engine(rule("hourly", WindowRule.Measure.AMOUNT, HOUR, 50, null),
+        rule("daily", WindowRule.Measure.AMOUNT, DAY, 100, null),
+        rule("weekly", WindowRule.Measure.AMOUNT, 7 * DAY, 150, null));
+    // 60 in 2 hours: not over the hourly limit.
+    assertNull(engine.accept("a", 0, 30.00));
+    assertNull(engine.accept("a", HOUR, 30.00));
+    assertNull(engine.accept("b", 0, 30.00));
+    assertEquals("hourly", engine.accept("b", HOUR - 1, 30.00).getName());
+    // 105 in a day.
+    assertEquals("daily", engine.accept("a", DAY - 1, 45.00).getName());
+    // 180 in a week.
+    for (int day = 0; day < 6; day += 2) {
+      assertNull(engine.accept("c", day * DAY, 45.00));
+    }
+    assertEquals("weekly", engine.accept("c", 6 * DAY, 45.00).getName());
+    assertEquals(3, engine.getFraudulentCreditCards().size());
+    assertEquals("weekly", engine.getFraudulentCreditCards().get("c").getName());
+  }
+
+  @Test
+  public void testGivenCountRuleThenCountTransactionsWithinWindow() {
+    RuleEngine engine = engine(rule("burst", WindowRule.Measure.COUNT, HOUR, 2, null));
+    assertNull(engine.accept("a", 0, 1.00));
+    assertNull(engine.accept("a", 1, 1.00));
+    // Exactly an hour later, the first transaction is out of the window.
+    assertNull(engine.accept("a", HOUR, 1.00));
+    assertEquals("burst", engine.accept("a", HOUR, 1.00).getName());
+  }
+
+  @Test
+  public void testGivenSeveralRulesFiringAtOnceThenReportFirstRule() {
+    RuleEngine engine = engine(rule("first", WindowRule.Measure.AMOUNT, DAY, 10, null),
+        rule("second", WindowRule.Measure.COUNT, HOUR, 0, null));
+    assertEquals("first", engine.accept("a", 0, 20.00).getName());
+    assertNull(engine.accept("a", 1, 20.00));
+  }
+
+  @Test
+  public void testGivenTierRuleThenReplaceRuleOfSameWindowForTier() {
+    CreditCardTiers tiers = new CreditCardTiers();
+    tiers.put("premium-card", "premium");
+    RuleEngine engine = new RuleEngine(Arrays.asList(rule("daily", WindowRule.Measure.AMOUNT, DAY, 100, null),
+        rule("premium-daily", WindowRule.Measure.AMOUNT, DAY, 1000, "premium"),
+        rule("burst", WindowRule.Measure.COUNT, HOUR, 2, null)),
+        TransactionBatch.AMOUNT_SCALE, tiers, new CreditCardDictionary());
+    assertEquals("daily", engine.accept("card", 0, 200.00).getName());
+    assertNull(engine.accept("premium-card", 0, 200.00));
+    assertEquals("premium-daily", engine.accept("premium-card", 1, 900.00).getName());
+    // Rules of other windows still apply to the tier.
+    tiers.put("burst-premium-card", "premium");
+    assertNull(engine.accept("burst-premium-card", 0, 1.00));
+    assertNull(engine.accept("burst-premium-card", 1, 1.00));
+    assertEquals("burst", engine.accept("burst-premium-card", 2, 1.00).getName());
+  }
+
+  @Test
+  public void testGivenTransactionOlderThanClockThenCountOutOfOrderIfItsCreditCardWasDropped() {
+    RuleEngine engine = engine(rule("hourly", WindowRule.Measure.AMOUNT, HOUR, 10, null),
+        rule("daily", WindowRule.Measure.AMOUNT, DAY, 50, null));
+    assertNull(engine.accept("a", 0, 8.00));
+    // A day and more ahead: the first credit card is dropped.
+    assertNull(engine.accept("b", 2 * DAY, 1.00));
+    assertEquals(1, engine.getLiveCreditCards());
+    // Within the longest window of the dropped transaction: its credit card is missed, but counted.
+    assertNull(engine.accept("a", HOUR, 5.00));
+    assertEquals(1, engine.getOutOfOrderTransactions());
+    // Older than the clock without having been dropped, or new: nothing is evicted nor counted.
+    assertNull(engine.accept("c", 2 * HOUR, 5.00));
+    assertEquals(3, engine.getLiveCreditCards());
+    assertEquals(1, engine.getOutOfOrderTransactions());
+    // Idleness is measured against the clock: the clock moving on drops the older credit cards.
+    assertNull(engine.accept("d", 3 * DAY, 1.00));
+    assertEquals(1, engine.getLiveCreditCards());
+    assertEquals(1, engine.getRetainedEntries());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testGivenDuplicateRuleNamesThenThrow() {
+    engine(rule("daily", WindowRule.Measure.AMOUNT, DAY, 100, null),
+        rule("daily", WindowRule.Measure.COUNT, DAY, 100, null));
+  }
+
+  @Test
+  public void testGivenSingleDailyAmountRuleThenMatchSlidingWindowEngine() {
+    Random random = new Random(42);
+    for (int round = 0; round < 100; round++) {
+      double limit = 50 + random.nextInt(200);
+      RuleEngine engine = engine(rule("daily", WindowRule.Measure.AMOUNT, DAY, limit, null));
+      SlidingWindowEngine reference = new SlidingWindowEngine(limit);
+      long time = 0;
+      for (int i = 0; i < 2000; i++) {
+        time += random.nextInt(2 * (int) HOUR);
+        String creditCardId = "card-" + random.nextInt(20);
+        double amount = random.nextInt(10000) / 100.0;
+        assertEquals(reference.accept(creditCardId, time, amount), engine.accept(creditCardId, time, amount) != null);
+      }
+      assertEquals(reference.getFraudulentCreditCards(), engine.getFraudulentCreditCards().keySet());
+      assertEquals(reference.getPeakRetainedEntries(), engine.getPeakRetainedEntries());
+    }
+  }
+
+  @Test
+  public void testGivenRandomRulesThenMatchReference() {
+    Random random = new Random(20140429L);
+    for (int round = 0; round < 300; round++) {
+      List<WindowRule> rules = new ArrayList<>();
+      int ruleCount = 1 + random.nextInt(6);
+      for (int r = 0; r < ruleCount; r++) {
+        long window = WINDOWS[random.nextInt(WINDOWS.length)];
+        String tier = TIERS[random.nextInt(TIERS.length)];
+        rules.add(random.nextBoolean()
+            ? rule("amount-" + r, WindowRule.Measure.AMOUNT, window, random.nextInt(100_000) / 100.0, tier)
+            : rule("count-" + r, WindowRule.Measure.COUNT, window, random.nextInt(20), tier));
+      }
+      CreditCardTiers tiers = new CreditCardTiers();
+      int cards = 1 + random.nextInt(30);
+      for (int card = 0; card < cards; card++) {
+        String tier = TIERS[random.nextInt(TIERS.length)];
+        if (tier != null) {
+          tiers.put("card-" + card, tier);
+        }
+      }
+      int count = random.nextInt(2000);
+      List<String> creditCardIds = new ArrayList<>(count);
+      long[] times = new long[count];
+      long[] amounts = new long[count];
+      long time = 0;
+      for (int i = 0; i < count; i++) {
+        time += random.nextInt(4) == 0 ? 0 : random.nextInt(6 * (int) HOUR);
+        creditCardIds.add("card-" + random.nextInt(cards));
+        times[i] = time;
+        amounts[i] = random.nextInt(20_000);
+      }
+
+      long bucketSeconds = BUCKETS[random.nextInt(BUCKETS.length)];
+      RuleEngine engine =
+          new RuleEngine(rules, TransactionBatch.AMOUNT_SCALE, bucketSeconds, tiers, new CreditCardDictionary());
+      Map<String, WindowRule> detected = new HashMap<>();
+      for (int i = 0; i < count; i++) {
+        int ordinal = engine.getDictionary().ordinalOf(creditCardIds.get(i));
+        int rule = engine.acceptMinorUnits(ordinal, times[i], amounts[i]);
+        if (rule != RuleEngine.NONE) {
+          detected.put(creditCardIds.get(i), rules.get(rule));
+        }
+      }
+      Map<String, WindowRule> expected = referenceRuleScan(creditCardIds, times, amounts, rules, tiers, bucketSeconds);
+      assertEquals("round " + round, expected, detected);
+      assertEquals("round " + round, expected, engine.getFraudulentCreditCards());
+    }
+  }
+
+  @Test
+  public void testGivenBucketsThenRetainOneEntryPerBucket() {
+    RuleEngine engine = new RuleEngine(Arrays.asList(rule("daily", WindowRule.Measure.AMOUNT, DAY, 1000, null),
+        rule("burst", WindowRule.Measure.COUNT, HOUR, 600, null)),
+        TransactionBatch.AMOUNT_SCALE, 5 * 60, null, new CreditCardDictionary());
+    for (int i = 0; i < 300; i++) {
+      assertNull(engine.accept("card", i, 1.00));
+    }
+    assertEquals(1, engine.getRetainedEntries());
+    for (int i = 300; i < 600; i++) {
+      assertNull(engine.accept("card", i, 1.00));
+    }
+    assertEquals(2, engine.getRetainedEntries());
+    assertEquals("burst", engine.accept("card", 600, 1.00).getName());
+  }
+
+  @Test
+  public void testGivenBucketsThenIncludeOldestBucketUntilItsLastSecondLeavesWindow() {
+    RuleEngine exact = engine(rule("hourly", WindowRule.Measure.AMOUNT, HOUR, 50, null));
+    RuleEngine bucketed = new RuleEngine(Arrays.asList(rule("hourly", WindowRule.Measure.AMOUNT, HOUR, 50, null)),
+        TransactionBatch.AMOUNT_SCALE, 60, null, new CreditCardDictionary());
+    // The bucket of second 0 runs to second 59, which is still within the hour at second 3630.
+    for (RuleEngine engine : Arrays.asList(exact, bucketed)) {
+      assertNull(engine.accept("a", 0, 30.00));
+      assertNull(engine.accept("b", 0, 30.00));
+    }
+    assertNull(exact.accept("a", HOUR + 30, 30.00));
+    assertEquals("hourly", bucketed.accept("a", HOUR + 30, 30.00).getName());
+    // Once its last second has left the window, the bucket is evicted.
+    assertNull(exact.accept("b", HOUR + 60, 30.00));
+    assertNull(bucketed.accept("b", HOUR + 60, 30.00));
+  }
+
+  /**
+   * Re-sum the full history of the credit card for each rule at each transaction.
+   */
+  private static Map<String, WindowRule> referenceRuleScan(List<String> creditCardIds, long[] times, long[] amounts,
+      List<WindowRule> rules, CreditCardTiers tiers, long bucketSeconds) {
+    Map<String, WindowRule> fraudulentCreditCards = new HashMap<>();
+    Map<String, List<Integer>> history = new HashMap<>();
+    for (int i = 0; i < times.length; i++) {
+      String creditCardId = creditCardIds.get(i);
+      if (fraudulentCreditCards.containsKey(creditCardId)) {
+        continue;
+      }
+      List<Integer> indexes = history.computeIfAbsent(creditCardId, k -> new ArrayList<>());
+      indexes.add(i);
+      String tier = tiers.tierOf(creditCardId);
+      for (WindowRule rule : rules) {
+        if (!appliesTo(rule, tier, rules)) {
+          continue;
+        }
+        long total = 0;
+        for (int j : indexes) {
+          // With buckets, a transaction counts while the last second of its bucket is within the window.
+          long bucketEnd = Math.floorDiv(times[j], bucketSeconds) * bucketSeconds + bucketSeconds - 1;
+          if (bucketEnd > times[i] - rule.getWindowSeconds()) {
+            total += rule.getMeasure() == WindowRule.Measure.COUNT ? 1 : amounts[j];
+          }
+        }
+        double threshold = rule.getMeasure() == WindowRule.Measure.COUNT ? rule.getThreshold() : rule.getThreshold() * 100;
+        if (total > Math.round(Math.floor(threshold + 1e-6))) {
+          fraudulentCreditCards.put(creditCardId, rule);
+          break;
+        }
+      }
+    }
+    return fraudulentCreditCards;
+  }
+
+  private static boolean appliesTo(WindowRule rule, String tier, List<WindowRule> rules) {
+    if (rule.getTier() != null) {
+      return rule.getTier().equals(tier);
+    }
+    for (WindowRule other : rules) {
+      if (tier != null && tier.equals(other.getTier()) && other.getMeasure() == rule.getMeasure()
+          && other.getWindowSeconds() == rule.getWindowSeconds()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static WindowRule rule(String name, WindowRule.Measure measure, long windowSeconds, double threshold,
+      String tier) {
+    return new WindowRule(name, measure, windowSeconds, threshold, tier);
+  }
+
+  private static RuleEngine engine(WindowRule... rules) {
+    List<WindowRule> list = new ArrayList<>();
+    Collections.addAll(list, rules);
+    return new RuleEngine(list, TransactionBatch.AMOUNT_SCALE, null, new CreditCardDictionary());
+  }
+}
@@ -0,0 +1,50 @@
+package com.tdinh.interview.atp.frauddetector.rule;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+/**
+ * Unit test class for {@link WindowRule}.
+ *
+ * @author Tuan Dinh
+ *
+ */
+public class WindowRuleTest {
+
+  @Test
+  public void testGivenRuleSpecsThenParse() {
+    WindowRule daily = WindowRule.parse("daily:amount:24h:500.50");
+    assertEquals("daily", daily.getName());
+    assertEquals(WindowRule.Measure.AMOUNT, daily.getMeasure());
+    assertEquals(24 * 60 * 60, daily.getWindowSeconds());
+    assertEquals(500.50, daily.getThreshold(), 0);
+    assertNull(daily.getTier());
+
+    WindowRule burst = WindowRule.parse("burst:count:30m:10:premium");
+    assertEquals(WindowRule.Measure.COUNT, burst.getMeasure());
+    assertEquals(30 * 60, burst.getWindowSeconds());
+    assertEquals(10, burst.getThreshold(), 0);
+    assertEquals("premium", burst.getTier());
+
+    assertEquals(90, WindowRule.parse("a:count:90s:0").getWindowSeconds());
+    assertEquals(7 * 24 * 60 * 60, WindowRule.parse("a:amount:7d:1").getWindowSeconds());
+  }
+
+  @Test
+  public void testGivenInvalidRuleSpecsThenThrow() {
+    String[] specs = {"daily", "daily:amount:24h", ":amount:24h:500", "daily:sum:24h:500", "daily:amount:0h:500",
+        "daily:amount:24:500", "daily:amount:h:500", "daily:amount:24h:five", "daily:amount:24h:NaN",
+        "burst:count:1h:2.5", "burst:count:1h:-1", "daily:amount:24h:500:", "daily:amount:24h:500:a:b"};
+    for (String spec : specs) {
+      try {
+        WindowRule.parse(spec);
+        fail(spec);
+      } catch (IllegalArgumentException ex) {
+        assertEquals("Invalid rule [" + spec + "], expecting NAME:amount|count:WINDOW:THRESHOLD[:TIER]",
+            ex.getMessage());
+      }
+    }
+  }
+}
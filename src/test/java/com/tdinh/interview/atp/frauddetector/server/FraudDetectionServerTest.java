@@ -0,0 +1,182 @@
+package com.tdinh.interview.atp.frauddetector.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import com.tdinh.interview.atp.frauddetector.window.SlidingWindowEngine;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Unit test class for {@link FraudDetectionServer}
+ * @author Tuan Dinh
+ *
+ */
+public class FraudDetectionServerTest {
+
+  private FraudDetectionServer server;
+  private Thread serverThread;
+
+  private void start(double limit, boolean batchVerdicts) throws IOException {
+    start(new SlidingWindowEngine(limit), batchVerdicts);
+  }
+
+  private void start(SlidingWindowEngine engine, boolean batchVerdicts) throws IOException {
+    server = new FraudDetectionServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), engine,
+        batchVerdicts);
+    serverThread = new Thread(() -> {
+      try {
+        server.run();
+      } catch (IOException ex) {
+        throw new IllegalStateException(ex);
+      }
+    });
+    serverThread.start();
+  }
+
+  @After
+  public void stop() throws InterruptedException {
+    if (server != null) {
+      server.close();
+      serverThread.join(10_000);
+    }
+  }
+
+  private Socket connect() throws IOException {
+    Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getLocalAddress().getPort());
+    socket.setTcpNoDelay(true);
+    socket.setSoTimeout(10_000);
+    return socket;
+  }
+
+  private static void send(Socket socket, String text) throws IOException {
+    OutputStream output = socket.getOutputStream();
+    output.write(text.getBytes(StandardCharsets.UTF_8));
+    output.flush();
+  }
+
+  private static BufferedReader reader(Socket socket) throws IOException {
+    return new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testGivenTransactionsThenAnswerEachRecord() throws IOException {
+    start(100.00, false);
+    try (Socket socket = connect()) {
+      BufferedReader reader = reader(socket);
+      send(socket, "card1, 2014-04-29T13:15:54, 60.00\n");
+      assertEquals("OK", reader.readLine());
+      send(socket, "card2, 2014-04-29T13:16:54, 70.00\ncard1, 2014-04-29T14:15:54, 50.00\n\n");
+      assertEquals("OK", reader.readLine());
+      assertEquals("FRAUD", reader.readLine());
+      send(socket, "card1, 2014-04-30T14:15:54, 1.00\r\ncard3, 2014/04/29 13:15:54, 1.00\n");
+      assertEquals("FRAUD", reader.readLine());
+      assertEquals("INVALID Invalid date time format [2014/04/29 13:15:54]", reader.readLine());
+    }
+  }
+
+  @Test
+  public void testGivenBatchesThenAnswerEachBatch() throws IOException {
+    start(100.00, true);
+    try (Socket socket = connect()) {
+      BufferedReader reader = reader(socket);
+      send(socket, "card1, 2014-04-29T13:15:54, 60.00\ncard2, 2014-04-29T13:16:54, 70.00\n\n");
+      assertEquals("BATCH 2 0", reader.readLine());
+      send(socket, "card1, 2014-04-29T14:15:54, 50.00\ncard1, 2014-04-29T14:16:54, 1.00\n"
+          + "card2, 2014-04-29T14:17:54, 40.00\ninvalid\n\n");
+      assertEquals("BATCH 4 1 card1 card2", reader.readLine());
+      // An unterminated batch is answered when the producer stops sending.
+      send(socket, "card3, 2014-04-29T15:15:54, 1.00");
+      socket.shutdownOutput();
+      assertEquals("BATCH 1 0", reader.readLine());
+      assertNull(reader.readLine());
+    }
+  }
+
+  @Test
+  public void testGivenHugeAmountThenAnswerInvalidAndKeepServing() throws IOException {
+    start(100.00, false);
+    try (Socket socket = connect()) {
+      BufferedReader reader = reader(socket);
+      send(socket, "c3,2014-04-29T13:15:56,1e300\ncard1, 2014-04-29T13:15:57, 60.00\n");
+      assertEquals("INVALID Invalid amount [1e300]", reader.readLine());
+      assertEquals("OK", reader.readLine());
+    }
+    try (Socket socket = connect()) {
+      BufferedReader reader = reader(socket);
+      send(socket, "card1, 2014-04-29T13:15:58, 50.00\n");
+      assertEquals("FRAUD", reader.readLine());
+    }
+  }
+
+  @Test
+  public void testGivenEngineFailureThenAnswerInvalidAndKeepServing() throws IOException {
+    SlidingWindowEngine engine = new SlidingWindowEngine(100.00) {
+      @Override
+      public boolean accept(int ordinal, long transEpochSecond, double amount) {
+        if (amount == 13.00) {
+          throw new ArithmeticException("Unlucky amount");
+        }
+        return super.accept(ordinal, transEpochSecond, amount);
+      }
+    };
+    start(engine, true);
+    try (Socket socket = connect()) {
+      BufferedReader reader = reader(socket);
+      send(socket, "card1, 2014-04-29T13:15:54, 60.00\ncard1, 2014-04-29T13:15:55, 13.00\n\n");
+      assertEquals("BATCH 2 1", reader.readLine());
+    }
+    try (Socket socket = connect()) {
+      BufferedReader reader = reader(socket);
+      send(socket, "card1, 2014-04-29T13:15:56, 50.00\n\n");
+      assertEquals("BATCH 1 0 card1", reader.readLine());
+    }
+  }
+
+  @Test
+  public void testGivenRecordSplitAcrossWritesThenAnswerOnce() throws IOException {
+    start(100.00, false);
+    try (Socket socket = connect()) {
+      BufferedReader reader = reader(socket);
+      send(socket, "card1, 2014-04-29T13:");
+      send(socket, "15:54, 60.00\ncard1, 2014-04-29T13:15:55, 50");
+      assertEquals("OK", reader.readLine());
+      send(socket, ".00\n");
+      assertEquals("FRAUD", reader.readLine());
+    }
+  }
+
+  @Test
+  public void testGivenManyConnectionsThenShareWindowState() throws Exception {
+    start(1000.00, false);
+    int producers = 200;
+    List<Socket> sockets = new ArrayList<>();
+    try {
+      for (int i = 0; i < producers; i++) {
+        sockets.add(connect());
+      }
+      // Every producer spends on the same credit card: the 10th transaction crosses the limit.
+      for (int i = 0; i < producers; i++) {
+        send(sockets.get(i), "shared, 2014-04-29T13:15:54, 100.00\n");
+        assertEquals(i < 10 ? "OK" : "FRAUD", reader(sockets.get(i)).readLine());
+      }
+    } finally {
+      for (Socket socket : sockets) {
+        socket.close();
+      }
+    }
+    stop();
+    assertEquals(producers, server.getConnections());
+    assertEquals(producers, server.getRecords());
+    server = null;
+  }
+}
@@ -0,0 +1,129 @@
+package com.tdinh.interview.atp.frauddetector.transaction;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import com.tdinh.interview.atp.frauddetector.transaction.error.FileLoaderException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit test class for {@link BinaryTransactionFileLoader} and {@link BinaryTransactionWriter}.
+ *
+ * @author Tuan Dinh
+ *
+ */
+public class BinaryTransactionFileLoaderTest {
+
+  private static final String[] TEST_FILES = {
+      "src/test/resources/transactions_3.csv",
+      "src/test/resources/transactions_5_2_invalid.csv",
+      "src/test/resources/transactions_15.csv",
+      "src/test/resources/transactions_15_5_invalid.csv",
+      "src/test/resources/transactions_empty.csv",
+      "test-data/transactions.csv"};
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Rule
+  public ExpectedException exceptionRule = ExpectedException.none();
+
+  @Test
+  public void testGivenConvertedTestFilesThenLoadSameAsTransactionFileLoader() throws FileLoaderException {
+    TransactionFileLoader expectedLoader = new TransactionFileLoader();
+    String binaryFile = new File(folder.getRoot(), "transactions.bin").getPath();
+    for (String file : TEST_FILES) {
+      List<Transaction> expected = expectedLoader.load(file);
+      assertEquals(file, expected.size(), BinaryTransactionWriter.convert(file, binaryFile, new TransactionFileLoader()));
+      assertTrue(file, BinaryTransactionFileLoader.isBinary(binaryFile));
+      List<Transaction> transactions = new BinaryTransactionFileLoader().load(binaryFile);
+      assertEquals(file, expected.size(), transactions.size());
+      for (int i = 0; i < expected.size(); i++) {
+        ByteTransactionParserTest.assertTransactionEquals(file, expected.get(i), transactions.get(i));
+      }
+    }
+    assertFalse(BinaryTransactionFileLoader.isBinary(TEST_FILES[0]));
+    assertFalse(new File(binaryFile + ".tmp").exists());
+  }
+
+  @Test
+  public void testGivenRandomBlocksThenLoadSameBatches() throws IOException, FileLoaderException {
+    Random random = new Random(20140429L);
+    Path binaryFile = folder.getRoot().toPath().resolve("random.bin");
+    List<long[]> expected = new ArrayList<>();
+    List<String> expectedIds = new ArrayList<>();
+    try (BinaryTransactionWriter writer = new BinaryTransactionWriter(binaryFile)) {
+      CreditCardDictionary dictionary = writer.getDictionary();
+      long transEpochSecond = 1398729600L;
+      for (int round = 0; round < 8; round++) {
+        // Full and partial blocks, out of order times, negative amounts and non-ASCII ids.
+        TransactionBatch batch = new TransactionBatch(dictionary);
+        int rows = random.nextBoolean() ? TransactionBatch.DEFAULT_CAPACITY : random.nextInt(100);
+        for (int row = 0; row < rows; row++) {
+          String id = (random.nextInt(10) == 0 ? "caf\u00e9-" : "card-") + random.nextInt(20000);
+          transEpochSecond += random.nextInt(7200) - 600;
+          long amount = random.nextInt(10) == 0 ? -random.nextInt(1000) : random.nextInt(Integer.MAX_VALUE) * 100L;
+          batch.add(dictionary.ordinalOf(id), transEpochSecond, amount);
+          expectedIds.add(id);
+          expected.add(new long[] {transEpochSecond, amount});
+        }
+        writer.write(batch);
+      }
+      writer.commit();
+      assertEquals(expected.size(), writer.getTransactions());
+    }
+    // Small segments force blocks across segment boundaries and blocks longer than a segment.
+    for (int segmentSize : new int[] {64, 64 * 1024, MappedTransactionFileLoader.DEFAULT_SEGMENT_SIZE}) {
+      CreditCardDictionary dictionary = new CreditCardDictionary();
+      List<String> ids = new ArrayList<>();
+      List<long[]> loaded = new ArrayList<>();
+      new BinaryTransactionFileLoader(segmentSize).loadBatches(binaryFile.toString(), dictionary, batch -> {
+        for (int row = 0; row < batch.size(); row++) {
+          ids.add(dictionary.creditCardId(batch.getCreditCardOrdinal(row)));
+          loaded.add(new long[] {batch.getTransEpochSecond(row), batch.getAmount(row)});
+        }
+      });
+      assertEquals("segment " + segmentSize, expectedIds, ids);
+      assertEquals("segment " + segmentSize, expected.size(), loaded.size());
+      for (int i = 0; i < expected.size(); i++) {
+        assertTrue("segment " + segmentSize + " row " + i, Arrays.equals(expected.get(i), loaded.get(i)));
+      }
+    }
+  }
+
+  @Test
+  public void testGivenTruncatedFileThenReturnError() throws IOException, FileLoaderException {
+    String binaryFile = new File(folder.getRoot(), "transactions.bin").getPath();
+    BinaryTransactionWriter.convert("src/test/resources/transactions_15.csv", binaryFile, new TransactionFileLoader());
+    byte[] bytes = Files.readAllBytes(new File(binaryFile).toPath());
+    Files.write(new File(binaryFile).toPath(), Arrays.copyOf(bytes, bytes.length - 3));
+    exceptionRule.expect(FileLoaderException.class);
+    exceptionRule.expectMessage("Corrupted binary transaction file: " + binaryFile);
+    new BinaryTransactionFileLoader().load(binaryFile);
+  }
+
+  @Test
+  public void testGivenTextFileThenReturnError() throws FileLoaderException {
+    exceptionRule.expect(FileLoaderException.class);
+    exceptionRule.expectMessage("Not a binary transaction file: src/test/resources/transactions_15.csv");
+    new BinaryTransactionFileLoader().load("src/test/resources/transactions_15.csv");
+  }
+
+  @Test
+  public void testGivenNonExistFileThenReturnError() throws FileLoaderException {
+    exceptionRule.expect(FileLoaderException.class);
+    exceptionRule.expectMessage("non/exist/file (No such file or directory)");
+    new BinaryTransactionFileLoader().load("non/exist/file");
+  }
+}
@@ -0,0 +1,160 @@
+package com.tdinh.interview.atp.frauddetector.transaction;
+
+import static org.junit.Assert.assertEquals;
+import com.tdinh.interview.atp.frauddetector.transaction.error.InvalidTransactionRecordException;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test class for {@link ByteTransactionParser}.
+ * 
+ * Every record is checked against {@link TransactionResolver}: valid records must resolve to the same
+ * transaction, invalid ones must produce the same warning as {@link TransactionFileLoader}.
+ * 
+ * @author Tuan Dinh
+ *
+ */
+public class ByteTransactionParserTest {
+
+  private static final String[] RECORDS = {
+      "10d7ce2f43e35fa57d1bbf8b1e2, 2014-04-29T13:15:54, 10.00",
+      "10d7ce2f43e35fa57d1bbf8b1e2,2014-04-29T13:15:54,10.67",
+      "  10d7ce2f43e35fa57d1bbf8b1e2 ,\t2014-02-28T23:59:59 , 0.1 ",
+      "10d7ce2f43e35fa57d1bbf8b1e2, 2016-02-29T00:00:00, 123456789.123456",
+      "10d7ce2f43e35fa57d1bbf8b1e2, 2014-04-29T13:15:54, -3.5",
+      "10d7ce2f43e35fa57d1bbf8b1e2, 2014-04-29T13:15:54, 007",
+      "10d7ce2f43e35fa57d1bbf8b1e2, 2014-04-29T13:15:54, 1e3",
+      "10d7ce2f43e35fa57d1bbf8b1e2, 2014-04-29T13:15:54, +3",
+      "10d7ce2f43e35fa57d1bbf8b1e2, 2014-04-29T13:15:54, 10.",
+      "10d7ce2f43e35fa57d1bbf8b1e2, 2014-04-29T13:15:54, .5",
+      "10d7ce2f43e35fa57d1bbf8b1e2, 2014-04-29T13:15:54, 0.1234567890123456789",
+      "10d7ce2f43e35fa57d1bbf8b1e2, 2014-04-29T13:15:54, Ten dollars",
+      "c3,2014-04-29T13:15:56,1e300",
+      "c3,2014-04-29T13:15:56,50000000000000000",
+      "c3,2014-04-29T13:15:56,999999999999.99",
+      "c3,2014-04-29T13:15:56,1000000000000.00",
+      "c3,2014-04-29T13:15:56,0001000000000000",
+      "10d7ce2f43e35fa57d1bbf8b1e2, 2014-04-31T13:15:54, 10.00",
+      "10d7ce2f43e35fa57d1bbf8b1e2, 2015-02-29T13:15:54, 10.00",
+      "10d7ce2f43e35fa57d1bbf8b1e2, 2014-04-29T24:00:00, 10.00",
+      "10d7ce2f43e35fa57d1bbf8b1e2, 2014/04/29 13:15:54, 10.00",
+      "10d7ce2f43e35fa57d1bbf8b1e2, 20 days ago, 17.51",
+      "10d7ce2f43e35fa57d1bbf8b1e2, 2014-04-29T13:15:54, 10.00,",
+      "10d7ce2f43e35fa57d1bbf8b1e2, 2014-04-29T13:15:54, 10.00, Extra Note: Late payment!",
+      ".,,,2014-04-30T16:25:54, 10.00",
+      "2014-05-02T10:20:54, Eight dollars",
+      ", 2014-04-29T13:15:54, 10.00",
+      "",
+      "   ",
+      "caf\u00e9, 2014-04-29T13:15:54, 10.00"};
+
+  private ByteTransactionParser parser = new ByteTransactionParser(StandardCharsets.UTF_8);
+  private TransactionResolver resolver = new TransactionResolver();
+
+  private final ByteArrayOutputStream errContent = new ByteArrayOutputStream();
+  private final PrintStream originalErr = System.err;
+
+  @Before
+  public void setUpStreams() {
+    System.setErr(new PrintStream(errContent));
+  }
+
+  @After
+  public void restoreStreams() {
+    System.setErr(originalErr);
+  }
+
+  @Test
+  public void testGivenRecordsThenMatchResolver() throws Exception {
+    for (String record : RECORDS) {
+      errContent.reset();
+      List<Transaction> transactions = parse(record + "\n");
+      try {
+        Transaction expected = resolver.resolve(record);
+        assertEquals(record, 1, transactions.size());
+        assertTransactionEquals(record, expected, transactions.get(0));
+        assertEquals(record, "", errContent.toString());
+      } catch (InvalidTransactionRecordException ex) {
+        assertEquals(record, 0, transactions.size());
+        assertEquals(record,
+            "WARN - invalid record: [" + record + "]. Reason: " + ex.getMessage() + ". Ignore\n",
+            errContent.toString());
+      }
+    }
+  }
+
+  @Test
+  public void testGivenMixedLineTerminatorsThenSplitLikeReadLine() throws Exception {
+    List<Transaction> transactions = parse(
+        "a, 2014-04-29T13:15:54, 1.00\r\nb, 2014-04-29T13:15:55, 2.00\rc, 2014-04-29T13:15:56, 3.00\nd, 2014-04-29T13:15:57, 4.00");
+    assertEquals(4, transactions.size());
+    assertEquals("d", transactions.get(3).getCreditCardId());
+    assertEquals(4.00, transactions.get(3).getAmount(), 0);
+    assertEquals("", errContent.toString());
+  }
+
+  @Test
+  public void testGivenRecordsThenBatchRowsMatchResolver() throws Exception {
+    CreditCardDictionary dictionary = new CreditCardDictionary();
+    TransactionBatch batch = new TransactionBatch(dictionary, 4);
+    List<Transaction> rows = new ArrayList<>();
+    StringBuilder text = new StringBuilder();
+    List<Transaction> expected = new ArrayList<>();
+    for (String record : RECORDS) {
+      text.append(record).append('\n');
+      try {
+        expected.add(resolver.resolve(record));
+      } catch (InvalidTransactionRecordException ex) {
+        // Ignored by the parser as well.
+      }
+    }
+    ByteBuffer buffer = ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.UTF_8));
+    parser.parse(buffer, 0, buffer.limit(), batch, full -> {
+      for (int row = 0; row < full.size(); row++) {
+        rows.add(full.toTransaction(row));
+      }
+    });
+    for (int row = 0; row < batch.size(); row++) {
+      rows.add(batch.toTransaction(row));
+    }
+    assertEquals(expected.size(), rows.size());
+    for (int i = 0; i < expected.size(); i++) {
+      Transaction trans = expected.get(i);
+      assertEquals(trans.getCreditCardId(), rows.get(i).getCreditCardId());
+      assertEquals(trans.getTransDateTime(), rows.get(i).getTransDateTime());
+      assertEquals(TransactionBatch.toMinorUnits(trans.getAmount()),
+          TransactionBatch.toMinorUnits(rows.get(i).getAmount()));
+    }
+  }
+
+  @Test
+  public void testGivenDatesThenEpochDayMatchesLocalDate() throws Exception {
+    LocalDate date = LocalDate.of(1, 1, 1);
+    while (date.getYear() < 2500) {
+      assertEquals(date.toString(), date.toEpochDay(),
+          ByteTransactionParser.epochDay(date.getYear(), date.getMonthValue(), date.getDayOfMonth()));
+      date = date.plusDays(13);
+    }
+  }
+
+  private List<Transaction> parse(String text) {
+    List<Transaction> transactions = new ArrayList<>();
+    ByteBuffer buffer = ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+    parser.parse(buffer, 0, buffer.limit(), transactions::add);
+    return transactions;
+  }
+
+  static void assertTransactionEquals(String message, Transaction expected, Transaction actual) {
+    assertEquals(message, expected.getCreditCardId(), actual.getCreditCardId());
+    assertEquals(message, expected.getTransDateTime(), actual.getTransDateTime());
+    assertEquals(message, Double.doubleToLongBits(expected.getAmount()), Double.doubleToLongBits(actual.getAmount()));
+  }
+}
@@ -0,0 +1,59 @@
+package com.tdinh.interview.atp.frauddetector.transaction;
+
+import static org.junit.Assert.assertEquals;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Unit test class for {@link CreditCardDictionary}
+ * @author Tuan Dinh
+ *
+ */
+public class CreditCardDictionaryTest {
+
+  private CreditCardDictionary dictionary = new CreditCardDictionary();
+
+  @Test
+  public void testGivenNewCreditCardsThenAssignDenseOrdinals() throws Exception {
+    assertEquals(0, dictionary.ordinalOf("10d7ce2f43e35fa57d1bbf8b1e2"));
+    assertEquals(1, dictionary.ordinalOf("f2f1ee2840d23ed1430cbec83c6"));
+    assertEquals(0, dictionary.ordinalOf("10d7ce2f43e35fa57d1bbf8b1e2"));
+    assertEquals(2, dictionary.size());
+    assertEquals("f2f1ee2840d23ed1430cbec83c6", dictionary.creditCardId(1));
+  }
+
+  @Test
+  public void testGivenBytesThenSameOrdinalAsString() throws Exception {
+    String record = "x, 10d7ce2f43e35fa57d1bbf8b1e2, caf\u00e9";
+    ByteBuffer buffer = ByteBuffer.wrap(record.getBytes(StandardCharsets.UTF_8));
+    int ordinal = dictionary.ordinalOf(buffer, 3, 30);
+    assertEquals(ordinal, dictionary.ordinalOf("10d7ce2f43e35fa57d1bbf8b1e2"));
+    int nonAscii = dictionary.ordinalOf("caf\u00e9");
+    assertEquals(nonAscii, dictionary.ordinalOf(buffer, 32, buffer.limit()));
+    assertEquals("caf\u00e9", dictionary.creditCardId(nonAscii));
+    assertEquals("", dictionary.creditCardId(dictionary.ordinalOf("")));
+  }
+
+  @Test
+  public void testGivenManyCreditCardsThenMatchHashMap() throws Exception {
+    Random random = new Random(7);
+    Map<String, Integer> expected = new HashMap<>();
+    for (int i = 0; i < 200000; i++) {
+      String creditCardId = Long.toHexString(random.nextLong() & 0xfffffffffL);
+      Integer ordinal = expected.get(creditCardId);
+      if (ordinal == null) {
+        ordinal = expected.size();
+        expected.put(creditCardId, ordinal);
+      }
+      assertEquals(creditCardId, ordinal.intValue(), dictionary.ordinalOf(creditCardId));
+    }
+    assertEquals(expected.size(), dictionary.size());
+    for (Map.Entry<String, Integer> entry : expected.entrySet()) {
+      assertEquals(entry.getKey(), dictionary.creditCardId(entry.getValue()));
+    }
+  }
+}
@@ -0,0 +1,231 @@
+package com.tdinh.interview.atp.frauddetector.transaction;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import com.tdinh.interview.atp.frauddetector.transaction.error.FileLoaderException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit test class for {@link FollowingTransactionSource}.
+ *
+ * @author Tuan Dinh
+ *
+ */
+public class FollowingTransactionSourceTest {
+
+  private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern(Transaction.DATE_TIME_FORMATTER);
+  private static final long TIMEOUT_MILLIS = 10_000;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private final List<String> invalidRecords = Collections.synchronizedList(new ArrayList<>());
+  private final TransactionFileLoader loader = new TransactionFileLoader();
+
+  {
+    loader.setInvalidRecordListener((record, reason) -> invalidRecords.add(record));
+  }
+
+  @Test
+  public void testGivenLinesAppendedInPiecesThenParseEachLineOnce() throws Exception {
+    Path path = folder.newFile().toPath();
+    List<String> lines = lines(0, 200);
+    Follower follower = new Follower(new FollowingTransactionSource(path.toString(), loader, 1));
+    StringBuilder appended = new StringBuilder();
+    for (String line : lines) {
+      appended.append(line).append('\n');
+    }
+    // Appends cut anywhere, in the middle of a line or of a "\r\n" terminator.
+    String content = appended.toString().replace("\n", "\r\n");
+    for (int from = 0; from < content.length();) {
+      int to = Math.min(content.length(), from + 1 + (from * 7919) % 97);
+      append(path, content.substring(from, to));
+      from = to;
+    }
+    follower.awaitTransactions(lines.size());
+    append(path, "card-0, 2014-04-29T13:15:54, 10.00");
+    follower.stop();
+
+    assertTransactions(lines, follower.transactions);
+    assertEquals(content.length(), follower.source.getPosition());
+    assertTrue(invalidRecords.isEmpty());
+  }
+
+  @Test
+  public void testGivenRotatedFileThenReadRestOfOldFileAndFollowNewFile() throws Exception {
+    Path path = folder.getRoot().toPath().resolve("transactions.log");
+    List<String> oldLines = lines(0, 50);
+    List<String> newLines = lines(50, 50);
+    append(path, String.join("\n", oldLines.subList(0, 30)) + "\n");
+    Follower follower = new Follower(new FollowingTransactionSource(path.toString(), loader, 1));
+    follower.awaitTransactions(30);
+
+    // Moved away and written to once more, the last line without a terminator, before a new file is created.
+    Path rotated = folder.getRoot().toPath().resolve("transactions.log.1");
+    Files.move(path, rotated);
+    append(rotated, String.join("\n", oldLines.subList(30, 50)));
+    Thread.sleep(20);
+    append(path, String.join("\n", newLines) + "\n");
+    follower.awaitTransactions(100);
+    follower.stop();
+
+    List<String> expected = new ArrayList<>(oldLines);
+    expected.addAll(newLines);
+    assertTransactions(expected, follower.transactions);
+    assertEquals(Files.size(path), follower.source.getPosition());
+  }
+
+  @Test
+  public void testGivenSavedPositionThenResumeWithoutRereading() throws Exception {
+    Path path = folder.newFile().toPath();
+    List<String> lines = lines(0, 40);
+    append(path, String.join("\n", lines.subList(0, 20)) + "\n" + lines.get(20).substring(0, 10));
+    Follower first = new Follower(new FollowingTransactionSource(path.toString(), loader, 1));
+    first.awaitTransactions(20);
+    first.stop();
+    String resumePosition = first.source.getResumePosition();
+    assertTransactions(lines.subList(0, 20), first.transactions);
+
+    append(path, lines.get(20).substring(10) + "\n" + String.join("\n", lines.subList(21, 40)) + "\n");
+    FollowingTransactionSource source = new FollowingTransactionSource(path.toString(), loader, 1);
+    source.resume(resumePosition);
+    Follower second = new Follower(source);
+    second.awaitTransactions(20);
+    second.stop();
+    assertTransactions(lines.subList(20, 40), second.transactions);
+
+    // Truncated in place since: followed from its start.
+    Files.write(path, (lines.get(0) + "\n").getBytes(StandardCharsets.UTF_8));
+    source = new FollowingTransactionSource(path.toString(), loader, 1);
+    source.resume(resumePosition);
+    Follower third = new Follower(source);
+    third.awaitTransactions(1);
+    third.stop();
+    assertTransactions(lines.subList(0, 1), third.transactions);
+  }
+
+  @Test
+  public void testGivenCheckpointThenSavePositionOfTransactionsPushed() throws Exception {
+    Path path = folder.newFile().toPath();
+    List<String> lines = lines(0, 300);
+    FollowingTransactionSource source = new FollowingTransactionSource(path.toString(), loader, 1);
+    // Transactions pushed when each checkpoint is saved, and the position it is given.
+    List<Integer> pushed = Collections.synchronizedList(new ArrayList<>());
+    List<String> resumePositions = Collections.synchronizedList(new ArrayList<>());
+    List<Transaction> transactions = Collections.synchronizedList(new ArrayList<>());
+    source.setCheckpoint(resumePosition -> {
+      pushed.add(transactions.size());
+      resumePositions.add(resumePosition);
+    }, 5);
+    Follower follower = new Follower(source, transactions);
+    String content = String.join("\n", lines) + "\n";
+    for (int from = 0; from < content.length(); from += 1000) {
+      append(path, content.substring(from, Math.min(content.length(), from + 1000)));
+      Thread.sleep(10);
+    }
+    follower.awaitTransactions(lines.size());
+    Thread.sleep(20);
+    follower.stop();
+    assertTransactions(lines, transactions);
+    assertTrue(resumePositions.size() > 1);
+
+    // Resumed from any checkpoint, the rest of the file follows the transactions pushed before it.
+    for (int i = 0; i < resumePositions.size(); i++) {
+      FollowingTransactionSource resumed = new FollowingTransactionSource(path.toString(), loader, 1);
+      resumed.resume(resumePositions.get(i));
+      Follower rest = new Follower(resumed);
+      rest.awaitTransactions(lines.size() - pushed.get(i));
+      rest.stop();
+      assertTransactions(lines.subList(pushed.get(i), lines.size()), rest.transactions);
+    }
+    assertEquals(source.getResumePosition(), resumePositions.get(resumePositions.size() - 1));
+  }
+
+  @Test
+  public void testGivenInvalidPositionThenReturnError() throws Exception {
+    try {
+      new FollowingTransactionSource(folder.newFile().getPath(), loader).resume("not a position");
+    } catch (FileLoaderException ex) {
+      assertEquals("Invalid follow position [not a position]", ex.getMessage());
+      return;
+    }
+    throw new AssertionError("Expecting an invalid position");
+  }
+
+  private static List<String> lines(int from, int count) {
+    List<String> lines = new ArrayList<>(count);
+    LocalDateTime dateTime = LocalDateTime.of(2014, 4, 29, 13, 0, 0);
+    for (int i = from; i < from + count; i++) {
+      lines.add("card-" + (i % 7) + ", " + dateTime.plusSeconds(i).format(FORMATTER) + ", " + (i % 50) + ".25");
+    }
+    return lines;
+  }
+
+  private static void append(Path path, String content) throws IOException {
+    Files.write(path, content.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+  }
+
+  private static void assertTransactions(List<String> lines, List<Transaction> transactions) throws Exception {
+    assertEquals(lines.size(), transactions.size());
+    for (int i = 0; i < lines.size(); i++) {
+      ByteTransactionParserTest.assertTransactionEquals("line " + i, new TransactionResolver().resolve(lines.get(i)),
+          transactions.get(i));
+    }
+  }
+
+  /**
+   * Follows a file on a thread of its own, collecting its transactions.
+   */
+  private static final class Follower {
+
+    final FollowingTransactionSource source;
+    final List<Transaction> transactions;
+    final AtomicReference<Exception> failure = new AtomicReference<>();
+    final Thread thread;
+
+    Follower(FollowingTransactionSource source) {
+      this(source, Collections.synchronizedList(new ArrayList<>()));
+    }
+
+    Follower(FollowingTransactionSource source, List<Transaction> transactions) {
+      this.source = source;
+      this.transactions = transactions;
+      this.thread = new Thread(() -> {
+        try {
+          source.forEach(transactions::add);
+        } catch (FileLoaderException | RuntimeException ex) {
+          failure.set(ex);
+        }
+      });
+      thread.start();
+    }
+
+    void awaitTransactions(int count) throws InterruptedException {
+      long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+      while (transactions.size() < count && System.currentTimeMillis() < deadline && failure.get() == null) {
+        Thread.sleep(1);
+      }
+    }
+
+    void stop() throws Exception {
+      source.stop();
+      thread.join(TIMEOUT_MILLIS);
+      if (failure.get() != null) {
+        throw failure.get();
+      }
+    }
+  }
+}
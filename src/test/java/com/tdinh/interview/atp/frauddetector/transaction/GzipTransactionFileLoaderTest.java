@@ -0,0 +1,122 @@
+package com.tdinh.interview.atp.frauddetector.transaction;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import com.tdinh.interview.atp.frauddetector.transaction.error.FileLoaderException;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit test class for {@link GzipTransactionFileLoader}
+ *
+ * @author Tuan Dinh
+ *
+ */
+public class GzipTransactionFileLoaderTest {
+
+  private static final String[] TEST_FILES = {
+      "src/test/resources/transactions_3.csv",
+      "src/test/resources/transactions_5_2_invalid.csv",
+      "src/test/resources/transactions_15.csv",
+      "src/test/resources/transactions_15_5_invalid.csv",
+      "src/test/resources/transactions_empty.csv",
+      "test-data/transactions.csv"};
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Rule
+  public ExpectedException exceptionRule = ExpectedException.none();
+
+  @Test
+  public void testGivenCompressedTestFilesThenLoadSameAsTransactionFileLoader() throws Exception {
+    TransactionFileLoader expectedLoader = new TransactionFileLoader();
+    // Tiny chunks force records across chunk boundaries and lines longer than a chunk.
+    for (int chunkSize : new int[] {8, 64, GzipTransactionFileLoader.DEFAULT_CHUNK_SIZE}) {
+      GzipTransactionFileLoader loader = new GzipTransactionFileLoader(chunkSize, 2);
+      for (String file : TEST_FILES) {
+        String compressedFile = gzip(file);
+        assertTrue(file, GzipTransactionFileLoader.isGzip(compressedFile));
+        List<Transaction> expected = expectedLoader.load(file);
+        List<Transaction> transactions = loader.load(compressedFile);
+        assertEquals(file, expected.size(), transactions.size());
+        for (int i = 0; i < expected.size(); i++) {
+          ByteTransactionParserTest.assertTransactionEquals(file, expected.get(i), transactions.get(i));
+        }
+      }
+    }
+    assertFalse(GzipTransactionFileLoader.isGzip(TEST_FILES[0]));
+  }
+
+  @Test
+  public void testGivenConsumerFailureThenStopDecompressing() throws Exception {
+    String compressedFile = gzip("src/test/resources/transactions_15.csv");
+    GzipTransactionFileLoader loader = new GzipTransactionFileLoader(16, 2);
+    try {
+      loader.load(compressedFile, trans -> {
+        throw new ArithmeticException("long overflow");
+      });
+      fail("Expecting the failure of the consumer");
+    } catch (ArithmeticException ex) {
+      assertEquals("long overflow", ex.getMessage());
+    }
+    for (Thread thread : Thread.getAllStackTraces().keySet()) {
+      assertFalse(thread.getName().equals("gzip-decompressor") && thread.isAlive());
+    }
+  }
+
+  @Test
+  public void testGivenTruncatedFileThenReturnError() throws Exception {
+    String compressedFile = gzip("test-data/transactions.csv");
+    byte[] bytes = Files.readAllBytes(Paths.get(compressedFile));
+    Files.write(Paths.get(compressedFile), Arrays.copyOf(bytes, bytes.length / 2));
+    exceptionRule.expect(FileLoaderException.class);
+    exceptionRule.expectMessage("Unexpected end of ZLIB input stream");
+    new GzipTransactionFileLoader().load(compressedFile);
+  }
+
+  @Test
+  public void testGivenLineLongerThanMaxChunkThenReturnError() throws Exception {
+    File file = folder.newFile("no-terminator.csv");
+    byte[] line = new byte[1000];
+    Arrays.fill(line, (byte) 'a');
+    Files.write(file.toPath(), line);
+    exceptionRule.expect(FileLoaderException.class);
+    exceptionRule.expectMessage("Line longer than 256 bytes");
+    new GzipTransactionFileLoader(16, 2, 256).load(gzip(file.getPath()));
+  }
+
+  @Test
+  public void testGivenFileNotCompressedThenReturnError() throws Exception {
+    exceptionRule.expect(FileLoaderException.class);
+    exceptionRule.expectMessage("Not in GZIP format");
+    new GzipTransactionFileLoader().load("src/test/resources/transactions_3.csv");
+  }
+
+  @Test
+  public void testGivenNonExistFileThenReturnError() throws FileLoaderException {
+    exceptionRule.expect(FileLoaderException.class);
+    exceptionRule.expectMessage("non/exist/file (No such file or directory)");
+    new GzipTransactionFileLoader().load("non/exist/file");
+  }
+
+  private String gzip(String file) throws IOException {
+    File compressedFile = new File(folder.getRoot(), new File(file).getName() + ".gz");
+    try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(compressedFile.toPath()))) {
+      Files.copy(Paths.get(file), out);
+    }
+    return compressedFile.getPath();
+  }
+}
@@ -0,0 +1,51 @@
+package com.tdinh.interview.atp.frauddetector.transaction;
+
+import static org.junit.Assert.assertEquals;
+import com.tdinh.interview.atp.frauddetector.transaction.error.FileLoaderException;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+/**
+ * Unit test class for {@link MappedTransactionFileLoader}
+ * @author Tuan Dinh
+ *
+ */
+public class MappedTransactionFileLoaderTest {
+
+  private static final String[] TEST_FILES = {
+      "src/test/resources/transactions_3.csv",
+      "src/test/resources/transactions_5_2_invalid.csv",
+      "src/test/resources/transactions_15.csv",
+      "src/test/resources/transactions_15_5_invalid.csv",
+      "src/test/resources/transactions_empty.csv",
+      "test-data/transactions.csv"};
+
+  @Rule
+  public ExpectedException exceptionRule = ExpectedException.none();
+
+  @Test
+  public void testGivenTestFilesThenLoadSameAsTransactionFileLoader() throws FileLoaderException {
+    TransactionFileLoader expectedLoader = new TransactionFileLoader();
+    // Tiny segments force records across segment boundaries and lines longer than a segment.
+    for (int segmentSize : new int[] {8, 64, MappedTransactionFileLoader.DEFAULT_SEGMENT_SIZE}) {
+      MappedTransactionFileLoader loader = new MappedTransactionFileLoader(segmentSize);
+      for (String file : TEST_FILES) {
+        List<Transaction> expected = expectedLoader.load(file);
+        List<Transaction> transactions = loader.load(file);
+        assertEquals(file, expected.size(), transactions.size());
+        for (int i = 0; i < expected.size(); i++) {
+          ByteTransactionParserTest.assertTransactionEquals(file, expected.get(i), transactions.get(i));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testGivenNonExistFileThenReturnError() throws FileLoaderException {
+    exceptionRule.expect(FileLoaderException.class);
+    exceptionRule.expectMessage("non/exist/file (No such file or directory)");
+    new MappedTransactionFileLoader().load("non/exist/file");
+  }
+}
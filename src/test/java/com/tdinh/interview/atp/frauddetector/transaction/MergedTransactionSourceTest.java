@@ -0,0 +1,202 @@
+package com.tdinh.interview.atp.frauddetector.transaction;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import com.tdinh.interview.atp.frauddetector.transaction.error.FileLoaderException;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.zip.GZIPOutputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit test class for {@link MergedTransactionSource}.
+ *
+ * @author Tuan Dinh
+ *
+ */
+public class MergedTransactionSourceTest {
+
+  private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern(Transaction.DATE_TIME_FORMATTER);
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Rule
+  public ExpectedException exceptionRule = ExpectedException.none();
+
+  private final TransactionFileLoader textLoader = new TransactionFileLoader();
+  private final TransactionFileLoader gzipLoader = new GzipTransactionFileLoader();
+
+  @Test
+  public void testGivenOverlappingFilesThenMergeInTimeOrder() throws Exception {
+    Random random = new Random(20140429L);
+    for (int round = 0; round < 20; round++) {
+      List<String> filePaths = new ArrayList<>();
+      List<Transaction> expected = new ArrayList<>();
+      int files = 1 + random.nextInt(8);
+      for (int i = 0; i < files; i++) {
+        // Some files overlap in time, some follow each other, some are empty.
+        LocalDateTime start = LocalDateTime.of(2014, 4, 29, 0, 0, 0).plusHours(random.nextInt(files));
+        List<String> lines = randomLines(random, start, random.nextInt(4) == 0 ? 0 : random.nextInt(500));
+        filePaths.add(write(lines, random.nextBoolean()));
+        for (String line : lines) {
+          expected.add(new TransactionResolver().resolve(line));
+        }
+      }
+      // Files are in time order each, so a stable sort of their concatenation is the merge.
+      expected.sort(Comparator.comparingLong(Transaction::getTransEpochSecond));
+
+      int chunkSize = 1 + random.nextInt(64);
+      List<Transaction> transactions = new ArrayList<>();
+      new MergedTransactionSource(filePaths, this::loaderOf, chunkSize, 1 + random.nextInt(3), 1 + random.nextInt(3))
+          .forEach(transactions::add);
+      assertEquals("round " + round, expected.size(), transactions.size());
+      for (int i = 0; i < expected.size(); i++) {
+        ByteTransactionParserTest.assertTransactionEquals("round " + round, expected.get(i), transactions.get(i));
+      }
+    }
+  }
+
+  @Test
+  public void testGivenDirectoryAndGlobThenExpandSortedByName() throws Exception {
+    File directory = folder.newFolder("hourly");
+    for (String name : new String[] {"02.csv", "01.csv", "03.csv.gz", ".hidden.csv"}) {
+      new File(directory, name).createNewFile();
+    }
+    new File(directory, "nested").mkdir();
+    String path = directory.getPath();
+    assertEquals(Arrays.asList(path + "/01.csv", path + "/02.csv", path + "/03.csv.gz"),
+        MergedTransactionSource.expand(Arrays.asList(path)));
+    assertEquals(Arrays.asList(path + "/01.csv", path + "/02.csv", "other.csv"),
+        MergedTransactionSource.expand(Arrays.asList(path + "/*.csv", "other.csv")));
+    try {
+      MergedTransactionSource.expand(Arrays.asList(path + "/*.bin"));
+      fail("Expecting no match");
+    } catch (FileLoaderException ex) {
+      assertEquals("No transaction file matches " + path + "/*.bin", ex.getMessage());
+    }
+    exceptionRule.expect(FileLoaderException.class);
+    exceptionRule.expectMessage("No transaction file in " + folder.newFolder("empty").getPath());
+    MergedTransactionSource.expand(Arrays.asList(folder.getRoot().getPath() + "/empty"));
+  }
+
+  @Test
+  public void testGivenConsumerFailureThenStopReaders() throws Exception {
+    Random random = new Random(42);
+    List<String> filePaths = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      filePaths.add(write(randomLines(random, LocalDateTime.of(2014, 4, 29, 0, 0, 0), 5000), i % 2 == 0));
+    }
+    try {
+      new MergedTransactionSource(filePaths, this::loaderOf, 16, 1, 2).forEach(trans -> {
+        throw new ArithmeticException("long overflow");
+      });
+      fail("Expecting the failure of the consumer");
+    } catch (ArithmeticException ex) {
+      assertEquals("long overflow", ex.getMessage());
+    }
+    for (Thread thread : Thread.getAllStackTraces().keySet()) {
+      assertFalse(thread.getName(), thread.getName().startsWith("transaction-reader-") && thread.isAlive());
+    }
+  }
+
+  @Test
+  public void testGivenSuccessiveFilesThenReadFewAtOnce() throws Exception {
+    Random random = new Random(7);
+    List<String> filePaths = new ArrayList<>();
+    List<String> invalidRecords = new ArrayList<>();
+    textLoader.setInvalidRecordListener((record, reason) -> invalidRecords.add(record));
+    for (int hour = 23; hour >= 0; hour--) {
+      List<String> lines = randomLines(random, LocalDateTime.of(2014, 4, 29, hour, 0, 0), 200);
+      lines.add(0, "not a transaction " + hour);
+      filePaths.add(write(lines, false));
+    }
+    List<Transaction> transactions = new ArrayList<>();
+    new MergedTransactionSource(filePaths, this::loaderOf, 16, 1, 2).forEach(trans -> {
+      int readers = 0;
+      for (Thread thread : Thread.getAllStackTraces().keySet()) {
+        if (thread.getName().startsWith("transaction-reader-") && thread.isAlive()) {
+          readers++;
+        }
+      }
+      assertTrue("readers " + readers, readers <= 2);
+      transactions.add(trans);
+    });
+    assertEquals(24 * 200, transactions.size());
+    for (int i = 1; i < transactions.size(); i++) {
+      assertTrue(transactions.get(i - 1).getTransEpochSecond() <= transactions.get(i).getTransEpochSecond());
+    }
+    // The first lines, read once to order the files, are reported once.
+    assertEquals(24, invalidRecords.size());
+  }
+
+  @Test
+  public void testGivenReaderErrorThenRethrowError() throws Exception {
+    String filePath = write(randomLines(new Random(42), LocalDateTime.of(2014, 4, 29, 0, 0, 0), 5000), false);
+    TransactionFileLoader failingLoader = new TransactionFileLoader() {
+      @Override
+      public void load(String filePath, Consumer<Transaction> consumer) throws FileLoaderException {
+        AtomicInteger count = new AtomicInteger();
+        super.load(filePath, trans -> {
+          if (count.incrementAndGet() == 1000) {
+            throw new OutOfMemoryError("Java heap space");
+          }
+          consumer.accept(trans);
+        });
+      }
+    };
+    exceptionRule.expect(OutOfMemoryError.class);
+    exceptionRule.expectMessage("Java heap space");
+    new MergedTransactionSource(Arrays.asList(filePath), path -> failingLoader).forEach(trans -> { });
+  }
+
+  @Test
+  public void testGivenNonExistFileThenReturnError() throws Exception {
+    String filePath = write(randomLines(new Random(42), LocalDateTime.of(2014, 4, 29, 0, 0, 0), 5000), false);
+    exceptionRule.expect(FileLoaderException.class);
+    exceptionRule.expectMessage("non/exist/file (No such file or directory)");
+    new MergedTransactionSource(Arrays.asList(filePath, "non/exist/file"), this::loaderOf).forEach(trans -> { });
+  }
+
+  private TransactionFileLoader loaderOf(String filePath) {
+    return GzipTransactionFileLoader.isGzip(filePath) ? gzipLoader : textLoader;
+  }
+
+  private static List<String> randomLines(Random random, LocalDateTime start, int count) {
+    List<String> lines = new ArrayList<>(count);
+    LocalDateTime dateTime = start;
+    for (int i = 0; i < count; i++) {
+      dateTime = dateTime.plusSeconds(random.nextInt(3) == 0 ? 0 : random.nextInt(60));
+      lines.add("card-" + random.nextInt(20) + ", " + dateTime.format(FORMATTER) + ", "
+          + random.nextInt(100) + "." + random.nextInt(10) + "0");
+    }
+    return lines;
+  }
+
+  private String write(List<String> lines, boolean gzip) throws IOException {
+    File file = folder.newFile();
+    try (OutputStream out = gzip
+        ? new GZIPOutputStream(Files.newOutputStream(file.toPath())) : Files.newOutputStream(file.toPath());
+        PrintWriter writer = new PrintWriter(out)) {
+      lines.forEach(writer::println);
+    }
+    return file.getPath();
+  }
+}
@@ -2,14 +2,24 @@ package com.tdinh.interview.atp.frauddetector.transaction;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import com.tdinh.interview.atp.frauddetector.metrics.Metrics;
 import com.tdinh.interview.atp.frauddetector.transaction.Transaction;
 import com.tdinh.interview.atp.frauddetector.transaction.TransactionFileLoader;
 import com.tdinh.interview.atp.frauddetector.transaction.error.FileLoaderException;
+import java.io.File;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.zip.GZIPOutputStream;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
 
 /**
  * Unit test class for {@link TransactionFileLoader}
@@ -20,6 +30,9 @@ public class TransactionFileLoaderTest {
 
   private TransactionFileLoader loader = new TransactionFileLoader();
   
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
   @Rule
   public ExpectedException exceptionRule = ExpectedException.none();
   
@@ -43,6 +56,16 @@ public class TransactionFileLoaderTest {
     assertTransaction("1f409e4283ad6375bf5d4e9372d", "2014-04-29T16:15:54", 17.66, transactions.get(2));
   }
   
+  @Test
+  public void testGivenConsumerThenStreamValidTransactionsInOrder() throws FileLoaderException {
+    String filePath = "src/test/resources/transactions_5_2_invalid.csv";
+    List<Transaction> transactions = new ArrayList<>();
+    loader.source(filePath).forEach(transactions::add);
+    assertEquals("Should stream 3 transactions", 3, transactions.size());
+    assertTransaction("10d7ce2f43e35fa57d1bbf8b1e2", "2014-04-29T13:15:54", 10.67, transactions.get(0));
+    assertTransaction("1f409e4283ad6375bf5d4e9372d", "2014-04-29T16:15:54", 17.66, transactions.get(2));
+  }
+
   @Test
   public void testGivenFileEmptyRecordsThenLoadEmptyList() throws FileLoaderException {
     String filePath = "src/test/resources/transactions_empty.csv";
@@ -58,6 +81,65 @@ public class TransactionFileLoaderTest {
     loader.load(filePath);
   }
 
+  @Test
+  public void testGivenBatchesThenLoadSameTransactionsAsObjects() throws Exception {
+    // A line longer than a block, and a last line without a terminator.
+    File file = folder.newFile();
+    StringBuilder longId = new StringBuilder();
+    for (int i = 0; i < 100_000; i++) {
+      longId.append('f');
+    }
+    String content = new String(Files.readAllBytes(Paths.get("src/test/resources/transactions_15_5_invalid.csv")),
+        StandardCharsets.UTF_8) + "\n" + longId + ", 2014-04-30T13:15:54, 12.50\r\n1f409e4283ad6375bf5d4e9372d, "
+        + "2014-04-30T16:15:54, 17.66";
+    Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    List<Transaction> expected = loader.load(file.getPath());
+    List<Transaction> transactions = new ArrayList<>();
+    loader.batchSource(file.getPath()).forEach(new CreditCardDictionary(), batch -> {
+      for (int row = 0; row < batch.size(); row++) {
+        transactions.add(batch.toTransaction(row));
+      }
+    });
+    assertEquals(expected.size(), transactions.size());
+    for (int i = 0; i < expected.size(); i++) {
+      ByteTransactionParserTest.assertTransactionEquals("transaction " + i, expected.get(i), transactions.get(i));
+    }
+    assertEquals(longId.toString(), transactions.get(transactions.size() - 2).getCreditCardId());
+  }
+
+  @Test
+  public void testGivenEachFormatThenPeekFirstTransactionQuietly() throws Exception {
+    List<String> lines = new ArrayList<>();
+    lines.add("not a transaction");
+    lines.addAll(Files.readAllLines(Paths.get("src/test/resources/transactions_3.csv")));
+    File textFile = folder.newFile("peek.csv");
+    Files.write(textFile.toPath(), lines);
+    File gzipFile = folder.newFile("peek.csv.gz");
+    try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(gzipFile.toPath()))) {
+      out.write(String.join("\n", lines).getBytes(StandardCharsets.UTF_8));
+    }
+    String binaryFile = folder.getRoot().getPath() + "/peek.bin";
+    TransactionFileLoader quietLoader = new MappedTransactionFileLoader();
+    quietLoader.setInvalidRecordListener((record, reason) -> { });
+    BinaryTransactionWriter.convert(textFile.getPath(), binaryFile, quietLoader);
+
+    TransactionFileLoader[] loaders = {new TransactionFileLoader(), new MappedTransactionFileLoader(),
+        new GzipTransactionFileLoader(), new BinaryTransactionFileLoader()};
+    String[] filePaths = {textFile.getPath(), textFile.getPath(), gzipFile.getPath(), binaryFile};
+    for (int i = 0; i < loaders.length; i++) {
+      Metrics metrics = new Metrics();
+      List<String> invalidRecords = new ArrayList<>();
+      loaders[i].setMetrics(metrics);
+      loaders[i].setInvalidRecordListener((record, reason) -> invalidRecords.add(record));
+      assertTransaction("10d7ce2f43e35fa57d1bbf8b1e2", "2014-04-29T13:15:54", 10.00, loaders[i].first(filePaths[i]));
+      assertEquals(filePaths[i], 0, metrics.getRecords());
+      assertEquals(filePaths[i], 0, metrics.getInvalidRecords());
+      assertEquals(filePaths[i], Collections.emptyList(), invalidRecords);
+    }
+    File empty = folder.newFile("empty.csv");
+    assertEquals(null, loader.first(empty.getPath()));
+  }
+
   private void assertTransaction(String creditCardId, String dateTime, double amount, Transaction trans) {
     assertTrue("Resolved trans should not be null", trans != null);
     assertEquals(creditCardId, trans.getCreditCardId());
@@ -5,7 +5,11 @@ import static org.junit.Assert.assertTrue;
 import com.tdinh.interview.atp.frauddetector.transaction.Transaction;
 import com.tdinh.interview.atp.frauddetector.transaction.TransactionResolver;
 import com.tdinh.interview.atp.frauddetector.transaction.error.InvalidTransactionRecordException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Random;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
@@ -58,4 +62,119 @@ public class TransactionResolverTest {
     resolver.resolve(record);
   }
 
+  @Test
+  public void testGivenHugeAmountThenReturnError() throws Exception {
+    exceptionRule.expect(InvalidTransactionRecordException.class);
+    exceptionRule.expectMessage("Invalid amount [1e300]");
+    resolver.resolve("c3, 2014-04-29T13:15:56, 1e300");
+  }
+
+  @Test
+  public void testGivenAmountBeyondLongOverflowThenReturnError() throws Exception {
+    exceptionRule.expect(InvalidTransactionRecordException.class);
+    exceptionRule.expectMessage("Invalid amount [50000000000000000]");
+    resolver.resolve("c3, 2014-04-29T13:15:56, 50000000000000000");
+  }
+
+  @Test
+  public void testGivenAmountJustBelowTrillionThenResolve() throws Exception {
+    Transaction trans = resolver.resolve("c3, 2014-04-29T13:15:56, 999999999999.99");
+    assertEquals(99999999999999L, trans.getAmountInMinorUnits());
+    exceptionRule.expect(InvalidTransactionRecordException.class);
+    exceptionRule.expectMessage("Invalid amount [-1000000000000]");
+    resolver.resolve("c3, 2014-04-29T13:15:56, -1000000000000");
+  }
+
+  @Test
+  public void testGivenAmountWithCentsThenResolveExactMinorUnits() throws Exception {
+    Transaction trans = resolver.resolve("10d7ce2f43e35fa57d1bbf8b1e2, 2014-04-29T13:15:54, 0.07");
+    assertEquals(7, trans.getAmountInMinorUnits());
+    assertEquals(0.07, trans.getAmount(), 0);
+    assertEquals(LocalDateTime.of(2014, 4, 29, 13, 15, 54).toEpochSecond(ZoneOffset.UTC),
+        trans.getTransEpochSecond());
+  }
+
+  @Test
+  public void testGivenOutOfRangeDayThenResolveAsFormatterDoes() throws Exception {
+    // The formatter resolves smartly to the last day of the month, the fast path must not reject it.
+    Transaction trans = resolver.resolve("10d7ce2f43e35fa57d1bbf8b1e2, 2014-02-30T13:15:54, 10.00");
+    assertEquals(LocalDateTime.of(2014, 2, 28, 13, 15, 54), trans.getTransDateTime());
+  }
+
+  /**
+   * Random well-formed and malformed records resolve to the same transaction, or fail with the same
+   * message, as the plain split, {@link DateTimeFormatter} and {@link Double#parseDouble(String)} resolution.
+   */
+  @Test
+  public void testGivenRandomRecordsThenSameAsReferenceResolution() throws Exception {
+    Random random = new Random(20140429L);
+    String[] dates = {"2014-04-29T13:15:54", "2016-02-29T00:00:00", "2015-02-29T23:59:59", "2014-04-31T10:00:00",
+        "2014-13-01T10:00:00", "2014-04-29T24:00:00", "2014-04-29T13:60:54", "0000-01-01T00:00:00",
+        "9999-12-31T23:59:59", "2014-4-29T13:15:54", "2014/04/29 13:15:54", "2014-04-29 13:15:54", ""};
+    String[] amounts = {"10.00", "0.07", "-3.5", "-0.00", "007.10", "1.", ".5", "1e3", "12.345", "NaN",
+        "Infinity", "+4", "1e300", "50000000000000000", "999999999999.99", "1000000000000", "999999999999999", "99999999999999.99", "90071992547409.93", "Ten", "", "1..2"};
+    for (int round = 0; round < 20_000; round++) {
+      String date = random.nextInt(4) == 0 ? dates[random.nextInt(dates.length)] : randomDate(random);
+      String amount = random.nextInt(4) == 0 ? amounts[random.nextInt(amounts.length)] : randomAmount(random);
+      String record = "10d7ce2f43e35fa57d1bbf8b1e2," + pad(random, date) + "," + pad(random, amount)
+          + (random.nextInt(50) == 0 ? "," : "") + (random.nextInt(50) == 0 ? ",x" : "");
+      String expected;
+      try {
+        Transaction trans = referenceResolve(record);
+        expected = trans.getTransDateTime() + " " + trans.getAmount();
+      } catch (InvalidTransactionRecordException ex) {
+        expected = ex.getMessage();
+      }
+      String actual;
+      try {
+        Transaction trans = resolver.resolve(record);
+        actual = trans.getTransDateTime() + " " + trans.getAmount();
+        assertEquals(record, trans.getTransDateTime().toEpochSecond(ZoneOffset.UTC), trans.getTransEpochSecond());
+      } catch (InvalidTransactionRecordException ex) {
+        actual = ex.getMessage();
+      }
+      assertEquals(record, expected, actual);
+    }
+  }
+
+  private static String randomDate(Random random) {
+    return String.format("%04d-%02d-%02dT%02d:%02d:%02d", 1 + random.nextInt(2100), 1 + random.nextInt(12),
+        1 + random.nextInt(31), random.nextInt(24), random.nextInt(60), random.nextInt(60));
+  }
+
+  private static String randomAmount(Random random) {
+    String amount = (random.nextInt(10) == 0 ? "-" : "") + random.nextInt(100_000);
+    int decimals = random.nextInt(4);
+    if (decimals > 0) {
+      amount += "." + String.format("%0" + decimals + "d", random.nextInt((int) Math.pow(10, decimals)));
+    }
+    return amount;
+  }
+
+  private static String pad(Random random, String field) {
+    return (random.nextBoolean() ? " " : "") + field + (random.nextInt(4) == 0 ? " \t" : "");
+  }
+
+  private static Transaction referenceResolve(String record) throws InvalidTransactionRecordException {
+    String[] fields = record.split(",");
+    if (fields.length != 3) {
+      throw new InvalidTransactionRecordException("Error: expecting 3 fields, found " + fields.length);
+    }
+    LocalDateTime transDateTime;
+    try {
+      transDateTime = LocalDateTime.parse(fields[1].trim(), DateTimeFormatter.ofPattern(Transaction.DATE_TIME_FORMATTER));
+    } catch (DateTimeParseException ex) {
+      throw new InvalidTransactionRecordException("Invalid date time format [" + fields[1].trim() + "]");
+    }
+    double amount;
+    try {
+      amount = Double.parseDouble(fields[2].trim());
+      if (Double.isNaN(amount) || Double.isInfinite(amount) || Math.abs(amount) >= Amounts.MAX_AMOUNT) {
+        throw new NumberFormatException();
+      }
+    } catch (NumberFormatException ex) {
+      throw new InvalidTransactionRecordException("Invalid amount [" + fields[2].trim() + "]");
+    }
+    return new Transaction.Builder().creditCardId(fields[0].trim()).transDateTime(transDateTime).amount(amount).build();
+  }
 }
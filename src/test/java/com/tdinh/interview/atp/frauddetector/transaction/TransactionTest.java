@@ -0,0 +1,38 @@
+package com.tdinh.interview.atp.frauddetector.transaction;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import java.time.LocalDateTime;
+import org.junit.Test;
+
+/**
+ * Unit test class for {@link Transaction}
+ * @author Tuan Dinh
+ *
+ */
+public class TransactionTest {
+
+  @Test
+  public void testGivenEpochSecondThenDeriveDateTime() throws Exception {
+    Transaction trans = new Transaction.Builder().transEpochSecond(1398738450L).build();
+    assertEquals(LocalDateTime.parse("2014-04-29T02:27:30"), trans.getTransDateTime());
+    assertEquals(LocalDateTime.parse("1970-01-01T00:00:00"),
+        new Transaction.Builder().transEpochSecond(0).build().getTransDateTime());
+  }
+
+  @Test
+  public void testGivenDateTimeThenDeriveEpochSecond() throws Exception {
+    Transaction trans = new Transaction.Builder().transDateTime(LocalDateTime.parse("2014-04-29T02:27:30")).build();
+    assertEquals(1398738450L, trans.getTransEpochSecond());
+  }
+
+  @Test
+  public void testGivenNoDateTimeThenNullDateTime() throws Exception {
+    assertNull(new Transaction.Builder().creditCardId("10d7ce2f43e35fa57d1bbf8b1e2").build().getTransDateTime());
+    Transaction trans = new Transaction.Builder().transDateTime(null).amount(10.00).build();
+    assertNull(trans.getTransDateTime());
+    assertEquals(0, trans.getTransEpochSecond());
+    // Clearing a date time set earlier.
+    assertNull(new Transaction.Builder().transEpochSecond(1398738450L).transDateTime(null).build().getTransDateTime());
+  }
+}
@@ -0,0 +1,111 @@
+package com.tdinh.interview.atp.frauddetector.window;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import com.tdinh.interview.atp.frauddetector.transaction.Transaction;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Test;
+
+/**
+ * Unit test class for {@link EventTimeWindowEngine}.
+ * 
+ * @author Tuan Dinh
+ *
+ */
+public class EventTimeWindowEngineTest {
+
+  private static final long HOUR = 60 * 60;
+  // 2014-04-29T00:00:00
+  private static final long T0 = 1398729600L;
+
+  @Test
+  public void testGivenOutOfOrderWithinLatenessThenSameAsSortedScan() {
+    Random random = new Random(20140429L);
+    for (int round = 0; round < 200; round++) {
+      List<Transaction> sorted =
+          SlidingWindowEngineTest.randomTransactions(random, 1 + random.nextInt(2000), 1 + random.nextInt(50));
+      double limit = random.nextInt(400) * 0.25;
+      long lateness = random.nextInt(12) * HOUR;
+      List<Transaction> shuffled = shuffleWithin(random, sorted, lateness);
+
+      Set<String> detected = new HashSet<>();
+      EventTimeWindowEngine engine = new EventTimeWindowEngine(new SlidingWindowEngine(limit), lateness, detected::add);
+      shuffled.forEach(trans -> assertTrue(engine.accept(trans)));
+      engine.flush();
+
+      // The sorted order of transactions of the same second is their arrival order.
+      List<Transaction> reference = new ArrayList<>(shuffled);
+      reference.sort(Comparator.comparing(Transaction::getTransDateTime));
+      Set<String> expected = SlidingWindowEngineTest.referenceFraudScan(reference, limit);
+      assertEquals("round " + round, expected, engine.getEngine().getFraudulentCreditCards());
+      assertEquals("round " + round, expected, detected);
+      assertEquals(0, engine.getLateTransactions());
+      assertEquals(0, engine.getBufferedTransactions());
+    }
+  }
+
+  @Test
+  public void testGivenLateTransactionThenDrop() {
+    EventTimeWindowEngine engine = new EventTimeWindowEngine(new SlidingWindowEngine(100.00), HOUR, card -> { });
+    assertTrue(engine.accept(0, T0 + 2 * HOUR, 60.00));
+    // Exactly at the watermark is still in time.
+    assertTrue(engine.accept(0, T0 + HOUR, 30.00));
+    assertFalse(engine.accept(0, T0 + HOUR - 1, 30.00));
+    engine.flush();
+    assertEquals(1, engine.getLateTransactions());
+    assertFalse(engine.getEngine().isFraudulent(0));
+  }
+
+  @Test
+  public void testGivenFraudThenReportOnlyOnceWatermarkHasPassed() {
+    List<String> detected = new ArrayList<>();
+    SlidingWindowEngine windows = new SlidingWindowEngine(100.00);
+    int card = windows.getDictionary().ordinalOf("card");
+    EventTimeWindowEngine engine = new EventTimeWindowEngine(windows, HOUR, detected::add);
+    engine.accept(card, T0 + HOUR, 60.00);
+    engine.accept(card, T0 + 30 * 60, 50.00);
+    assertTrue(detected.isEmpty());
+    assertEquals(2, engine.getBufferedTransactions());
+    engine.accept(windows.getDictionary().ordinalOf("other"), T0 + 2 * HOUR + 1, 1.00);
+    assertEquals(1, engine.getBufferedTransactions());
+    assertEquals(1, detected.size());
+    assertEquals("card", detected.get(0));
+  }
+
+  @Test
+  public void testGivenZeroLatenessThenHoldOnlyTheLatestSecond() {
+    EventTimeWindowEngine engine = new EventTimeWindowEngine(new SlidingWindowEngine(10000.00), 0, card -> { });
+    for (int i = 0; i < 1000; i++) {
+      assertTrue(engine.accept(i % 7, T0 + i / 3, 1.00));
+      assertTrue(engine.getBufferedTransactions() <= 3);
+    }
+    assertFalse(engine.accept(0, T0, 1.00));
+  }
+
+  /**
+   * Shuffle sorted transactions so that each one arrives at most the given number of seconds behind
+   * the latest transaction time seen before it.
+   */
+  private static List<Transaction> shuffleWithin(Random random, List<Transaction> sorted, long lateness) {
+    List<long[]> keys = new ArrayList<>(sorted.size());
+    for (int i = 0; i < sorted.size(); i++) {
+      long time = sorted.get(i).getTransDateTime().toEpochSecond(ZoneOffset.UTC);
+      // Delay the arrival by up to the lateness: the arrival key never passes a later transaction time
+      // by more than the lateness.
+      keys.add(new long[] {time + (lateness == 0 ? 0 : (long) (random.nextDouble() * lateness)), i});
+    }
+    keys.sort((a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]));
+    List<Transaction> shuffled = new ArrayList<>(sorted.size());
+    for (long[] key : keys) {
+      shuffled.add(sorted.get((int) key[1]));
+    }
+    return shuffled;
+  }
+}
@@ -0,0 +1,78 @@
+package com.tdinh.interview.atp.frauddetector.window;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import com.tdinh.interview.atp.frauddetector.FraudDetector;
+import com.tdinh.interview.atp.frauddetector.transaction.CreditCardDictionary;
+import com.tdinh.interview.atp.frauddetector.transaction.Transaction;
+import com.tdinh.interview.atp.frauddetector.transaction.TransactionBatch;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Unit test class for {@link LimitSweep}.
+ *
+ * @author Tuan Dinh
+ *
+ */
+public class LimitSweepTest {
+
+  @Test
+  public void testGivenLimitsThenRankCreditCardsByMaxWindowTotal() {
+    LimitSweep sweep = new LimitSweep(new double[] {50.00, 10.00, 30.00}, TransactionBatch.AMOUNT_SCALE,
+        new CreditCardDictionary());
+    sweep.getEngine().getDictionary().ordinalOf("never");
+    sweep.accept(transaction("low", 0, 10.00));
+    sweep.accept(transaction("high", 0, 20.00));
+    sweep.accept(transaction("high", 60, 20.00));
+    // Above the highest limit: fraudulent for all of them, and dropped from then on.
+    sweep.accept(transaction("top", 0, 50.01));
+    sweep.accept(transaction("top", 60, 1000.00));
+    // Expired, so the window of "mid" never goes above 30.00.
+    sweep.accept(transaction("mid", 0, 30.00));
+    sweep.accept(transaction("mid", SlidingWindowEngine.WINDOW_SECONDS, 30.00));
+
+    assertArrayEquals(new double[] {10.00, 30.00, 50.00}, sweep.getLimits(), 0.0);
+    assertArrayEquals(new int[] {3, 2, 1}, sweep.getFraudulentCounts());
+    assertEquals(Arrays.asList("top", "high", "mid"), sweep.getFraudulentCreditCards(0));
+    assertEquals(Arrays.asList("top", "high"), sweep.getFraudulentCreditCards(1));
+    assertEquals(Arrays.asList("top"), sweep.getFraudulentCreditCards(2));
+    // Only "high" and "mid" are still within a window.
+    assertEquals(2, sweep.getEngine().getLiveCreditCards());
+  }
+
+  @Test
+  public void testGivenRandomTransactionsThenSameAsScanPerLimit() throws Exception {
+    Random random = new Random(20140429L);
+    for (int round = 0; round < 100; round++) {
+      List<Transaction> transactions =
+          SlidingWindowEngineTest.randomTransactions(random, 1 + random.nextInt(2000), 1 + random.nextInt(50));
+      double[] limits = new double[1 + random.nextInt(20)];
+      for (int i = 0; i < limits.length; i++) {
+        limits[i] = random.nextInt(400) * 0.25;
+      }
+      LimitSweep sweep = new LimitSweep(limits, TransactionBatch.AMOUNT_SCALE, new CreditCardDictionary());
+      transactions.forEach(sweep::accept);
+
+      double[] sortedLimits = sweep.getLimits();
+      int[] counts = sweep.getFraudulentCounts();
+      for (int i = 0; i < sortedLimits.length; i++) {
+        String message = "round " + round + " limit " + sortedLimits[i];
+        HashSet<String> expected = new HashSet<>(new FraudDetector().fraudScan(transactions, sortedLimits[i]));
+        assertEquals(message, expected.size(), counts[i]);
+        assertEquals(message, expected, new HashSet<>(sweep.getFraudulentCreditCards(i)));
+      }
+    }
+  }
+
+  private static Transaction transaction(String creditCardId, long transEpochSecond, double amount) {
+    return new Transaction.Builder()
+        .creditCardId(creditCardId)
+        .transEpochSecond(transEpochSecond)
+        .amount(amount)
+        .build();
+  }
+}
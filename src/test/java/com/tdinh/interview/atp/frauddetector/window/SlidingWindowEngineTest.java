@@ -0,0 +1,346 @@
+package com.tdinh.interview.atp.frauddetector.window;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import com.tdinh.interview.atp.frauddetector.FraudDetector;
+import com.tdinh.interview.atp.frauddetector.transaction.Amounts;
+import com.tdinh.interview.atp.frauddetector.transaction.CreditCardDictionary;
+import com.tdinh.interview.atp.frauddetector.transaction.Transaction;
+import com.tdinh.interview.atp.frauddetector.transaction.TransactionFileLoader;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Test;
+
+/**
+ * Unit test class for {@link SlidingWindowEngine}.
+ * 
+ * The engine is checked for equivalence against the original full-history scan
+ * ({@link #referenceFraudScan(List, double)}) on the test files and on randomized inputs.
+ * 
+ * @author Tuan Dinh
+ *
+ */
+public class SlidingWindowEngineTest {
+
+  private static final String[] TEST_FILES = {
+      "src/test/resources/transactions_3.csv",
+      "src/test/resources/transactions_5_2_invalid.csv",
+      "src/test/resources/transactions_10.csv",
+      "src/test/resources/transactions_10_nofraud.csv",
+      "src/test/resources/transactions_15.csv",
+      "src/test/resources/transactions_15_5_invalid.csv",
+      "src/test/resources/transactions_empty.csv",
+      "test-data/transactions.csv"};
+
+  private FraudDetector fraudDetector = new FraudDetector();
+
+  @Test
+  public void testGivenTransactionOnWindowBoundaryThenExcludeIt() throws Exception {
+    SlidingWindowEngine engine = new SlidingWindowEngine(35.00);
+    assertFalse(engine.accept("10d7ce2f43e35fa57d1bbf8b1e2", 0, 30.00));
+    // Exactly 24 hours later, the first transaction is out of the window.
+    assertFalse(engine.accept("10d7ce2f43e35fa57d1bbf8b1e2", SlidingWindowEngine.WINDOW_SECONDS, 10.00));
+    // One second short of 24 hours after the second one, both are within the window.
+    assertTrue(engine.accept("10d7ce2f43e35fa57d1bbf8b1e2", 2 * SlidingWindowEngine.WINDOW_SECONDS - 1, 30.00));
+    assertTrue(engine.getFraudulentCreditCards().contains("10d7ce2f43e35fa57d1bbf8b1e2"));
+  }
+
+  @Test
+  public void testGivenFraudulentCreditCardThenIgnoreFurtherTransactions() throws Exception {
+    SlidingWindowEngine engine = new SlidingWindowEngine(35.00);
+    assertTrue(engine.accept("10d7ce2f43e35fa57d1bbf8b1e2", 0, 40.00));
+    assertFalse(engine.accept("10d7ce2f43e35fa57d1bbf8b1e2", 1, 40.00));
+    assertEquals(1, engine.getFraudulentCreditCards().size());
+  }
+
+  @Test
+  public void testGivenIdleCreditCardsThenEvictTheirWindows() throws Exception {
+    SlidingWindowEngine engine = new SlidingWindowEngine(100.00);
+    engine.accept("10d7ce2f43e35fa57d1bbf8b1e2", 0, 10.00);
+    engine.accept("10d7ce2f43e35fa57d1bbf8b1e2", 60, 10.00);
+    engine.accept("f2f1ee2840d23ed1430cbec83c6", 3600, 10.00);
+    assertEquals(2, engine.getLiveCreditCards());
+    assertEquals(3, engine.getRetainedEntries());
+    // 10d7ce2f43e35fa57d1bbf8b1e2 has been idle for a full window.
+    engine.accept("1f409e4283ad6375bf5d4e9372d", 60 + SlidingWindowEngine.WINDOW_SECONDS, 10.00);
+    assertEquals(2, engine.getLiveCreditCards());
+    assertEquals(2, engine.getRetainedEntries());
+    // Both earlier credit cards are idle now.
+    engine.accept("1f409e4283ad6375bf5d4e9372d", 3600 + SlidingWindowEngine.WINDOW_SECONDS, 10.00);
+    assertEquals(1, engine.getLiveCreditCards());
+    assertEquals(2, engine.getRetainedEntries());
+    assertEquals(3, engine.getPeakRetainedEntries());
+  }
+
+  @Test
+  public void testGivenIdleTimeoutThenKeepWindowsOfSkewedCreditCards() throws Exception {
+    SlidingWindowEngine engine = new SlidingWindowEngine(25.00);
+    engine.setIdleTimeoutSeconds(SlidingWindowEngine.WINDOW_SECONDS + 3600);
+    engine.accept("10d7ce2f43e35fa57d1bbf8b1e2", 0, 10.00);
+    // Another producer ahead by less than the skew allowed: the first credit card is kept.
+    engine.accept("f2f1ee2840d23ed1430cbec83c6", 1800 + SlidingWindowEngine.WINDOW_SECONDS, 10.00);
+    assertEquals(2, engine.getLiveCreditCards());
+    // Still within the window of the first transaction of the first credit card.
+    assertTrue(engine.accept("10d7ce2f43e35fa57d1bbf8b1e2", SlidingWindowEngine.WINDOW_SECONDS - 1, 20.00));
+    engine.accept("f2f1ee2840d23ed1430cbec83c6", 3600 + 2 * SlidingWindowEngine.WINDOW_SECONDS, 10.00);
+    assertEquals(1, engine.getLiveCreditCards());
+  }
+
+  @Test
+  public void testGivenTransactionOlderThanClockThenCountOutOfOrderIfItsCreditCardWasDropped() throws Exception {
+    SlidingWindowEngine engine = new SlidingWindowEngine(50.00);
+    engine.accept("10d7ce2f43e35fa57d1bbf8b1e2", 0, 30.00);
+    // A day and more ahead: the first credit card is dropped.
+    engine.accept("f2f1ee2840d23ed1430cbec83c6", 2 * SlidingWindowEngine.WINDOW_SECONDS, 1.00);
+    assertEquals(1, engine.getLiveCreditCards());
+    // Within the window of the dropped transaction: its credit card is missed, but counted.
+    assertFalse(engine.accept("10d7ce2f43e35fa57d1bbf8b1e2", 3600, 30.00));
+    assertEquals(1, engine.getOutOfOrderTransactions());
+    // Older than the clock without having been dropped, or new: nothing is evicted nor counted.
+    engine.accept("1f409e4283ad6375bf5d4e9372d", 7200, 10.00);
+    assertEquals(3, engine.getLiveCreditCards());
+    assertEquals(1, engine.getOutOfOrderTransactions());
+    assertTrue(engine.getFraudulentCreditCards().isEmpty());
+  }
+
+  @Test
+  public void testGivenLongInputThenRetainedEntriesBoundedByWindow() throws Exception {
+    SlidingWindowEngine engine = new SlidingWindowEngine(Double.MAX_VALUE);
+    // One transaction per hour from each of 10 credit cards over 30 days.
+    for (long hour = 0; hour < 30 * 24; hour++) {
+      for (int card = 0; card < 10; card++) {
+        engine.accept("card-" + card, hour * 3600, 1.00);
+      }
+    }
+    assertEquals(10 * 24, engine.getPeakRetainedEntries());
+  }
+
+  @Test
+  public void testGivenTestFilesThenMatchReferenceScan() throws Exception {
+    TransactionFileLoader loader = new TransactionFileLoader();
+    for (String file : TEST_FILES) {
+      List<Transaction> transactions = loader.load(file);
+      for (double limit : new double[] {0.0, 20.00, 35.00, 50.00}) {
+        assertEquals(file + " @ " + limit,
+            referenceFraudScan(transactions, limit), fraudDetector.fraudScan(transactions, limit));
+      }
+    }
+  }
+
+  @Test
+  public void testGivenRandomTransactionsThenMatchReferenceScan() throws Exception {
+    Random random = new Random(20140429L);
+    for (int round = 0; round < 200; round++) {
+      List<Transaction> transactions = randomTransactions(random, 1 + random.nextInt(2000), 1 + random.nextInt(50));
+      double limit = random.nextInt(400) * 0.25;
+      assertEquals("round " + round,
+          referenceFraudScan(transactions, limit), fraudDetector.fraudScan(transactions, limit));
+    }
+  }
+
+  @Test
+  public void testGivenRefundThenFlagNewestTransactionsExceedingLimit() throws Exception {
+    SlidingWindowEngine engine = new SlidingWindowEngine(35.00);
+    assertFalse(engine.accept("c", 0, -30.00));
+    // The window total is 20.00, but the newest transaction alone exceeds the limit.
+    assertTrue(engine.accept("c", 3600, 50.00));
+    assertFalse(engine.accept("d", 0, 30.00));
+    assertFalse(engine.accept("d", 1, -20.00));
+    assertFalse(engine.accept("d", 2, 20.00));
+    assertTrue(engine.accept("d", 3, 16.00));
+    assertEquals(new HashSet<>(Arrays.asList("c", "d")), engine.getFraudulentCreditCards());
+  }
+
+  @Test
+  public void testGivenRefundsThenMaxRecentTotalOverNewestTransactions() throws Exception {
+    CreditCardWindow window = new CreditCardWindow();
+    window.add(0, 30);
+    window.add(1, -40);
+    window.add(2, 25);
+    assertEquals(15, window.getTotalAmount());
+    assertEquals(25, window.getMaxRecentTotal());
+    assertTrue(window.exceeds(24));
+    assertFalse(window.exceeds(25));
+    window.evictUntil(1);
+    assertEquals(25, window.getMaxRecentTotal());
+    window.add(3, 5);
+    assertEquals(30, window.getMaxRecentTotal());
+  }
+
+  @Test
+  public void testGivenAmountsSummingExactlyToLimitThenNotFraudulent() throws Exception {
+    SlidingWindowEngine engine = new SlidingWindowEngine(0.30);
+    // 0.1 + 0.2 is 0.30000000000000004 in binary floating point.
+    assertFalse(engine.accept("card", 0, 0.10));
+    assertFalse(engine.accept("card", 1, 0.20));
+    assertEquals(30, engine.getWindow(engine.getDictionary().ordinalOf("card")).getTotalAmount());
+    // A long lived window adding and evicting small amounts keeps an exact total.
+    for (long second = 2; second < 10 * SlidingWindowEngine.WINDOW_SECONDS; second += 3600) {
+      assertFalse(engine.accept("drift", second, 0.01));
+    }
+    assertEquals(24, engine.getWindow(engine.getDictionary().ordinalOf("drift")).getTotalAmount());
+  }
+
+  @Test
+  public void testGivenLimitWithMoreDecimalsThanScaleThenCompareExactly() throws Exception {
+    SlidingWindowEngine engine = new SlidingWindowEngine(35.005);
+    assertEquals(3500, engine.getLimitInMinorUnits());
+    assertFalse(engine.accept("card", 0, 35.00));
+    assertTrue(engine.accept("card", 1, 0.01));
+  }
+
+  @Test
+  public void testGivenOverflowingWindowTotalThenSaturateAsFraud() throws Exception {
+    SlidingWindowEngine engine = new SlidingWindowEngine(9e12, 6, new CreditCardDictionary());
+    int ordinal = engine.getDictionary().ordinalOf("card");
+    assertFalse(engine.acceptMinorUnits(ordinal, 0, Long.MAX_VALUE / 2));
+    assertTrue(engine.acceptMinorUnits(ordinal, 1, Long.MAX_VALUE / 2 + 2));
+    assertEquals(Collections.singleton("card"), engine.getFraudulentCreditCards());
+  }
+
+  @Test
+  public void testGivenOverflowingEntriesEvictedThenTotalExactAgain() throws Exception {
+    SlidingWindowEngine engine = new SlidingWindowEngine(Double.POSITIVE_INFINITY, 6, new CreditCardDictionary());
+    int ordinal = engine.getDictionary().ordinalOf("card");
+    engine.acceptMinorUnits(ordinal, 0, Long.MAX_VALUE);
+    engine.acceptMinorUnits(ordinal, 1, Long.MAX_VALUE);
+    assertEquals(Long.MAX_VALUE, engine.getWindow(ordinal).getTotalAmount());
+    engine.acceptMinorUnits(ordinal, 86_400, 5);
+    assertEquals(Long.MAX_VALUE, engine.getWindow(ordinal).getTotalAmount());
+    engine.acceptMinorUnits(ordinal, 86_401, 7);
+    assertEquals(12, engine.getWindow(ordinal).getTotalAmount());
+  }
+
+  @Test
+  public void testGivenUnboundedLimitThenOverflowingTotalIsNotFraud() throws Exception {
+    SlidingWindowEngine engine = new SlidingWindowEngine(Double.POSITIVE_INFINITY, 6, new CreditCardDictionary());
+    int ordinal = engine.getDictionary().ordinalOf("card");
+    assertFalse(engine.acceptMinorUnits(ordinal, 0, Long.MAX_VALUE));
+    assertFalse(engine.acceptMinorUnits(ordinal, 1, Long.MAX_VALUE));
+    assertTrue(engine.getFraudulentCreditCards().isEmpty());
+  }
+
+  @Test
+  public void testGivenLargestSupportedAmountsAtLargestScaleThenCountExactly() throws Exception {
+    SlidingWindowEngine engine = new SlidingWindowEngine(9e12, Amounts.MAX_SCALE, new CreditCardDictionary());
+    for (int i = 0; i < 10; i++) {
+      assertFalse(engine.accept("card", i, 9e11));
+    }
+    assertTrue(engine.accept("card", 10, 0.000001));
+  }
+
+  /**
+   * Random decimal amounts at several scales, with limits close to the window totals, give exactly the
+   * verdicts of a {@link BigDecimal} full-history scan.
+   */
+  @Test
+  public void testGivenRandomDecimalAmountsThenMatchBigDecimalReference() throws Exception {
+    Random random = new Random(20140429L);
+    for (int round = 0; round < 300; round++) {
+      int scale = random.nextInt(5);
+      int count = 1 + random.nextInt(1000);
+      List<String> creditCardIds = new ArrayList<>(count);
+      long[] times = new long[count];
+      BigDecimal[] amounts = new BigDecimal[count];
+      long time = 0;
+      for (int i = 0; i < count; i++) {
+        time += random.nextInt(4) == 0 ? 0 : random.nextInt(4 * 60 * 60);
+        creditCardIds.add("card-" + random.nextInt(1 + random.nextInt(20)));
+        times[i] = time;
+        amounts[i] = BigDecimal.valueOf(random.nextInt(100_000), scale);
+      }
+      // Around the totals of a few transactions, where rounding errors would flip verdicts.
+      BigDecimal limit = BigDecimal.valueOf(random.nextInt(4 * 100_000), scale);
+
+      SlidingWindowEngine engine =
+          new SlidingWindowEngine(limit.doubleValue(), scale, new CreditCardDictionary());
+      Set<String> detected = new HashSet<>();
+      for (int i = 0; i < count; i++) {
+        if (engine.accept(creditCardIds.get(i), times[i], amounts[i].doubleValue())) {
+          detected.add(creditCardIds.get(i));
+        }
+      }
+      assertEquals("round " + round, bigDecimalFraudScan(creditCardIds, times, amounts, limit), detected);
+    }
+  }
+
+  private static Set<String> bigDecimalFraudScan(List<String> creditCardIds, long[] times, BigDecimal[] amounts,
+      BigDecimal limit) {
+    Set<String> fraudulentCreditCards = new HashSet<>();
+    Map<String, List<Integer>> history = new HashMap<>();
+    for (int i = 0; i < times.length; i++) {
+      String creditCardId = creditCardIds.get(i);
+      if (fraudulentCreditCards.contains(creditCardId)) {
+        continue;
+      }
+      List<Integer> indexes = history.computeIfAbsent(creditCardId, k -> new ArrayList<>());
+      indexes.add(i);
+      BigDecimal total = BigDecimal.ZERO;
+      for (int j : indexes) {
+        if (times[j] > times[i] - SlidingWindowEngine.WINDOW_SECONDS) {
+          total = total.add(amounts[j]);
+        }
+      }
+      if (total.compareTo(limit) > 0) {
+        fraudulentCreditCards.add(creditCardId);
+      }
+    }
+    return fraudulentCreditCards;
+  }
+
+  /**
+   * Generate chronologically ordered transactions, including some refunds (negative amounts). Amounts are
+   * multiples of 0.25 so that sums are exact in binary floating point and both scans see the same totals.
+   */
+  static List<Transaction> randomTransactions(Random random, int count, int cards) {
+    List<Transaction> transactions = new ArrayList<>(count);
+    LocalDateTime dateTime = LocalDateTime.of(2014, 4, 29, 0, 0, 0);
+    for (int i = 0; i < count; i++) {
+      dateTime = dateTime.plusSeconds(random.nextInt(4) == 0 ? 0 : random.nextInt(4 * 60 * 60));
+      transactions.add(new Transaction.Builder()
+          .creditCardId("card-" + random.nextInt(cards))
+          .transDateTime(dateTime)
+          .amount((random.nextInt(8) == 0 ? -random.nextInt(160) : random.nextInt(80)) * 0.25)
+          .build());
+    }
+    return transactions;
+  }
+
+  /**
+   * The original full-history scan: for each transaction, walk the history of its credit card
+   * backwards while within 24 hours.
+   */
+  static Set<String> referenceFraudScan(List<Transaction> transactions, double limit) {
+    Set<String> fraudulentCreditCards = new HashSet<>();
+    Map<String, List<Transaction>> transactionStorage = new HashMap<>();
+    for (Transaction trans : transactions) {
+      String creditCardId = trans.getCreditCardId();
+      if (fraudulentCreditCards.contains(creditCardId)) {
+        continue;
+      }
+      List<Transaction> transList = transactionStorage.computeIfAbsent(creditCardId, k -> new ArrayList<>());
+      transList.add(trans);
+      double total24hrsAmount = 0.0;
+      LocalDateTime cutOff = trans.getTransDateTime().minusHours(24);
+      for (int i = transList.size() - 1; i >= 0 && transList.get(i).getTransDateTime().isAfter(cutOff); i--) {
+        total24hrsAmount += transList.get(i).getAmount();
+        if (total24hrsAmount > limit) {
+          fraudulentCreditCards.add(creditCardId);
+          transactionStorage.remove(creditCardId);
+          break;
+        }
+      }
+    }
+    return fraudulentCreditCards;
+  }
+}
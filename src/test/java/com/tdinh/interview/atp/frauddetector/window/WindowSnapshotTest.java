@@ -0,0 +1,158 @@
+package com.tdinh.interview.atp.frauddetector.window;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import com.tdinh.interview.atp.frauddetector.FraudDetector;
+import com.tdinh.interview.atp.frauddetector.transaction.CreditCardDictionary;
+import com.tdinh.interview.atp.frauddetector.transaction.Transaction;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit test class for {@link WindowSnapshot}.
+ * 
+ * @author Tuan Dinh
+ *
+ */
+public class WindowSnapshotTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Rule
+  public ExpectedException exceptionRule = ExpectedException.none();
+
+  @Test
+  public void testGivenSnapshotBetweenScansThenSameAsSingleScan() throws Exception {
+    Random random = new Random(20140429L);
+    String snapshot = new File(folder.getRoot(), "windows.snapshot").getPath();
+    for (int round = 0; round < 100; round++) {
+      List<Transaction> transactions =
+          SlidingWindowEngineTest.randomTransactions(random, 1 + random.nextInt(2000), 1 + random.nextInt(50));
+      double limit = random.nextInt(400) * 0.25;
+      int split = random.nextInt(transactions.size() + 1);
+
+      FraudDetector first = new FraudDetector();
+      first.fraudScan(transactions.subList(0, split), limit);
+      first.checkpoint(snapshot);
+      FraudDetector second = new FraudDetector();
+      second.restore(snapshot, limit);
+      Set<String> resumed = second.fraudScan(transactions.subList(split, transactions.size()), limit);
+
+      assertEquals("round " + round, new FraudDetector().fraudScan(transactions, limit), resumed);
+    }
+  }
+
+  @Test
+  public void testGivenCheckpointDuringScanThenResumeFromItsSourcePosition() throws Exception {
+    Random random = new Random(42);
+    String snapshot = new File(folder.getRoot(), "windows.snapshot").getPath();
+    List<Transaction> transactions = SlidingWindowEngineTest.randomTransactions(random, 2000, 30);
+    double limit = 40.00;
+    int split = 1234;
+
+    FraudDetector first = new FraudDetector();
+    first.fraudScan(consumer -> {
+      for (int i = 0; i < transactions.size(); i++) {
+        if (i == split) {
+          first.checkpoint(snapshot, String.valueOf(i));
+        }
+        consumer.accept(transactions.get(i));
+      }
+    }, limit, creditCardId -> { });
+    FraudDetector second = new FraudDetector();
+    int position = Integer.parseInt(second.restore(snapshot, limit));
+    Set<String> resumed = second.fraudScan(transactions.subList(position, transactions.size()), limit);
+
+    assertEquals(split, position);
+    assertEquals(new FraudDetector().fraudScan(transactions, limit), resumed);
+  }
+
+  @Test
+  public void testGivenSourcePositionThenReadItBack() throws IOException {
+    SlidingWindowEngine engine = new SlidingWindowEngine(100.00);
+    engine.accept("card", 2000, 20.20);
+    Path path = folder.getRoot().toPath().resolve("windows.snapshot");
+    WindowSnapshot.write(engine, path, "1234\n(dev=801,ino=42) caf\u00e9");
+    assertEquals("1234\n(dev=801,ino=42) caf\u00e9", WindowSnapshot.readSourcePosition(path));
+    assertEquals(engine.getRetainedEntries(), WindowSnapshot.read(path, 100.00, 2).getRetainedEntries());
+
+    WindowSnapshot.write(engine, path);
+    assertEquals(null, WindowSnapshot.readSourcePosition(path));
+    assertEquals(engine.getRetainedEntries(), WindowSnapshot.read(path, 100.00, 2).getRetainedEntries());
+  }
+
+  @Test
+  public void testGivenEngineThenRestoreSameState() throws IOException {
+    SlidingWindowEngine engine = new SlidingWindowEngine(100.00);
+    engine.accept("idle", 500, 1.00);
+    engine.accept("caf\u00e9", 1000, 30.10);
+    engine.accept("card", 2000, 20.20);
+    engine.accept("caf\u00e9", 3000, 50.30);
+    engine.accept("fraud", 3000, 150.00);
+    Path path = folder.getRoot().toPath().resolve("windows.snapshot");
+    WindowSnapshot.write(engine, path);
+
+    SlidingWindowEngine restored = WindowSnapshot.read(path, 100.00, 2);
+    assertEquals(engine.getFraudulentCreditCards(), restored.getFraudulentCreditCards());
+    assertEquals(engine.getLiveCreditCards(), restored.getLiveCreditCards());
+    assertEquals(engine.getRetainedEntries(), restored.getRetainedEntries());
+    assertEquals(engine.getPeakRetainedEntries(), restored.getPeakRetainedEntries());
+    // Same running totals: 80.40 + 20.00 crosses the limit in both.
+    assertEquals(engine.accept("caf\u00e9", 4000, 20.00), restored.accept("caf\u00e9", 4000, 20.00));
+    assertTrue(restored.getFraudulentCreditCards().contains("caf\u00e9"));
+    // The least recently used credit card is still evicted first once idle.
+    assertEquals(2, restored.getLiveCreditCards());
+    restored.accept("card", 500 + SlidingWindowEngine.WINDOW_SECONDS, 1.00);
+    assertEquals(1, restored.getLiveCreditCards());
+  }
+
+  @Test
+  public void testGivenOtherLimitThenReturnError() throws IOException {
+    Path path = folder.getRoot().toPath().resolve("windows.snapshot");
+    WindowSnapshot.write(new SlidingWindowEngine(100.00), path);
+    exceptionRule.expect(IOException.class);
+    exceptionRule.expectMessage("was taken with limit [100.0], not [50.0]");
+    WindowSnapshot.read(path, 50.00, 2);
+  }
+
+  @Test
+  public void testGivenOtherAmountScaleThenReturnError() throws IOException {
+    Path path = folder.getRoot().toPath().resolve("windows.snapshot");
+    WindowSnapshot.write(new SlidingWindowEngine(100.00, 4, new CreditCardDictionary()), path);
+    assertEquals(4, WindowSnapshot.read(path).getAmountScale());
+    exceptionRule.expect(IOException.class);
+    exceptionRule.expectMessage("was taken with amount scale [4], not [2]");
+    WindowSnapshot.read(path, 100.00, 2);
+  }
+
+  @Test
+  public void testGivenNotSnapshotThenReturnError() throws IOException {
+    exceptionRule.expect(IOException.class);
+    exceptionRule.expectMessage("Not a window snapshot");
+    WindowSnapshot.read(new File("src/test/resources/transactions_15.csv").toPath());
+  }
+
+  @Test
+  public void testGivenTruncatedSnapshotThenReturnError() throws IOException {
+    SlidingWindowEngine engine = new SlidingWindowEngine(100.00);
+    engine.accept("card", 1000, 30.00);
+    Path path = folder.getRoot().toPath().resolve("windows.snapshot");
+    WindowSnapshot.write(engine, path);
+    byte[] bytes = Files.readAllBytes(path);
+    Files.write(path, Arrays.copyOf(bytes, bytes.length - 1));
+    exceptionRule.expect(IOException.class);
+    exceptionRule.expectMessage("Truncated window snapshot");
+    WindowSnapshot.read(path);
+  }
+}